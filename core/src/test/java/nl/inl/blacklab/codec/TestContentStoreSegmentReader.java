@@ -0,0 +1,49 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.contentstore.ContentStoreSegmentReader;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test that reading from the content store gives the same results with and without the block cache.
+ */
+public class TestContentStoreSegmentReader {
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    private final String luceneField = AnnotatedFieldNameUtil.contentStoreField(index.mainAnnotatedField().name());
+
+    @Test
+    public void testCachedAndUncached() throws IOException {
+        int docsChecked = 0;
+        for (LeafReaderContext lrc: index.reader().leaves()) {
+            try (BlackLabStoredFieldsReader storedFields = BlackLabPostingsReader.forSegment(lrc).getStoredFieldsReader()) {
+                ContentStoreSegmentReader cached = storedFields.contentStore(true);
+                ContentStoreSegmentReader uncached = storedFields.contentStore(false);
+                for (int docId = 0; docId < lrc.reader().maxDoc(); docId++) {
+                    byte[] expected = cached.getBytes(docId, luceneField);
+                    if (expected == null)
+                        continue; // (e.g. the index metadata document)
+                    Assert.assertArrayEquals(expected, uncached.getBytes(docId, luceneField));
+                    // Read it twice, so the second read reuses the decode buffers
+                    Assert.assertArrayEquals(expected, uncached.getBytes(docId, luceneField));
+
+                    int length = expected.length;
+                    int[] start = { 0, 1, length / 2, 0 };
+                    int[] end = { -1, length / 2, -1, 1 };
+                    Assert.assertArrayEquals(cached.getValueSubstrings(docId, luceneField, start, end),
+                            uncached.getValueSubstrings(docId, luceneField, start, end));
+                    docsChecked++;
+                }
+            }
+        }
+        Assert.assertTrue(docsChecked > 0);
+    }
+}
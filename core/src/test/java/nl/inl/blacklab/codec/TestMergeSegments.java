@@ -0,0 +1,139 @@
+package nl.inl.blacklab.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.StringHelper;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.lucene.MatchInfo;
+import nl.inl.blacklab.search.lucene.RelationInfo;
+import nl.inl.blacklab.search.lucene.RelationListInfo;
+import nl.inl.blacklab.search.results.hitresults.HitResults;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test that the forward index and relation info survive merging segments
+ * (with a deleted document, so doc ids change), and that they were copied directly
+ * from the merged segments, not rebuilt from the merged postings.
+ */
+public class TestMergeSegments {
+
+    static TestIndex testIndex;
+
+    /** Debug messages logged by the forward index and relation info plugins while creating the test index */
+    static final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Capture the debug messages about copying fields when merging
+        Appender appender = new AbstractAppender("TestMergeSegments", null, null, true, Property.EMPTY_ARRAY) {
+            @Override
+            public void append(LogEvent event) {
+                messages.add(event.getMessage().getFormattedMessage());
+            }
+        };
+        appender.start();
+        List<Logger> loggers = List.of(
+                (Logger) LogManager.getLogger(PWPluginForwardIndex.class),
+                (Logger) LogManager.getLogger(PWPluginRelationInfo.class));
+        List<Level> levels = new ArrayList<>();
+        for (Logger logger: loggers) {
+            levels.add(logger.getLevel());
+            logger.addAppender(appender);
+            logger.setLevel(Level.DEBUG);
+        }
+        try {
+            testIndex = TestIndex.getMerged();
+        } finally {
+            for (int i = 0; i < loggers.size(); i++) {
+                loggers.get(i).removeAppender(appender);
+                loggers.get(i).setLevel(levels.get(i));
+            }
+            appender.stop();
+        }
+    }
+
+    /**
+     * Count messages about copying a type of information while writing our merged segment.
+     *
+     * (other indexes may be merging at the same time, so we only count messages for our segment,
+     *  which we recognize by its unique id)
+     *
+     * @param what type of information copied (e.g. "forward index")
+     * @return number of fields copied
+     */
+    private static long fieldsCopied(String what) {
+        SegmentReader segment = (SegmentReader) testIndex.index().reader().leaves().get(0).reader();
+        String segmentDescription = segment.getSegmentName() + " (" +
+                StringHelper.idToString(segment.getSegmentInfo().info.getId()) + ")";
+        String prefix = "Segment " + segmentDescription + ": copying " + what + " for field ";
+        synchronized (messages) {
+            return messages.stream().filter(m -> m.startsWith(prefix)).count();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (testIndex != null)
+            testIndex.close();
+    }
+
+    @Test
+    public void testSingleSegment() {
+        Assert.assertEquals(1, testIndex.index().reader().leaves().size());
+    }
+
+    @Test
+    public void testCopiedDirectly() {
+        // (the forward index has several fields: word, lemma, pos, ...)
+        Assert.assertTrue(fieldsCopied("forward index") > 1);
+        Assert.assertTrue(fieldsCopied("relation info") > 0);
+    }
+
+    @Test
+    public void testConcordances() {
+        List<String> expected = Arrays.asList(
+                "May [the] Force",
+                "is [the] question");
+        Assert.assertEquals(expected, testIndex.findConc(" 'the' "));
+
+        expected = Arrays.asList(
+                "the [Force] be",
+                "the [question]");
+        Assert.assertEquals(expected, testIndex.findConc(" [pos='nou'] "));
+
+        // Document without any pos values
+        expected = Arrays.asList(
+                "noot [mier] aap",
+                "aap [mier] mier",
+                "mier [mier] mier",
+                "mier [mier] noot");
+        Assert.assertEquals(expected, testIndex.findConc(" 'mier' "));
+    }
+
+    @Test
+    public void testRelations() {
+        HitResults hitResults = testIndex.find("with-spans('May')");
+        Assert.assertEquals(1, hitResults.size());
+        MatchInfo[] matchInfo = hitResults.getHits().get(0).matchInfos();
+        List<RelationInfo> rels = ((RelationListInfo) matchInfo[0]).getRelations();
+        Assert.assertEquals(1, rels.size());
+        Assert.assertEquals("s", rels.get(0).getRelationType());
+        Assert.assertEquals(Map.of("test", List.of("2")), rels.get(0).getAttributes());
+    }
+}
@@ -0,0 +1,64 @@
+package nl.inl.blacklab.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.Test;
+
+public class TestTermVecFileOffsets {
+
+    private static final int MAX_DOC = 4;
+
+    /** Add offsets for two fields, in term order (like the term vector file is written) */
+    private static void addOffsets(TermVecFileOffsets offsets) throws IOException {
+        offsets.startField();
+        // term 0 occurs in docs 1 and 3, term 1 in docs 0 and 1
+        offsets.add(1, 10);
+        offsets.add(3, 20);
+        offsets.add(0, 30);
+        offsets.add(1, 40);
+        offsets.startField();
+        // term 0 occurs in doc 2
+        offsets.add(2, 50);
+    }
+
+    private static void assertOffsets(TermVecFileOffsets offsets) throws IOException {
+        offsets.finishAdding();
+        long[][][] expected = {
+                { { 30 }, { 10, 40 }, {}, { 20 } },
+                { {}, {}, { 50 }, {} }
+        };
+        for (int field = 0; field < expected.length; field++) {
+            for (int docId = 0; docId < MAX_DOC; docId++) {
+                assertArrayEquals("field " + field + ", doc " + docId, expected[field][docId],
+                        offsets.get(field, docId).toLongArray());
+            }
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        try (Directory dir = new ByteBuffersDirectory();
+                TermVecFileOffsets offsets = new TermVecFileOffsets(dir, "test", MAX_DOC, 1_000_000)) {
+            addOffsets(offsets);
+            assertOffsets(offsets);
+        }
+    }
+
+    @Test
+    public void testSpilled() throws IOException {
+        try (Directory dir = new ByteBuffersDirectory()) {
+            // Tiny budget, so we spill after the first offset
+            try (TermVecFileOffsets offsets = new TermVecFileOffsets(dir, "test", MAX_DOC, 1)) {
+                addOffsets(offsets);
+                assertOffsets(offsets);
+            }
+            // Temporary files should have been cleaned up
+            assertEquals(0, dir.listAll().length);
+        }
+    }
+}
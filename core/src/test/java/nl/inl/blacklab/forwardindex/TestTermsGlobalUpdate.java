@@ -0,0 +1,81 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test that updating the global terms file for a new segment gives the same result as
+ * determining the global terms again.
+ */
+public class TestTermsGlobalUpdate {
+
+    /** Document with a few new terms, some of which are insensitively equal to existing terms */
+    private static final String NEW_DOCUMENT = "<doc pid='4' title='Added'> <s><w l='the'>THE</w> "
+            + "<w l='zebra'>zebra</w> "
+            + "<w l='aardvark'>Aardvark</w> "
+            + "<w l='fox'>Fox</w> "
+            + "<w l='fox'>fox</w>.</s></doc>";
+
+    private TestIndex testIndex;
+
+    @Before
+    public void setUp() {
+        testIndex = TestIndex.get();
+    }
+
+    @After
+    public void tearDown() {
+        testIndex.close();
+    }
+
+    private Annotation word() {
+        return testIndex.index().mainAnnotatedField().annotation("word");
+    }
+
+    @Test
+    public void testAddSegment() throws InterruptedException {
+        // Determine the terms, which writes the terms file for this commit
+        Assert.assertTrue(testIndex.index().forwardIndex(word()).terms().numberOfTerms() > 0);
+        File termsDir = new File(testIndex.index().indexDirectory(), TermsGlobal.TERMS_DIR_NAME);
+        String[] filesBefore = termsDir.list();
+        Assert.assertNotNull(filesBefore);
+        Assert.assertTrue(filesBefore.length > 0);
+
+        // Add a segment and reopen, so the terms file is updated with the new terms
+        testIndex.addDocuments(NEW_DOCUMENT);
+        BlackLabIndex index = testIndex.index();
+        Terms updated = index.forwardIndex(word()).terms();
+
+        // Determine the terms from scratch (without a terms file)
+        TermsGlobal rebuilt = new TermsGlobal(word().forwardIndexSensitivity().luceneField());
+        rebuilt.initialize(index.reader());
+
+        Assert.assertEquals(rebuilt.numberOfTerms(), updated.numberOfTerms());
+        for (int termId = 0; termId < rebuilt.numberOfTerms(); termId++) {
+            String term = rebuilt.get(termId);
+            int updatedTermId = updated.indexOf(term, MatchSensitivity.SENSITIVE);
+            Assert.assertEquals(term, updated.get(updatedTermId));
+            for (MatchSensitivity sensitivity: MatchSensitivity.values()) {
+                Assert.assertEquals(term + " " + sensitivity,
+                        rebuilt.idToSortPosition(termId, sensitivity),
+                        updated.idToSortPosition(updatedTermId, sensitivity));
+            }
+        }
+        Assert.assertTrue(updated.indexOf("zebra", MatchSensitivity.SENSITIVE) >= 0);
+
+        // The file for the previous commit has been replaced by one for the new commit
+        String[] filesAfter = termsDir.list();
+        Assert.assertNotNull(filesAfter);
+        Assert.assertEquals(filesBefore.length, filesAfter.length);
+        Assert.assertNotEquals(filesBefore[0], filesAfter[0]);
+    }
+}
@@ -0,0 +1,47 @@
+package nl.inl.blacklab.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test that fields too large for an autocomplete index fall back to a prefix scan.
+ */
+public class TestAutocompleteFallback {
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    private final IndexReader reader = index.reader();
+
+    private final String luceneField = index.mainAnnotatedField().annotation("lemma")
+            .sensitivity(MatchSensitivity.INSENSITIVE).luceneField();
+
+    @Test
+    public void testTooLarge() {
+        AutocompleteIndex full = AutocompleteIndex.build(reader, luceneField, Long.MAX_VALUE);
+        Assert.assertNotNull(full);
+        Assert.assertNotNull(AutocompleteIndex.build(reader, luceneField, full.memoryUsageBytes()));
+        Assert.assertNull(AutocompleteIndex.build(reader, luceneField, full.memoryUsageBytes() / 2));
+        Assert.assertNull(AutocompleteIndex.build(reader, luceneField, 10));
+    }
+
+    @Test
+    public void testFallback() {
+        AutocompleteIndex full = AutocompleteIndex.build(reader, luceneField, Long.MAX_VALUE);
+        Assert.assertNotNull(full);
+        for (String prefix: List.of("b", "T", "mi", "x")) {
+            // The prefix scan finds the same terms, but in alphabetical order
+            List<String> expected = new ArrayList<>(AutocompleteIndex.find(full, reader, luceneField, prefix, false, 30));
+            expected.sort(String::compareTo);
+            Assert.assertEquals(prefix, expected,
+                    AutocompleteIndex.find(null, reader, luceneField, prefix, false, 30));
+        }
+        Assert.assertEquals(2, AutocompleteIndex.find(null, reader, luceneField, "", false, 2).size());
+    }
+}
@@ -3,6 +3,7 @@ package nl.inl.blacklab.search;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -17,10 +18,12 @@ import org.junit.runners.Parameterized;
 
 import com.ibm.icu.text.Collator;
 
+import nl.inl.blacklab.codec.BlackLabPostingsReader;
 import nl.inl.blacklab.contentstore.ContentStore;
 import nl.inl.blacklab.forwardindex.Collators;
 import nl.inl.blacklab.forwardindex.FieldForwardIndex;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.forwardindex.TokensCursor;
 import nl.inl.blacklab.index.annotated.AnnotationSensitivities;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
@@ -150,6 +153,29 @@ public class TestIndexFormats {
         }
     }
 
+    @Test
+    public void testRetrieveUsingCursor() {
+        for (String luceneField: List.of(wordFi, posFi)) {
+            for (int i = 0; i < TestIndex.DOC_LENGTHS_TOKENS.length; i++) {
+                int docId = testIndex.getDocIdForDocNumber(i);
+                LeafReaderContext lrc = index.getLeafReaderContext(docId);
+                int segmentDocId = docId - lrc.docBase;
+                int[] expected = FieldForwardIndex.get(lrc, luceneField)
+                        .retrieveParts(segmentDocId, new int[] { -1 }, new int[] { -1 })[0];
+                TokensCursor cursor = BlackLabPostingsReader.forSegment(lrc).tokensCursor(luceneField);
+                cursor.reset(segmentDocId);
+                Assert.assertEquals(expected.length, cursor.docLength());
+                int[] actual = new int[cursor.end() - cursor.position()];
+                for (int j = 0; cursor.hasNext(); j++)
+                    actual[j] = cursor.nextToken();
+                Assert.assertArrayEquals(expected, actual);
+                // Random access, in reverse order
+                for (int j = expected.length - 1; j >= 0; j--)
+                    Assert.assertEquals(expected[j], cursor.tokenAt(j));
+            }
+        }
+    }
+
     /** if token offset out of range, throw an exception */
     @Test(expected = IllegalArgumentException.class)
     public void testRetrieveOutOfRange() {
@@ -1,10 +1,12 @@
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.lucene.document.Document;
@@ -22,6 +24,7 @@ import org.junit.runners.Parameterized;
 import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.DocPropertyAnnotatedFieldLength;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyBeforeHit;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
@@ -38,6 +41,7 @@ import nl.inl.blacklab.search.lucene.MatchInfo;
 import nl.inl.blacklab.search.lucene.RelationInfo;
 import nl.inl.blacklab.search.lucene.RelationListInfo;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.results.CorpusSize;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.docs.DocResult;
 import nl.inl.blacklab.search.results.docs.DocResults;
@@ -659,6 +663,57 @@ public class TestSearches {
         Assert.assertEquals(Set.of("Pangram", "Learning words", "Star Wars", "Bastardized Shakespeare"), titles);
     }
 
+    private static void assertSameSize(CorpusSize expected, CorpusSize actual) {
+        Assert.assertEquals(expected.getTotalCount().getDocuments(), actual.getTotalCount().getDocuments());
+        Assert.assertEquals(expected.getTotalCount().getTokens(), actual.getTotalCount().getTokens());
+        Assert.assertEquals(expected.getCountsPerField().keySet(), actual.getCountsPerField().keySet());
+        for (Map.Entry<String, CorpusSize.Count> e: expected.getCountsPerField().entrySet()) {
+            CorpusSize.Count count = actual.getCountsPerField().get(e.getKey());
+            Assert.assertEquals(e.getValue().getDocuments(), count.getDocuments());
+            Assert.assertEquals(e.getValue().getTokens(), count.getTokens());
+        }
+    }
+
+    @Test
+    public void testSubcorpusSize() {
+        BlackLabIndex index = testIndex.index();
+        String mainField = index.mainAnnotatedField().name();
+        DocResults allDocs = index.queryDocuments(new MatchAllDocsQuery());
+
+        // Determine the expected size the slow way, by getting the length of each document
+        DocPropertyAnnotatedFieldLength length = new DocPropertyAnnotatedFieldLength(index, mainField);
+        long expectedDocs = 0, expectedTokens = 0;
+        List<DocResult> docs = new ArrayList<>();
+        for (DocResult d: allDocs) {
+            docs.add(d);
+            long tokens = length.get(d.docId());
+            if (tokens > 0) {
+                expectedDocs++;
+                expectedTokens += tokens;
+            }
+        }
+        CorpusSize size = allDocs.subcorpusSize(true);
+        Assert.assertEquals(4, size.getTotalCount().getDocuments());
+        Assert.assertEquals(expectedDocs, size.getCountsPerField().get(mainField).getDocuments());
+        Assert.assertEquals(expectedTokens, size.getCountsPerField().get(mainField).getTokens());
+
+        // The same filter again (found in the subcorpus size cache)
+        assertSameSize(size, index.queryDocuments(new MatchAllDocsQuery()).subcorpusSize(true));
+
+        // Without a query, we count the documents themselves; should give the same result,
+        // whether we use one thread or several
+        int maxThreads = index.blackLab().maxThreadsPerSearch();
+        try {
+            for (int threads: List.of(1, 4)) {
+                index.blackLab().setMaxThreadsPerSearch(threads);
+                QueryInfo queryInfo = QueryInfo.create(index);
+                assertSameSize(size, DocResults.fromList(queryInfo, docs, null, null).subcorpusSize(true));
+            }
+        } finally {
+            index.blackLab().setMaxThreadsPerSearch(maxThreads);
+        }
+    }
+
     /** Test that equals and hashCode works for TextPattern and BLSpanQuery (essential for caching!) */
     @Test
     public void testTextPatternAndQueryEqualsHashcode() throws InvalidQuery {
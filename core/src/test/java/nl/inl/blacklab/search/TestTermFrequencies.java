@@ -0,0 +1,66 @@
+package nl.inl.blacklab.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+import nl.inl.util.LuceneUtil;
+
+/**
+ * Test that term frequencies from the forward index match those from the term vectors.
+ */
+public class TestTermFrequencies {
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    private AnnotationSensitivity sensitivity(String annotation) {
+        return index.mainAnnotatedField().annotation(annotation).sensitivity(MatchSensitivity.INSENSITIVE);
+    }
+
+    private void assertSameAsTermVectors(String annotation, Query filter) {
+        AnnotationSensitivity annotSensitivity = sensitivity(annotation);
+        Assert.assertTrue(ForwardIndexTermFrequencies.canUse(index, annotSensitivity));
+        Map<String, Integer> expected = LuceneUtil.termFrequencies(index.searcher(), filter, annotSensitivity, null);
+        Map<String, Integer> actual = ForwardIndexTermFrequencies.get(index, filter, annotSensitivity, null);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testAllDocuments() {
+        // (includes a document without any pos values)
+        assertSameAsTermVectors("pos", index.getAllRealDocsQuery());
+        assertSameAsTermVectors("lemma", index.getAllRealDocsQuery());
+    }
+
+    @Test
+    public void testFilteredDocuments() {
+        Query filter = new TermQuery(new Term("title", "star"));
+        assertSameAsTermVectors("pos", filter);
+        assertSameAsTermVectors("lemma", filter);
+        Map<String, Integer> freq = ForwardIndexTermFrequencies.get(index, filter, sensitivity("pos"), null);
+        Assert.assertEquals(Integer.valueOf(2), freq.get("vrb"));
+    }
+
+    @Test
+    public void testMultipleValuesPerPosition() {
+        // "The|DOH|ZZZ" in the first document: the forward index only has one of these values,
+        // so we must use the term vectors to count all of them
+        AnnotationSensitivity word = sensitivity("word");
+        Assert.assertFalse(ForwardIndexTermFrequencies.canUse(index, word));
+        Query filter = index.getAllRealDocsQuery();
+        Map<String, Integer> termVectors = LuceneUtil.termFrequencies(index.searcher(), filter, word, null);
+        Assert.assertEquals(Integer.valueOf(1), termVectors.get("doh"));
+        Map<String, Integer> actual = new HashMap<>();
+        for (TermFrequency freq: index.termFrequencies(word, filter, null))
+            actual.put(freq.term, (int) freq.frequency);
+        Assert.assertEquals(termVectors, actual);
+    }
+}
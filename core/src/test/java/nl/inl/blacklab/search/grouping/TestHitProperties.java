@@ -1,8 +1,12 @@
 package nl.inl.blacklab.search.grouping;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,13 +14,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.mocks.MockTerms;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyAfterHit;
+import nl.inl.blacklab.resultproperty.HitPropertyBeforeHit;
 import nl.inl.blacklab.resultproperty.HitPropertyCaptureGroup;
 import nl.inl.blacklab.resultproperty.HitPropertyContextPart;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
+import nl.inl.blacklab.resultproperty.PropContext;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueContext;
 import nl.inl.blacklab.resultproperty.PropertyValueContextWords;
@@ -29,6 +40,7 @@ import nl.inl.blacklab.search.results.Results;
 import nl.inl.blacklab.search.results.hitresults.HitGroup;
 import nl.inl.blacklab.search.results.hitresults.HitGroups;
 import nl.inl.blacklab.search.results.hitresults.HitResults;
+import nl.inl.blacklab.search.results.hits.Hits;
 import nl.inl.blacklab.testutil.TestIndex;
 
 @RunWith(Parameterized.class)
@@ -122,6 +134,80 @@ public class TestHitProperties {
         Assert.assertEquals(1, group.size());
     }
 
+    /** Check that grouping (using group keys if supported) gives the same groups as getting each hit's value. */
+    private void assertSameAsValuePerHit(HitResults hitResults, HitProperty p) {
+        Assert.assertTrue(p.supportsGroupKeys());
+        Hits hits = hitResults.getHits();
+        HitProperty perHit = p.copyWith(PropContext.globalHits(hits));
+        Map<PropertyValue, Integer> expected = new HashMap<>();
+        for (long i = 0; i < hits.size(); i++)
+            expected.merge(perHit.get(i), 1, Integer::sum);
+
+        Map<PropertyValue, Integer> actual = new HashMap<>();
+        for (HitGroup group: hitResults.group(p, Results.NO_LIMIT))
+            actual.put(group.identity(), (int) group.size());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testGroupKeys() {
+        HitResults hitResults = testIndex.find(" [] ");
+        Annotation lemma = index.mainAnnotatedField().annotation("lemma");
+        assertSameAsValuePerHit(hitResults, new HitPropertyHitText(index, MatchSensitivity.SENSITIVE));
+        assertSameAsValuePerHit(hitResults, new HitPropertyHitText(index, lemma, MatchSensitivity.INSENSITIVE));
+        assertSameAsValuePerHit(hitResults, HitPropertyContextPart.contextWords(index, wordAnnotation,
+                MatchSensitivity.SENSITIVE, "L1;H1;R1"));
+        assertSameAsValuePerHit(hitResults, new HitPropertyDocumentId());
+        assertSameAsValuePerHit(hitResults, new HitPropertyDocumentStoredField(index, "title"));
+        assertSameAsValuePerHit(hitResults, new HitPropertyMultiple(
+                new HitPropertyHitText(index, MatchSensitivity.INSENSITIVE),
+                new HitPropertyDocumentStoredField(index, "title")));
+    }
+
+    /** Check that sorting on packed sort keys gives the same order as sorting using compare(). */
+    private void assertPackedKeysSortLikeCompare(Hits hits, HitProperty p) {
+        HitProperty prop = p.copyWith(PropContext.globalHits(hits));
+        long[] keys = prop.packedSortKeys();
+        Assert.assertNotNull(keys);
+        Assert.assertEquals(hits.size(), keys.length);
+        boolean foundTie = false;
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = 0; j < keys.length; j++) {
+                int expected = Integer.signum(prop.compare(i, j));
+                Assert.assertEquals(prop.name() + " " + i + " " + j, expected, Long.signum(Long.compare(keys[i], keys[j])));
+                foundTie |= i != j && expected == 0;
+            }
+        }
+        Assert.assertTrue(foundTie);
+        if (prop.isReverse())
+            Assert.assertTrue(Arrays.stream(keys).anyMatch(k -> k < 0));
+
+        // Sort (radix sort on the packed keys) and compare with sorting using compare()
+        Hits sorted = hits.sorted(prop);
+        HitProperty sortedProp = p.copyWith(PropContext.globalHits(sorted));
+        int[] indices = IntStream.range(0, keys.length).toArray();
+        IntArrays.quickSort(indices, prop::compare);
+        Assert.assertEquals(hits.size(), sorted.size());
+        for (int i = 0; i < indices.length; i++)
+            Assert.assertEquals(prop.name() + " " + i, 0, prop.get(indices[i]).compareTo(sortedProp.get(i)));
+    }
+
+    @Test
+    public void testPackedSortKeys() {
+        Hits hits = testIndex.find(" [] ").getHits();
+        Annotation lemma = index.mainAnnotatedField().annotation("lemma");
+        for (HitProperty p: List.of(
+                new HitPropertyHitText(index, MatchSensitivity.SENSITIVE),
+                new HitPropertyHitText(index, lemma, MatchSensitivity.INSENSITIVE),
+                new HitPropertyBeforeHit(index, wordAnnotation, MatchSensitivity.INSENSITIVE, 1),
+                new HitPropertyAfterHit(index, wordAnnotation, MatchSensitivity.SENSITIVE, 2),
+                HitPropertyContextPart.contextWords(index, wordAnnotation, MatchSensitivity.SENSITIVE, "L1;H1;R1"))) {
+            assertPackedKeysSortLikeCompare(hits, p);
+            // Reverse sort: negative keys
+            assertPackedKeysSortLikeCompare(hits, p.reverse());
+        }
+    }
+
     @Test
     public void testTermSerialization() {
         String[] words = { "aap", "~", "~~", "" };
@@ -0,0 +1,112 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestHitsExternalSort {
+
+    private final TestIndex testIndex = TestIndex.get();
+
+    /** Get all tokens in the test index as a list of hits with global doc ids. */
+    private HitsListAbstract allTokens() {
+        Hits hits = testIndex.find(" [] ").getHits();
+        HitsListAbstract list = HitsMutable.create(hits.field(), hits.matchInfoDefs(), hits.size(), false, false);
+        list.addAll(hits);
+        return list;
+    }
+
+    private static List<String> hitStrings(Hits hits) {
+        List<String> result = new ArrayList<>();
+        for (EphemeralHit hit: hits)
+            result.add(hit.doc() + ":" + hit.start() + "-" + hit.end());
+        result.sort(String::compareTo);
+        return result;
+    }
+
+    private void assertSortedCorrectly(HitProperty prop) {
+        HitsListAbstract hits = allTokens();
+        HitProperty sortBy = prop.copyWith(hits);
+        // Use tiny runs so we test merging many of them
+        Hits sorted = HitsExternalSort.sort(hits, sortBy, null, 3);
+        Assert.assertEquals(hits.size(), sorted.size());
+        Assert.assertEquals(hitStrings(hits), hitStrings(sorted));
+
+        // Check the order using the in-memory sorted hits
+        Hits expected = hits.sorted(sortBy);
+        HitProperty expectedValues = prop.copyWith(expected);
+        HitProperty actualValues = prop.copyWith(sorted);
+        for (long i = 0; i < sorted.size(); i++)
+            Assert.assertEquals("hit " + i, expectedValues.get(i), actualValues.get(i));
+    }
+
+    @Test
+    public void testSortHitText() {
+        assertSortedCorrectly(new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE));
+    }
+
+    @Test
+    public void testSortHitTextReverse() {
+        assertSortedCorrectly(new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE).reverse());
+    }
+
+    @Test
+    public void testSortStoredField() {
+        assertSortedCorrectly(new HitPropertyDocumentStoredField(testIndex.index(), "title"));
+    }
+
+    @Test
+    public void testSortStoredFieldReverse() {
+        assertSortedCorrectly(new HitPropertyDocumentStoredField(testIndex.index(), "title").reverse());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        // Enough hits for several pages of records
+        int n = 50_000;
+        Random random = new Random(123);
+        HitsListNoLock32 hits = new HitsListNoLock32(null, null, n);
+        for (int i = 0; i < n; i++) {
+            int start = random.nextInt(1_000);
+            hits.add(random.nextInt(10_000), start, start + 1, null);
+        }
+        HitProperty sortBy = new HitPropertyDocumentId().copyWith(hits);
+        Hits sorted = HitsExternalSort.sort(hits, sortBy, null, 10_000);
+        Hits expected = hits.sorted(sortBy);
+
+        // Threads read different parts of the hits at the same time, switching pages often
+        int numThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = thread; i < n; i += numThreads) {
+                        long index = (i * 7919L) % n;
+                        Assert.assertEquals(expected.doc(index), sorted.doc(index));
+                        Assert.assertEquals(expected.start(index), sorted.start(index));
+                        Assert.assertEquals(expected.end(index), sorted.end(index));
+                    }
+                }));
+            }
+            for (Future<?> future: futures)
+                future.get(); // (rethrows assertion failures)
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+
+public class TestHitsListCompact {
+
+    private static HitsListNoLock32 randomHits(int n, boolean sortedByDoc) {
+        Random random = new Random(123);
+        HitsListNoLock32 hits = new HitsListNoLock32(null, null, n);
+        int doc = 0, start = 0;
+        for (int i = 0; i < n; i++) {
+            if (!sortedByDoc) {
+                doc = random.nextInt(100_000);
+                start = random.nextInt(1_000_000);
+            } else if (random.nextInt(10) == 0) {
+                doc += 1 + random.nextInt(1000);
+                start = random.nextInt(100);
+            } else {
+                start += random.nextInt(300);
+            }
+            hits.add(doc, start, start + random.nextInt(5), null);
+        }
+        return hits;
+    }
+
+    private static void assertSameHits(Hits expected, Hits actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        // Random access
+        for (long i = expected.size() - 1; i >= 0; i--) {
+            Assert.assertEquals(expected.doc(i), actual.doc(i));
+            Assert.assertEquals(expected.start(i), actual.start(i));
+            Assert.assertEquals(expected.end(i), actual.end(i));
+        }
+        // Sequential access
+        long i = 0;
+        for (EphemeralHit hit: actual) {
+            Assert.assertEquals(expected.get(i), hit.toHit());
+            i++;
+        }
+        Assert.assertEquals(expected.size(), i);
+    }
+
+    @Test
+    public void testSortedByDoc() {
+        HitsListNoLock32 hits = randomHits(10_000, true);
+        HitsListCompact compact = new HitsListCompact(null, null);
+        compact.addAll(hits);
+        assertSameHits(hits, compact);
+        Assert.assertEquals(hits.countDocs(), compact.countDocs());
+        // Small deltas should take less than the 12 bytes per hit of the array-based lists
+        Assert.assertTrue(compact.memoryUsageBytes() < 12L * hits.size());
+    }
+
+    @Test
+    public void testUnsorted() {
+        HitsListNoLock32 hits = randomHits(10_000, false);
+        HitsListCompact compact = new HitsListCompact(null, null);
+        compact.addAll(hits);
+        assertSameHits(hits, compact);
+    }
+
+    @Test
+    public void testClear() {
+        HitsListCompact compact = new HitsListCompact(null, null);
+        compact.addAll(randomHits(100, true));
+        long pagesBytes = compact.memoryUsageBytes();
+        compact.clear();
+        Assert.assertEquals(0, compact.size());
+        HitsListNoLock32 hits = randomHits(50, false);
+        compact.addAll(hits);
+        assertSameHits(hits, compact);
+        // Pages were reused, not allocated again
+        Assert.assertTrue(compact.memoryUsageBytes() <= pagesBytes);
+    }
+
+    @Test
+    public void testSort() {
+        // Sorting uses random access from several threads, alternating between blocks
+        for (boolean sortedByDoc: new boolean[] { true, false }) {
+            HitsListNoLock32 hits = randomHits(100_000, sortedByDoc);
+            HitsListCompact compact = new HitsListCompact(null, null);
+            compact.addAll(hits);
+            for (HitProperty prop: List.of(new HitPropertyDocumentId(), new HitPropertyDocumentId().reverse())) {
+                // (ties are broken by position, so the order is the same for both lists)
+                Hits expected = hits.sorted(prop.copyWith(hits));
+                Hits actual = compact.sorted(prop.copyWith(compact));
+                assertSameHits(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testReadWhileAdding() {
+        // Reading caches the decoded block; adding to that block must not return stale hits
+        HitsListNoLock32 hits = randomHits(40, true);
+        HitsListCompact compact = new HitsListCompact(null, null);
+        for (long i = 0; i < hits.size(); i++) {
+            compact.add(hits.get(i));
+            Assert.assertEquals(hits.end(i), compact.end(i));
+            Assert.assertEquals(hits.doc(0), compact.doc(0));
+        }
+        assertSameHits(hits, compact);
+    }
+}
@@ -0,0 +1,52 @@
+package nl.inl.blacklab.search.results.hits;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test that selecting the first hits of a sorted result gives exactly the first
+ * hits of the full sort, including the order of hits with equal values.
+ */
+public class TestHitsTopK {
+
+    private final TestIndex testIndex = TestIndex.getReusable();
+
+    private void assertSameAsFullSort(HitProperty p) {
+        Hits hits = testIndex.find(" [] ").getHits().getStatic();
+        Assert.assertNotNull(hits.hitsPerSegment()); // otherwise we'd just use the full sort
+        HitProperty prop = p.copyWith(hits);
+        Hits sorted = hits.sorted(prop);
+        for (long k: new long[] { 1, 3, 10 }) {
+            Assert.assertTrue(k < hits.size() / 2); // (same)
+            Hits topK = hits.sortedTopK(prop, k);
+            Assert.assertEquals(k, topK.size());
+            for (long i = 0; i < k; i++) {
+                String msg = prop.serialize() + " k=" + k + " hit " + i;
+                Assert.assertEquals(msg, sorted.doc(i), topK.doc(i));
+                Assert.assertEquals(msg, sorted.start(i), topK.start(i));
+                Assert.assertEquals(msg, sorted.end(i), topK.end(i));
+            }
+        }
+    }
+
+    @Test
+    public void testHitText() {
+        HitProperty prop = new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE);
+        assertSameAsFullSort(prop);
+        assertSameAsFullSort(prop.reverse());
+    }
+
+    @Test
+    public void testStoredField() {
+        // (many hits with the same value, so this mostly tests the order of equal hits)
+        HitProperty prop = new HitPropertyDocumentStoredField(testIndex.index(), "title");
+        assertSameAsFullSort(prop);
+        assertSameAsFullSort(prop.reverse());
+    }
+}
@@ -0,0 +1,83 @@
+package nl.inl.blacklab.search.results.hits.fetch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+import nl.inl.blacklab.search.lucene.optimize.OptimizerSettings;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchSettings;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestHitFetcherQueryConcurrency {
+    public final TestIndex testIndex = TestIndex.get();
+
+    private static final int NUMBER_OF_THREADS = 4;
+
+    @Test
+    public void testRewritesRunInParallel() throws InterruptedException, ExecutionException {
+        // Each query's rewrite() waits until all queries are being rewritten.
+        // If rewrites were serialized (e.g. by a global lock), this would time out.
+        CyclicBarrier allRewriting = new CyclicBarrier(NUMBER_OF_THREADS);
+        QueryInfo queryInfo = QueryInfo.create(testIndex.index());
+        ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                // Use a different NFA threshold for each query
+                SearchSettings searchSettings = SearchSettings.get(SearchSettings.DEFAULT_MAX_PROCESS,
+                        SearchSettings.DEFAULT_MAX_COUNT, 100 + i);
+                BLSpanQuery query = new BLSpanTermQuery(queryInfo, new Term("contents%word@i", "the")) {
+                    @Override
+                    public BLSpanQuery rewrite(IndexReader reader) {
+                        try {
+                            allRewriting.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                            throw new AssertionError("Rewrites didn't run in parallel", e);
+                        }
+                        return super.rewrite(reader);
+                    }
+                };
+                futures.add(executor.submit(() -> new HitFetcherQuery(query, searchSettings)));
+            }
+            for (Future<?> future: futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOptimizerSettingsPerThread() throws InterruptedException, ExecutionException {
+        long defaultThreshold = ClauseCombinerNfa.getNfaThreshold();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            OptimizerSettings settings = OptimizerSettings.defaults().withNfaThreshold(defaultThreshold + 1);
+            try (OptimizerSettings.Scope ignored = settings.activate()) {
+                assertEquals(defaultThreshold + 1, OptimizerSettings.current().nfaThreshold());
+                // Other threads are not affected
+                long otherThread = executor.submit(() -> OptimizerSettings.current().nfaThreshold()).get();
+                assertEquals(defaultThreshold, otherThread);
+            }
+            assertEquals(defaultThreshold, OptimizerSettings.current().nfaThreshold());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
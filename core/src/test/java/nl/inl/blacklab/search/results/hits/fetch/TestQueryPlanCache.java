@@ -0,0 +1,92 @@
+package nl.inl.blacklab.search.results.hits.fetch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+import nl.inl.blacklab.search.lucene.optimize.OptimizerSettings;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestQueryPlanCache {
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    /** Number of plans we had to create (i.e. cache misses) */
+    private final AtomicInteger plansCreated = new AtomicInteger();
+
+    private BLSpanQuery query(String word) {
+        // (a new instance each time, so we don't rely on the query object being the same)
+        return new BLSpanTermQuery(QueryInfo.create(index), new Term("contents%word@i", word));
+    }
+
+    private void get(IndexReader reader, BLSpanQuery query, OptimizerSettings settings) throws IOException {
+        QueryPlanCache.get(reader, query, settings, () -> {
+            plansCreated.incrementAndGet();
+            return QueryPlanCache.plan(System.nanoTime(), query, null);
+        });
+    }
+
+    private static IndexReader openOtherReader(Directory dir) throws IOException {
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+            writer.addDocument(new Document());
+        }
+        return DirectoryReader.open(dir);
+    }
+
+    @Test
+    public void testRepeatedQuery() throws IOException {
+        OptimizerSettings settings = OptimizerSettings.defaults();
+        get(index.reader(), query("repeated"), settings);
+        get(index.reader(), query("repeated"), settings);
+        assertEquals(1, plansCreated.get());
+        get(index.reader(), query("other"), settings);
+        assertEquals(2, plansCreated.get());
+    }
+
+    @Test
+    public void testDifferentSettings() throws IOException {
+        OptimizerSettings settings = OptimizerSettings.defaults();
+        get(index.reader(), query("settings"), settings);
+        get(index.reader(), query("settings"), settings.withNfaThreshold(settings.nfaThreshold() + 1));
+        assertEquals(2, plansCreated.get());
+    }
+
+    @Test
+    public void testDifferentReaders() throws IOException {
+        OptimizerSettings settings = OptimizerSettings.defaults();
+        try (Directory dir = new ByteBuffersDirectory()) {
+            IndexReader otherReader = openOtherReader(dir);
+            get(index.reader(), query("readers"), settings);
+            get(otherReader, query("readers"), settings);
+            assertEquals(2, plansCreated.get());
+            get(otherReader, query("readers"), settings);
+            assertEquals(2, plansCreated.get());
+
+            // Closing the reader removes its plans (and we don't add any new ones)
+            otherReader.close();
+            get(otherReader, query("readers"), settings);
+            assertEquals(3, plansCreated.get());
+            get(otherReader, query("readers"), settings);
+            assertEquals(4, plansCreated.get());
+
+            // Other readers are not affected
+            get(index.reader(), query("readers"), settings);
+            assertEquals(4, plansCreated.get());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package nl.inl.blacklab.search.results.hits.fetch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchSettings;
+import nl.inl.blacklab.search.results.hitresults.HitResults;
+import nl.inl.blacklab.search.results.hits.Hits;
+import nl.inl.blacklab.search.results.hits.HitsMutable;
+import nl.inl.blacklab.search.results.stats.ResultsStats;
+import nl.inl.blacklab.search.results.stats.ResultsStatsPassive;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestSegmentRanges {
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    private final AnnotatedField field = index.mainAnnotatedField();
+
+    /** Records the documents of the hits it receives, in order */
+    private static class RecordingProcessor implements HitProcessor {
+
+        final List<Integer> docs = new ArrayList<>();
+
+        long counted = 0;
+
+        @Override
+        public HitFetcher.Phase onDocumentBoundary(HitsMutable results, long counted) {
+            onFinished(results, counted);
+            results.clear();
+            return HitFetcher.Phase.STORING_AND_COUNTING;
+        }
+
+        @Override
+        public void onFinished(HitsMutable results, long counted) {
+            for (long i = 0; i < results.size(); i++)
+                docs.add(results.doc(i));
+            this.counted += counted;
+        }
+
+        @Override
+        public long globalProcessedSoFar() {
+            return docs.size();
+        }
+
+        @Override
+        public long globalCountedSoFar() {
+            return counted;
+        }
+    }
+
+    private HitsMutable hits(int... docs) {
+        HitsMutable hits = HitsMutable.create(field, MatchInfoDefs.EMPTY, -1, true, false);
+        for (int doc: docs)
+            hits.add(doc, 0, 1, null);
+        return hits;
+    }
+
+    @Test
+    public void testHitsPassedOnInOrder() {
+        RecordingProcessor segmentProcessor = new RecordingProcessor();
+        ResultsStatsPassive stats = new ResultsStatsPassive(ResultsStats.ThrowingResultsAwaiter.INSTANCE);
+        SegmentRanges ranges = new SegmentRanges(segmentProcessor, stats, 3, field, MatchInfoDefs.EMPTY);
+
+        // Later ranges finish (or make progress) before earlier ones
+        ranges.processor(2).onDocumentBoundary(hits(20, 21), 2);
+        ranges.processor(2).onFinished(hits(22), 1);
+        ranges.rangeDone(2);
+        ranges.processor(1).onDocumentBoundary(hits(10), 1);
+        assertEquals(List.of(), segmentProcessor.docs);
+
+        // The first range passes its hits on directly
+        ranges.processor(0).onDocumentBoundary(hits(1, 2), 2);
+        assertEquals(List.of(1, 2), segmentProcessor.docs);
+
+        // When it's done, the next range passes on its kept hits, then continues directly
+        ranges.processor(0).onFinished(hits(3), 1);
+        ranges.rangeDone(0);
+        assertEquals(List.of(1, 2, 3, 10), segmentProcessor.docs);
+        ranges.processor(1).onFinished(hits(11), 1);
+        assertEquals(List.of(1, 2, 3, 10, 11), segmentProcessor.docs);
+
+        // When that's done, the (already finished) last range passes on its hits too
+        ranges.rangeDone(1);
+        assertEquals(List.of(1, 2, 3, 10, 11, 20, 21, 22), segmentProcessor.docs);
+        assertEquals(8, segmentProcessor.counted);
+    }
+
+    @Test
+    public void testKeptHitsCountTowardsLimit() {
+        RecordingProcessor segmentProcessor = new RecordingProcessor();
+        ResultsStatsPassive stats = new ResultsStatsPassive(ResultsStats.ThrowingResultsAwaiter.INSTANCE, 3,
+                Long.MAX_VALUE);
+        SegmentRanges ranges = new SegmentRanges(segmentProcessor, stats, 2, field, MatchInfoDefs.EMPTY);
+
+        // The second range keeps hits until it reaches the limit, then only counts them
+        assertEquals(HitFetcher.Phase.STORING_AND_COUNTING, ranges.processor(1).onDocumentBoundary(hits(10, 11), 2));
+        assertEquals(HitFetcher.Phase.COUNTING_ONLY, ranges.processor(1).onDocumentBoundary(hits(12, 13), 2));
+        ranges.processor(1).onFinished(hits(14), 1);
+        ranges.rangeDone(1);
+
+        ranges.rangeDone(0);
+        assertEquals(List.of(10, 11, 12, 13), segmentProcessor.docs);
+        assertEquals(5, segmentProcessor.counted);
+    }
+
+    /** Find hits, and return them (sorted, as doc:start-end) followed by the processed and counted totals */
+    private List<String> find(String cql, int minDocsPerSegmentRange) throws InvalidQuery {
+        int prevMinDocs = BlackLab.config().getSearch().getMinDocsPerSegmentRange();
+        int prevMaxThreads = index.blackLab().maxThreadsPerSearch();
+        BlackLab.config().getSearch().setMinDocsPerSegmentRange(minDocsPerSegmentRange);
+        index.blackLab().setMaxThreadsPerSearch(HitFetcherAbstract.IDEAL_NUM_THREADS_FETCHING);
+        try {
+            BLSpanQuery query = CorpusQueryLanguageParser.parse(cql, "word")
+                    .toQuery(QueryInfo.create(index), null, false, false);
+            HitResults results = index.find(query, SearchSettings.defaults());
+            Hits hits = results.getHits();
+            List<String> found = new ArrayList<>();
+            for (long i = 0; i < hits.size(); i++)
+                found.add(hits.doc(i) + ":" + hits.start(i) + "-" + hits.end(i));
+            Collections.sort(found);
+            found.add("processed=" + results.resultsStats().processedTotal());
+            found.add("counted=" + results.resultsStats().countedTotal());
+            return found;
+        } finally {
+            BlackLab.config().getSearch().setMinDocsPerSegmentRange(prevMinDocs);
+            index.blackLab().setMaxThreadsPerSearch(prevMaxThreads);
+        }
+    }
+
+    @Test
+    public void testSplitSegmentsGiveSameHits() throws InvalidQuery {
+        // With one document per range, the test index's segments are split into several ranges
+        for (String cql: List.of("[]", "'the'", "[pos='nou']", "'mier'+")) {
+            List<String> unsplit = find(cql, Integer.MAX_VALUE);
+            List<String> split = find(cql, 1);
+            assertEquals(cql, unsplit, split);
+        }
+    }
+}
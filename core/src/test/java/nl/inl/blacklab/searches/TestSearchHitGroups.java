@@ -2,6 +2,7 @@ package nl.inl.blacklab.searches;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
@@ -12,20 +13,31 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
 import nl.inl.blacklab.resultproperty.HitGroupPropertyIdentity;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyAfterHit;
+import nl.inl.blacklab.resultproperty.HitPropertyBeforeHit;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
 import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
 import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.blacklab.search.results.SearchSettings;
 import nl.inl.blacklab.search.results.hitresults.HitGroup;
 import nl.inl.blacklab.search.results.hitresults.HitGroups;
+import nl.inl.blacklab.search.results.hitresults.HitResults;
 import nl.inl.blacklab.search.textpattern.TextPattern;
 import nl.inl.blacklab.search.textpattern.TextPatternAnyToken;
+import nl.inl.blacklab.search.textpattern.TextPatternTerm;
 import nl.inl.blacklab.testutil.TestIndex;
 
 @RunWith(Parameterized.class)
@@ -81,6 +93,83 @@ public class TestSearchHitGroups {
         Assert.assertEquals(title + " 2nd group id", "be", g.identity().toString());
     }
 
+    /** Check that two groupings have the same groups, with the same numbers of hits and documents. */
+    private static void assertSameGroupSizes(HitGroups expected, HitGroups actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (HitGroup group: expected) {
+            HitGroup other = actual.get(group.identity());
+            Assert.assertNotNull(other);
+            Assert.assertEquals(group.size(), other.size());
+            Assert.assertEquals(group.storedResults().docsStats().countedTotal(),
+                    other.storedResults().docsStats().countedTotal());
+        }
+    }
+
+    @Test
+    public void testCountOnlyGroups() throws InvalidQuery {
+        // (not an any-token query, so we don't use the token frequencies fast path)
+        BLSpanQuery query = new TextPatternTerm("the").toQuery(QueryInfo.create(index));
+        SearchHits searchHits = index.search(contents, false).find(query);
+        List<HitProperty> groupBys = List.of(
+                new HitPropertyHitText(index, contents.mainAnnotation(), MatchSensitivity.SENSITIVE),
+                new HitPropertyDocumentStoredField(index, "title", "Title"));
+        for (HitProperty groupBy: groupBys) {
+            HitGroups full = searchHits.groupWithStoredHits(groupBy, Results.NO_LIMIT).execute();
+            Assert.assertTrue(full.size() > 1);
+            for (HitGroup group: full)
+                Assert.assertEquals(group.size(), group.storedResults().size());
+
+            // Count-only grouping, while fetching hits and after fetching them
+            HitGroups counts = searchHits.groupCounts(groupBy).execute();
+            assertSameGroupSizes(full, counts);
+            HitGroups countsFromHits = searchHits.execute().group(groupBy, 0);
+            assertSameGroupSizes(full, countsFromHits);
+            for (HitGroup group: countsFromHits)
+                Assert.assertEquals(0, group.storedResults().size());
+
+            // When group contents are needed (e.g. BLS viewgroup or includegroupcontents), we store all hits
+            HitGroups withContents = searchHits.groupStats(groupBy, Results.NO_LIMIT).execute();
+            assertSameGroupSizes(full, withContents);
+            for (HitGroup group: withContents)
+                Assert.assertEquals(group.size(), group.storedResults().size());
+        }
+    }
+
+    @Test
+    public void testGroupWhileFetching() throws InvalidQuery {
+        List<String> queries = List.of("'the'", "[] 'the'", "A:[pos='nou'] []", "'the' [] | 'to'");
+        Annotation word = contents.mainAnnotation();
+        List<HitProperty> groupBys = List.of(
+                new HitPropertyHitText(index, word, MatchSensitivity.INSENSITIVE),
+                new HitPropertyBeforeHit(index, word, MatchSensitivity.SENSITIVE, 1),
+                new HitPropertyAfterHit(index, word, MatchSensitivity.SENSITIVE, 1),
+                new HitPropertyDocumentStoredField(index, "title", "Title"),
+                new HitPropertyMultiple(new HitPropertyHitText(index, word, MatchSensitivity.SENSITIVE),
+                        new HitPropertyDocumentId()));
+        // Split segments into small ranges and use several threads, so hits are grouped in several batches
+        int prevMinDocs = BlackLab.config().getSearch().getMinDocsPerSegmentRange();
+        int prevMaxThreads = index.blackLab().maxThreadsPerSearch();
+        BlackLab.config().getSearch().setMinDocsPerSegmentRange(1);
+        index.blackLab().setMaxThreadsPerSearch(4);
+        try {
+            for (String cql: queries) {
+                BLSpanQuery query = CorpusQueryLanguageParser.parse(cql, "word")
+                        .toQuery(QueryInfo.create(index), null, false, false);
+                SearchHits searchHits = index.search(contents, false).find(query);
+                HitResults hits = searchHits.execute();
+                for (HitProperty groupBy: groupBys) {
+                    HitGroups whileFetching = HitGroups.groupWhileFetching(QueryInfo.create(index), query,
+                            SearchSettings.defaults(), groupBy);
+                    assertSameGroupSizes(hits.group(groupBy, Results.NO_LIMIT), whileFetching);
+                    Assert.assertEquals(hits.size(), whileFetching.sumOfGroupSizes());
+                }
+            }
+        } finally {
+            BlackLab.config().getSearch().setMinDocsPerSegmentRange(prevMinDocs);
+            index.blackLab().setMaxThreadsPerSearch(prevMaxThreads);
+        }
+    }
+
     @Test
     public void testHitGroupsTitle() throws InvalidQuery {
         TextPattern tp = new TextPatternAnyToken(1, 1);
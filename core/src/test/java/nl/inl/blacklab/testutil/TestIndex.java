@@ -1,6 +1,7 @@
 package nl.inl.blacklab.testutil;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -17,6 +18,7 @@ import nl.inl.blacklab.exceptions.DocumentFormatNotFound;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.index.BLIndexWriterProxyLucene;
 import nl.inl.blacklab.index.IndexListener;
 import nl.inl.blacklab.index.Indexer;
 import nl.inl.blacklab.indexers.config.ConfigInputFormat;
@@ -55,7 +57,7 @@ public class TestIndex {
     private static TestIndex testIndexPre;
 
     public static TestIndex get() {
-        return new TestIndex(false);
+        return new TestIndex(false, false);
     }
 
     private static synchronized TestIndex getPreindexed() {
@@ -65,7 +67,7 @@ public class TestIndex {
     public static synchronized TestIndex getReusable() {
         if (testIndexIntegrated == null) {
             // Instantiate reusable testindexes
-            testIndexIntegrated = new TestIndex(false);
+            testIndexIntegrated = new TestIndex(false, false);
             // Make sure files are cleaned up at the end
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 testIndexIntegrated.close();
@@ -75,7 +77,12 @@ public class TestIndex {
     }
 
     public static TestIndex getWithTestDelete() {
-        return new TestIndex(true);
+        return new TestIndex(true, false);
+    }
+
+    /** Get an index with the first document deleted and all segments merged into one. */
+    public static TestIndex getMerged() {
+        return new TestIndex(true, true);
     }
 
     public static Collection<TestIndex> typesForTests() {
@@ -164,7 +171,7 @@ public class TestIndex {
     private final File indexDir;
     private final UtilsForTesting.TestDir dir;
 
-    private final Annotation word;
+    private Annotation word;
 
     /** Open the index in this directory, does not delete the directory when closed */
     private TestIndex(File indexDir) {
@@ -175,7 +182,7 @@ public class TestIndex {
     }
 
     /** Create a temporary index, delete the directory when finished */
-    private TestIndex(boolean testDelete) {
+    private TestIndex(boolean testDelete, boolean forceMerge) {
         // Get a temporary directory for our test index
         dir = UtilsForTesting.createBlackLabTestDir("TestIndex");
         indexDir = dir.file();
@@ -208,6 +215,10 @@ public class TestIndex {
                             .sensitivity(MatchSensitivity.INSENSITIVE).luceneField();
                     indexer.indexWriter().delete(new TermQuery(new Term(luceneField, "dog")));
                 }
+                if (forceMerge) {
+                    // Merge all segments into one, to test merging the forward index and relation info.
+                    ((BLIndexWriterProxyLucene) indexer.indexWriter().writer()).getWriter().forceMerge(1);
+                }
             } finally {
                 // Finalize and close the index.
                 indexer.close();
@@ -216,7 +227,31 @@ public class TestIndex {
             // Create the BlackLab index object
             index = BlackLab.open(indexDir);
             word = index.mainAnnotatedField().annotation("word");
-        } catch (DocumentFormatNotFound | ErrorOpeningIndex e) {
+        } catch (DocumentFormatNotFound | ErrorOpeningIndex | IOException e) {
+            throw BlackLabException.wrapRuntime(e);
+        }
+    }
+
+    /**
+     * Add documents to the index (in a new segment), then reopen it.
+     *
+     * @param documents documents to add (same format as TEST_DATA)
+     */
+    public void addDocuments(String... documents) {
+        index.close();
+        try {
+            BlackLabIndexWriter indexWriter = BlackLab.openForWriting(indexDir, false, (ConfigInputFormat)null);
+            Indexer indexer = Indexer.create(indexWriter);
+            indexer.setListener(new IndexListenerAbortOnError()); // throw on error
+            try {
+                for (int i = 0; i < documents.length; i++)
+                    indexer.index("added" + (i + 1), documents[i].getBytes());
+            } finally {
+                indexer.close();
+            }
+            index = BlackLab.open(indexDir);
+            word = index.mainAnnotatedField().annotation("word");
+        } catch (DocumentFormatNotFound | ErrorOpeningIndex | IOException e) {
             throw BlackLabException.wrapRuntime(e);
         }
     }
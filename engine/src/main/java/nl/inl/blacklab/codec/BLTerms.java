@@ -162,6 +162,19 @@ public class BLTerms extends org.apache.lucene.index.Terms {
     /** For looking up term id for a sort position (insensitive) */
     private int[] insensitivePosToTermId;
 
+    /**
+     * Get the number of terms in this segment's forward index.
+     *
+     * Unlike reader(), this doesn't load any term data.
+     *
+     * @return number of terms
+     */
+    public int numberOfForwardIndexTerms() {
+        if (forwardIndexField == null)
+            throw new InvalidIndex("No forward index field specified for this terms reader");
+        return forwardIndexField.numberOfTerms;
+    }
+
     public synchronized Terms reader() { // synchronized because the first one loads term data
         if (forwardIndexField == null)
             throw new InvalidIndex("No forward index field specified for this terms reader");
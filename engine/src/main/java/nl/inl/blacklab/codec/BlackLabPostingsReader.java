@@ -15,13 +15,16 @@ import org.apache.lucene.index.CodecReader;
 import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 
+import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.exceptions.InvalidIndex;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.RelationInfoSegmentReader;
+import nl.inl.blacklab.forwardindex.TokensCursor;
 
 public abstract class BlackLabPostingsReader extends FieldsProducer {
 
@@ -52,6 +55,9 @@ public abstract class BlackLabPostingsReader extends FieldsProducer {
     /** Terms object for each field */
     private final Map<String, BLTerms> termsPerField = new HashMap<>();
 
+    /** Whether each field has more than one value at any position (determined when first needed) */
+    private final Map<String, Boolean> multipleValuesPerField = new HashMap<>();
+
     /** Name of PF we delegate to (the one from Lucene) */
     protected String delegateFormatName;
 
@@ -108,6 +114,63 @@ public abstract class BlackLabPostingsReader extends FieldsProducer {
         return forwardIndex.forField(luceneField);
     }
 
+    /**
+     * Create a cursor for reading tokens from this segment's forward index without allocating.
+     *
+     * The returned cursor is not threadsafe. A single thread may use it for
+     * reading any number of documents from this segment.
+     *
+     * @param luceneField field to read tokens from
+     * @return tokens cursor
+     */
+    public TokensCursor tokensCursor(String luceneField) {
+        return forwardIndex.cursor(luceneField);
+    }
+
+    /**
+     * Does this field have more than one value at any position in this segment?
+     *
+     * The forward index only stores one value per position, so if this is true, the
+     * forward index doesn't contain all the values in the postings.
+     *
+     * We compare the total number of postings for the field with the number of positions in
+     * the forward index that have a value. The first call for a field reads the forward index
+     * for the whole segment; the result is remembered.
+     *
+     * @param luceneField field to check (must have a forward index)
+     * @return true if any position has multiple values
+     */
+    public boolean hasMultipleValuesPerPosition(String luceneField) {
+        synchronized (multipleValuesPerField) {
+            Boolean result = multipleValuesPerField.get(luceneField);
+            if (result == null) {
+                result = determineMultipleValuesPerPosition(luceneField);
+                multipleValuesPerField.put(luceneField, result);
+            }
+            return result;
+        }
+    }
+
+    private boolean determineMultipleValuesPerPosition(String luceneField) {
+        try {
+            Terms terms = delegateFieldsProducer.terms(luceneField);
+            long numberOfPostings = terms == null ? 0 : terms.getSumTotalTermFreq();
+            long positionsWithValue = 0;
+            TokensCursor cursor = tokensCursor(luceneField);
+            int maxDoc = state.segmentInfo.maxDoc();
+            for (int docId = 0; docId < maxDoc; docId++) {
+                cursor.reset(docId);
+                while (cursor.hasNext()) {
+                    if (cursor.nextToken() != Constants.NO_TERM)
+                        positionsWithValue++;
+                }
+            }
+            return numberOfPostings > positionsWithValue;
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+    }
+
     /**
      * Create a relation info reader for this segment.
      *
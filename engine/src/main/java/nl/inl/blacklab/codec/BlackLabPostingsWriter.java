@@ -28,6 +28,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
 
 import nl.inl.blacklab.exceptions.IndexVersionMismatch;
 import nl.inl.blacklab.exceptions.InvalidIndex;
@@ -103,6 +104,9 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
      * As suggested by the name and above comments, this seems to be related to segment merging.
      * Notice the call to write() at the end of the method, writing the merged segment to disk.
      *
+     * If all segments being merged are BlackLab segments, we let our plugins know first, so they
+     * can copy their data (forward index, relation info) from them instead of rebuilding it.
+     *
      * (not sure why this is done; presumably the overridden merge method caused problems?
      * the javadoc for FieldsConsumer's version does mention that subclasses can provide more sophisticated
      * merging; maybe that interferes with this FieldsConsumer's customizations?)
@@ -124,6 +128,14 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
             docBase += maxDoc;
         }
 
+        // If we're merging BlackLab segments, our plugins can copy the forward index and
+        // relation info from them directly, which is much faster than rebuilding them from the postings.
+        MergedSegments mergedSegments = MergedSegments.create(mergeState, maxDoc());
+        if (mergedSegments != null) {
+            for (PWPlugin plugin: plugins)
+                plugin.startMerge(mergedSegments);
+        }
+
         Fields mergedFields = new MappedMultiFields(mergeState,
                 new MultiFields(fields.toArray(Fields.EMPTY_ARRAY),
                         slices.toArray(ReaderSlice.EMPTY_ARRAY)));
@@ -183,6 +195,8 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
                 List<PWPlugin> actions = startField(fieldInfos, luceneField);
                 if (actions.isEmpty())
                     continue; // nothing to do for this field
+                // (when merging, some plugins only need the terms, not the postings)
+                List<PWPlugin> postingsActions = actions.stream().filter(PWPlugin::needsPostings).toList();
 
                 // For each term in this field...
                 PostingsEnum postingsEnum = null; // we'll reuse this for efficiency
@@ -193,7 +207,7 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
                     if (term == null)
                         break;
 
-                    postingsEnum = handleTerm(actions, term, postingsEnum, termsEnum);
+                    postingsEnum = handleTerm(actions, postingsActions, term, postingsEnum, termsEnum);
                 }
                 endField(actions);
             } // for each field
@@ -202,18 +216,20 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
         }
     }
 
-    private static PostingsEnum handleTerm(List<PWPlugin> actions, BytesRef term, PostingsEnum postingsEnum,
-            TermsEnum termsEnum) throws IOException {
+    private static PostingsEnum handleTerm(List<PWPlugin> actions, List<PWPlugin> postingsActions, BytesRef term,
+            PostingsEnum postingsEnum, TermsEnum termsEnum) throws IOException {
         startTerm(actions, term);
 
         // For each document containing this term...
-        postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.POSITIONS | PostingsEnum.PAYLOADS);
-        while (true) {
-            int docId = postingsEnum.nextDoc();
-            if (docId == DocIdSetIterator.NO_MORE_DOCS)
-                break;
-
-            processDocument(postingsEnum, actions, docId);
+        if (!postingsActions.isEmpty()) {
+            postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.POSITIONS | PostingsEnum.PAYLOADS);
+            while (true) {
+                int docId = postingsEnum.nextDoc();
+                if (docId == DocIdSetIterator.NO_MORE_DOCS)
+                    break;
+
+                processDocument(postingsEnum, postingsActions, docId);
+            }
         }
         endTerm(actions);
         return postingsEnum;
@@ -337,6 +353,11 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
         return input;
     }
 
+    /** Directory we're writing the segment to (e.g. for temporary files) */
+    Directory directory() {
+        return state.directory;
+    }
+
     @SuppressWarnings("SameParameterValue")
     void deleteIndexFile(String ext) throws IOException {
         String fileName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, ext);
@@ -359,4 +380,15 @@ public abstract class BlackLabPostingsWriter extends FieldsConsumer {
     public String getSegmentName() {
         return state.segmentInfo.name;
     }
+
+    /**
+     * Describe the segment we're writing, for log messages.
+     *
+     * Includes the segment's unique id, because segment names are only unique within an index.
+     *
+     * @return segment name and id
+     */
+    public String getSegmentDescription() {
+        return state.segmentInfo.name + " (" + StringHelper.idToString(state.segmentInfo.getId()) + ")";
+    }
 }
@@ -17,6 +17,7 @@ import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.StringHelper;
 
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.contentstore.ContentStoreSegmentReader;
@@ -73,6 +74,9 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
     /** Encoded data blocks */
     protected final IndexInput _blocksFile;
 
+    /** Unique id of our segment, to identify our blocks in the block cache. */
+    protected final String segmentId;
+
     /** Offset in docIndex file after header, so we can calculate doc offsets. */
     protected final long docIndexFileOffset;
 
@@ -107,6 +111,7 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
         this.delegate = delegate;
         this.delegateFormatName = delegateFormatName; // check that this matches what was written
         this.reverseEndian = reverseEndian;
+        segmentId = StringHelper.idToString(segmentInfo.getId());
         _docIndexFile = openInput(BlackLabStoredFieldsFormat.DOCINDEX_EXT, directory, segmentInfo, ioContext);
         _valueIndexFile = openInput(BlackLabStoredFieldsFormat.VALUEINDEX_EXT, directory, segmentInfo, ioContext);
         _blockIndexFile = openInput(BlackLabStoredFieldsFormat.BLOCKINDEX_EXT, directory, segmentInfo, ioContext);
@@ -203,7 +208,7 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
     private void visitContentStoreDocument(int docId, FieldInfo fieldInfo, StoredFieldVisitor storedFieldVisitor)
             throws IOException {
         // TODO look into character encoding
-        byte[] contents = contentStore().getBytes(docId, fieldInfo.name);
+        byte[] contents = contentStore(false).getBytes(docId, fieldInfo.name);
         //String contents = contentStore().getValue(docId, fieldInfo.name);
         if (contents != null) {
             String value = new String(contents, StandardCharsets.UTF_8);
@@ -244,17 +249,41 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
      *
      * @return content store segment reader
      */
-    public synchronized ContentStoreSegmentReader contentStore() {
+    public ContentStoreSegmentReader contentStore() {
+        return contentStore(true);
+    }
+
+    /**
+     * Create a content store reader for this segment.
+     *
+     * @param useCache whether to use the shared cache of decoded blocks
+     *                 (not useful when reading all documents, e.g. while merging)
+     * @return content store segment reader
+     */
+    synchronized ContentStoreSegmentReader contentStore(boolean useCache) {
         // NOTE: this method is synchronized because IndexInput.clone() is not thread-safe!
         //       so if multiple threads could call this method simultaneously, disaster could strike.
-        return new ContentStoreSegmentReaderImpl();
+        return new ContentStoreSegmentReaderImpl(useCache);
     }
 
+    /** A decoded block.
+     *
+     * @param bytes array containing the decoded block (UTF-8); must not be modified
+     * @param length length of the decoded block (the array may be longer)
+     */
+    private record DecodedBlock(byte[] bytes, int length) {}
+
     private class ContentStoreSegmentReaderImpl implements ContentStoreSegmentReader {
 
-        // Buffer for decoding blocks. Automatically reallocated if needed.
+        // Buffer for the decoded value. Automatically reallocated if needed.
         byte[] decodedValue;
 
+        // Buffer for decoding a block. Automatically reallocated if needed.
+        byte[] blockBuffer;
+
+        // Use the shared cache of decoded blocks?
+        private final boolean useCache;
+
         // Clones of the various file handles, so we can reposition them without
         // causing problems. Cloned IndexInputs don't need to be closed.
         private final IndexInput docIndexFile = _docIndexFile.clone();
@@ -262,6 +291,10 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
         private final IndexInput blockIndexFile = _blockIndexFile.clone();
         private final IndexInput blocksFile = _blocksFile.clone();
 
+        ContentStoreSegmentReaderImpl(boolean useCache) {
+            this.useCache = useCache;
+        }
+
         /**
          * Get the field value as bytes.
          *
@@ -309,26 +342,20 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
                 try (ContentStoreBlockCodec.Decoder decoder = blockCodec.getDecoder()) {
                     while (numBlocksRead < numBlocksNeeded) {
 
-                        // Read a block and decompress it.
+                        // Get the decompressed block
                         final int blockEndOffset = blockIndexFile.readInt();
                         final int blockSizeBytes = blockEndOffset - blockStartOffset;
-
-                        int decodedSize = -1;
-                        while (decodedSize < 0) {
-                            decodedSize = readAndDecodeBlock(blockSizeBytes, decoder, decodedValue, decodedOffset);
-                            if (decodedSize < 0) {
-                                // Not enough buffer space. Reallocate and try again (up to a point).
-                                final int availableSpace = decodedValue.length - decodedOffset;
-                                if (availableSpace > BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH)
-                                    throw new IOException("Insufficient buffer space for decoding block, even at max (" + BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH
-                                            + ")");
-                                // Double the available space for the remaining blocks (probably always just 1 block)
-                                final int blocksLeftToRead = numBlocksNeeded - numBlocksRead;
-                                int newLength = decodedOffset + blocksLeftToRead * availableSpace * 2;
-                                decodedValue = Arrays.copyOf(decodedValue, newLength);
-                            }
+                        DecodedBlock block = getBlock(decoder, luceneField, docId, firstBlockNeeded + numBlocksRead,
+                                blocksOffset + blockStartOffset, blockSizeBytes);
+
+                        // Append it to the value
+                        if (decodedValue.length - decodedOffset < block.length()) {
+                            // Not enough buffer space (shouldn't happen, but better safe than sorry)
+                            decodedValue = Arrays.copyOf(decodedValue, Math.max(decodedValue.length * 2,
+                                    decodedOffset + block.length()));
                         }
-                        decodedOffset += decodedSize;
+                        System.arraycopy(block.bytes(), 0, decodedValue, decodedOffset, block.length());
+                        decodedOffset += block.length();
 
                         // Update variables to read the next block
                         blockStartOffset = blockEndOffset;
@@ -404,36 +431,17 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
                 // to start reading subsequent after-block positions
                 int blockStartOffset = findBlockStartOffset(blockIndexOffset, blocksOffset, firstBlockNeeded);
 
-                // Try to make sure we have a large enough buffer available
-                final int decodeBufferLength = blockSizeChars * BlackLabStoredFieldsReader.UTF8_MAX_BYTES_PER_CHAR
-                        + BlackLabStoredFieldsReader.ESTIMATED_DECODE_OVERHEAD;
-                if (decodedValue == null || decodedValue.length < decodeBufferLength)
-                    decodedValue = new byte[decodeBufferLength];
-
                 StringBuilder result = new StringBuilder();
-                int decodedOffset = 0; // write position in the decodedValue buffer (always 0 here)
                 int numBlocksRead = 0;
                 try (ContentStoreBlockCodec.Decoder decoder = blockCodec.getDecoder()) {
                     while (numBlocksRead < numBlocksNeeded) {
 
-                        // Read a block and decompress it.
+                        // Get the decompressed block
                         final int blockEndOffset = blockIndexFile.readInt();
                         final int blockSizeBytes = blockEndOffset - blockStartOffset;
-                        int decodedSize = -1;
-                        while (decodedSize < 0) {
-                            decodedSize = readAndDecodeBlock(blockSizeBytes, decoder, decodedValue, decodedOffset);
-                            if (decodedSize < 0) {
-                                // Not enough buffer space. Reallocate and try again (up to a point).
-                                final int availableSpace = decodedValue.length - decodedOffset;
-                                if (availableSpace > BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH)
-                                    throw new IOException("Insufficient buffer space for decoding block, even at max (" +
-                                            BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH + ")");
-                                // Double the buffer space
-                                int newLength = decodedValue.length * 2;
-                                decodedValue = new byte[newLength];
-                            }
-                        }
-                        String blockDecompressed = new String(decodedValue, 0, decodedSize, StandardCharsets.UTF_8);
+                        DecodedBlock block = getBlock(decoder, luceneField, docId, firstBlockNeeded + numBlocksRead,
+                                blocksOffset + blockStartOffset, blockSizeBytes);
+                        String blockDecompressed = new String(block.bytes(), 0, block.length(), StandardCharsets.UTF_8);
 
                         // Append the content we need to the result.
                         if (numBlocksRead == 0) {
@@ -468,15 +476,61 @@ public abstract class BlackLabStoredFieldsReader extends StoredFieldsReader {
             }
         }
 
-        int readAndDecodeBlock(int blockSizeBytes, ContentStoreBlockCodec.Decoder decoder, byte[] buffer, int offset)
+        /**
+         * Get a decompressed block, from the cache if possible.
+         *
+         * @param decoder decoder for this value's codec
+         * @param luceneField field the value belongs to
+         * @param docId document id
+         * @param blockNumber number of the block in the value
+         * @param blockPosition position of the block in the blocks file
+         * @param blockSizeBytes size of the encoded block
+         * @return the decoded block; only valid until the next block is decoded
+         */
+        private DecodedBlock getBlock(ContentStoreBlockCodec.Decoder decoder, String luceneField, int docId,
+                int blockNumber, long blockPosition, int blockSizeBytes) throws IOException {
+            blocksFile.seek(blockPosition);
+            if (!useCache)
+                return readAndDecodeBlock(blockSizeBytes, decoder);
+            int fieldId = contentStoreFieldIndexes.get(luceneField);
+            ContentStoreBlockCache.BlockKey key = new ContentStoreBlockCache.BlockKey(segmentId, fieldId, docId,
+                    blockNumber);
+            byte[] block = ContentStoreBlockCache.get(key, () -> {
+                // (the cache keeps the block, so copy it out of our decode buffer)
+                DecodedBlock decoded = readAndDecodeBlock(blockSizeBytes, decoder);
+                return Arrays.copyOf(decoded.bytes(), decoded.length());
+            });
+            return new DecodedBlock(block, block.length);
+        }
+
+        /**
+         * Read and decode a block into our decode buffer.
+         *
+         * @param blockSizeBytes size of the encoded block
+         * @param decoder decoder for this value's codec
+         * @return the decoded block; only valid until the next block is decoded
+         */
+        private DecodedBlock readAndDecodeBlock(int blockSizeBytes, ContentStoreBlockCodec.Decoder decoder)
                 throws IOException {
             // Read block (file is already positioned)
             byte[] block = new byte[blockSizeBytes];
             blocksFile.readBytes(block, 0, blockSizeBytes);
 
-            // Decode block into buffer
-            int maxLength = buffer.length - offset;
-            return decoder.decode(block, 0, blockSizeBytes, buffer, offset, maxLength);
+            // Decode block into our buffer
+            if (blockBuffer == null) {
+                blockBuffer = new byte[blockSizeChars * BlackLabStoredFieldsReader.UTF8_MAX_BYTES_PER_CHAR
+                        + BlackLabStoredFieldsReader.ESTIMATED_DECODE_OVERHEAD];
+            }
+            while (true) {
+                int decodedSize = decoder.decode(block, 0, blockSizeBytes, blockBuffer, 0, blockBuffer.length);
+                if (decodedSize >= 0)
+                    return new DecodedBlock(blockBuffer, decodedSize);
+                // Not enough buffer space. Reallocate and try again (up to a point).
+                if (blockBuffer.length > BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH)
+                    throw new IOException("Insufficient buffer space for decoding block, even at max (" +
+                            BlackLabStoredFieldsReader.MAX_DECODE_BUFFER_LENGTH + ")");
+                blockBuffer = new byte[blockBuffer.length * 2];
+            }
         }
 
         /**
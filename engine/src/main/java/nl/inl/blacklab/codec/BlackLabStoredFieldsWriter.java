@@ -57,9 +57,6 @@ public abstract class BlackLabStoredFieldsWriter extends StoredFieldsWriter {
     /** Fields with a content store and their field index. */
     private final Map<String, Integer> contentStoreFieldIndexes = new HashMap<>();
 
-    /** How we (de)compress our blocks. */
-    private final ContentStoreBlockCodec blockCodec = ContentStoreBlockCodecZlib.INSTANCE;
-
     String storedFieldsFormatName;
 
     int minVersion;
@@ -184,6 +181,9 @@ public abstract class BlackLabStoredFieldsWriter extends StoredFieldsWriter {
      * @param value string value for the field
      */
     private void writeContentStoreField(FieldInfo fieldInfo, String value) throws IOException {
+        // How we compress our blocks (configured per index; recorded per value, so each segment can differ)
+        ContentStoreBlockCodec blockCodec = BLFieldTypeLucene.getContentStoreBlockCodec(fieldInfo);
+
         // Write some info about this value
         valueIndexFile.writeByte(getFieldIndex(fieldInfo)); // which field is this?
         int lengthChars = value.length();
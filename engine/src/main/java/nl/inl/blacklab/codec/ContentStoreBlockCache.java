@@ -0,0 +1,95 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import nl.inl.blacklab.search.BlackLab;
+
+/**
+ * Cache of decoded content store blocks, shared by all segments of all indexes.
+ *
+ * Retrieving a snippet means decoding the block(s) containing it. Many snippets come from
+ * the same documents (e.g. a page of hits from one document, or a popular document opened
+ * by many users), so we keep recently decoded blocks around.
+ *
+ * The cache is bounded by the total size of the decoded blocks. Hits, misses and evictions
+ * are reported to the global metrics registry (see MetricsProvider).
+ */
+final class ContentStoreBlockCache {
+
+    private static final Logger logger = LogManager.getLogger(ContentStoreBlockCache.class);
+
+    private static final String CACHE_NAME_FOR_METRICS = "blacklab-content-store-block-cache";
+
+    /** Estimated overhead per cache entry (key, array header, cache bookkeeping) */
+    private static final int ENTRY_OVERHEAD_BYTES = 100;
+
+    /** Identifies a block of a stored value.
+     *
+     * @param segmentId unique id of the segment (see SegmentInfo.getId())
+     * @param fieldId   field index in the segment
+     * @param docId     segment-local document id
+     * @param blockNumber block number within the value
+     */
+    record BlockKey(String segmentId, int fieldId, int docId, int blockNumber) {}
+
+    /** Decodes a block if it's not in the cache. */
+    @FunctionalInterface
+    interface BlockDecoder {
+        byte[] decode() throws IOException;
+    }
+
+    /** The shared cache, or null if disabled. Created on first use. */
+    private static Cache<BlockKey, byte[]> cache;
+
+    private static boolean initialized = false;
+
+    private ContentStoreBlockCache() {
+    }
+
+    private static synchronized Cache<BlockKey, byte[]> cache() {
+        if (!initialized) {
+            initialized = true;
+            long maxBytes = (long) BlackLab.config().getSearch().getContentStoreBlockCacheSizeMegs() * 1024 * 1024;
+            if (maxBytes > 0) {
+                logger.debug("Creating content store block cache of {} bytes", maxBytes);
+                cache = Caffeine.newBuilder()
+                        .recordStats()
+                        .maximumWeight(maxBytes)
+                        .weigher((BlockKey key, byte[] block) -> block.length + ENTRY_OVERHEAD_BYTES)
+                        .build();
+                CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME_FOR_METRICS);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Get a decoded block, decoding and caching it if necessary.
+     *
+     * The returned array must not be modified.
+     *
+     * @param key block to get
+     * @param decoder decodes the block if it's not in the cache
+     * @return decoded block (UTF-8 bytes)
+     */
+    static byte[] get(BlockKey key, BlockDecoder decoder) throws IOException {
+        Cache<BlockKey, byte[]> c = cache();
+        if (c == null)
+            return decoder.decode();
+        byte[] block = c.getIfPresent(key);
+        if (block == null) {
+            // Decode outside the cache, so we can throw IOException (and don't block other threads)
+            block = decoder.decode();
+            c.put(key, block);
+        }
+        return block;
+    }
+}
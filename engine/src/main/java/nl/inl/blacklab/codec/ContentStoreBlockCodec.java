@@ -2,7 +2,14 @@ package nl.inl.blacklab.codec;
 
 import java.io.IOException;
 
-/** A codec for blocks in the content store. */
+/**
+ * A codec for blocks in the content store.
+ *
+ * Codes in use: 0 = uncompressed, 1 = zlib, 2 = LZ4 (fast and high compression
+ * share a format). zstd (optionally with a dictionary trained per field when a
+ * segment is written or merged) is not implemented yet; it would need the native
+ * zstd-jni library and a place in the segment to store the dictionaries.
+ */
 public interface ContentStoreBlockCodec {
 
     interface Encoder extends AutoCloseable {
@@ -64,10 +71,34 @@ public interface ContentStoreBlockCodec {
         return switch (code) {
             case 0 -> ContentStoreBlockCodecUncompressed.INSTANCE;
             case 1 -> ContentStoreBlockCodecZlib.INSTANCE;
+            case 2 -> ContentStoreBlockCodecLZ4.INSTANCE;
             default -> throw new IllegalArgumentException("Unknown block codec with code " + code);
         };
     }
 
+    /**
+     * Get a codec by the name used in the index configuration.
+     *
+     * The codec used is recorded with each value, so values written with a different
+     * codec can still be read.
+     *
+     * @param name codec name (uncompressed, zlib, lz4 or lz4-high); null or empty for the default
+     * @return the codec
+     */
+    static ContentStoreBlockCodec fromName(String name) {
+        if (name == null || name.isEmpty())
+            return ContentStoreBlockCodecZlib.INSTANCE;
+        return switch (name.toLowerCase()) {
+            case "uncompressed", "none" -> ContentStoreBlockCodecUncompressed.INSTANCE;
+            case "zlib" -> ContentStoreBlockCodecZlib.INSTANCE;
+            case "lz4" -> ContentStoreBlockCodecLZ4.INSTANCE;
+            case "lz4-high" -> ContentStoreBlockCodecLZ4.HIGH_COMPRESSION;
+            case "zstd" -> throw new IllegalArgumentException("Content store codec zstd is not supported yet; "
+                    + "use zlib, lz4 or lz4-high");
+            default -> throw new IllegalArgumentException("Unknown content store codec: " + name);
+        };
+    }
+
     Encoder getEncoder();
 
     Decoder getDecoder();
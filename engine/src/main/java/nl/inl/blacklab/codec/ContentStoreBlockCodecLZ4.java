@@ -0,0 +1,170 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.compress.LZ4;
+
+import nl.inl.util.SimpleResourcePool;
+
+/**
+ * A codec for blocks in the content store that uses LZ4 compression.
+ *
+ * LZ4 compresses less than zlib, but decompresses several times faster, which
+ * helps when retrieving snippets and (highlighted) documents.
+ *
+ * Each encoded block starts with the length of the decoded block in bytes (as a vInt),
+ * followed by the LZ4-compressed UTF-8 data. The fast and high compression variants
+ * produce the same format, so they share a code and decoder.
+ */
+public class ContentStoreBlockCodecLZ4 implements ContentStoreBlockCodec {
+
+    /** Fast compression. */
+    public static final ContentStoreBlockCodec INSTANCE = new ContentStoreBlockCodecLZ4(false);
+
+    /** Slower, better compression; decoding is just as fast. */
+    public static final ContentStoreBlockCodec HIGH_COMPRESSION = new ContentStoreBlockCodecLZ4(true);
+
+    /** When encoding, what buffer size should we start with? We will automatically grow this when needed. */
+    private static final int STARTING_ENCODE_BUFFER_SIZE = 12500;
+
+    /** How many encoders and decoders to keep in the pool? */
+    private static final int MAX_FREE_POOL_SIZE = 20;
+
+    /** An empty input encodes to this. */
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    /** Use the high compression hash table? */
+    private final boolean highCompression;
+
+    /** Our pool of encoders. */
+    private final SimpleResourcePool<Encoder> encoderPool;
+
+    /** Our pool of decoders. */
+    private final SimpleResourcePool<Decoder> decoderPool;
+
+    private ContentStoreBlockCodecLZ4(boolean highCompression) {
+        this.highCompression = highCompression;
+        encoderPool = new SimpleResourcePool<>(MAX_FREE_POOL_SIZE) {
+            @Override
+            public Encoder createResource() {
+                return createEncoder();
+            }
+        };
+        decoderPool = new SimpleResourcePool<>(MAX_FREE_POOL_SIZE) {
+            @Override
+            public Decoder createResource() {
+                return createDecoder();
+            }
+        };
+    }
+
+    @Override
+    public Encoder getEncoder() {
+        return encoderPool.acquire();
+    }
+
+    @Override
+    public Decoder getDecoder() {
+        return decoderPool.acquire();
+    }
+
+    /** Worst-case encoded size for an input of the specified number of bytes. */
+    private static int maxEncodedLength(int inputLength) {
+        // vInt header, plus LZ4's worst case for incompressible data
+        return 5 + inputLength + inputLength / 255 + 16;
+    }
+
+    public Decoder createDecoder() {
+        return new Decoder() {
+
+            byte[] buf = new byte[STARTING_ENCODE_BUFFER_SIZE];
+
+            @Override
+            public void close() {
+                decoderPool.release(this);
+            }
+
+            @Override
+            public String decode(byte[] buffer, int offset, int length) throws IOException {
+                if (length == 0)
+                    return "";
+                ByteArrayDataInput in = new ByteArrayDataInput(buffer, offset, length);
+                int decodedLength = in.readVInt();
+                if (buf.length < decodedLength)
+                    buf = new byte[decodedLength];
+                LZ4.decompress(in, decodedLength, buf, 0);
+                return new String(buf, 0, decodedLength, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public int decode(byte[] buffer, int offset, int length, byte[] decoded, int decodedOffset,
+                    int decodedMaxLength) throws IOException {
+                if (length == 0)
+                    return 0;
+                ByteArrayDataInput in = new ByteArrayDataInput(buffer, offset, length);
+                int decodedLength = in.readVInt();
+                if (decodedLength > decodedMaxLength)
+                    return -1; // insufficient buffer space
+                LZ4.decompress(in, decodedLength, decoded, decodedOffset);
+                return decodedLength;
+            }
+        };
+    }
+
+    public Encoder createEncoder() {
+        return new Encoder() {
+
+            final LZ4.HashTable hashTable = highCompression ? new LZ4.HighCompressionHashTable() :
+                    new LZ4.FastCompressionHashTable();
+
+            byte[] buf = new byte[STARTING_ENCODE_BUFFER_SIZE];
+
+            @Override
+            public void close() {
+                encoderPool.release(this);
+            }
+
+            /** Encode into our own buffer, which is always large enough. Returns the encoded length. */
+            private int encodeToBuf(String input, int offset, int length) throws IOException {
+                byte[] inputBytes = input.substring(offset, offset + length).getBytes(StandardCharsets.UTF_8);
+                int maxLength = maxEncodedLength(inputBytes.length);
+                if (buf.length < maxLength)
+                    buf = new byte[maxLength];
+                ByteArrayDataOutput out = new ByteArrayDataOutput(buf);
+                out.writeVInt(inputBytes.length);
+                LZ4.compress(inputBytes, 0, inputBytes.length, out, hashTable);
+                return out.getPosition();
+            }
+
+            @Override
+            public int encode(String input, int offset, int length, byte[] encoded, int encodedOffset,
+                    int encodedMaxLength) throws IOException {
+                if (length == 0)
+                    return 0;
+                int encodedLength = encodeToBuf(input, offset, length);
+                if (encodedLength > encodedMaxLength)
+                    return -1; // insufficient buffer space
+                System.arraycopy(buf, 0, encoded, encodedOffset, encodedLength);
+                return encodedLength;
+            }
+
+            @Override
+            public byte[] encode(String input, int offset, int length) throws IOException {
+                if (length == 0)
+                    return EMPTY_BYTE_ARRAY;
+                int encodedLength = encodeToBuf(input, offset, length);
+                byte[] result = new byte[encodedLength];
+                System.arraycopy(buf, 0, result, 0, encodedLength);
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public byte getCode() {
+        return 2;
+    }
+}
@@ -6,16 +6,20 @@ import java.util.Map;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
 
 import net.jcip.annotations.NotThreadSafe;
 import net.jcip.annotations.ThreadSafe;
 import nl.inl.blacklab.codec.tokens.TokensCodec;
+import nl.inl.blacklab.codec.tokens.TokensCodecType;
+import nl.inl.blacklab.codec.tokens.TokensDocReader;
 import nl.inl.blacklab.exceptions.InvalidIndex;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.FieldForwardIndex;
 import nl.inl.blacklab.forwardindex.ForwardIndexImpl;
 import nl.inl.blacklab.forwardindex.ForwardIndexSegmentReader;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.forwardindex.TokensCursor;
 
 /**
  * Manages read access to forward indexes for a single segment.
@@ -84,6 +88,23 @@ public class ForwardIndex implements AutoCloseable {
         return new FieldForwardIndex(reader, fieldsByName.get(luceneField));
     }
 
+    /**
+     * Get a new TokensCursor on this segment.
+     *
+     * The cursor is not threadsafe, but a new instance is returned every time,
+     * so this function can be used from multiple threads.
+     *
+     * @param luceneField field to read from
+     * @return cursor for reading tokens without allocating
+     */
+    public TokensCursor cursor(String luceneField) {
+        ForwardIndexField field = fieldsByName.get(luceneField);
+        // Synchronized because it slices our IndexInputs
+        synchronized (this) {
+            return new Cursor(field, _tokensIndexFile, _tokensFile);
+        }
+    }
+
     public ForwardIndexField getForwardIndexField(String luceneField) {
         return fieldsByName.get(luceneField);
     }
@@ -191,5 +212,116 @@ public class ForwardIndex implements AutoCloseable {
         public synchronized Terms terms(ForwardIndexField field) {
             return field.getTerms(fieldsProducer).reader();
         }
+
+        @Override
+        public TokensCursor cursor(ForwardIndexField field) {
+            return new Cursor(field, _tokensIndex, _tokens);
+        }
+    }
+
+    /**
+     * Reads tokens for a single field in this segment without allocating.
+     *
+     * Both the tokens index file and the tokens file are accessed as random-access slices.
+     * With a memory-mapped directory, these read directly from the mapped files, so
+     * no seeking or copying is needed.
+     */
+    @NotThreadSafe
+    private class Cursor implements TokensCursor {
+
+        private final ForwardIndexField field;
+
+        /** Random-access view of the tokens index file */
+        private final RandomAccessInput tokensIndex;
+
+        /** Decodes the current document from the tokens file */
+        private final TokensDocReader docReader;
+
+        /** Our terms object (created on demand) */
+        private Terms terms;
+
+        /** Length of the current document */
+        private int docLength;
+
+        /** Next position to read */
+        private int position;
+
+        /** End of the part we're reading (exclusive) */
+        private int end;
+
+        Cursor(ForwardIndexField field, IndexInput tokensIndexFile, IndexInput tokensFile) {
+            this.field = field;
+            try {
+                tokensIndex = tokensIndexFile.randomAccessSlice(0, tokensIndexFile.length());
+                docReader = new TokensDocReader(tokensFile.randomAccessSlice(0, tokensFile.length()));
+            } catch (IOException e) {
+                throw new InvalidIndex(e);
+            }
+        }
+
+        @Override
+        public void reset(int docId, int start, int end) {
+            try {
+                long recordOffset = field.getTokensIndexOffset() + (long) docId * TOKENS_INDEX_RECORD_SIZE;
+                long docTokensOffset = tokensIndex.readLong(recordOffset);
+                docLength = tokensIndex.readInt(recordOffset + Long.BYTES);
+                TokensCodecType codecType = TokensCodecType.fromCode(
+                        tokensIndex.readByte(recordOffset + Long.BYTES + Integer.BYTES));
+                byte codecParameter = tokensIndex.readByte(recordOffset + Long.BYTES + Integer.BYTES + Byte.BYTES);
+                docReader.reset(TokensCodec.fromType(codecType, codecParameter), docTokensOffset);
+            } catch (IOException e) {
+                throw new InvalidIndex(e);
+            }
+            if (start == -1)
+                start = 0;
+            if (end == -1 || end > docLength)
+                end = docLength;
+            ForwardIndexImpl.validateSnippetParameters(docLength, start, end);
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int docLength() {
+            return docLength;
+        }
+
+        @Override
+        public int position() {
+            return position;
+        }
+
+        @Override
+        public int end() {
+            return end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < end;
+        }
+
+        @Override
+        public int nextToken() {
+            int token = tokenAt(position);
+            position++;
+            return token;
+        }
+
+        @Override
+        public int tokenAt(int position) {
+            try {
+                return docReader.get(position);
+            } catch (IOException e) {
+                throw new InvalidIndex(e);
+            }
+        }
+
+        @Override
+        public Terms terms() {
+            if (terms == null)
+                terms = field.getTerms(fieldsProducer).reader();
+            return terms;
+        }
     }
 }
@@ -0,0 +1,115 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.MergeState;
+
+import nl.inl.blacklab.exceptions.InvalidIndex;
+
+/**
+ * The segments being merged, and where each document in the merged segment comes from.
+ *
+ * Used to copy the forward index and relation info directly from the segments being merged,
+ * instead of rebuilding them from the merged postings.
+ */
+class MergedSegments {
+
+    /** Information about the merge from Lucene */
+    private final MergeState mergeState;
+
+    /** Postings readers for the segments being merged */
+    private final BlackLabPostingsReader[] readers;
+
+    /** For each document in the merged segment: the segment it comes from */
+    private final int[] segmentForDoc;
+
+    /** For each document in the merged segment: its doc id in the segment it comes from */
+    private final int[] docInSegment;
+
+    /**
+     * Determine where the documents in the merged segment come from.
+     *
+     * @param mergeState information about the merge
+     * @param maxDoc number of documents in the merged segment
+     * @return the merged segments, or null if they're not all BlackLab segments (so we can't copy from them)
+     */
+    static MergedSegments create(MergeState mergeState, int maxDoc) {
+        int numberOfSegments = mergeState.fieldsProducers.length;
+        BlackLabPostingsReader[] readers = new BlackLabPostingsReader[numberOfSegments];
+        for (int i = 0; i < numberOfSegments; i++) {
+            if (!(mergeState.fieldsProducers[i] instanceof BlackLabPostingsReader reader))
+                return null;
+            readers[i] = reader;
+        }
+
+        // Invert the doc maps (which also skip deleted documents)
+        int[] segmentForDoc = new int[maxDoc];
+        int[] docInSegment = new int[maxDoc];
+        for (int i = 0; i < numberOfSegments; i++) {
+            MergeState.DocMap docMap = mergeState.docMaps[i];
+            for (int docId = 0; docId < mergeState.maxDocs[i]; docId++) {
+                int mergedDocId = docMap.get(docId);
+                if (mergedDocId >= 0) {
+                    segmentForDoc[mergedDocId] = i;
+                    docInSegment[mergedDocId] = docId;
+                }
+            }
+        }
+        return new MergedSegments(mergeState, readers, segmentForDoc, docInSegment);
+    }
+
+    private MergedSegments(MergeState mergeState, BlackLabPostingsReader[] readers, int[] segmentForDoc,
+            int[] docInSegment) {
+        this.mergeState = mergeState;
+        this.readers = readers;
+        this.segmentForDoc = segmentForDoc;
+        this.docInSegment = docInSegment;
+    }
+
+    /** Number of documents in the merged segment */
+    int maxDoc() {
+        return segmentForDoc.length;
+    }
+
+    int numberOfSegments() {
+        return readers.length;
+    }
+
+    BlackLabPostingsReader reader(int segment) {
+        return readers[segment];
+    }
+
+    FieldInfos fieldInfos(int segment) {
+        return mergeState.fieldInfos[segment];
+    }
+
+    /** Does this segment have postings for this field? */
+    boolean hasPostings(int segment, String luceneField) {
+        try {
+            return readers[segment].delegateFieldsProducer.terms(luceneField) != null;
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+    }
+
+    /**
+     * Get the segment a document in the merged segment comes from.
+     *
+     * @param docId doc id in the merged segment
+     * @return index of the segment it comes from
+     */
+    int segmentForDoc(int docId) {
+        return segmentForDoc[docId];
+    }
+
+    /**
+     * Get the doc id a document in the merged segment had in the segment it comes from.
+     *
+     * @param docId doc id in the merged segment
+     * @return doc id in the segment it comes from
+     */
+    int docInSegment(int docId) {
+        return docInSegment[docId];
+    }
+}
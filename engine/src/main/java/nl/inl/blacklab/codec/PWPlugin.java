@@ -12,9 +12,26 @@ import org.apache.lucene.util.BytesRef;
  */
 interface PWPlugin extends AutoCloseable {
 
+    /**
+     * We're about to write a merged segment.
+     *
+     * Plugins that can copy their data directly from the segments being merged can prepare to do so.
+     * They don't need the merged postings for the fields they copy (see {@link #needsPostings()}).
+     *
+     * @param segments the segments being merged
+     */
+    default void startMerge(MergedSegments segments) {
+        // by default, just rebuild from the merged postings
+    }
+
     /** Start processing a new Lucene field */
     boolean startField(FieldInfo fieldInfo);
 
+    /** Do we need the documents and positions for each term in the current field? */
+    default boolean needsPostings() {
+        return true;
+    }
+
     /** Start processing a new term in the current field */
     void startTerm(BytesRef term) throws IOException;
 
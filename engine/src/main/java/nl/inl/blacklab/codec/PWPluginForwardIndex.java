@@ -8,26 +8,30 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.store.ByteArrayDataOutput;
-import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 
 import com.ibm.icu.text.CollationKey;
 import com.ibm.icu.text.Collator;
 
 import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongList;
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.analysis.PayloadUtils;
 import nl.inl.blacklab.codec.tokens.TokensCodec;
+import nl.inl.blacklab.exceptions.InvalidIndex;
 import nl.inl.blacklab.forwardindex.Collators;
+import nl.inl.blacklab.forwardindex.TokensCursor;
 import nl.inl.blacklab.index.BLFieldTypeLucene;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 
@@ -43,10 +47,13 @@ import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
  *  index stores the information. What we need is per field, then per document
  *  (we're trying to reconstruct the document), so we will do that below.
  *  we use temporary files because this might take a huge amount of memory)
- * (use a LinkedHashMap to maintain the same field order when we write the tokens below)
+ * (the offsets are kept in primitive arrays, or spilled to disk if they exceed the
+ *  configured memory budget; see TermVecFileOffsets)
  */
 class PWPluginForwardIndex implements PWPlugin {
 
+    private static final Logger logger = LogManager.getLogger(PWPluginForwardIndex.class);
+
     private final BlackLabPostingsWriter postingsWriter;
 
     private final Map<String, ForwardIndexFieldMutable> fiFields = new HashMap<>();
@@ -58,19 +65,24 @@ class PWPluginForwardIndex implements PWPlugin {
     private final IndexOutput termsOrderFile;
 
     /**
-     * Doc lengths per annotated field (e.g. "contents").
+     * Doc lengths per annotated field (e.g. "contents"), indexed by doc id.
      *
      * We keep track of doc lengths so we can preallocate our forward index structure.
      * (we do this per annotated field, e.g. contents, NOT per annotation, e.g. contents%word@s,
      * because all annotations on the same field have the same length)
      */
-    private final Map<String, Map<Integer, Integer>> docLengthsPerAnnotatedField = new HashMap<>();
+    private final Map<String, int[]> docLengthsPerAnnotatedField = new HashMap<>();
+
+    /**
+     * Fields we're writing the term vector file for, in order (index is the field index in termVecFileOffsets)
+     */
+    private final List<String> termVecFields = new ArrayList<>();
 
     /**
      * Keep track of where we can find term occurrences per document so we can reverse term vector
      * file later.
      */
-    private final Map<String, LengthsAndOffsetsPerDocument> field2docTermVecFileOffsets = new LinkedHashMap<>();
+    private final TermVecFileOffsets termVecFileOffsets;
 
     /**
      * Temporary term vector file that will be reversed to form the forward index
@@ -85,7 +97,8 @@ class PWPluginForwardIndex implements PWPlugin {
      */
     private ForwardIndexFieldMutable currentField;
 
-    private LengthsAndOffsetsPerDocument lengthsAndOffsetsPerDocument;
+    /** Doc lengths for the current field (shared by all fields in the same annotated field) */
+    private int[] currentDocLengths;
 
     private List<String> termsList;
 
@@ -101,15 +114,31 @@ class PWPluginForwardIndex implements PWPlugin {
 
     private int currentDocLength;
 
-    private byte[] currentDocPositionsArray;
+    /** Positions of the primary values of the current term in this document (reused between documents) */
+    private byte[] currentDocPositionsArray = new byte[0];
 
-    private DataOutput currentDocPositionsOutput;
+    private final ByteArrayDataOutput currentDocPositionsOutput = new ByteArrayDataOutput();
 
     private int currentDocOccurrencesWritten;
 
     /** Collators to use to determine (in)sensitive sort values. */
     private Collators collators;
 
+
+    // When merging segments
+
+    /** Segments we're merging, if we can copy the forward index from them (otherwise null) */
+    private MergedSegments mergedSegments;
+
+    /** For each field: for each segment, the merged term id for each segment term id */
+    private final Map<String, int[][]> termIdMapsPerField = new LinkedHashMap<>();
+
+    /** Terms in the current field for each segment (null for segments that don't have this field) */
+    private SegmentTerms[] currentSegmentTerms;
+
+    /** Term id maps for the current field (see termIdMapsPerField) */
+    private int[][] currentTermIdMaps;
+
     public PWPluginForwardIndex(BlackLabPostingsWriter postingsWriter) throws IOException {
         this.postingsWriter = postingsWriter;
 
@@ -119,10 +148,12 @@ class PWPluginForwardIndex implements PWPlugin {
         termsFile = postingsWriter.createOutput(BlackLabPostingsFormat.TERMS_EXT);
         termsOrderFile = postingsWriter.createOutput(BlackLabPostingsFormat.TERMORDER_EXT);
         outTempTermVectorFile = postingsWriter.createOutput(BlackLabPostingsFormat.TERMVEC_TMP_EXT);
+        long memoryBudget = BlackLab.config().getIndexing().getForwardIndexMemoryBudgetMegs() * 1_000_000L;
+        termVecFileOffsets = new TermVecFileOffsets(postingsWriter.directory(), postingsWriter.getSegmentName(),
+                postingsWriter.maxDoc(), memoryBudget);
     }
 
-    static int[] getDocumentContents(int docLength,
-            IndexInput inTermVectorFile, TermVecFileOffsetPerTermId termPosOffsets)
+    static int[] getDocumentContents(int docLength, IndexInput inTermVectorFile, LongList termPosOffsets)
             throws IOException {
 
         final int[] tokensInDoc = new int[docLength]; // reconstruct the document here
@@ -134,12 +165,12 @@ class PWPluginForwardIndex implements PWPlugin {
         Arrays.fill(tokensInDoc, Constants.NO_TERM);
 
         // For each term...
-        for (Entry<Integer/*term ID*/, Long/*file offset*/> e: termPosOffsets.entrySet()) {
-            int termId = e.getKey();
-            inTermVectorFile.seek(e.getValue());
+        for (int i = 0; i < termPosOffsets.size(); i++) {
+            inTermVectorFile.seek(termPosOffsets.getLong(i));
+            int termId = inTermVectorFile.readInt();
             int nOccurrences = inTermVectorFile.readInt();
             // For each occurrence...
-            for (int i = 0; i < nOccurrences; i++) {
+            for (int j = 0; j < nOccurrences; j++) {
                 int position = inTermVectorFile.readInt();
                 tokensInDoc[position] = termId;
             }
@@ -226,6 +257,8 @@ class PWPluginForwardIndex implements PWPlugin {
 
     @Override
     public void close() throws IOException {
+        closeSegmentTerms();
+        termVecFileOffsets.close();
         if (outTempTermVectorFile != null) {
             outTempTermVectorFile.close();
             outTempTermVectorFile = null;
@@ -237,6 +270,26 @@ class PWPluginForwardIndex implements PWPlugin {
         outTokensIndexFile.close();
     }
 
+    @Override
+    public void startMerge(MergedSegments segments) {
+        // We can only copy the forward index if the segments have one for each field they have postings for
+        for (int i = 0; i < segments.numberOfSegments(); i++) {
+            ForwardIndex forwardIndex = segments.reader(i).forwardIndex;
+            for (FieldInfo fieldInfo: segments.fieldInfos(i)) {
+                if (BLFieldTypeLucene.doesFieldHaveForwardIndex(fieldInfo) && segments.hasPostings(i, fieldInfo.name)
+                        && forwardIndex.getForwardIndexField(fieldInfo.name) == null)
+                    return;
+            }
+        }
+        mergedSegments = segments;
+    }
+
+    @Override
+    public boolean needsPostings() {
+        // When merging, we only need the terms; we copy the tokens from the segments
+        return mergedSegments == null;
+    }
+
     @Override
     public boolean startField(FieldInfo fieldInfo) {
 
@@ -244,10 +297,6 @@ class PWPluginForwardIndex implements PWPlugin {
         if (!BLFieldTypeLucene.doesFieldHaveForwardIndex(fieldInfo))
             return false;
 
-        // Make sure doc lengths are shared between all annotations for a single annotated field.
-        Map<Integer, Integer> docLengths = docLengthsPerAnnotatedField.computeIfAbsent(
-                AnnotatedFieldNameUtil.getBaseName(fieldInfo.name), __ -> new HashMap<>());
-
         // Write the term vector file and keep track of where we can find term occurrences per document,
         // so we can turn this into the actual forward index below.
         currentField = fiFields.computeIfAbsent(fieldInfo.name, ForwardIndexFieldMutable::new);
@@ -267,12 +316,15 @@ class PWPluginForwardIndex implements PWPlugin {
 
         // Keep track of where to find term positions for each document
         // (for reversing index)
-        // The map is keyed by docId and stores a list of offsets into the
-        // temporary termvector file where the occurrences for each term can be
-        // found.
-        lengthsAndOffsetsPerDocument =
-                field2docTermVecFileOffsets.computeIfAbsent(fieldInfo.name,
-                        __ -> new LengthsAndOffsetsPerDocument(docLengths));
+        if (mergedSegments == null) {
+            // Make sure doc lengths are shared between all annotations for a single annotated field.
+            currentDocLengths = docLengthsPerAnnotatedField.computeIfAbsent(
+                    AnnotatedFieldNameUtil.getBaseName(fieldInfo.name), __ -> new int[postingsWriter.maxDoc()]);
+            termVecFields.add(fieldInfo.name);
+            termVecFileOffsets.startField();
+        } else {
+            startMergingField(fieldInfo.name);
+        }
 
         termsList = new ArrayList<>();
 
@@ -280,8 +332,66 @@ class PWPluginForwardIndex implements PWPlugin {
         return true;
     }
 
+    /**
+     * Prepare to map the term ids for this field in each segment we're merging.
+     *
+     * @param luceneField field we're starting
+     */
+    private void startMergingField(String luceneField) {
+        int numberOfSegments = mergedSegments.numberOfSegments();
+        currentSegmentTerms = new SegmentTerms[numberOfSegments];
+        currentTermIdMaps = new int[numberOfSegments][];
+        try {
+            for (int i = 0; i < numberOfSegments; i++) {
+                BlackLabPostingsReader reader = mergedSegments.reader(i);
+                ForwardIndexField field = reader.forwardIndex.getForwardIndexField(luceneField);
+                if (field != null) {
+                    currentSegmentTerms[i] = new SegmentTerms(reader, field);
+                    currentTermIdMaps[i] = new int[field.getNumberOfTerms()];
+                    Arrays.fill(currentTermIdMaps[i], Constants.NO_TERM);
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+        termIdMapsPerField.put(luceneField, currentTermIdMaps);
+    }
+
+    /**
+     * Record the merged term id for the current term in each segment that has it.
+     *
+     * @param term the current term
+     */
+    private void mapSegmentTermIds(BytesRef term) throws IOException {
+        for (int i = 0; i < currentSegmentTerms.length; i++) {
+            SegmentTerms segmentTerms = currentSegmentTerms[i];
+            if (segmentTerms == null)
+                continue;
+            // Both are sorted the same way. Skip segment terms that aren't in the merged terms
+            // (their documents were deleted).
+            while (segmentTerms.hasTerm() && segmentTerms.term().compareTo(term) < 0)
+                segmentTerms.next();
+            if (segmentTerms.hasTerm() && segmentTerms.term().equals(term)) {
+                currentTermIdMaps[i][segmentTerms.termId()] = currentTermId;
+                segmentTerms.next();
+            }
+        }
+    }
+
+    private void closeSegmentTerms() throws IOException {
+        if (currentSegmentTerms != null) {
+            for (SegmentTerms segmentTerms: currentSegmentTerms) {
+                if (segmentTerms != null)
+                    segmentTerms.close();
+            }
+            currentSegmentTerms = null;
+            currentTermIdMaps = null;
+        }
+    }
+
     @Override
     public void endField() throws IOException {
+        closeSegmentTerms();
         currentField.setNumberOfTerms(termsList.size());
         currentField.setTermOrderOffset(termsOrderFile.getFilePointer());
 
@@ -313,6 +423,9 @@ class PWPluginForwardIndex implements PWPlugin {
         //   but better would probably be to write all terms to the forward index at some point.
         //   This would complicate the forward index structure though.
         termsList.add(termString);
+
+        if (currentSegmentTerms != null)
+            mapSegmentTermIds(term);
     }
 
     @Override
@@ -325,20 +438,21 @@ class PWPluginForwardIndex implements PWPlugin {
         // Keep track of term positions offsets in term vector file
         this.currentDocId = docId;
         currentDocLength = -1;
-        currentDocPositionsArray = new byte[nOccurrences * Integer.BYTES];
-        currentDocPositionsOutput = new ByteArrayDataOutput(currentDocPositionsArray);
+        if (currentDocPositionsArray.length < nOccurrences * Integer.BYTES)
+            currentDocPositionsArray = new byte[ArrayUtil.oversize(nOccurrences * Integer.BYTES, Byte.BYTES)];
+        currentDocPositionsOutput.reset(currentDocPositionsArray);
         currentDocOccurrencesWritten = 0;
     }
 
     @Override
     public void endDocument() throws IOException {
-        if (currentDocLength > -1)
-            lengthsAndOffsetsPerDocument.updateFieldLength(currentDocId, currentDocLength);
+        if (currentDocLength > currentDocLengths[currentDocId])
+            currentDocLengths[currentDocId] = currentDocLength;
 
-        // Write the positions where this term occurs as primary value
+        // Write the term id and the positions where it occurs as primary value
         // (will be reversed below to get the forward index)
-        lengthsAndOffsetsPerDocument.putTermOffset(currentDocId, currentTermId,
-                outTempTermVectorFile.getFilePointer());
+        termVecFileOffsets.add(currentDocId, outTempTermVectorFile.getFilePointer());
+        outTempTermVectorFile.writeInt(currentTermId);
         outTempTermVectorFile.writeInt(currentDocOccurrencesWritten);
         if (currentDocOccurrencesWritten > 0) {
             outTempTermVectorFile.writeBytes(currentDocPositionsArray, 0,
@@ -382,9 +496,9 @@ class PWPluginForwardIndex implements PWPlugin {
                 IndexOutput fieldsFile = postingsWriter.createOutput(BlackLabPostingsFormat.FIELDS_EXT)) {
 
             // For each field...
-            for (Entry<String, LengthsAndOffsetsPerDocument> fieldEntry: field2docTermVecFileOffsets.entrySet()) {
-                String luceneField = fieldEntry.getKey();
-                LengthsAndOffsetsPerDocument docPosOffsets = fieldEntry.getValue();
+            termVecFileOffsets.finishAdding();
+            for (int fieldIndex = 0; fieldIndex < termVecFields.size(); fieldIndex++) {
+                String luceneField = termVecFields.get(fieldIndex);
 
                 // Record starting offset of field in tokensindex file,
                 // and write the field information to the fields file
@@ -394,16 +508,23 @@ class PWPluginForwardIndex implements PWPlugin {
 
                 // Make sure we know our document lengths
                 String annotatedFieldName = AnnotatedFieldNameUtil.getBaseName(luceneField);
-                Map<Integer, Integer> docLengths = docLengthsPerAnnotatedField.get(annotatedFieldName);
+                int[] docLengths = docLengthsPerAnnotatedField.get(annotatedFieldName);
 
                 // For each document...
                 for (int docId = 0; docId < postingsWriter.maxDoc(); docId++) {
-                    final int docLength = docLengths.getOrDefault(docId, 0);
-                    TermVecFileOffsetPerTermId offsets = docPosOffsets.get(docId);
-                    int[] termIds = getDocumentContents(docLength, inTermVectorFile, offsets);
+                    LongList offsets = termVecFileOffsets.get(fieldIndex, docId);
+                    int[] termIds = getDocumentContents(docLengths[docId], inTermVectorFile, offsets);
                     writeTokensInDoc(outTokensIndexFile, outTokensFile, termIds);
                 }
             }
+
+            // For each field we're copying from the segments we're merging...
+            for (Entry<String, int[][]> fieldEntry: termIdMapsPerField.entrySet()) {
+                ForwardIndexFieldMutable fieldMutable = fiFields.get(fieldEntry.getKey());
+                fieldMutable.setTokensIndexOffset(outTokensIndexFile.getFilePointer());
+                fieldMutable.write(fieldsFile);
+                copyTokens(fieldEntry.getKey(), fieldEntry.getValue());
+            }
             CodecUtil.writeFooter(fieldsFile);
         } finally {
             // Clean up after ourselves
@@ -418,50 +539,114 @@ class PWPluginForwardIndex implements PWPlugin {
     }
 
     /**
-     * Offset in term vector file per term id for a single doc and field.
+     * Copy the tokens for a field from the segments we're merging, mapping their term ids.
      *
-     * Keeps track of position in the term vector file where the occurrences of each term id
-     * are stored for a single document and field.
+     * @param luceneField field to copy
+     * @param termIdMaps for each segment, the merged term id for each segment term id
+     *                   (null for segments that don't have this field)
      */
-    static class TermVecFileOffsetPerTermId extends LinkedHashMap<Integer, Long> {
-        // intentionally blank; this is just a typedef for readability
+    private void copyTokens(String luceneField, int[][] termIdMaps) throws IOException {
+        logger.debug("Segment " + postingsWriter.getSegmentDescription() + ": copying forward index for field " +
+                luceneField + " from merged segments");
+        int numberOfSegments = mergedSegments.numberOfSegments();
+        TokensCursor[] cursors = new TokensCursor[numberOfSegments];
+        for (int i = 0; i < numberOfSegments; i++) {
+            cursors[i] = termIdMaps[i] != null ? mergedSegments.reader(i).tokensCursor(luceneField) :
+                    cursorForDocLengths(i, luceneField);
+        }
+
+        // For each document...
+        for (int docId = 0; docId < postingsWriter.maxDoc(); docId++) {
+            int segment = mergedSegments.segmentForDoc(docId);
+            TokensCursor cursor = cursors[segment];
+            int[] tokensInDoc;
+            if (cursor == null) {
+                tokensInDoc = new int[0];
+            } else {
+                cursor.reset(mergedSegments.docInSegment(docId), -1, -1);
+                tokensInDoc = new int[cursor.docLength()];
+                int[] termIdMap = termIdMaps[segment];
+                if (termIdMap == null) {
+                    // This segment doesn't have this field; write NO_TERMs like we would have otherwise
+                    Arrays.fill(tokensInDoc, Constants.NO_TERM);
+                } else {
+                    for (int i = 0; i < tokensInDoc.length; i++) {
+                        int termId = cursor.nextToken();
+                        tokensInDoc[i] = termId == Constants.NO_TERM ? Constants.NO_TERM : termIdMap[termId];
+                    }
+                }
+            }
+            writeTokensInDoc(outTokensIndexFile, outTokensFile, tokensInDoc);
+        }
     }
 
     /**
-     * Keeps track of tokens length and term vector file offsets for a single Lucene field.
+     * Find another field with the same annotated field in a segment, so we know the document lengths.
      *
-     * Tokens length is shared between all Lucene fields belonging to a single annotated
-     * field, because those all have the same length.
+     * @param segment segment to look in
+     * @param luceneField field the segment doesn't have
+     * @return cursor on a field with the same document lengths, or null if there is none
      */
-    static class LengthsAndOffsetsPerDocument {
-        /** For each document id (key), the length in tokens of the annotated field this Lucene field is a part of.
-         *  (shared with other annotations on this annotated field) */
-        private final Map<Integer, Integer> docId2annotatedFieldTokenLengths;
+    private TokensCursor cursorForDocLengths(int segment, String luceneField) {
+        String annotatedFieldName = AnnotatedFieldNameUtil.getBaseName(luceneField);
+        BlackLabPostingsReader reader = mergedSegments.reader(segment);
+        for (FieldInfo fieldInfo: mergedSegments.fieldInfos(segment)) {
+            if (AnnotatedFieldNameUtil.getBaseName(fieldInfo.name).equals(annotatedFieldName)
+                    && reader.forwardIndex.getForwardIndexField(fieldInfo.name) != null)
+                return reader.tokensCursor(fieldInfo.name);
+        }
+        return null;
+    }
+
+    /**
+     * The terms of a field in a segment we're merging, in order of term id.
+     *
+     * Term ids are assigned in the order the terms are written, which is Lucene's term order,
+     * so the terms are also sorted the same way as the merged terms.
+     */
+    private static class SegmentTerms implements AutoCloseable {
+
+        private final IndexInput termsFile;
+
+        private final int numberOfTerms;
+
+        private int termId = -1;
 
-        /** For each document id (key), record the term vector file offsets (value). */
-        private final SortedMap<Integer, TermVecFileOffsetPerTermId> docId2TermVecFileOffsets = new TreeMap<>();
+        private BytesRef term;
 
-        LengthsAndOffsetsPerDocument(Map<Integer, Integer> docId2annotatedFieldTokenLengths) {
-            this.docId2annotatedFieldTokenLengths = docId2annotatedFieldTokenLengths;
+        SegmentTerms(BlackLabPostingsReader reader, ForwardIndexField field) throws IOException {
+            numberOfTerms = field.getNumberOfTerms();
+            termsFile = reader.openIndexFile(BlackLabPostingsFormat.TERMS_EXT);
+            if (numberOfTerms > 0) {
+                // Find the first term string; the others follow it
+                try (IndexInput termIndexFile = reader.openIndexFile(BlackLabPostingsFormat.TERMINDEX_EXT)) {
+                    termIndexFile.seek(field.getTermIndexOffset());
+                    termsFile.seek(termIndexFile.readLong());
+                }
+            }
+            next();
         }
 
-        void putTermOffset(int docId, int termId, long filePointer) {
-            TermVecFileOffsetPerTermId vecFileOffsetsPerTermId =
-                    docId2TermVecFileOffsets.computeIfAbsent(docId, k -> new TermVecFileOffsetPerTermId());
-            vecFileOffsetsPerTermId.put(termId, filePointer);
+        boolean hasTerm() {
+            return termId < numberOfTerms;
         }
 
-        void updateFieldLength(int docId, int length) {
-            docId2annotatedFieldTokenLengths.compute(docId, (k, v) -> v == null ? length : Math.max(v, length));
+        int termId() {
+            return termId;
         }
 
-        TermVecFileOffsetPerTermId get(int docId) {
-            TermVecFileOffsetPerTermId termVecFileOffsetPerTermId = docId2TermVecFileOffsets.get(docId);
-            if (termVecFileOffsetPerTermId == null) {
-                termVecFileOffsetPerTermId = new TermVecFileOffsetPerTermId();
-            }
-            return termVecFileOffsetPerTermId;
+        BytesRef term() {
+            return term;
         }
-    }
 
+        void next() throws IOException {
+            termId++;
+            term = hasTerm() ? new BytesRef(termsFile.readString()) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            termsFile.close();
+        }
+    }
 }
@@ -4,13 +4,17 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.store.ByteArrayDataInput;
@@ -32,6 +36,8 @@ import nl.inl.blacklab.search.lucene.RelationInfo;
  */
 class PWPluginRelationInfo implements PWPlugin {
 
+    private static final Logger logger = LogManager.getLogger(PWPluginRelationInfo.class);
+
     /** Log all events to a log file? Useful while debugging. */
     private static final boolean ENABLE_DEBUG_LOG = false;
 
@@ -122,9 +128,22 @@ class PWPluginRelationInfo implements PWPlugin {
     /** How to encode/decode payload for relations */
     private final RelationsStrategy.PayloadCodec relPayloadCodec;
 
+
+    // WHEN MERGING SEGMENTS
+
+    /** Segment we're writing (for log messages) */
+    private final String segmentDescription;
+
+    /** Segments we're merging, if we can copy the relation info from them (otherwise null) */
+    private MergedSegments mergedSegments;
+
+    /** Fields to copy from the segments we're merging */
+    private final List<String> fieldsToCopy = new ArrayList<>();
+
     public PWPluginRelationInfo(BlackLabPostingsWriter postingsWriter, RelationsStrategySeparateTerms relationsStrategy) throws IOException {
         this.relationsStrategy = relationsStrategy;
         this.relPayloadCodec = relationsStrategy.getPayloadCodec();
+        this.segmentDescription = postingsWriter.getSegmentDescription();
 
         outFieldsFile = postingsWriter.createOutput(BlackLabPostingsFormat.RI_FIELDS_EXT);
         outDocsFile = postingsWriter.createOutput(BlackLabPostingsFormat.RI_DOCS_EXT);
@@ -148,6 +167,16 @@ class PWPluginRelationInfo implements PWPlugin {
         }
     }
 
+    @Override
+    public void startMerge(MergedSegments segments) {
+        // We can only copy the relation info if all segments have it
+        for (int i = 0; i < segments.numberOfSegments(); i++) {
+            if (segments.reader(i).relationInfo == null)
+                return;
+        }
+        mergedSegments = segments;
+    }
+
     @Override
     public boolean startField(FieldInfo fieldInfo) {
 
@@ -158,6 +187,14 @@ class PWPluginRelationInfo implements PWPlugin {
             return false;
         }
 
+        if (mergedSegments != null) {
+            // We'll copy the relation info for this field from the segments in finish(),
+            // so we don't need to process its terms.
+            log("startField: will copy field " + fieldInfo.name + " from merged segments");
+            fieldsToCopy.add(fieldInfo.name);
+            return false;
+        }
+
         log("startField: processing field " + fieldInfo.name);
 
         currentField = riFields.computeIfAbsent(fieldInfo.name, RelationInfoFieldMutable::new);
@@ -368,8 +405,68 @@ class PWPluginRelationInfo implements PWPlugin {
         attrPerRelationIdPerDoc = null;
     }
 
+    /**
+     * Copy the relation info for a field from the segments we're merging.
+     *
+     * Attribute names, values and sets are stored again for the merged segment,
+     * but each attribute set is only read once per segment.
+     *
+     * @param luceneField field to copy
+     */
+    private void copyField(String luceneField) throws IOException {
+        log("copyField: " + luceneField);
+        logger.debug("Segment " + segmentDescription + ": copying relation info for field " + luceneField +
+                " from merged segments");
+
+        // Record info about field: name and offset to docs file
+        currentField = riFields.computeIfAbsent(luceneField, RelationInfoFieldMutable::new);
+        currentField.setDocsOffset(outDocsFile.getFilePointer());
+        currentField.write(outFieldsFile);
+
+        int numberOfSegments = mergedSegments.numberOfSegments();
+        SegmentRelationInfo.FieldMergeReader[] readers = new SegmentRelationInfo.FieldMergeReader[numberOfSegments];
+        List<Map<Long, Long>> attrSetOffsetMaps = new ArrayList<>();
+        for (int i = 0; i < numberOfSegments; i++) {
+            readers[i] = mergedSegments.reader(i).relationInfo.mergeReader(luceneField);
+            attrSetOffsetMaps.add(new HashMap<>());
+        }
+
+        // For each doc...
+        for (int docId = 0; docId < mergedSegments.maxDoc(); docId++) {
+            int segment = mergedSegments.segmentForDoc(docId);
+            SegmentRelationInfo.FieldMergeReader reader = readers[segment];
+            long[] attrSetOffsets = reader == null ? null : reader.relations(mergedSegments.docInSegment(docId));
+            if (attrSetOffsets == null) {
+                outDocsFile.writeLong(-1); // no relations for this doc
+                continue;
+            }
+            outDocsFile.writeLong(outRelationsFile.getFilePointer());
+            // For each relationId...
+            Map<Long, Long> attrSetOffsetMap = attrSetOffsetMaps.get(segment);
+            for (long segmentAttrSetOffset: attrSetOffsets) {
+                if (segmentAttrSetOffset < 0) {
+                    outRelationsFile.writeLong(segmentAttrSetOffset); // no info for this relation
+                    continue;
+                }
+                Long attrSetOffset = attrSetOffsetMap.get(segmentAttrSetOffset);
+                if (attrSetOffset == null) {
+                    SortedMap<Integer, Long> attributes = new TreeMap<>();
+                    reader.readAttributeSet(segmentAttrSetOffset, (name, value) ->
+                            attributes.put(getAttributeIndex(name), getAttributeValueOffset(value)));
+                    attrSetOffset = getAttributeSetOffset(attributes);
+                    attrSetOffsetMap.put(segmentAttrSetOffset, attrSetOffset);
+                }
+                outRelationsFile.writeLong(attrSetOffset);
+            }
+        }
+        currentField = null;
+    }
+
     @Override
     public void finish() throws IOException {
+        for (String luceneField: fieldsToCopy)
+            copyField(luceneField);
+
         CodecUtil.writeFooter(outFieldsFile);
         CodecUtil.writeFooter(outDocsFile);
         CodecUtil.writeFooter(outRelationsFile);
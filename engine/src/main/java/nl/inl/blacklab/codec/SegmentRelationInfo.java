@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.IndexInput;
@@ -96,6 +98,120 @@ public class SegmentRelationInfo implements AutoCloseable {
         return new Reader();
     }
 
+    /**
+     * Get a reader for copying the relation info for a field while merging segments.
+     *
+     * @param luceneField field to copy
+     * @return reader, or null if this segment has no relation info for this field
+     */
+    FieldMergeReader mergeReader(String luceneField) throws IOException {
+        RelationInfoField field = fieldsByName.get(luceneField);
+        return field == null ? null : new FieldMergeReader(field);
+    }
+
+    /**
+     * Reads the relations in each document for a single field, for copying them while merging segments.
+     *
+     * Not thread-safe because it contains state (file pointers).
+     */
+    @NotThreadSafe
+    class FieldMergeReader {
+
+        private final IndexInput _docs;
+
+        private final IndexInput _relations;
+
+        private final IndexInput _attrSets;
+
+        private final IndexInput _attrValues;
+
+        /** Where this field's entries in the docs file start */
+        private final long docsOffset;
+
+        /** Number of entries in the docs file for this field (documents after this have no relations) */
+        private final int numberOfDocEntries;
+
+        /** Where this field's entries in the relations file end */
+        private final long relationsEnd;
+
+        FieldMergeReader(RelationInfoField field) throws IOException {
+            _docs = _docsFile.clone();
+            _relations = _relationsFile.clone();
+            _attrSets = _attrSetsFile.clone();
+            _attrValues = _attrValuesFile.clone();
+
+            // Fields are written one after the other to both the docs and the relations file,
+            // so this field's part of the files ends where the next field's part starts.
+            docsOffset = field.getDocsOffset();
+            long docsEnd = _docs.length() - CodecUtil.footerLength();
+            long relEnd = _relations.length() - CodecUtil.footerLength();
+            boolean foundRelationsEnd = false;
+            List<RelationInfoField> laterFields = fieldsByName.values().stream()
+                    .filter(f -> f.getDocsOffset() > docsOffset)
+                    .sorted(Comparator.comparingLong(RelationInfoField::getDocsOffset))
+                    .toList();
+            if (!laterFields.isEmpty())
+                docsEnd = laterFields.get(0).getDocsOffset();
+            _docs.seek(docsEnd);
+            while (!foundRelationsEnd && _docs.getFilePointer() < _docs.length() - CodecUtil.footerLength()) {
+                long relationsOffset = _docs.readLong();
+                if (relationsOffset >= 0) {
+                    relEnd = relationsOffset;
+                    foundRelationsEnd = true;
+                }
+            }
+            numberOfDocEntries = (int) ((docsEnd - docsOffset) / Long.BYTES);
+            relationsEnd = relEnd;
+        }
+
+        /**
+         * Get the attribute set offsets for all relations in a document.
+         *
+         * @param docId segment-local doc id
+         * @return offset in the attribute sets file for each relation id (negative if no info),
+         *         or null if the document has no relations
+         */
+        long[] relations(int docId) throws IOException {
+            if (docId >= numberOfDocEntries)
+                return null;
+            _docs.seek(docsOffset + (long) docId * Long.BYTES);
+            long start = _docs.readLong();
+            if (start < 0)
+                return null;
+            // This document's relations end where the next document's relations start
+            long end = relationsEnd;
+            for (int i = docId + 1; i < numberOfDocEntries; i++) {
+                long nextStart = _docs.readLong();
+                if (nextStart >= 0) {
+                    end = nextStart;
+                    break;
+                }
+            }
+            long[] attrSetOffsets = new long[(int) ((end - start) / Long.BYTES)];
+            _relations.seek(start);
+            for (int i = 0; i < attrSetOffsets.length; i++)
+                attrSetOffsets[i] = _relations.readLong();
+            return attrSetOffsets;
+        }
+
+        /**
+         * Read an attribute set.
+         *
+         * @param attrSetOffset offset in the attribute sets file
+         * @param action called with each attribute name and (encoded) value
+         */
+        void readAttributeSet(long attrSetOffset, BiConsumer<String, String> action) throws IOException {
+            _attrSets.seek(attrSetOffset);
+            int nAttr = _attrSets.readVInt();
+            for (int i = 0; i < nAttr; i++) {
+                int attrNameIndex = _attrSets.readVInt();
+                long attrValueOffset = _attrSets.readLong();
+                _attrValues.seek(attrValueOffset);
+                action.accept(attributeNames.get(attrNameIndex), _attrValues.readString());
+            }
+        }
+    }
+
     /**
      * A relation info index reader for a single segment.
      *
@@ -0,0 +1,260 @@
+package nl.inl.blacklab.codec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.OfflineSorter;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Where to find term occurrences per document in the temporary term vector file.
+ *
+ * The term vector file is written per field, then per term, then per document (the order
+ * of Lucene's reverse index). To reconstruct the documents, we need to read it per field,
+ * then per document. So we record the file offset for each (field, document, term) and
+ * give these back per field and document afterwards.
+ *
+ * Offsets are kept in primitive arrays. If these would exceed the memory budget, all offsets
+ * are spilled to a temporary file instead and sorted using Lucene's {@link OfflineSorter}.
+ * This way, the memory needed doesn't grow with the size of the segment being written.
+ */
+class TermVecFileOffsets implements Closeable {
+
+    /** Memory used per offset we keep in memory (doc id and offset) */
+    private static final int BYTES_PER_OFFSET = Integer.BYTES + Long.BYTES;
+
+    /** Length of a spilled entry (field index, doc id and offset, big-endian so they sort correctly) */
+    private static final int SPILLED_ENTRY_LENGTH = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    /** Largest sort buffer OfflineSorter allows */
+    private static final long MAX_SORT_BUFFER_MEGS = 2047;
+
+    private final Directory directory;
+
+    /** Prefix for our temporary files (the segment name) */
+    private final String tempFilePrefix;
+
+    /** Number of documents in the segment */
+    private final int maxDoc;
+
+    /** How much memory we may use for offsets before spilling them */
+    private final long memoryBudget;
+
+    /** Index of the field we're adding offsets for */
+    private int currentField = -1;
+
+    /** Offsets for the current document (returned by get()) */
+    private final LongArrayList docOffsets = new LongArrayList();
+
+
+    // Offsets in memory
+
+    /** Where each field's offsets start in docIds and offsets */
+    private final IntArrayList fieldStart = new IntArrayList();
+
+    /** Doc id for each offset (null if spilled) */
+    private IntArrayList docIds = new IntArrayList();
+
+    /** Term vector file offsets, in the order they were added (null if spilled) */
+    private LongArrayList offsets = new LongArrayList();
+
+    /** Field we've sorted the offsets by document for (see sortField()) */
+    private int sortedField = -1;
+
+    /** For the sorted field, where each document's offsets start in sortedOffsets */
+    private int[] sortedDocStart;
+
+    /** For the sorted field, the offsets sorted by document */
+    private long[] sortedOffsets;
+
+
+    // Offsets spilled to disk
+
+    /** Temporary file we spill entries to */
+    private IndexOutput spillOutput;
+
+    /** Writes spilled entries (or null if we haven't spilled) */
+    private OfflineSorter.ByteSequencesWriter spillWriter;
+
+    /** Buffer for encoding a spilled entry */
+    private final byte[] spilledEntry = new byte[SPILLED_ENTRY_LENGTH];
+
+    /** Temporary file with the spilled entries */
+    private String spilledFileName;
+
+    /** Temporary file with the sorted spilled entries */
+    private String sortedFileName;
+
+    /** Reads the sorted spilled entries */
+    private OfflineSorter.ByteSequencesReader sortedReader;
+
+    /** Next sorted spilled entry, or null if there are none left */
+    private BytesRef nextEntry;
+
+    TermVecFileOffsets(Directory directory, String tempFilePrefix, int maxDoc, long memoryBudget) {
+        this.directory = directory;
+        this.tempFilePrefix = tempFilePrefix;
+        this.maxDoc = maxDoc;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Start adding offsets for the next field.
+     *
+     * @return index of the new field
+     */
+    int startField() {
+        currentField++;
+        fieldStart.add(docIds == null ? 0 : docIds.size());
+        return currentField;
+    }
+
+    /**
+     * Add the term vector file offset for a document and term in the current field.
+     *
+     * Must be called in term order, then in document order (the order of the term vector file).
+     *
+     * @param docId document id
+     * @param offset offset in the term vector file
+     */
+    void add(int docId, long offset) throws IOException {
+        if (spillWriter != null) {
+            writeSpilled(currentField, docId, offset);
+            return;
+        }
+        docIds.add(docId);
+        offsets.add(offset);
+        if ((long) docIds.size() * BYTES_PER_OFFSET > memoryBudget)
+            spill();
+    }
+
+    /** Move the offsets we have in memory to a temporary file, and write any further offsets there too. */
+    private void spill() throws IOException {
+        spillOutput = directory.createTempOutput(tempFilePrefix, "termvec_offsets", IOContext.DEFAULT);
+        spilledFileName = spillOutput.getName();
+        spillWriter = new OfflineSorter.ByteSequencesWriter(spillOutput);
+        int field = 0;
+        for (int i = 0; i < docIds.size(); i++) {
+            while (field + 1 < fieldStart.size() && fieldStart.getInt(field + 1) <= i)
+                field++;
+            writeSpilled(field, docIds.getInt(i), offsets.getLong(i));
+        }
+        docIds = null;
+        offsets = null;
+    }
+
+    private void writeSpilled(int field, int docId, long offset) throws IOException {
+        BitUtil.VH_BE_INT.set(spilledEntry, 0, field);
+        BitUtil.VH_BE_INT.set(spilledEntry, Integer.BYTES, docId);
+        BitUtil.VH_BE_LONG.set(spilledEntry, Integer.BYTES * 2, offset);
+        spillWriter.write(spilledEntry);
+    }
+
+    /**
+     * Done adding offsets; prepare to read them per field and document.
+     *
+     * If we've spilled, this sorts the temporary file.
+     */
+    void finishAdding() throws IOException {
+        if (spillWriter == null)
+            return;
+        CodecUtil.writeFooter(spillOutput);
+        spillWriter.close();
+        spillWriter = null;
+
+        // Entries sort by field, then doc id, then offset (i.e. in term order, same as in memory)
+        long bufferMegs = Math.min(MAX_SORT_BUFFER_MEGS, Math.max(1, memoryBudget / (1024 * 1024)));
+        OfflineSorter sorter = new OfflineSorter(directory, tempFilePrefix, Comparator.<BytesRef>naturalOrder(),
+                OfflineSorter.BufferSize.megabytes(bufferMegs), OfflineSorter.MAX_TEMPFILES, -1, null, 0);
+        sortedFileName = sorter.sort(spilledFileName);
+        IOUtils.deleteFilesIgnoringExceptions(directory, spilledFileName);
+        spilledFileName = null;
+        sortedReader = new OfflineSorter.ByteSequencesReader(
+                directory.openChecksumInput(sortedFileName, IOContext.READONCE), sortedFileName);
+        nextEntry = sortedReader.next();
+    }
+
+    /**
+     * Get the term vector file offsets for a document in a field, in the order they were added.
+     *
+     * Must be called for each field in order, and for each document in order.
+     *
+     * @param field field index (see startField())
+     * @param docId document id
+     * @return the offsets (only valid until the next call)
+     */
+    LongArrayList get(int field, int docId) throws IOException {
+        docOffsets.clear();
+        if (sortedReader != null) {
+            // Read this document's entries from the sorted spilled entries
+            while (nextEntry != null && entryField(nextEntry) == field && entryDocId(nextEntry) == docId) {
+                docOffsets.add((long) BitUtil.VH_BE_LONG.get(nextEntry.bytes, nextEntry.offset + Integer.BYTES * 2));
+                nextEntry = sortedReader.next();
+            }
+        } else if (offsets != null) {
+            if (field != sortedField)
+                sortField(field);
+            int start = sortedDocStart[docId];
+            docOffsets.addElements(0, sortedOffsets, start, sortedDocStart[docId + 1] - start);
+        }
+        return docOffsets;
+    }
+
+    private static int entryField(BytesRef entry) {
+        return (int) BitUtil.VH_BE_INT.get(entry.bytes, entry.offset);
+    }
+
+    private static int entryDocId(BytesRef entry) {
+        return (int) BitUtil.VH_BE_INT.get(entry.bytes, entry.offset + Integer.BYTES);
+    }
+
+    /**
+     * Sort a field's offsets by document (counting sort, so the order within a document is kept).
+     *
+     * @param field field index
+     */
+    private void sortField(int field) {
+        int start = fieldStart.getInt(field);
+        int end = field + 1 < fieldStart.size() ? fieldStart.getInt(field + 1) : docIds.size();
+
+        // Count offsets per document, then turn the counts into start positions
+        sortedDocStart = new int[maxDoc + 1];
+        for (int i = start; i < end; i++)
+            sortedDocStart[docIds.getInt(i) + 1]++;
+        for (int docId = 0; docId < maxDoc; docId++)
+            sortedDocStart[docId + 1] += sortedDocStart[docId];
+
+        int[] nextPos = new int[maxDoc];
+        System.arraycopy(sortedDocStart, 0, nextPos, 0, maxDoc);
+        sortedOffsets = new long[end - start];
+        for (int i = start; i < end; i++)
+            sortedOffsets[nextPos[docIds.getInt(i)]++] = offsets.getLong(i);
+        sortedField = field;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            IOUtils.close(spillWriter, sortedReader);
+        } finally {
+            spillWriter = null;
+            sortedReader = null;
+            if (spilledFileName != null)
+                IOUtils.deleteFilesIgnoringExceptions(directory, spilledFileName);
+            if (sortedFileName != null)
+                IOUtils.deleteFilesIgnoringExceptions(directory, sortedFileName);
+            spilledFileName = null;
+            sortedFileName = null;
+        }
+    }
+}
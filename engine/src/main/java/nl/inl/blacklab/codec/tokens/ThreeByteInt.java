@@ -43,7 +43,21 @@ public class ThreeByteInt {
     }
 
     public static int read(ByteInput in) throws IOException {
-        int v = (((in.readByte() & 0xFF) << 16) | ((in.readByte() & 0xFF) << 8) | (in.readByte() & 0xFF));
+        return decode(in.readByte(), in.readByte(), in.readByte());
+    }
+
+    /**
+     * Decode a three-byte int from its bytes (most significant byte first).
+     *
+     * Useful if the bytes are read using absolute positions, e.g. from a memory-mapped file.
+     *
+     * @param b0 most significant byte
+     * @param b1 middle byte
+     * @param b2 least significant byte
+     * @return the decoded value
+     */
+    public static int decode(byte b0, byte b1, byte b2) {
+        int v = (((b0 & 0xFF) << 16) | ((b1 & 0xFF) << 8) | (b2 & 0xFF));
         // Is the three-byte integer's sign bit set?
         if ((v & 0x800000) != 0) {
             // Yes. Make the most significant byte 0xFF to get the correct 4-byte integer.
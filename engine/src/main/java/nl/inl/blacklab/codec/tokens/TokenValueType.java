@@ -5,6 +5,7 @@ import java.nio.ByteBuffer;
 
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 
 public enum TokenValueType {
     BYTE((byte) 0, Byte.BYTES, Byte.MIN_VALUE, Byte.MAX_VALUE),
@@ -81,6 +82,26 @@ public enum TokenValueType {
         };
     }
 
+    /**
+     * Read a value at an absolute position.
+     *
+     * Doesn't change any file pointer, so this can be used on a shared
+     * (memory-mapped) view of the tokens file without seeking.
+     *
+     * @param tokensFile random-access view of the tokens file
+     * @param position absolute position to read from
+     * @return the value read
+     */
+    public int read(RandomAccessInput tokensFile, long position) throws IOException {
+        return switch (this) {
+            case BYTE -> tokensFile.readByte(position);
+            case SHORT -> tokensFile.readShort(position);
+            case THREE_BYTES -> ThreeByteInt.decode(tokensFile.readByte(position),
+                    tokensFile.readByte(position + 1), tokensFile.readByte(position + 2));
+            case INT -> tokensFile.readInt(position);
+        };
+    }
+
     public int sizeBytes() {
         return sizeBytes;
     }
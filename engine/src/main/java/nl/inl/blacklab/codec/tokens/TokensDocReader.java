@@ -0,0 +1,146 @@
+package nl.inl.blacklab.codec.tokens;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.RandomAccessInput;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Decodes the tokens of a document directly from a random-access view of the tokens file.
+ *
+ * Where {@link TokensCodec#readSnippets} seeks in an IndexInput and allocates arrays for
+ * each snippet, this reads values at absolute positions. If the index directory is
+ * memory-mapped (the default), this means term ids are read straight from the mapped
+ * file without copying.
+ *
+ * An instance can be reused for many documents by calling {@link #reset(TokensCodec, long)}.
+ * The only buffer it keeps is a single decoded block for the run-length encoded codec,
+ * which is reused as well.
+ */
+@NotThreadSafe
+public class TokensDocReader {
+
+    /** Random-access view of the tokens file */
+    private final RandomAccessInput tokensFile;
+
+    /** How the current document is encoded */
+    private TokensCodecType codecType;
+
+    /** Size of the values in the current document */
+    private TokenValueType valueType;
+
+    /** Where the current document's tokens start in the tokens file */
+    private long docTokensOffset;
+
+    /** [ALL_TOKENS_THE_SAME] the value of every token */
+    private int allTheSameValue;
+
+    /** [RUN_LENGTH_ENCODING] number of tokens per decoded block */
+    private int decodedBlockSizeTokens;
+
+    /** [RUN_LENGTH_ENCODING] number of blocks in the document */
+    private int numberOfBlocks;
+
+    /** [RUN_LENGTH_ENCODING] where the block end offsets start */
+    private long blockIndexOffset;
+
+    /** [RUN_LENGTH_ENCODING] where the encoded blocks start */
+    private long blockDataStart;
+
+    /** [RUN_LENGTH_ENCODING] the block we've decoded (reused between blocks and documents) */
+    private int[] decodedBlock = new int[0];
+
+    /** [RUN_LENGTH_ENCODING] number of the block in decodedBlock, or -1 if none */
+    private int decodedBlockNumber = -1;
+
+    public TokensDocReader(RandomAccessInput tokensFile) {
+        this.tokensFile = tokensFile;
+    }
+
+    /**
+     * Move to another document.
+     *
+     * @param codec codec the document was encoded with (from the tokens index file)
+     * @param docTokensOffset offset of the document in the tokens file
+     */
+    public void reset(TokensCodec codec, long docTokensOffset) throws IOException {
+        if (codecType == codec.codecType() && valueType == codec.valueType() &&
+                this.docTokensOffset == docTokensOffset) {
+            // Same document as before (e.g. another hit in it); keep our decoded block
+            return;
+        }
+        this.codecType = codec.codecType();
+        this.valueType = codec.valueType();
+        this.docTokensOffset = docTokensOffset;
+        switch (codecType) {
+        case ALL_TOKENS_THE_SAME:
+            allTheSameValue = tokensFile.readInt(docTokensOffset);
+            break;
+        case RUN_LENGTH_ENCODING:
+            decodedBlockSizeTokens = tokensFile.readShort(docTokensOffset);
+            numberOfBlocks = tokensFile.readInt(docTokensOffset + Short.BYTES);
+            blockIndexOffset = docTokensOffset + Short.BYTES + Integer.BYTES;
+            blockDataStart = blockIndexOffset + (long) numberOfBlocks * Integer.BYTES;
+            if (decodedBlock.length < decodedBlockSizeTokens)
+                decodedBlock = new int[decodedBlockSizeTokens];
+            decodedBlockNumber = -1;
+            break;
+        case VALUE_PER_TOKEN:
+            break;
+        }
+    }
+
+    /**
+     * Get the term id at a position in the current document.
+     *
+     * Sequential access is the fastest, but any order will work.
+     *
+     * @param position token position (the caller should make sure it's within the document)
+     * @return segment-local term id at this position
+     */
+    public int get(int position) throws IOException {
+        return switch (codecType) {
+            case VALUE_PER_TOKEN -> valueType.read(tokensFile, docTokensOffset + (long) position * valueType.sizeBytes());
+            case ALL_TOKENS_THE_SAME -> allTheSameValue;
+            case RUN_LENGTH_ENCODING -> {
+                int blockNumber = position / decodedBlockSizeTokens;
+                if (blockNumber != decodedBlockNumber)
+                    decodeBlock(blockNumber);
+                yield decodedBlock[position % decodedBlockSizeTokens];
+            }
+        };
+    }
+
+    /** Decode a complete block of the run-length encoded document into our buffer. */
+    private void decodeBlock(int blockNumber) throws IOException {
+        if (blockNumber >= numberOfBlocks)
+            throw new IOException("Trying to read past end of document");
+        // The first block always starts at offset 0; others start where the previous one ended
+        int blockStartOffset = blockNumber == 0 ? 0 :
+                tokensFile.readInt(blockIndexOffset + (long) (blockNumber - 1) * Integer.BYTES);
+        int blockEndOffset = tokensFile.readInt(blockIndexOffset + (long) blockNumber * Integer.BYTES);
+        long pos = blockDataStart + blockStartOffset;
+        long endPos = blockDataStart + blockEndOffset;
+        int bytesPerValue = valueType.sizeBytes();
+        int decodedIndex = 0;
+        while (pos < endPos) {
+            int value = valueType.read(tokensFile, pos);
+            pos += bytesPerValue;
+            if (value <= -2) {
+                // Run length
+                int token = valueType.read(tokensFile, pos);
+                pos += bytesPerValue;
+                for (int i = 0; i < -value; i++) {
+                    decodedBlock[decodedIndex] = token;
+                    decodedIndex++;
+                }
+            } else {
+                // Single value
+                decodedBlock[decodedIndex] = value;
+                decodedIndex++;
+            }
+        }
+        decodedBlockNumber = blockNumber;
+    }
+}
@@ -33,6 +33,13 @@ public class BLConfigIndexing {
      */
     int maxValueLength = 0;
 
+    /** Size of Lucene's indexing RAM buffer in MB. A larger buffer produces larger (and fewer) initial segments. */
+    int ramBufferSizeMegs = 150;
+
+    /** Memory (in MB) we may use while writing a segment's forward index to keep track of where to find
+     *  each document's terms. Beyond this, this bookkeeping is spilled to temporary files. */
+    int forwardIndexMemoryBudgetMegs = 256;
+
     @Deprecated
     int maxMetadataValuesToStore = 0;
 
@@ -153,6 +160,30 @@ public class BLConfigIndexing {
         this.maxValueLength = maxValueLength;
     }
 
+    public int getRamBufferSizeMegs() {
+        return ramBufferSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setRamBufferSizeMegs(int ramBufferSizeMegs) {
+        if (ramBufferSizeMegs <= 0) {
+            throw new IllegalArgumentException("ramBufferSizeMegs must be > 0");
+        }
+        this.ramBufferSizeMegs = ramBufferSizeMegs;
+    }
+
+    public int getForwardIndexMemoryBudgetMegs() {
+        return forwardIndexMemoryBudgetMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setForwardIndexMemoryBudgetMegs(int forwardIndexMemoryBudgetMegs) {
+        if (forwardIndexMemoryBudgetMegs <= 0) {
+            throw new IllegalArgumentException("forwardIndexMemoryBudgetMegs must be > 0");
+        }
+        this.forwardIndexMemoryBudgetMegs = forwardIndexMemoryBudgetMegs;
+    }
+
     public void setMaxMetadataValuesToStore(int maxMetadataValuesToStore) {
         this.maxMetadataValuesToStore = maxMetadataValuesToStore;
     }
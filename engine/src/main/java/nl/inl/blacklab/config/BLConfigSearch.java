@@ -23,6 +23,42 @@ public class BLConfigSearch {
      */
     private boolean enableHugeResultSets = true;
 
+    /** Store hits (that have been fetched completely) in compressed form?
+     *
+     * This uses a lot less memory, so more results fit in the cache, but accessing hits is a bit slower.
+     */
+    private boolean compactHitStorage = false;
+
+    /** Sort result sets with more hits than this using temporary files.
+     *
+     * The hits being sorted stay in memory, but the sorted result doesn't need another full copy,
+     * and the extra memory needed for sorting is bounded by externalSortRunSize.
+     *
+     * -1 means always sort in memory.
+     */
+    private long externalSortThreshold = -1;
+
+    /** How many hits to sort in memory at a time when sorting using temporary files. */
+    private int externalSortRunSize = 1_000_000;
+
+    /** Where to write temporary files when sorting (null means the system temporary directory). */
+    private String externalSortTempDir = null;
+
+    /** How much memory to use for caching decoded content store blocks (0 disables the cache). */
+    private int contentStoreBlockCacheSizeMegs = 64;
+
+    /** How many subcorpus sizes (per metadata filter query) to cache (0 disables the cache). */
+    private int subcorpusSizeCacheSize = 100;
+
+    /** How many query plans (optimized queries and their weights) to cache (0 disables the cache). */
+    private int queryPlanCacheSize = 100;
+
+    /** Don't split segments into ranges smaller than this (in documents) when fetching hits in parallel. */
+    private int minDocsPerSegmentRange = 1000;
+
+    /** How much memory to use for caching autocomplete indexes (0 disables them; prefix scans are used instead). */
+    private int autocompleteCacheSizeMegs = 256;
+
     public BLConfigCollator getCollator() {
         return collator;
     }
@@ -76,6 +112,89 @@ public class BLConfigSearch {
         this.enableHugeResultSets = enableHugeResultSets;
     }
 
+    public boolean isCompactHitStorage() {
+        return compactHitStorage;
+    }
+
+    @SuppressWarnings("unused")
+    public void setCompactHitStorage(boolean compactHitStorage) {
+        this.compactHitStorage = compactHitStorage;
+    }
+
+    public long getExternalSortThreshold() {
+        return externalSortThreshold;
+    }
+
+    @SuppressWarnings("unused")
+    public void setExternalSortThreshold(long externalSortThreshold) {
+        this.externalSortThreshold = externalSortThreshold;
+    }
+
+    public int getExternalSortRunSize() {
+        return externalSortRunSize;
+    }
+
+    @SuppressWarnings("unused")
+    public void setExternalSortRunSize(int externalSortRunSize) {
+        this.externalSortRunSize = externalSortRunSize;
+    }
+
+    public String getExternalSortTempDir() {
+        return externalSortTempDir;
+    }
+
+    @SuppressWarnings("unused")
+    public void setExternalSortTempDir(String externalSortTempDir) {
+        this.externalSortTempDir = externalSortTempDir;
+    }
+
+    public int getContentStoreBlockCacheSizeMegs() {
+        return contentStoreBlockCacheSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setContentStoreBlockCacheSizeMegs(int contentStoreBlockCacheSizeMegs) {
+        this.contentStoreBlockCacheSizeMegs = contentStoreBlockCacheSizeMegs;
+    }
+
+    public int getSubcorpusSizeCacheSize() {
+        return subcorpusSizeCacheSize;
+    }
+
+    @SuppressWarnings("unused")
+    public void setSubcorpusSizeCacheSize(int subcorpusSizeCacheSize) {
+        this.subcorpusSizeCacheSize = subcorpusSizeCacheSize;
+    }
+
+    public int getQueryPlanCacheSize() {
+        return queryPlanCacheSize;
+    }
+
+    @SuppressWarnings("unused")
+    public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+        this.queryPlanCacheSize = queryPlanCacheSize;
+    }
+
+    public int getMinDocsPerSegmentRange() {
+        return minDocsPerSegmentRange;
+    }
+
+    @SuppressWarnings("unused")
+    public void setMinDocsPerSegmentRange(int minDocsPerSegmentRange) {
+        if (minDocsPerSegmentRange < 1)
+            throw new IllegalArgumentException("minDocsPerSegmentRange must be >= 1");
+        this.minDocsPerSegmentRange = minDocsPerSegmentRange;
+    }
+
+    public int getAutocompleteCacheSizeMegs() {
+        return autocompleteCacheSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setAutocompleteCacheSizeMegs(int autocompleteCacheSizeMegs) {
+        this.autocompleteCacheSizeMegs = autocompleteCacheSizeMegs;
+    }
+
     /**
      * Apply the search configuration settings to an opened index.
      *
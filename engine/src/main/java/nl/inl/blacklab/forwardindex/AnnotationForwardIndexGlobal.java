@@ -1,5 +1,7 @@
 package nl.inl.blacklab.forwardindex;
 
+import java.io.File;
+
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 
@@ -59,7 +61,11 @@ public class AnnotationForwardIndexGlobal implements AnnotationForwardIndex {
 
         // Ensure quick lookup of the segment we need
         this.leafReaderLookup = leafReaderLookup;
-        terms = new TermsGlobal(luceneField);
+        // Keep our global terms in a file next to the index, so we don't have to determine them
+        // every time the index is opened. (Not in index mode, where the index is still changing)
+        File indexDir = index.indexDirectory();
+        File termsDir = indexDir == null || index.indexMode() ? null : new File(indexDir, TermsGlobal.TERMS_DIR_NAME);
+        terms = new TermsGlobal(luceneField, termsDir);
     }
 
     @Override
@@ -85,6 +85,18 @@ public class FieldForwardIndex implements AnnotationForwardIndex {
         return terms;
     }
 
+    /**
+     * Get a cursor for reading tokens from this field without allocating.
+     *
+     * A new cursor is returned every time. Like this object, it should only be
+     * used by a single thread.
+     *
+     * @return cursor for this field
+     */
+    public TokensCursor cursor() {
+        return forwardIndex.cursor(field);
+    }
+
     @Override
     public String getLuceneFieldName() {
         return field.getFieldName();
@@ -55,4 +55,15 @@ public interface ForwardIndexSegmentReader {
      * @return terms object for the given field
      */
     Terms terms(ForwardIndexField field);
+
+    /**
+     * Get a cursor for reading tokens from a field in this segment without allocating.
+     *
+     * The returned cursor is not thread-safe, so it should only
+     * be used by a single thread. It can be reused for any number of documents.
+     *
+     * @param field lucene field to read tokens from
+     * @return cursor for the given field
+     */
+    TokensCursor cursor(ForwardIndexField field);
 }
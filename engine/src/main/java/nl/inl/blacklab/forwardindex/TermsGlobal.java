@@ -1,15 +1,25 @@
 package nl.inl.blacklab.forwardindex;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.IntFunction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.StringHelper;
 
 import com.ibm.icu.text.CollationKey;
 import com.ibm.icu.text.Collator;
@@ -18,6 +28,8 @@ import it.unimi.dsi.fastutil.Pair;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import nl.inl.blacklab.Constants;
@@ -46,6 +58,14 @@ public class TermsGlobal implements Terms {
     /** Log the timing of different initialization tasks? */
     protected static final boolean LOG_TIMINGS = false;
 
+    /**
+     * Name of the subdirectory of the index directory where we keep our terms files.
+     *
+     * Lucene ignores this directory, but tools that copy or replicate the Lucene index files may not;
+     * it contains only caches and may be skipped or deleted safely (it will be recreated when needed).
+     */
+    public static final String TERMS_DIR_NAME = "termsglobal";
+
     /** Collator to use for sensitive string comparisons */
     protected Collator collatorSensitive;
 
@@ -56,18 +76,22 @@ public class TermsGlobal implements Terms {
     private int numberOfTerms;
 
     /** Mapping from term id to sensitive sort position */
-    private int[] termId2SensitivePosition;
+    private IntBuffer termId2SensitivePosition;
 
     /** Mapping from term id to sensitive sort position */
-    private int[] termId2InsensitivePosition;
+    private IntBuffer termId2InsensitivePosition;
 
     /** Mapping from insensitive sort position to term id */
-    private int[] insensitive2TermId;
+    private IntBuffer insensitive2TermId;
 
     /** Mapping from sensitive sort position to term id */
-    private int[] sensitive2TermId;
+    private IntBuffer sensitive2TermId;
 
-    /** What segment should we read each term string from? */
+    /** Our terms file, if we could read or write it (then the above arrays are mapped from it,
+     *  and we read term strings from it instead of from the segments) */
+    private TermsGlobalFile termsFile;
+
+    /** What segment should we read each term string from? (if we don't have a terms file) */
     private final ObjectList<Terms> termSegmentTerms = new ObjectArrayList<>();
 
     /** Mapping from global term id to segment term id (in the segment given by termSegment) */
@@ -78,18 +102,34 @@ public class TermsGlobal implements Terms {
     /** Our lucene field */
     private final String luceneField;
 
+    /** Where to keep our terms files, or null if we shouldn't */
+    private final File termsDir;
+
     /** Per segment (by term object): the translation of that segment's term ids to
      *  global term ids.
      */
-    private final Map<LeafReaderContext, int[]> segmentToGlobalTermIds = new HashMap<>();
+    private final Map<LeafReaderContext, IntBuffer> segmentToGlobalTermIds = new HashMap<>();
 
     /** Only used during initialization */
     private final Map<String, Integer> globalTermIds;
 
     public TermsGlobal(String luceneField) {
+        this(luceneField, null);
+    }
+
+    /**
+     * Create the global terms for a field.
+     *
+     * @param luceneField field
+     * @param termsDir where to keep terms files (see {@link TermsGlobalFile}), so the terms
+     *                 don't have to be determined again the next time the index is opened.
+     *                 If null, we don't use terms files.
+     */
+    public TermsGlobal(String luceneField, File termsDir) {
         super();
         DEBUGGING = TermsGlobal.class.desiredAssertionStatus(); // assertions enabled?
         this.luceneField = luceneField;
+        this.termsDir = termsDir;
 
         // Will be used in initialization only, then clear()'ed
         globalTermIds = new LinkedHashMap<>();
@@ -107,17 +147,21 @@ public class TermsGlobal implements Terms {
     public int idToSortPosition(int termId, MatchSensitivity sensitivity) {
         if (termId < 0 || termId >= numberOfTerms)
             return Constants.NO_TERM;
-        int[] idToSortPos = sensitivity.isCaseSensitive() ? termId2SensitivePosition : termId2InsensitivePosition;
-        return idToSortPos[termId];
+        IntBuffer idToSortPos = sensitivity.isCaseSensitive() ? termId2SensitivePosition : termId2InsensitivePosition;
+        return idToSortPos.get(termId);
     }
 
     @Override
-    public synchronized String get(int id) {
-        // NOTE: This method is synchronized because we use the Terms instances
-        // we stored in termSegmentTerms, which are not thread-safe.
+    public String get(int id) {
         if (id >= numberOfTerms || id < 0)
             return "";
-        return termSegmentTerms.get(id).get(termSegmentTermId.getInt(id));
+        if (termsFile != null)
+            return termsFile.term(id);
+        // NOTE: we synchronize because the Terms instances we stored in termSegmentTerms
+        // are not thread-safe.
+        synchronized (this) {
+            return termSegmentTerms.get(id).get(termSegmentTermId.getInt(id));
+        }
     }
 
     @Override
@@ -136,7 +180,7 @@ public class TermsGlobal implements Terms {
     @Override
     public int indexOf(String term, MatchSensitivity sensitivity) {
         Collator collator;
-        int[] sortPosition2TermId;
+        IntBuffer sortPosition2TermId;
         if (sensitivity.isCaseSensitive()) {
             collator = collatorSensitive;
             sortPosition2TermId = sensitive2TermId;
@@ -149,7 +193,7 @@ public class TermsGlobal implements Terms {
         int hi = numberOfTerms - 1;
         while (lo <= hi) {
             int mid = (lo + hi) >>> 1;
-            int termId = sortPosition2TermId[mid];
+            int termId = sortPosition2TermId.get(mid);
             String midVal = get(termId);
             int cmp = collator.compare(midVal, term);
             if (cmp < 0)
@@ -169,10 +213,10 @@ public class TermsGlobal implements Terms {
 
     @Override
     public void convertToGlobalTermIds(LeafReaderContext lrc, int[] segmentTermIds) {
-        int[] segmentToGlobal = segmentToGlobalTermIds.get(lrc);
+        IntBuffer segmentToGlobal = segmentToGlobalTermIds.get(lrc);
         for (int i = 0; i < segmentTermIds.length; i++) {
             if (segmentTermIds[i] != Constants.NO_TERM)
-                segmentTermIds[i] = segmentToGlobal[segmentTermIds[i]];
+                segmentTermIds[i] = segmentToGlobal.get(segmentTermIds[i]);
         }
     }
 
@@ -180,8 +224,8 @@ public class TermsGlobal implements Terms {
     public int toGlobalTermId(LeafReaderContext lrc, int segmentTermId) {
         if (segmentTermId == Constants.NO_TERM)
             return Constants.NO_TERM;
-        int[] segmentToGlobal = segmentToGlobalTermIds.get(lrc);
-        return segmentToGlobal[segmentTermId];
+        IntBuffer segmentToGlobal = segmentToGlobalTermIds.get(lrc);
+        return segmentToGlobal.get(segmentTermId);
     }
 
     public synchronized void initialize(IndexReader indexReader) throws InterruptedException {
@@ -199,11 +243,36 @@ public class TermsGlobal implements Terms {
                     .orElseThrow();
             collatorSensitive = collators.get(MatchSensitivity.SENSITIVE);
             collatorInsensitive = collators.get(MatchSensitivity.INSENSITIVE);
+            String collatorSignature = TermsGlobalFile.collatorSignature(collators);
+
+            // If we've determined the terms for this commit before, use that
+            long generation = termsDir == null ? -1 : commitGeneration(indexReader);
+            File file = generation < 0 ? null : TermsGlobalFile.file(termsDir, luceneField, generation);
+            if (file != null && file.exists()) {
+                try (BlockTimer ignored = BlockTimer.create(LOG_TIMINGS, luceneField + ": open terms file")) {
+                    TermsGlobalFile tf = TermsGlobalFile.open(file);
+                    if (tf != null && useTermsFile(tf, indexReader, collatorSignature))
+                        return;
+                    logger.info("Terms file {} doesn't match index, determining terms again", file);
+                } catch (IOException e) {
+                    logger.warn("Could not read terms file {}, determining terms again", file, e);
+                }
+            }
+
+            // If we have a file for an earlier commit, just add the terms from any new segments
+            if (file != null) {
+                try (BlockTimer ignored = BlockTimer.create(LOG_TIMINGS, luceneField + ": update terms file")) {
+                    if (updateTermsFile(file, generation, collatorSignature, indexReader))
+                        return;
+                } catch (IOException e) {
+                    logger.warn("Could not update terms file {}, determining terms again", file, e);
+                }
+            }
 
+            String[] terms;
             try (BlockTimer ignored = BlockTimer.create(LOG_TIMINGS, "Determine " + luceneField + " terms list")) {
 
                 // Read the terms from all the different segments and determine global term ids
-                String[] terms;
                 try (BlockTimer ignored1 = BlockTimer.create(LOG_TIMINGS, luceneField + ": readTermsFromIndex")) {
                     terms = readTermsFromIndex(indexReader, luceneField);
                     numberOfTerms = terms.length;
@@ -235,18 +304,19 @@ public class TermsGlobal implements Terms {
                             })
                             .toList();
                 }
-                sensitive2TermId = sortedInverted.get(0).first();
-                termId2SensitivePosition = sortedInverted.get(0).second();
-                insensitive2TermId = sortedInverted.get(1).first();
-                termId2InsensitivePosition = sortedInverted.get(1).second();
-
-                assert this.termId2SensitivePosition.length == numberOfTerms;
-                assert this.termId2InsensitivePosition.length == numberOfTerms;
-                assert this.sensitive2TermId.length == numberOfTerms;
+                sensitive2TermId = IntBuffer.wrap(sortedInverted.get(0).first());
+                termId2SensitivePosition = IntBuffer.wrap(sortedInverted.get(0).second());
+                insensitive2TermId = IntBuffer.wrap(sortedInverted.get(1).first());
+                termId2InsensitivePosition = IntBuffer.wrap(sortedInverted.get(1).second());
+
+                assert this.termId2SensitivePosition.limit() == numberOfTerms;
+                assert this.termId2InsensitivePosition.limit() == numberOfTerms;
+                assert this.sensitive2TermId.limit() == numberOfTerms;
                 if (DEBUGGING && DEBUG_VALIDATE_SORT) {
                     // Make sure all sort positions are in the arrays
-                    boolean[] found = new boolean[termId2SensitivePosition.length];
-                    for (int k: termId2SensitivePosition) {
+                    boolean[] found = new boolean[numberOfTerms];
+                    for (int i = 0; i < numberOfTerms; i++) {
+                        int k = termId2SensitivePosition.get(i);
                         assert k >= 0;
                         found[k] = true;
                     }
@@ -254,16 +324,339 @@ public class TermsGlobal implements Terms {
                         assert b;
                     // Insensitive doesn't have all sort positions because some terms are lumped together,
                     // creating gaps, but they still have to be non-negative.
-                    for (int j: termId2InsensitivePosition) {
-                        assert j >= 0;
+                    for (int i = 0; i < numberOfTerms; i++) {
+                        assert termId2InsensitivePosition.get(i) >= 0;
                     }
                 }
             }
+
+            // Save the terms so we don't have to do this again next time
+            if (file != null)
+                writeTermsFile(file, generation, collatorSignature, terms, indexReader);
         } catch (Exception e) {
             logger.error(e);
         }
     }
 
+    /**
+     * Get the commit generation for this index reader.
+     *
+     * @param indexReader index reader
+     * @return commit generation, or -1 if unknown
+     */
+    private static long commitGeneration(IndexReader indexReader) {
+        if (indexReader instanceof DirectoryReader directoryReader) {
+            try {
+                return directoryReader.getIndexCommit().getGeneration();
+            } catch (IOException e) {
+                logger.warn("Could not determine index commit generation", e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the unique id of a segment.
+     *
+     * @param lrc segment
+     * @return the segment id, or null if this is not a regular segment
+     */
+    private static String segmentId(LeafReaderContext lrc) {
+        LeafReader reader = FilterLeafReader.unwrap(lrc.reader());
+        if (reader instanceof SegmentReader segmentReader)
+            return StringHelper.idToString(segmentReader.getSegmentInfo().info.getId());
+        return null;
+    }
+
+    /**
+     * Use a terms file, if it matches the index.
+     *
+     * @param tf terms file
+     * @param indexReader index reader
+     * @param collatorSignature signature of our collators
+     * @return true if we're using the file, false if it didn't match
+     */
+    private boolean useTermsFile(TermsGlobalFile tf, IndexReader indexReader, String collatorSignature) {
+        if (!tf.luceneField().equals(luceneField) || !tf.collatorSignature().equals(collatorSignature))
+            return false;
+        Map<LeafReaderContext, IntBuffer> segmentMaps = new HashMap<>();
+        for (LeafReaderContext lrc: indexReader.leaves()) {
+            BLTerms blTerms = BLTerms.forSegment(lrc, luceneField);
+            if (blTerms == null)
+                continue;
+            String segmentId = segmentId(lrc);
+            IntBuffer segmentToGlobal = segmentId == null ? null : tf.segmentToGlobalTermIds(segmentId);
+            if (segmentToGlobal == null || segmentToGlobal.limit() != blTerms.numberOfForwardIndexTerms())
+                return false;
+            segmentMaps.put(lrc, segmentToGlobal);
+        }
+        numberOfTerms = tf.numberOfTerms();
+        sensitive2TermId = tf.sensitive2TermId();
+        termId2SensitivePosition = tf.termId2SensitivePosition();
+        insensitive2TermId = tf.insensitive2TermId();
+        termId2InsensitivePosition = tf.termId2InsensitivePosition();
+        segmentToGlobalTermIds.clear();
+        segmentToGlobalTermIds.putAll(segmentMaps);
+        termsFile = tf;
+        // We read term strings from the file now
+        termSegmentTerms.clear();
+        termSegmentTermId.clear();
+        return true;
+    }
+
+    /**
+     * Write our terms to a file, then switch to using that file (which uses less heap).
+     *
+     * @param file file to write
+     * @param generation index commit generation
+     * @param collatorSignature signature of our collators
+     * @param terms term strings
+     * @param indexReader index reader
+     */
+    private void writeTermsFile(File file, long generation, String collatorSignature, String[] terms,
+            IndexReader indexReader) {
+        Map<String, IntBuffer> segmentMaps = new LinkedHashMap<>();
+        for (Map.Entry<LeafReaderContext, IntBuffer> e: segmentToGlobalTermIds.entrySet()) {
+            String segmentId = segmentId(e.getKey());
+            if (segmentId == null)
+                return; // can't identify this segment, so we can't write a file
+            segmentMaps.put(segmentId, e.getValue());
+        }
+        try (BlockTimer ignored = BlockTimer.create(LOG_TIMINGS, luceneField + ": write terms file")) {
+            if (!termsDir.exists() && !termsDir.mkdirs())
+                throw new IOException("Could not create directory " + termsDir);
+            TermsGlobalFile.write(file, luceneField, generation, collatorSignature, terms.length, i -> terms[i],
+                    sensitive2TermId, termId2SensitivePosition, insensitive2TermId, termId2InsensitivePosition,
+                    segmentMaps);
+            TermsGlobalFile.deleteOtherGenerations(termsDir, luceneField, generation);
+            TermsGlobalFile tf = TermsGlobalFile.open(file);
+            if (tf == null || !useTermsFile(tf, indexReader, collatorSignature))
+                throw new IOException("Terms file we just wrote doesn't match index");
+        } catch (IOException e) {
+            // Not a problem, we'll just determine the terms again next time
+            // (e.g. the index directory may be read-only)
+            logger.info("Could not write terms file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Update the terms file for an earlier commit with the terms from new segments.
+     * <p>
+     * Segments that are still in the index keep their global term ids. Terms that only occur in
+     * new segments are added at the end, and are merged into the existing sort orders (instead of
+     * sorting all terms again). Terms that only occurred in segments that are gone (e.g. merged
+     * away) are kept; we only determine the terms again when many of them are no longer used.
+     *
+     * @param file file to write for the current commit
+     * @param generation current commit generation
+     * @param collatorSignature signature of our collators
+     * @param indexReader index reader
+     * @return true if we updated the file and are now using it, false if we should determine
+     *         the terms again
+     */
+    private boolean updateTermsFile(File file, long generation, String collatorSignature, IndexReader indexReader)
+            throws IOException, InterruptedException {
+        File previousFile = TermsGlobalFile.latest(termsDir, luceneField);
+        TermsGlobalFile previous = previousFile == null ? null : TermsGlobalFile.open(previousFile);
+        if (previous == null || !previous.luceneField().equals(luceneField) ||
+                !previous.collatorSignature().equals(collatorSignature))
+            return false;
+        int previousNumberOfTerms = previous.numberOfTerms();
+
+        // Which segments do we already have, and which are new?
+        Map<String, IntBuffer> segmentMaps = new LinkedHashMap<>();
+        Map<String, Terms> newSegments = new LinkedHashMap<>();
+        long newSegmentsNumberOfTerms = 0;
+        for (LeafReaderContext lrc: indexReader.leaves()) {
+            BLTerms blTerms = BLTerms.forSegment(lrc, luceneField);
+            if (blTerms == null)
+                continue;
+            String segmentId = segmentId(lrc);
+            if (segmentId == null)
+                return false;
+            IntBuffer segmentToGlobal = previous.segmentToGlobalTermIds(segmentId);
+            if (segmentToGlobal != null && segmentToGlobal.limit() == blTerms.numberOfForwardIndexTerms()) {
+                segmentMaps.put(segmentId, segmentToGlobal);
+            } else {
+                newSegments.put(segmentId, blTerms.reader());
+                newSegmentsNumberOfTerms += blTerms.numberOfForwardIndexTerms();
+            }
+        }
+        if (newSegmentsNumberOfTerms > previousNumberOfTerms / 2) {
+            // Looking up this many terms is not faster than just sorting everything again
+            return false;
+        }
+
+        // Look up the terms from the new segments, and assign ids to terms we don't have yet
+        Object2IntMap<String> newTermIds = new Object2IntOpenHashMap<>();
+        newTermIds.defaultReturnValue(-1);
+        List<String> newTerms = new ObjectArrayList<>();
+        for (Map.Entry<String, Terms> e: newSegments.entrySet()) {
+            Terms terms = e.getValue();
+            int[] segmentToGlobal = new int[terms.numberOfTerms()];
+            for (int segmentTermId = 0; segmentTermId < segmentToGlobal.length; segmentTermId++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                String term = terms.get(segmentTermId);
+                int globalTermId = findTerm(previous, term);
+                if (globalTermId < 0) {
+                    globalTermId = newTermIds.getInt(term);
+                    if (globalTermId < 0) {
+                        globalTermId = previousNumberOfTerms + newTerms.size();
+                        newTermIds.put(term, globalTermId);
+                        newTerms.add(term);
+                    }
+                }
+                segmentToGlobal[segmentTermId] = globalTermId;
+            }
+            segmentMaps.put(e.getKey(), IntBuffer.wrap(segmentToGlobal));
+        }
+
+        // If many terms are no longer used (because the segments they were in are gone),
+        // determine the terms again so the file doesn't keep growing.
+        BitSet used = new BitSet(previousNumberOfTerms);
+        for (IntBuffer segmentToGlobal: segmentMaps.values()) {
+            for (int i = 0; i < segmentToGlobal.limit(); i++) {
+                int globalTermId = segmentToGlobal.get(i);
+                if (globalTermId < previousNumberOfTerms)
+                    used.set(globalTermId);
+            }
+        }
+        if (used.cardinality() < previousNumberOfTerms / 2)
+            return false;
+
+        // Merge the new terms into the sort orders
+        int newNumberOfTerms = previousNumberOfTerms + newTerms.size();
+        IntFunction<String> allTerms = termId -> termId < previousNumberOfTerms ? previous.term(termId) :
+                newTerms.get(termId - previousNumberOfTerms);
+        List<Pair<int[], int[]>> sortedInverted = List.of(true, false).parallelStream()
+                .map(sensitive -> mergeSortOrder(previous, newTerms, allTerms, sensitive))
+                .toList();
+
+        TermsGlobalFile.write(file, luceneField, generation, collatorSignature, newNumberOfTerms, allTerms,
+                IntBuffer.wrap(sortedInverted.get(0).first()), IntBuffer.wrap(sortedInverted.get(0).second()),
+                IntBuffer.wrap(sortedInverted.get(1).first()), IntBuffer.wrap(sortedInverted.get(1).second()),
+                segmentMaps);
+        TermsGlobalFile.deleteOtherGenerations(termsDir, luceneField, generation);
+        TermsGlobalFile tf = TermsGlobalFile.open(file);
+        if (tf == null || !useTermsFile(tf, indexReader, collatorSignature))
+            throw new IOException("Terms file we just wrote doesn't match index");
+        logger.debug("{}: kept {} segments, added {} new segments with {} new terms", luceneField,
+                segmentMaps.size() - newSegments.size(), newSegments.size(), newTerms.size());
+        return true;
+    }
+
+    /**
+     * Find a term in a terms file.
+     *
+     * @param tf terms file
+     * @param term term to find
+     * @return the term id, or -1 if not found
+     */
+    private int findTerm(TermsGlobalFile tf, String term) {
+        IntBuffer sortPosition2TermId = tf.sensitive2TermId();
+        int lo = 0;
+        int hi = tf.numberOfTerms() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = collatorSensitive.compare(tf.term(sortPosition2TermId.get(mid)), term);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else {
+                // Found a term the collator considers equal; look for the exact term among those
+                for (int i = mid; i >= 0; i--) {
+                    String t = tf.term(sortPosition2TermId.get(i));
+                    if (t.equals(term))
+                        return sortPosition2TermId.get(i);
+                    if (collatorSensitive.compare(t, term) != 0)
+                        break;
+                }
+                for (int i = mid + 1; i < tf.numberOfTerms(); i++) {
+                    String t = tf.term(sortPosition2TermId.get(i));
+                    if (t.equals(term))
+                        return sortPosition2TermId.get(i);
+                    if (collatorSensitive.compare(t, term) != 0)
+                        break;
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Merge new terms into a sort order from a terms file.
+     * <p>
+     * The new terms are sorted, then inserted into the existing sort order. We only compare terms
+     * where a new term ends up next to another term; sort positions of adjacent existing terms are
+     * already known to be equal or not.
+     *
+     * @param previous terms file with the existing terms
+     * @param newTerms new terms (their ids follow the existing term ids)
+     * @param allTerms gets term string by global term id
+     * @param sensitive merge into sensitive or insensitive sort order?
+     * @return pair of arrays: term id by sort position and sort position by term id
+     */
+    private Pair<int[], int[]> mergeSortOrder(TermsGlobalFile previous, List<String> newTerms,
+            IntFunction<String> allTerms, boolean sensitive) {
+        Collator collator = sensitive ? collatorSensitive : collatorInsensitive;
+        IntBuffer previousSorted = sensitive ? previous.sensitive2TermId() : previous.insensitive2TermId();
+        IntBuffer previousPositions = sensitive ? previous.termId2SensitivePosition() :
+                previous.termId2InsensitivePosition();
+        int previousNumberOfTerms = previous.numberOfTerms();
+        int newNumberOfTerms = previousNumberOfTerms + newTerms.size();
+
+        // Sort the new terms
+        CollationKey[] ck = new CollationKey[newTerms.size()];
+        for (int i = 0; i < ck.length; i++)
+            ck[i] = collator.getCollationKey(newTerms.get(i));
+        int[] newSorted = determineSort(ck);
+
+        // Insert each new term before the first existing term that is not smaller
+        int[] sorted = new int[newNumberOfTerms];
+        int previousIndex = 0;
+        int n = 0;
+        for (int newIndex: newSorted) {
+            String term = newTerms.get(newIndex);
+            int lo = previousIndex;
+            int hi = previousNumberOfTerms;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (collator.compare(previous.term(previousSorted.get(mid)), term) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            previousSorted.get(previousIndex, sorted, n, lo - previousIndex);
+            n += lo - previousIndex;
+            previousIndex = lo;
+            sorted[n++] = previousNumberOfTerms + newIndex;
+        }
+        previousSorted.get(previousIndex, sorted, n, previousNumberOfTerms - previousIndex);
+
+        // Determine sort positions (terms that are considered equal get the same sort position)
+        int[] positions = new int[newNumberOfTerms];
+        int prevSortPosition = -1;
+        int prevTermId = -1;
+        for (int i = 0; i < newNumberOfTerms; i++) {
+            int termId = sorted[i];
+            boolean equalToPrevious;
+            if (prevTermId < 0)
+                equalToPrevious = false;
+            else if (termId < previousNumberOfTerms && prevTermId < previousNumberOfTerms)
+                equalToPrevious = previousPositions.get(termId) == previousPositions.get(prevTermId);
+            else
+                equalToPrevious = collator.compare(allTerms.apply(prevTermId), allTerms.apply(termId)) == 0;
+            if (!equalToPrevious)
+                prevSortPosition = i;
+            positions[termId] = prevSortPosition;
+            prevTermId = termId;
+        }
+        return Pair.of(sorted, positions);
+    }
+
     private String[] readTermsFromIndex(IndexReader indexReader, String luceneField) {
         // Intentionally single-threaded; multi-threaded is slower.
         // Probably because reading from a single file sequentially is more efficient than alternating between
@@ -287,10 +680,9 @@ public class TermsGlobal implements Terms {
                                 return null;
                             Terms terms = blTerms.reader();
                             String[] segmentTerms = readTermsFromSegment(terms);
-                            int[] segmentToGlobal;
+                            int[] segmentToGlobal = new int[segmentTerms.length];
                             synchronized (segmentToGlobalTermIds) {
-                                segmentToGlobal = segmentToGlobalTermIds.computeIfAbsent(lrc,
-                                        __ -> new int[segmentTerms.length]);
+                                segmentToGlobalTermIds.put(lrc, IntBuffer.wrap(segmentToGlobal));
                             }
                             synchronized (globalTermIds) {
                                 for (int segmentTermId = 0; segmentTermId < segmentTerms.length; segmentTermId++) {
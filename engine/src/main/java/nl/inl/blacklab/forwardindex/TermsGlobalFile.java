@@ -0,0 +1,380 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.ibm.icu.text.Collator;
+import com.ibm.icu.text.RuleBasedCollator;
+
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+
+/**
+ * Sidecar file with the global terms list and sort orders for a field (see {@link TermsGlobal}).
+ * <p>
+ * Determining the global terms and sort orders means reading all terms from all segments and
+ * sorting them, which can take minutes for large indexes. So we write the result to a file,
+ * keyed by the index commit generation, and memory-map it the next time the index is opened.
+ * <p>
+ * File layout: header length (int), header (field, generation, collator signatures, number of
+ * terms, and the id and number of terms of each segment), then the data sections: the four
+ * sort order arrays, the term string offsets, the segment-to-global term id array for each
+ * segment, and finally the term strings (UTF-8).
+ */
+final class TermsGlobalFile {
+
+    /** Identifies our file type */
+    private static final int MAGIC_NUMBER = 0x424C5447; // "BLTG"
+
+    /** Increase when the file format changes; older files will be ignored */
+    private static final int FORMAT_VERSION = 1;
+
+    /** File extension for our files */
+    private static final String EXTENSION = ".blterms";
+
+    /** Name of the field these terms are for */
+    private final String luceneField;
+
+    /** Commit generation this file was written for */
+    private final long generation;
+
+    private final String collatorSignature;
+
+    private final int numberOfTerms;
+
+    private final IntBuffer sensitive2TermId;
+
+    private final IntBuffer termId2SensitivePosition;
+
+    private final IntBuffer insensitive2TermId;
+
+    private final IntBuffer termId2InsensitivePosition;
+
+    /** Offset of each term string in termStrings (plus one extra for the end of the last one) */
+    private final IntBuffer termStringOffsets;
+
+    /** Term strings (UTF-8) */
+    private final ByteBuffer termStrings;
+
+    /** Segment-to-global term ids, by segment id */
+    private final Map<String, IntBuffer> segmentToGlobalTermIds;
+
+    private TermsGlobalFile(String luceneField, long generation, String collatorSignature, int numberOfTerms,
+            IntBuffer sensitive2TermId, IntBuffer termId2SensitivePosition, IntBuffer insensitive2TermId,
+            IntBuffer termId2InsensitivePosition, IntBuffer termStringOffsets, ByteBuffer termStrings,
+            Map<String, IntBuffer> segmentToGlobalTermIds) {
+        this.luceneField = luceneField;
+        this.generation = generation;
+        this.collatorSignature = collatorSignature;
+        this.numberOfTerms = numberOfTerms;
+        this.sensitive2TermId = sensitive2TermId;
+        this.termId2SensitivePosition = termId2SensitivePosition;
+        this.insensitive2TermId = insensitive2TermId;
+        this.termId2InsensitivePosition = termId2InsensitivePosition;
+        this.termStringOffsets = termStringOffsets;
+        this.termStrings = termStrings;
+        this.segmentToGlobalTermIds = segmentToGlobalTermIds;
+    }
+
+    /**
+     * Get the file for a field and commit generation.
+     *
+     * @param dir directory containing the files
+     * @param luceneField field
+     * @param generation index commit generation
+     * @return the file
+     */
+    static File file(File dir, String luceneField, long generation) {
+        return new File(dir, fileNamePrefix(luceneField) + generation + EXTENSION);
+    }
+
+    /** Field names can contain characters that are not allowed in file names, so we replace those. */
+    private static String fileNamePrefix(String luceneField) {
+        return luceneField.replaceAll("[^A-Za-z0-9_\\-]", "_") + "-" +
+                Integer.toHexString(luceneField.hashCode()) + "-";
+    }
+
+    /**
+     * Find the file for this field with the highest commit generation.
+     *
+     * @param dir directory containing the files
+     * @param luceneField field
+     * @return the file, or null if there are no files for this field
+     */
+    static File latest(File dir, String luceneField) {
+        String prefix = fileNamePrefix(luceneField);
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION));
+        File latest = null;
+        long latestGeneration = -1;
+        if (files != null) {
+            for (File f: files) {
+                String name = f.getName();
+                try {
+                    long generation = Long.parseLong(
+                            name.substring(prefix.length(), name.length() - EXTENSION.length()));
+                    if (generation > latestGeneration) {
+                        latest = f;
+                        latestGeneration = generation;
+                    }
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Delete files for this field, except the one for the specified generation.
+     *
+     * @param dir directory containing the files
+     * @param luceneField field
+     * @param keepGeneration generation to keep
+     */
+    static void deleteOtherGenerations(File dir, String luceneField, long keepGeneration) {
+        String prefix = fileNamePrefix(luceneField);
+        String keep = file(dir, luceneField, keepGeneration).getName();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION) &&
+                !name.equals(keep));
+        if (files != null) {
+            for (File f: files) {
+                // (if this fails, we'll try again next time)
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Describe the collators, so we can tell if the sort orders in a file are still valid.
+     *
+     * @param collators collators for the field
+     * @return signature
+     */
+    static String collatorSignature(Collators collators) {
+        return collatorSignature(collators.get(MatchSensitivity.SENSITIVE)) +
+                "|" + collatorSignature(collators.get(MatchSensitivity.INSENSITIVE));
+    }
+
+    private static String collatorSignature(Collator collator) {
+        String rules = collator instanceof RuleBasedCollator rbc ? Integer.toHexString(rbc.getRules().hashCode()) :
+                collator.getClass().getName();
+        return collator.getVersion() + ":" + collator.getStrength() + ":" + rules;
+    }
+
+    /**
+     * Write a terms file.
+     * <p>
+     * The file is written to a unique temporary file first and then atomically moved into place,
+     * so readers never see an incomplete file, even if several processes write it at the same time.
+     *
+     * @param file file to write
+     * @param luceneField field
+     * @param generation index commit generation
+     * @param collatorSignature signature of the collators used for the sort orders
+     * @param numberOfTerms number of global terms
+     * @param terms gets term string by global term id
+     * @param sensitive2TermId term id for each sensitive sort position
+     * @param termId2SensitivePosition sensitive sort position for each term id
+     * @param insensitive2TermId term id for each insensitive sort position
+     * @param termId2InsensitivePosition insensitive sort position for each term id
+     * @param segmentToGlobalTermIds global term ids for each segment term id, by segment id
+     */
+    static void write(File file, String luceneField, long generation, String collatorSignature, int numberOfTerms,
+            IntFunction<String> terms, IntBuffer sensitive2TermId, IntBuffer termId2SensitivePosition,
+            IntBuffer insensitive2TermId, IntBuffer termId2InsensitivePosition,
+            Map<String, IntBuffer> segmentToGlobalTermIds) throws IOException {
+
+        // Determine term string offsets and check that everything fits in our sections
+        // (we encode the strings again when writing them, so we don't need to keep them all in memory)
+        int[] termStringOffsets = new int[numberOfTerms + 1];
+        long stringsLength = 0;
+        for (int i = 0; i < numberOfTerms; i++) {
+            termStringOffsets[i] = (int) stringsLength;
+            stringsLength += terms.apply(i).getBytes(StandardCharsets.UTF_8).length;
+        }
+        termStringOffsets[numberOfTerms] = (int) stringsLength;
+        if (stringsLength > Integer.MAX_VALUE || (long) (numberOfTerms + 1) * Integer.BYTES > Integer.MAX_VALUE)
+            throw new IOException("Too many terms to write terms file");
+
+        // Write header to a buffer first, so we can write its length
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeInt(MAGIC_NUMBER);
+            header.writeInt(FORMAT_VERSION);
+            header.writeUTF(luceneField);
+            header.writeLong(generation);
+            header.writeUTF(collatorSignature);
+            header.writeInt(numberOfTerms);
+            header.writeInt((int) stringsLength);
+            header.writeInt(segmentToGlobalTermIds.size());
+            for (Map.Entry<String, IntBuffer> e: segmentToGlobalTermIds.entrySet()) {
+                header.writeUTF(e.getKey());
+                header.writeInt(e.getValue().limit());
+            }
+        }
+
+        // (use a unique temporary file, so processes writing the same file at the same time don't interfere;
+        //  it doesn't end with our extension, so it's never mistaken for a terms file)
+        File tmp = File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            writeInts(out, sensitive2TermId);
+            writeInts(out, termId2SensitivePosition);
+            writeInts(out, insensitive2TermId);
+            writeInts(out, termId2InsensitivePosition);
+            writeInts(out, IntBuffer.wrap(termStringOffsets));
+            for (IntBuffer segmentToGlobal: segmentToGlobalTermIds.values())
+                writeInts(out, segmentToGlobal);
+            for (int i = 0; i < numberOfTerms; i++)
+                out.write(terms.apply(i).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer ints) throws IOException {
+        for (int i = 0; i < ints.limit(); i++)
+            out.writeInt(ints.get(i));
+    }
+
+    /**
+     * Open a terms file by memory-mapping it.
+     *
+     * @param file file to open
+     * @return the terms file, or null if it's not a valid terms file for this format version
+     */
+    static TermsGlobalFile open(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Read header
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            ch.read(lengthBuffer, 0);
+            int headerLength = lengthBuffer.getInt(0);
+            if (headerLength <= 0 || headerLength > ch.size())
+                return null;
+            ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength);
+            ch.read(headerBuffer, Integer.BYTES);
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBuffer.array()));
+            if (header.readInt() != MAGIC_NUMBER || header.readInt() != FORMAT_VERSION)
+                return null;
+            String luceneField = header.readUTF();
+            long generation = header.readLong();
+            String collatorSignature = header.readUTF();
+            int numberOfTerms = header.readInt();
+            int stringsLength = header.readInt();
+            int numberOfSegments = header.readInt();
+            Map<String, Integer> segmentNumberOfTerms = new LinkedHashMap<>();
+            for (int i = 0; i < numberOfSegments; i++) {
+                String segmentId = header.readUTF();
+                segmentNumberOfTerms.put(segmentId, header.readInt());
+            }
+
+            // Map the data sections
+            long position = Integer.BYTES + headerLength;
+            long termArrayBytes = (long) numberOfTerms * Integer.BYTES;
+            IntBuffer[] sortArrays = new IntBuffer[4];
+            for (int i = 0; i < sortArrays.length; i++) {
+                sortArrays[i] = mapInts(ch, position, numberOfTerms);
+                position += termArrayBytes;
+            }
+            IntBuffer termStringOffsets = mapInts(ch, position, numberOfTerms + 1);
+            position += termArrayBytes + Integer.BYTES;
+            Map<String, IntBuffer> segmentToGlobalTermIds = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e: segmentNumberOfTerms.entrySet()) {
+                segmentToGlobalTermIds.put(e.getKey(), mapInts(ch, position, e.getValue()));
+                position += (long) e.getValue() * Integer.BYTES;
+            }
+            if (position + stringsLength != ch.size())
+                throw new IOException("Terms file has unexpected length: " + file);
+            ByteBuffer termStrings = ch.map(FileChannel.MapMode.READ_ONLY, position, stringsLength);
+            return new TermsGlobalFile(luceneField, generation, collatorSignature, numberOfTerms,
+                    sortArrays[0], sortArrays[1], sortArrays[2], sortArrays[3], termStringOffsets, termStrings,
+                    segmentToGlobalTermIds);
+        }
+    }
+
+    private static IntBuffer mapInts(FileChannel ch, long position, int numberOfInts) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, position, (long) numberOfInts * Integer.BYTES).asIntBuffer();
+    }
+
+    String luceneField() {
+        return luceneField;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    String collatorSignature() {
+        return collatorSignature;
+    }
+
+    int numberOfTerms() {
+        return numberOfTerms;
+    }
+
+    IntBuffer sensitive2TermId() {
+        return sensitive2TermId;
+    }
+
+    IntBuffer termId2SensitivePosition() {
+        return termId2SensitivePosition;
+    }
+
+    IntBuffer insensitive2TermId() {
+        return insensitive2TermId;
+    }
+
+    IntBuffer termId2InsensitivePosition() {
+        return termId2InsensitivePosition;
+    }
+
+    /**
+     * Get the global term ids for a segment's term ids.
+     *
+     * @param segmentId segment id
+     * @return global term ids, or null if this segment is not in the file
+     */
+    IntBuffer segmentToGlobalTermIds(String segmentId) {
+        return segmentToGlobalTermIds.get(segmentId);
+    }
+
+    /** @return ids of the segments in this file */
+    Iterable<String> segmentIds() {
+        return segmentToGlobalTermIds.keySet();
+    }
+
+    /**
+     * Get a term string.
+     * <p>
+     * Thread-safe.
+     *
+     * @param termId global term id
+     * @return term string
+     */
+    String term(int termId) {
+        int start = termStringOffsets.get(termId);
+        byte[] bytes = new byte[termStringOffsets.get(termId + 1) - start];
+        termStrings.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
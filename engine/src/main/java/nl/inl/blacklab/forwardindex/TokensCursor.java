@@ -0,0 +1,99 @@
+package nl.inl.blacklab.forwardindex;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Reads term ids from (part of) a document in a segment's forward index, without allocating.
+ * <p>
+ * Unlike {@link AnnotationForwardIndex#retrieveParts(int, int[], int[])}, which returns a new
+ * array for every snippet, a cursor decodes term ids in place from the (memory-mapped) tokens
+ * file. It can be repositioned as often as needed, so code that processes many hits (concordances,
+ * context sorting, collocations) should get one cursor per segment and reuse it.
+ * <p>
+ * Typical use:
+ * <pre>
+ * cursor.reset(segmentDocId, start, end);
+ * while (cursor.hasNext()) {
+ *     int termId = cursor.nextToken();
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * Term ids are segment-local. Implementations are not threadsafe.
+ */
+@NotThreadSafe
+public interface TokensCursor {
+
+    /**
+     * Position the cursor on part of a document.
+     * <p>
+     * Just like with retrieveParts, -1 for start means start of document, and -1 for end
+     * (or an end beyond the document length) means end of document.
+     *
+     * @param docId segment-local docId of the document
+     * @param start first token position to read
+     * @param end position after the last token to read
+     */
+    void reset(int docId, int start, int end);
+
+    /**
+     * Position the cursor on an entire document.
+     *
+     * @param docId segment-local docId of the document
+     */
+    default void reset(int docId) {
+        reset(docId, -1, -1);
+    }
+
+    /**
+     * Get the length of the current document.
+     *
+     * @return doc length in tokens (including the "extra closing token")
+     */
+    int docLength();
+
+    /**
+     * Get the position nextToken() will read from.
+     *
+     * @return current token position
+     */
+    int position();
+
+    /**
+     * Get the end of the part we're reading (exclusive).
+     *
+     * @return end position
+     */
+    int end();
+
+    /**
+     * Are there more tokens in the part we're reading?
+     *
+     * @return true if nextToken() can be called
+     */
+    boolean hasNext();
+
+    /**
+     * Read the term id at the current position and advance.
+     *
+     * @return segment-local term id
+     */
+    int nextToken();
+
+    /**
+     * Read the term id at any position in the current document.
+     * <p>
+     * Doesn't affect the current position.
+     *
+     * @param position token position
+     * @return segment-local term id
+     */
+    int tokenAt(int position);
+
+    /**
+     * Get the terms for the field we're reading.
+     *
+     * @return terms object for this field in this segment
+     */
+    Terms terms();
+}
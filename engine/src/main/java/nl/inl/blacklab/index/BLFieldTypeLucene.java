@@ -13,6 +13,7 @@ import org.apache.lucene.index.IndexableFieldType;
 
 import com.ibm.icu.text.Collator;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCodec;
 import nl.inl.blacklab.config.BLConfigCollator;
 import nl.inl.blacklab.forwardindex.Collators;
 import nl.inl.blacklab.search.BlackLab;
@@ -57,12 +58,21 @@ public class BLFieldTypeLucene implements BLFieldType {
     }
 
     public static synchronized BLFieldType contentStore() {
-        return getFieldType(false, false, true, null);
+        return contentStore(null);
+    }
+
+    /**
+     * Get the field type for a content store field.
+     *
+     * @param blockCodecName how to compress the content store blocks (null for the default)
+     */
+    public static synchronized BLFieldType contentStore(String blockCodecName) {
+        return getFieldType(false, false, true, null, blockCodecName);
     }
 
     public static synchronized BLFieldType annotationSensitivity(boolean offsets, boolean forwardIndex,
             RelationsStrategy relationsStrategy) {
-        return getFieldType(offsets, forwardIndex, false, relationsStrategy);
+        return getFieldType(offsets, forwardIndex, false, relationsStrategy, null);
     }
 
     /**
@@ -72,15 +82,17 @@ public class BLFieldTypeLucene implements BLFieldType {
      * @param forwardIndex whether to store a forward index
      * @param contentStore whether to store a content store
      * @param strategy the relation strategy (if this is a relation field; null otherwise)
+     * @param blockCodecName content store block codec (if this is a content store field; null for default)
      */
     private static synchronized BLFieldType getFieldType(boolean offsets, boolean forwardIndex, boolean contentStore,
-            RelationsStrategy strategy) {
+            RelationsStrategy strategy, String blockCodecName) {
         if (contentStore && (offsets || forwardIndex))
             throw new IllegalArgumentException("Field can either be content store or can have offsets/forward index, "
                     + "not both!");
 
         String key = (offsets ? "O" : "-") + (forwardIndex ? "F" : "-") + (contentStore ? "C" : "-") +
-                "[" + (strategy != null ? strategy.getName() : "-") + "]";
+                "[" + (strategy != null ? strategy.getName() : "-") + "]" +
+                "[" + (blockCodecName != null ? blockCodecName : "-") + "]";
         return fieldTypeCache.computeIfAbsent(key, (__) -> {
             FieldType type = new FieldType();
             type.setStored(contentStore);
@@ -99,6 +111,11 @@ public class BLFieldTypeLucene implements BLFieldType {
                 // (we set the field attribute regardless of our index format, but that's okay, it doesn't hurt anything
                 //  if not used)
                 type.putAttribute(BLFA_CONTENT_STORE, "true");
+                if (blockCodecName != null) {
+                    // Check that the codec exists before we start indexing
+                    ContentStoreBlockCodec.fromName(blockCodecName);
+                    type.putAttribute(BLFA_CONTENT_STORE_CODEC, blockCodecName);
+                }
             }
             if (forwardIndex) {
                 // indicate that this field should get a forward index when written to the index
@@ -170,6 +187,9 @@ public class BLFieldTypeLucene implements BLFieldType {
     /** Lucene field attribute. Does the field have a content store? */
     private static final String BLFA_CONTENT_STORE = "BL_hasContentStore";
 
+    /** Lucene field attribute. How should content store blocks be compressed? (see ContentStoreBlockCodec.fromName) */
+    private static final String BLFA_CONTENT_STORE_CODEC = "BL_contentStoreCodec";
+
     /** Lucene field attribute. How is this relation field encoded?
      *  ("naive-separate-terms" / "single-term" / ...)
      */
@@ -204,6 +224,18 @@ public class BLFieldTypeLucene implements BLFieldType {
         return v != null && v.equals("true");
     }
 
+    /**
+     * What codec should we use to write content store blocks for this field?
+     *
+     * (When reading, the codec used is recorded with each value)
+     *
+     * @param fieldInfo content store field
+     * @return codec to use for writing
+     */
+    public static ContentStoreBlockCodec getContentStoreBlockCodec(FieldInfo fieldInfo) {
+        return ContentStoreBlockCodec.fromName(fieldInfo.getAttribute(BLFA_CONTENT_STORE_CODEC));
+    }
+
     public static RelationsStrategy getRelationsStrategy(FieldInfo fieldInfo) {
         String strategyName = fieldInfo.getAttribute(BLFA_RELATION_STRATEGY);
         if (StringUtils.isEmpty(strategyName))
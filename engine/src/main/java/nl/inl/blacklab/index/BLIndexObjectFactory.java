@@ -16,7 +16,13 @@ public interface BLIndexObjectFactory {
 
     BLFieldType fieldTypeMetadata(boolean tokenized);
 
-    BLFieldType fieldTypeContentStore();
+    /**
+     * Get the field type for content store fields.
+     *
+     * @param blockCodecName how to compress content store blocks (see ContentStoreBlockCodec.fromName; null for default)
+     * @return field type
+     */
+    BLFieldType fieldTypeContentStore(String blockCodecName);
 
     BLFieldType fieldTypeAnnotationSensitivity(boolean offsets, boolean forwardIndex,
             RelationsStrategy relationsStrategy);
@@ -43,8 +43,8 @@ public class BLIndexObjectFactoryLucene implements BLIndexObjectFactory {
     }
 
     @Override
-    public BLFieldType fieldTypeContentStore() {
-        return BLFieldTypeLucene.contentStore();
+    public BLFieldType fieldTypeContentStore(String blockCodecName) {
+        return BLFieldTypeLucene.contentStore(blockCodecName);
     }
 
     @Override
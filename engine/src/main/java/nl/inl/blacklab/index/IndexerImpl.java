@@ -348,7 +348,8 @@ class IndexerImpl implements DocWriter, Indexer {
         }
 
         String luceneFieldName = AnnotatedFieldNameUtil.contentStoreField(contentStoreName);
-        BLFieldType fieldType = indexWriter.indexObjectFactory().fieldTypeContentStore();
+        String blockCodecName = indexWriter.metadata().contentStoreCodec();
+        BLFieldType fieldType = indexWriter.indexObjectFactory().fieldTypeContentStore(blockCodecName);
 
         currentDoc.addField(luceneFieldName, document.toString(), fieldType);
     }
@@ -102,6 +102,9 @@ public class ConfigInputFormat {
     /** Should we store the document in the content store? (default: yes) */
     private boolean store = true;
 
+    /** How to compress content store blocks (uncompressed, zlib, lz4, lz4-high; null for default) */
+    private String contentStoreCodec = null;
+
     /**
      * Before adding metadata fields to the document, this name mapping is applied.
      */
@@ -345,6 +348,14 @@ public class ConfigInputFormat {
         this.store = store;
     }
 
+    public String getContentStoreCodec() {
+        return contentStoreCodec;
+    }
+
+    public void setContentStoreCodec(String contentStoreCodec) {
+        this.contentStoreCodec = contentStoreCodec;
+    }
+
     public String getMetadataDefaultAnalyzer() {
         return metadataDefaultAnalyzer;
     }
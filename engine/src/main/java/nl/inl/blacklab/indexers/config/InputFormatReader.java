@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCodec;
 import nl.inl.blacklab.exceptions.InvalidInputFormatConfig;
 import nl.inl.blacklab.index.DocumentFormats;
 import nl.inl.blacklab.index.InputFormat;
@@ -164,6 +165,16 @@ public class InputFormatReader extends YamlJsonReader {
             case "store":
                 cfg.setStore(bool(e));
                 break;
+            case "contentStoreCodec": {
+                String codecName = str(e);
+                try {
+                    ContentStoreBlockCodec.fromName(codecName); // check that it exists
+                } catch (IllegalArgumentException ex) {
+                    throw new InvalidInputFormatConfig(ex.getMessage() + inFormat());
+                }
+                cfg.setContentStoreCodec(codecName);
+                break;
+            }
             case "indexFieldAs":
                 readStringMap(e, cfg.indexFieldAs);
                 break;
@@ -10,6 +10,7 @@ import org.apache.logging.log4j.Logger;
 import com.ibm.icu.text.CollationKey;
 
 import it.unimi.dsi.fastutil.longs.LongComparator;
+import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
@@ -203,6 +204,61 @@ public abstract class HitProperty implements ResultProperty, LongComparator {
                 cache.computeIfAbsent(str, PropertyValue.collator::getCollationKey);
     }
 
+    /**
+     * Get a sort key for each hit that can be compared as a primitive long.
+     *
+     * Sorting on these keys (ascending) gives the same order as sorting using compare(),
+     * including reverse, but is much faster because we can use a radix sort. Properties
+     * that can't represent their values this way return null.
+     *
+     * @return a new array of sort keys (one per hit), or null if not supported
+     */
+    public long[] packedSortKeys() {
+        return null;
+    }
+
+    /**
+     * Can this property produce group keys? (see {@link #groupKeys()})
+     *
+     * Even if this returns true, groupKeys() may still return null for a particular set of hits.
+     *
+     * @return true if group keys may be available
+     */
+    public boolean supportsGroupKeys() {
+        return false;
+    }
+
+    /**
+     * Get a key for each hit that can be used for grouping, as a primitive long.
+     *
+     * Hits with the same key are guaranteed to have equal values (hits with different keys may
+     * still have equal values as well). This allows us to group hits without creating a
+     * PropertyValue for each hit: we only need one per distinct key.
+     *
+     * Keys are only meaningful within this property instance (e.g. for a single segment).
+     *
+     * @return a new array of group keys (one per hit), or null if not supported
+     */
+    public long[] groupKeys() {
+        return null;
+    }
+
+    /**
+     * Group keys for properties that only depend on the hit's document: the document id.
+     *
+     * @return a new array of group keys (one per hit), or null if there are too many hits
+     */
+    protected long[] docIdGroupKeys() {
+        Hits hits = context.hits();
+        long size = hits.size();
+        if (size > Constants.JAVA_MAX_ARRAY_SIZE)
+            return null;
+        long[] keys = new long[(int) size];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = hits.doc(i);
+        return keys;
+    }
+
     // A default implementation is nice, but slow.
     @Override
     public int compare(long indexA, long indexB) {
@@ -374,6 +374,72 @@ public abstract class HitPropertyContextBase extends HitProperty {
         return reverse ? Arrays.compare(cb, ca) : Arrays.compare(ca, cb);
     }
 
+    /**
+     * Pack the context sort positions for each hit into a long, if they fit.
+     *
+     * Each token is stored as (sortPosition - minSortPosition + 1) in as few bits as
+     * possible, first token in the highest bits. Missing tokens are stored as 0, so a
+     * shorter context sorts before a longer one with the same prefix, just like compare().
+     * This works for short contexts like a single word, or a few words of lemma context.
+     *
+     * @return packed sort keys, or null if the contexts are too long to pack
+     */
+    @Override
+    public long[] packedSortKeys() {
+        return packKeys(true);
+    }
+
+    @Override
+    public boolean supportsGroupKeys() {
+        return true;
+    }
+
+    /**
+     * Packed context sort positions (see {@link #packedSortKeys()}), without applying reverse.
+     *
+     * Hits with the same packed key have the same context sort positions, so their values are equal.
+     *
+     * @return group keys, or null if the contexts are too long to pack
+     */
+    @Override
+    public long[] groupKeys() {
+        return packKeys(false);
+    }
+
+    private long[] packKeys(boolean applyReverse) {
+        ensureContextFetched();
+        long size = contextSortOrder.size64();
+        if (size > Constants.JAVA_MAX_ARRAY_SIZE)
+            return null;
+        int maxLength = 0;
+        long min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int[] sortOrder: contextSortOrder) {
+            maxLength = Math.max(maxLength, sortOrder.length);
+            for (int sortPosition: sortOrder) {
+                min = Math.min(min, sortPosition);
+                max = Math.max(max, sortPosition);
+            }
+        }
+        long[] keys = new long[(int) size];
+        if (maxLength == 0)
+            return keys; // all contexts are empty
+        int bitsPerToken = Long.SIZE - Long.numberOfLeadingZeros(max - min + 1);
+        if ((long) bitsPerToken * maxLength >= Long.SIZE)
+            return null;
+        int i = 0;
+        for (int[] sortOrder: contextSortOrder) {
+            long key = 0;
+            for (int j = 0; j < maxLength; j++) {
+                key <<= bitsPerToken;
+                if (j < sortOrder.length)
+                    key |= sortOrder[j] - min + 1;
+            }
+            keys[i] = applyReverse && reverse ? -key : key;
+            i++;
+        }
+        return keys;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
@@ -79,6 +79,16 @@ public class HitPropertyDoc extends HitProperty {
         return true;
     }
 
+    @Override
+    public boolean supportsGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long[] groupKeys() {
+        return docIdGroupKeys();
+    }
+
     @Override
     public DocProperty docPropsOnly() {
         DocPropertyId result = new DocPropertyId();
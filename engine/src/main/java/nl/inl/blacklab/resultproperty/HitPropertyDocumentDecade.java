@@ -103,6 +103,16 @@ public class HitPropertyDocumentDecade extends HitProperty {
         return true;
     }
 
+    @Override
+    public boolean supportsGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long[] groupKeys() {
+        return docIdGroupKeys();
+    }
+
     @Override
     public DocProperty docPropsOnly() {
         return reverse ? docPropertyDocumentDecade.reverse() : docPropertyDocumentDecade;
@@ -51,6 +51,16 @@ public class HitPropertyDocumentId extends HitProperty {
         return serializeReverse() + ID;
     }
 
+    @Override
+    public boolean supportsGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long[] groupKeys() {
+        return docIdGroupKeys();
+    }
+
     @Override
     public DocProperty docPropsOnly() {
         DocPropertyId result = new DocPropertyId();
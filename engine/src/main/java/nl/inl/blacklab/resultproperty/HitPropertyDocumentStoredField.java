@@ -100,6 +100,16 @@ public class HitPropertyDocumentStoredField extends HitProperty {
         return true;
     }
 
+    @Override
+    public boolean supportsGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long[] groupKeys() {
+        return docIdGroupKeys();
+    }
+
     @Override
     public DocProperty docPropsOnly() {
         return reverse ? docPropStoredField.reverse() : docPropStoredField;
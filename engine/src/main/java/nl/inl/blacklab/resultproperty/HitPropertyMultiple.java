@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.results.hitresults.ContextSize;
@@ -182,6 +183,51 @@ public class HitPropertyMultiple extends HitProperty implements Iterable<HitProp
         return 0;
     }
 
+    @Override
+    public boolean supportsGroupKeys() {
+        return properties.stream().allMatch(HitProperty::supportsGroupKeys);
+    }
+
+    /**
+     * Combine the group keys of our properties into a single key per hit.
+     *
+     * Each property's keys are first numbered 0..n-1 (in order of first occurrence),
+     * then combined into one number. If the combination doesn't fit in a long, we return null.
+     *
+     * @return group keys, or null if not available
+     */
+    @Override
+    public long[] groupKeys() {
+        long[] combined = null;
+        long combinations = 1;
+        for (HitProperty prop: properties) {
+            long[] keys = prop.groupKeys();
+            if (keys == null)
+                return null;
+            // Number the distinct keys for this property
+            Long2IntOpenHashMap keyNumbers = new Long2IntOpenHashMap();
+            keyNumbers.defaultReturnValue(-1);
+            int[] numbers = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                int number = keyNumbers.get(keys[i]);
+                if (number < 0) {
+                    number = keyNumbers.size();
+                    keyNumbers.put(keys[i], number);
+                }
+                numbers[i] = number;
+            }
+            int distinct = Math.max(1, keyNumbers.size());
+            if (combinations > Long.MAX_VALUE / distinct)
+                return null; // too many combinations to fit in a long
+            combinations *= distinct;
+            if (combined == null)
+                combined = new long[keys.length];
+            for (int i = 0; i < keys.length; i++)
+                combined[i] = combined[i] * distinct + numbers[i];
+        }
+        return combined;
+    }
+
     @Override
     public String name() {
         return properties.stream().map(HitProperty::name).collect(Collectors.joining(", "));
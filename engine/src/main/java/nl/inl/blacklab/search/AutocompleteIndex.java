@@ -0,0 +1,325 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.exceptions.InvalidIndex;
+import nl.inl.util.LuceneUtil;
+import nl.inl.util.StringUtil;
+
+/**
+ * Finds the most frequent terms in a field that start with a prefix. Useful for autocomplete.
+ *
+ * Built once per field per index reader: all terms are stored in byte (UTF-8) order, together
+ * with their frequency in the corpus. A prefix corresponds to a range of terms, found using binary
+ * search. A tree of range maximums then gives us the most frequent terms in that range without
+ * looking at every term, so even short prefixes are fast.
+ *
+ * Instances are immutable and thread-safe.
+ */
+public final class AutocompleteIndex {
+
+    private static final Logger logger = LogManager.getLogger(AutocompleteIndex.class);
+
+    private static final String CACHE_NAME_FOR_METRICS = "blacklab-autocomplete-index-cache";
+
+    /** Memory used per term, apart from the term itself: offset, frequency and two tree entries */
+    private static final int BYTES_PER_TERM = Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    /** Cached for fields that are too large, so we don't try to build their index again */
+    private static final AutocompleteIndex TOO_LARGE = new AutocompleteIndex(new byte[0], new int[] { 0 }, new long[0]);
+
+    /** Identifies a field in an index reader.
+     *
+     * @param reader identifies the index reader (see IndexReader.CacheHelper)
+     * @param luceneField field to autocomplete
+     */
+    private record Key(IndexReader.CacheKey reader, String luceneField) {}
+
+    /** Autocomplete indexes for recently used fields, or null if disabled. Created on first use. */
+    private static Cache<Key, AutocompleteIndex> cache;
+
+    /** Largest autocomplete index we'll build (bytes); fits in the cache and in Java arrays */
+    private static long maxIndexBytes;
+
+    private static boolean initialized = false;
+
+    private static synchronized Cache<Key, AutocompleteIndex> cache() {
+        if (!initialized) {
+            initialized = true;
+            long maxKilobytes = (long) BlackLab.config().getSearch().getAutocompleteCacheSizeMegs() * 1024;
+            if (maxKilobytes > 0) {
+                logger.debug("Creating autocomplete index cache of {} KB", maxKilobytes);
+                maxIndexBytes = Math.min(maxKilobytes * 1024, Constants.JAVA_MAX_ARRAY_SIZE);
+                cache = Caffeine.newBuilder()
+                        .recordStats()
+                        .maximumWeight(maxKilobytes)
+                        // (weigh in kilobytes, so large fields don't overflow the int weight)
+                        .weigher((Key key, AutocompleteIndex index) ->
+                                (int) Math.min(Integer.MAX_VALUE, index.memoryUsageBytes() / 1024 + 1))
+                        .build();
+                CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME_FOR_METRICS);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Find the most frequent terms in a field starting with a prefix.
+     *
+     * Uses the field's autocomplete index if it fits in the cache. Otherwise (or if the
+     * cache is disabled), scans the terms starting with the prefix, which gives them in
+     * alphabetical order instead of most frequent first.
+     *
+     * @param reader index reader
+     * @param luceneField Lucene field to autocomplete (e.g. an annotation sensitivity or metadata field)
+     * @param prefix prefix to find terms for
+     * @param sensitive if false, the prefix is made case- and diacritics-insensitive first
+     * @param maxResults max. number of terms to return
+     * @return matching terms
+     */
+    public static List<String> find(IndexReader reader, String luceneField, String prefix, boolean sensitive,
+            int maxResults) {
+        return find(get(reader, luceneField), reader, luceneField, prefix, sensitive, maxResults);
+    }
+
+    /** Find terms using an autocomplete index, or using a prefix scan if index is null. */
+    static List<String> find(AutocompleteIndex index, IndexReader reader, String luceneField, String prefix,
+            boolean sensitive, int maxResults) {
+        if (index == null) {
+            List<String> terms = LuceneUtil.findTermsByPrefix(reader, luceneField, prefix, sensitive, maxResults);
+            return terms.size() > maxResults ? terms.subList(0, maxResults) : terms;
+        }
+        return index.find(prefix, sensitive, maxResults);
+    }
+
+    /**
+     * Get the autocomplete index for a field, building it if necessary.
+     *
+     * @param reader index reader
+     * @param luceneField Lucene field to autocomplete (e.g. an annotation sensitivity or metadata field)
+     * @return autocomplete index for this field, or null if the cache is disabled or the index wouldn't fit
+     */
+    public static AutocompleteIndex get(IndexReader reader, String luceneField) {
+        IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+        Cache<Key, AutocompleteIndex> c = cache();
+        if (c == null)
+            return null;
+        if (helper == null)
+            return build(reader, luceneField, maxIndexBytes);
+        AutocompleteIndex index = c.get(new Key(helper.getKey(), luceneField), k -> {
+            AutocompleteIndex built = build(reader, luceneField, maxIndexBytes);
+            if (built == null)
+                logger.debug("Field {} is too large for an autocomplete index, using prefix scan", luceneField);
+            return built == null ? TOO_LARGE : built;
+        });
+        return index == TOO_LARGE ? null : index;
+    }
+
+    /**
+     * Build the autocomplete index for a field, if it isn't too large.
+     *
+     * Term offsets are ints and the term tree has two entries per term, so the field's terms
+     * must also fit in a Java array (see {@link #cache()}).
+     *
+     * @param reader index reader
+     * @param luceneField Lucene field to autocomplete
+     * @param maxBytes largest index to build (bytes)
+     * @return autocomplete index for this field, or null if it would be larger than maxBytes
+     */
+    static AutocompleteIndex build(IndexReader reader, String luceneField, long maxBytes) {
+        ByteArrayList termBytes = new ByteArrayList();
+        IntArrayList termOffsets = new IntArrayList();
+        LongArrayList termFreqs = new LongArrayList();
+        try {
+            // Check the largest segment first; the field has at least as many terms
+            long minTerms = 0;
+            for (LeafReaderContext lrc: reader.leaves()) {
+                Terms segmentTerms = lrc.reader().terms(luceneField);
+                if (segmentTerms != null)
+                    minTerms = Math.max(minTerms, segmentTerms.size());
+            }
+            if (minTerms * BYTES_PER_TERM > maxBytes)
+                return null;
+
+            Terms terms = MultiTerms.getTerms(reader, luceneField);
+            if (terms != null) {
+                // Terms from all segments, merged and in byte order
+                TermsEnum termsEnum = terms.iterator();
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    if ((long) termBytes.size() + term.length + (termFreqs.size() + 1L) * BYTES_PER_TERM > maxBytes)
+                        return null;
+                    termOffsets.add(termBytes.size());
+                    termBytes.addElements(termBytes.size(), term.bytes, term.offset, term.length);
+                    termFreqs.add(termsEnum.totalTermFreq());
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+        termOffsets.add(termBytes.size());
+        return new AutocompleteIndex(termBytes.toByteArray(), termOffsets.toIntArray(), termFreqs.toLongArray());
+    }
+
+    /** UTF-8 bytes of all terms, in byte order */
+    private final byte[] termBytes;
+
+    /** Where each term starts in termBytes (with an extra entry for the end of the last term) */
+    private final int[] termOffsets;
+
+    /** Frequency of each term in the corpus */
+    private final long[] termFreqs;
+
+    /** Number of terms */
+    private final int numberOfTerms;
+
+    /**
+     * Index of the most frequent term in each node's range.
+     *
+     * Bottom-up segment tree: node i has children 2i and 2i+1; leaves are at
+     * numberOfTerms + termIndex.
+     */
+    private final int[] maxTree;
+
+    AutocompleteIndex(byte[] termBytes, int[] termOffsets, long[] termFreqs) {
+        this.termBytes = termBytes;
+        this.termOffsets = termOffsets;
+        this.termFreqs = termFreqs;
+        numberOfTerms = termFreqs.length;
+        maxTree = new int[2 * numberOfTerms];
+        for (int i = 0; i < numberOfTerms; i++)
+            maxTree[numberOfTerms + i] = i;
+        for (int i = numberOfTerms - 1; i > 0; i--)
+            maxTree[i] = moreFrequent(maxTree[2 * i], maxTree[2 * i + 1]);
+    }
+
+    /** Which of two terms is more frequent? (if equal, the first in byte order) */
+    private int moreFrequent(int a, int b) {
+        if (termFreqs[a] != termFreqs[b])
+            return termFreqs[a] > termFreqs[b] ? a : b;
+        return Math.min(a, b);
+    }
+
+    /** Find the most frequent term in a range of terms (end exclusive, must not be empty) */
+    private int mostFrequent(int start, int end) {
+        int best = start;
+        for (int lo = start + numberOfTerms, hi = end + numberOfTerms; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1)
+                best = moreFrequent(best, maxTree[lo++]);
+            if ((hi & 1) == 1)
+                best = moreFrequent(best, maxTree[--hi]);
+        }
+        return best;
+    }
+
+    /**
+     * Compare (the start of) a term to a prefix.
+     *
+     * @param termIndex term to compare
+     * @param prefix prefix (UTF-8)
+     * @return negative, zero or positive if the term sorts before, starts with, or sorts after the prefix
+     */
+    private int compareToPrefix(int termIndex, byte[] prefix) {
+        int start = termOffsets[termIndex];
+        int length = termOffsets[termIndex + 1] - start;
+        int n = Math.min(length, prefix.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.toUnsignedInt(termBytes[start + i]) - Byte.toUnsignedInt(prefix[i]);
+            if (cmp != 0)
+                return cmp;
+        }
+        return length < prefix.length ? -1 : 0;
+    }
+
+    /** Find the first term that doesn't sort before the prefix (or after it, if afterPrefix is true) */
+    private int findBoundary(byte[] prefix, boolean afterPrefix) {
+        int lo = 0, hi = numberOfTerms;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareToPrefix(mid, prefix);
+            if (cmp < 0 || afterPrefix && cmp == 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private String term(int termIndex) {
+        int start = termOffsets[termIndex];
+        return new String(termBytes, start, termOffsets[termIndex + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the most frequent terms starting with a prefix.
+     *
+     * @param prefix prefix to find terms for
+     * @param sensitive if false, the prefix is made case- and diacritics-insensitive first
+     *                  (for fields that contain insensitive terms)
+     * @param maxResults max. number of terms to return
+     * @return matching terms, most frequent first
+     */
+    public List<String> find(String prefix, boolean sensitive, int maxResults) {
+        if (!sensitive)
+            prefix = StringUtil.stripAccents(prefix).toLowerCase();
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int start = findBoundary(prefixBytes, false);
+        int end = findBoundary(prefixBytes, true);
+
+        // Repeatedly take the most frequent term from a range, then look at the rest of that range
+        List<String> results = new ArrayList<>();
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> moreFrequent(a[2], b[2]) == a[2] ? -1 : 1);
+        if (start < end)
+            ranges.add(new int[] { start, end, mostFrequent(start, end) });
+        while (results.size() < maxResults && !ranges.isEmpty()) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            results.add(term(best));
+            if (range[0] < best)
+                ranges.add(new int[] { range[0], best, mostFrequent(range[0], best) });
+            if (best + 1 < range[1])
+                ranges.add(new int[] { best + 1, range[1], mostFrequent(best + 1, range[1]) });
+        }
+        return results;
+    }
+
+    /**
+     * Estimate the memory used by this autocomplete index.
+     *
+     * @return memory used (bytes)
+     */
+    public long memoryUsageBytes() {
+        return termBytes.length + (long) termOffsets.length * Integer.BYTES + (long) termFreqs.length * Long.BYTES +
+                (long) maxTree.length * Integer.BYTES;
+    }
+
+    /**
+     * Get the number of terms in this field.
+     *
+     * @return number of terms
+     */
+    public int numberOfTerms() {
+        return numberOfTerms;
+    }
+}
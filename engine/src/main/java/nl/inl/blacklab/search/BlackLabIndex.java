@@ -192,6 +192,10 @@ public interface BlackLabIndex extends AutoCloseable {
 
     /**
      * Determine the term frequencies for an annotation sensitivity.
+     *
+     * With a filter query, the forward index is used if possible. The forward index only stores one
+     * value at each position, so for annotations with multiple values per position, the term vectors
+     * are used instead. Either way, all values are counted.
      * 
      * @param annotSensitivity the annotation + sensitivity indexing we want the term frequency for
      * @param filterQuery document filter, or null for all documents
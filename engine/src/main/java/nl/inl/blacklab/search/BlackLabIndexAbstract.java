@@ -634,7 +634,7 @@ public abstract class BlackLabIndexAbstract implements BlackLabIndexWriter, Blac
 
         IndexWriterConfig config = new IndexWriterConfig(useAnalyzer);
         config.setOpenMode(create ? OpenMode.CREATE : OpenMode.CREATE_OR_APPEND);
-        config.setRAMBufferSizeMB(150); // faster indexing
+        config.setRAMBufferSizeMB(BlackLab.config().getIndexing().getRamBufferSizeMegs()); // faster indexing
         customizeIndexWriterConfig(config);
         return new IndexWriter(indexLuceneDir, config);
     }
@@ -698,7 +698,13 @@ public abstract class BlackLabIndexAbstract implements BlackLabIndexWriter, Blac
     @Override
     public TermFrequencyList termFrequencies(AnnotationSensitivity annotSensitivity, Query filterQuery,
             Set<String> terms) {
-        Map<String, Integer> freq = LuceneUtil.termFrequencies(searcher(), filterQuery, annotSensitivity, terms);
+        Map<String, Integer> freq;
+        if (filterQuery != null && ForwardIndexTermFrequencies.canUse(this, annotSensitivity)) {
+            // Count using the forward index (much faster than going through term vectors per document)
+            freq = ForwardIndexTermFrequencies.get(this, filterQuery, annotSensitivity, terms);
+        } else {
+            freq = LuceneUtil.termFrequencies(searcher(), filterQuery, annotSensitivity, terms);
+        }
         return new TermFrequencyList(QueryInfo.create(this, annotSensitivity.annotation().field()), freq, true);
     }
 
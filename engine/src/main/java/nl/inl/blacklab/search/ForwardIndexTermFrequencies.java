@@ -0,0 +1,165 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.codec.BlackLabPostingsReader;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.exceptions.InvalidIndex;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.forwardindex.TokensCursor;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.hits.Parallel;
+import nl.inl.util.ThreadAborter;
+
+/**
+ * Determines term frequencies in a subset of documents using the forward index.
+ *
+ * This is a lot faster than going through the term vectors of each document (and
+ * doesn't need term vectors). Each segment is counted separately (in parallel), by segment
+ * term id. Only at the end are term ids converted to strings.
+ *
+ * Note that the forward index only stores one value at each position. So for annotations with
+ * multiple values per position, we can't use it, because the term vectors count all values.
+ * Positions without a value aren't counted.
+ */
+class ForwardIndexTermFrequencies {
+
+    private ForwardIndexTermFrequencies() {
+    }
+
+    /**
+     * Can we determine term frequencies for this annotation sensitivity using the forward index?
+     *
+     * We can if the annotation has a forward index, and it's either for this sensitivity or
+     * sensitive (so we can desensitize the terms ourselves). Also, no position in the index may
+     * have more than one value, or we'd give different results than the term vectors.
+     *
+     * @param index our index
+     * @param annotSensitivity annotation sensitivity we want frequencies for
+     * @return true if we can use the forward index
+     */
+    static boolean canUse(BlackLabIndex index, AnnotationSensitivity annotSensitivity) {
+        Annotation annotation = annotSensitivity.annotation();
+        if (!annotation.hasForwardIndex())
+            return false;
+        MatchSensitivity fiSensitivity = annotation.forwardIndexSensitivity().sensitivity();
+        if (fiSensitivity != annotSensitivity.sensitivity() && fiSensitivity != MatchSensitivity.SENSITIVE)
+            return false;
+        String luceneField = annotation.forwardIndexSensitivity().luceneField();
+        for (LeafReaderContext lrc: index.reader().leaves()) {
+            if (BlackLabPostingsReader.forSegment(lrc).hasMultipleValuesPerPosition(luceneField))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get term frequencies for an annotation in a subset of documents.
+     *
+     * @param index our index
+     * @param documentFilterQuery document filter
+     * @param annotSensitivity annotation sensitivity to get frequencies for (see {@link #canUse(BlackLabIndex, AnnotationSensitivity)})
+     * @param searchTerms terms to get frequencies for, or null/empty for all terms
+     * @return term frequencies
+     */
+    static Map<String, Integer> get(BlackLabIndex index, Query documentFilterQuery,
+            AnnotationSensitivity annotSensitivity, Set<String> searchTerms) {
+        Weight weight;
+        try {
+            Query query = documentFilterQuery.rewrite(index.reader());
+            weight = index.searcher().createWeight(query, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+        String luceneField = annotSensitivity.annotation().forwardIndexSensitivity().luceneField();
+        MatchSensitivity sensitivity = annotSensitivity.sensitivity();
+        boolean allTerms = searchTerms == null || searchTerms.isEmpty();
+
+        List<LeafReaderContext> segments = index.reader().leaves();
+        int numThreads = Math.max(1, Math.min(index.blackLab().maxThreadsPerSearch(), segments.size()));
+        Parallel<LeafReaderContext, Map<String, Integer>> parallel = new Parallel<>(index, numThreads);
+        Map<String, Integer> freq = parallel.mapReduce(segments,
+                lrc -> (long) lrc.reader().maxDoc(),
+                threadSegments -> {
+                    Map<String, Integer> threadFreq = new HashMap<>();
+                    for (LeafReaderContext lrc: threadSegments) {
+                        TokensCursor cursor = BlackLabPostingsReader.forSegment(lrc).tokensCursor(luceneField);
+                        int[] countPerTermId = countSegment(lrc, weight, cursor);
+                        if (countPerTermId == null)
+                            continue;
+                        // Convert segment term ids to strings.
+                        // Note that multiple ids may map to the same string (because of sensitivity settings)
+                        Terms terms = cursor.terms();
+                        for (int termId = 0; termId < countPerTermId.length; termId++) {
+                            if (countPerTermId[termId] == 0)
+                                continue;
+                            String term = sensitivity.desensitize(terms.get(termId));
+                            if (allTerms || searchTerms.contains(term))
+                                threadFreq.merge(term, countPerTermId[termId], Integer::sum);
+                        }
+                    }
+                    return List.of(threadFreq);
+                },
+                (acc, threadFreq) -> threadFreq.forEach((term, count) -> acc.merge(term, count, Integer::sum)),
+                HashMap::new);
+        if (!allTerms) {
+            // Report terms that don't occur as well
+            for (String term: searchTerms)
+                freq.putIfAbsent(term, 0);
+        }
+        return freq;
+    }
+
+    /**
+     * Count tokens in the matching documents of a segment, by segment term id.
+     *
+     * @param lrc segment
+     * @param weight document filter
+     * @param cursor forward index cursor for the annotation
+     * @return number of occurrences per segment term id, or null if no documents match
+     */
+    private static int[] countSegment(LeafReaderContext lrc, Weight weight, TokensCursor cursor) {
+        try {
+            Scorer scorer = weight.scorer(lrc);
+            if (scorer == null)
+                return null;
+            int[] countPerTermId = new int[cursor.terms().numberOfTerms()];
+            Bits liveDocs = lrc.reader().getLiveDocs();
+            DocIdSetIterator it = scorer.iterator();
+            for (int docId = it.nextDoc(); docId != DocIdSetIterator.NO_MORE_DOCS; docId = it.nextDoc()) {
+                if (liveDocs != null && !liveDocs.get(docId))
+                    continue;
+                ThreadAborter.checkAbort();
+                cursor.reset(docId);
+                // Skip the extra closing token at the end of the document
+                int end = cursor.docLength() - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
+                for (int pos = 0; pos < end; pos++) {
+                    int termId = cursor.nextToken();
+                    if (termId != Constants.NO_TERM) // e.g. sparse annotation, or doc without this annotation
+                        countPerTermId[termId]++;
+                }
+            }
+            return countPerTermId;
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedSearch(e);
+        }
+    }
+}
@@ -61,7 +61,7 @@ import nl.inl.util.TimeUtil;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @JsonPropertyOrder({
-    "custom", "contentViewable", "documentFormat", "versionInfo",
+    "custom", "contentViewable", "documentFormat", "contentStoreCodec", "versionInfo",
     "metadataFields", "annotatedFields", "documentFormatConfig", "indexFlags"
 })
 public class IndexMetadataImpl implements IndexMetadataWriter {
@@ -265,6 +265,14 @@ public class IndexMetadataImpl implements IndexMetadataWriter {
      */
     private String documentFormat;
 
+    /**
+     * How content store blocks are compressed (see ContentStoreBlockCodec.fromName).
+     *
+     * Null means the default. Only affects new segments; the codec is recorded with
+     * each stored value, so existing segments can always be read.
+     */
+    private String contentStoreCodec;
+
     @XmlTransient
     protected long tokenCount = 0;
 
@@ -373,6 +381,7 @@ public class IndexMetadataImpl implements IndexMetadataWriter {
 
         contentViewable =  corpusConfig.isContentViewable();
         documentFormat = config.getName();
+        contentStoreCodec = config.getContentStoreCodec();
         versionInfo.populateWithDefaults();
         metadataFields.setDefaultAnalyzer(config.getMetadataDefaultAnalyzer());
         if (corpusConfig.getSpecialFields().containsKey(MetadataFields.SPECIAL_FIELD_SETTING_PID))
@@ -496,6 +505,11 @@ public class IndexMetadataImpl implements IndexMetadataWriter {
         return documentFormat;
     }
 
+    @Override
+    public String contentStoreCodec() {
+        return contentStoreCodec;
+    }
+
     /**
      * What version of the index format is this?
      *
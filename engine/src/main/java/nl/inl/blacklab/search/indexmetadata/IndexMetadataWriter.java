@@ -90,6 +90,13 @@ public interface IndexMetadataWriter extends IndexMetadata {
     @Override
     String documentFormat();
 
+    /**
+     * How should content store blocks be compressed?
+     *
+     * @return codec name (see ContentStoreBlockCodec.fromName), or null for the default
+     */
+    String contentStoreCodec();
+
     default void setIndexFlag(String name, String value) {
         throw new UnsupportedOperationException("Not implemented");
     }
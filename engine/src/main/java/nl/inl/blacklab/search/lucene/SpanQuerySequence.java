@@ -26,6 +26,7 @@ import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
 import nl.inl.blacklab.search.lucene.SpanQueryExpansion.Direction;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombiner;
+import nl.inl.blacklab.search.lucene.optimize.OptimizerSettings;
 import nl.inl.util.StringUtil;
 
 /**
@@ -400,7 +401,7 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
         // By doing it before rewriting, we save the time to expand the regex to all its matching
         // terms, as well
         // as dealing with each of these (sometimes frequent) terms, which can be significant.
-        anyRewritten |= combineAdjacentClauses(cl, index.reader(), ClauseCombiner.all());
+        anyRewritten |= combineAdjacentClauses(cl, index.reader(), ClauseCombiner.all(OptimizerSettings.current()));
         return anyRewritten;
     }
 
@@ -419,7 +420,7 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 
         // Again, try to combine adjacent clauses into more efficient ones. Rewriting clauses may have
         // generated new opportunities for combining clauses.
-        anyRewritten |= combineAdjacentClauses(cl, reader,  ClauseCombiner.all());
+        anyRewritten |= combineAdjacentClauses(cl, reader,  ClauseCombiner.all(OptimizerSettings.current()));
 
         // If any part of the sequence matches the empty sequence, we must
         // rewrite it to several alternatives combined with OR. Do so now.
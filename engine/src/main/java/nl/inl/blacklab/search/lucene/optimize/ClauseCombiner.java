@@ -19,14 +19,20 @@ public abstract class ClauseCombiner {
         return priority(left, right, reader) != CANNOT_COMBINE;
     }
 
-    public static Set<ClauseCombiner> all() {
+    /**
+     * Get all clause combiners.
+     *
+     * @param settings settings for the query we're optimizing
+     * @return the clause combiners
+     */
+    public static Set<ClauseCombiner> all(OptimizerSettings settings) {
         Set<ClauseCombiner> all = new HashSet<>();
         all.add(new ClauseCombinerRepetition());
         all.add(new ClauseCombinerInternalisation());
         all.add(new ClauseCombinerAnyExpansion());
         all.add(new ClauseCombinerDefaultValue());
         all.add(new ClauseCombinerNot());
-        all.add(new ClauseCombinerNfa());
+        all.add(new ClauseCombinerNfa(settings));
         return all;
     }
     
@@ -63,7 +63,7 @@ public class ClauseCombinerNfa extends ClauseCombiner {
     /**
      * The default value of nfaThreshold.
      */
-    public static long defaultForwardIndexMatchingThreshold = 900; //DISABLE: NO_NFA_MATCHING;
+    public static volatile long defaultForwardIndexMatchingThreshold = 900; //DISABLE: NO_NFA_MATCHING;
 
     /**
      * Indicates how expensive fetching a lot of term positions from Lucene is; Used
@@ -80,24 +80,30 @@ public class ClauseCombinerNfa extends ClauseCombiner {
     private static final long COST_RATIO_CONSTANT_FACTOR = 1000;
 
     /**
-     * Should we try forward index matching at all or skip it altogether?
+     * Should we try forward index matching at all or skip it altogether? (default)
      */
-    private static boolean enableForwardIndexmatching = true;
+    private static volatile boolean enableForwardIndexmatching = true;
 
     /**
      * The ratio of estimated numbers of hits that we use to decide whether or not
      * to try NFA-matching with two clauses / subsequences. The lower the number,
-     * the more we use NFA-matching.
+     * the more we use NFA-matching. (default)
      *
      * (we compare this to the absolute "combinability factor"; see below)
      */
-    private static long nfaThreshold = defaultForwardIndexMatchingThreshold;
+    private static volatile long nfaThreshold = defaultForwardIndexMatchingThreshold;
 
     /**
-     * Don't NFA optimization if there's too few unique terms?
+     * Don't NFA optimization if there's too few unique terms? (default)
      * (disable for testing)
      */
-    private static boolean onlyUseNfaForManyUniqueTerms = true;
+    private static volatile boolean onlyUseNfaForManyUniqueTerms = true;
+
+    /*
+     * NOTE: the static settings below are the defaults, used if no OptimizerSettings
+     * were activated for the query being optimized. To use different settings for a
+     * single query, activate OptimizerSettings instead of changing these.
+     */
 
     public static void setDefaultForwardIndexMatchingThreshold(long threshold) {
         ClauseCombinerNfa.defaultForwardIndexMatchingThreshold = threshold;
@@ -107,6 +113,10 @@ public class ClauseCombinerNfa extends ClauseCombiner {
         ClauseCombinerNfa.onlyUseNfaForManyUniqueTerms = onlyUseNfaForManyUniqueTerms;
     }
 
+    static boolean getOnlyUseNfaForManyUniqueTerms() {
+        return onlyUseNfaForManyUniqueTerms;
+    }
+
     public static void setNfaThreshold(long nfaThreshold) {
         ClauseCombinerNfa.nfaThreshold = nfaThreshold;
     }
@@ -119,8 +129,15 @@ public class ClauseCombinerNfa extends ClauseCombiner {
         enableForwardIndexmatching = doNfaMatching;
     }
 
-    private static boolean isForwardIndexMatchingEnabled() {
-        return enableForwardIndexmatching && nfaThreshold > NO_NFA_MATCHING;
+    static boolean isForwardIndexMatchingEnabledByDefault() {
+        return enableForwardIndexmatching;
+    }
+
+    /** Settings for the query we're optimizing */
+    private final OptimizerSettings settings;
+
+    ClauseCombinerNfa(OptimizerSettings settings) {
+        this.settings = settings;
     }
 
     /**
@@ -141,8 +158,8 @@ public class ClauseCombinerNfa extends ClauseCombiner {
      * @param reader index
      * @return the "combinability factor"
      */
-    private static long getFactor(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
-        if (!isForwardIndexMatchingEnabled())
+    private long getFactor(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
+        if (!settings.isForwardIndexMatchingEnabled())
             return 0;
 
         // Estimate the performance cost of matching the whole sequence using reverse matching.
@@ -206,7 +223,7 @@ public class ClauseCombinerNfa extends ClauseCombiner {
     @Override
     public int priority(BLSpanQuery left, BLSpanQuery right, IndexReader reader) {
         boolean traceOptimization = BlackLab.config().getLog().getTrace().isOptimization();
-        if (!isForwardIndexMatchingEnabled()) {
+        if (!settings.isForwardIndexMatchingEnabled()) {
             if (traceOptimization)
                 logger.debug("(CCNFA: nfa matching switched off)");
             return CANNOT_COMBINE;
@@ -221,13 +238,14 @@ public class ClauseCombinerNfa extends ClauseCombiner {
             return CANNOT_COMBINE;
         }
         long absFactor = Math.abs(factor);
+        long nfaThreshold = settings.nfaThreshold();
         if (absFactor > nfaThreshold) {
             if (traceOptimization)
                 logger.debug("(CCNFA: abs(factor) > nfaThreshold (" + nfaThreshold + "))");
             return CANNOT_COMBINE;
         }
 
-        if (onlyUseNfaForManyUniqueTerms) {
+        if (settings.onlyUseNfaForManyUniqueTerms()) {
             long maxTermsRight = LuceneUtil.getMaxTermsPerLeafReader(reader, right.getRealField());
             long maxTermsLeft = LuceneUtil.getMaxTermsPerLeafReader(reader, left.getRealField());
             if (traceOptimization)
@@ -0,0 +1,145 @@
+package nl.inl.blacklab.search.lucene.optimize;
+
+import java.util.Objects;
+
+/**
+ * Settings for optimizing a query, e.g. whether and when to use forward index (NFA) matching.
+ *
+ * Instances are immutable, so different queries can be optimized with different settings at
+ * the same time, without locking.
+ *
+ * Optimizing happens through {@link nl.inl.blacklab.search.lucene.BLSpanQuery#optimize} and
+ * {@link nl.inl.blacklab.search.lucene.BLSpanQuery#rewrite}, which are implemented by every query
+ * class (and the latter is defined by Lucene), so instead of adding a parameter to those, the
+ * settings are activated for the current thread while optimizing a query:
+ *
+ * <pre>
+ * try (OptimizerSettings.Scope ignored = settings.activate()) {
+ *     optimized = query.optimize(reader).rewrite(reader);
+ * }
+ * </pre>
+ *
+ * The settings are then passed explicitly to the {@link ClauseCombiner}s. If no settings
+ * were activated, the defaults are used (see {@link ClauseCombinerNfa#setNfaThreshold(long)} etc.).
+ */
+public final class OptimizerSettings {
+
+    /** Settings activated for the query being optimized on this thread, if any */
+    private static final ThreadLocal<OptimizerSettings> active = new ThreadLocal<>();
+
+    /**
+     * Get the default settings.
+     *
+     * @return default settings
+     */
+    public static OptimizerSettings defaults() {
+        return new OptimizerSettings(ClauseCombinerNfa.isForwardIndexMatchingEnabledByDefault(),
+                ClauseCombinerNfa.getNfaThreshold(), ClauseCombinerNfa.getOnlyUseNfaForManyUniqueTerms());
+    }
+
+    /**
+     * Get the settings for the query being optimized on this thread.
+     *
+     * @return the active settings, or the defaults if none were activated
+     */
+    public static OptimizerSettings current() {
+        OptimizerSettings settings = active.get();
+        return settings == null ? defaults() : settings;
+    }
+
+    /** Restores the previously active settings when closed. */
+    public static final class Scope implements AutoCloseable {
+
+        private final OptimizerSettings previous;
+
+        private Scope(OptimizerSettings previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                active.remove();
+            else
+                active.set(previous);
+        }
+    }
+
+    /** Should we try forward index matching at all? */
+    private final boolean forwardIndexMatchingEnabled;
+
+    /** Threshold for NFA matching (see {@link ClauseCombinerNfa}) */
+    private final long nfaThreshold;
+
+    /** Don't use NFA matching for fields with few unique terms? */
+    private final boolean onlyUseNfaForManyUniqueTerms;
+
+    private OptimizerSettings(boolean forwardIndexMatchingEnabled, long nfaThreshold, boolean onlyUseNfaForManyUniqueTerms) {
+        this.forwardIndexMatchingEnabled = forwardIndexMatchingEnabled;
+        this.nfaThreshold = nfaThreshold;
+        this.onlyUseNfaForManyUniqueTerms = onlyUseNfaForManyUniqueTerms;
+    }
+
+    /**
+     * Activate these settings for the current thread.
+     *
+     * Close the returned scope when done optimizing to restore the previous settings.
+     *
+     * @return scope to close when done
+     */
+    public Scope activate() {
+        Scope scope = new Scope(active.get());
+        active.set(this);
+        return scope;
+    }
+
+    public OptimizerSettings withNfaThreshold(long nfaThreshold) {
+        return new OptimizerSettings(forwardIndexMatchingEnabled, nfaThreshold, onlyUseNfaForManyUniqueTerms);
+    }
+
+    public OptimizerSettings withForwardIndexMatchingEnabled(boolean forwardIndexMatchingEnabled) {
+        return new OptimizerSettings(forwardIndexMatchingEnabled, nfaThreshold, onlyUseNfaForManyUniqueTerms);
+    }
+
+    public OptimizerSettings withOnlyUseNfaForManyUniqueTerms(boolean onlyUseNfaForManyUniqueTerms) {
+        return new OptimizerSettings(forwardIndexMatchingEnabled, nfaThreshold, onlyUseNfaForManyUniqueTerms);
+    }
+
+    public long nfaThreshold() {
+        return nfaThreshold;
+    }
+
+    public boolean onlyUseNfaForManyUniqueTerms() {
+        return onlyUseNfaForManyUniqueTerms;
+    }
+
+    /**
+     * Should we try forward index matching?
+     *
+     * @return true if forward index matching is enabled and the threshold allows it
+     */
+    public boolean isForwardIndexMatchingEnabled() {
+        return forwardIndexMatchingEnabled && nfaThreshold > ClauseCombinerNfa.NO_NFA_MATCHING;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof OptimizerSettings that))
+            return false;
+        return forwardIndexMatchingEnabled == that.forwardIndexMatchingEnabled && nfaThreshold == that.nfaThreshold
+                && onlyUseNfaForManyUniqueTerms == that.onlyUseNfaForManyUniqueTerms;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(forwardIndexMatchingEnabled, nfaThreshold, onlyUseNfaForManyUniqueTerms);
+    }
+
+    @Override
+    public String toString() {
+        return "OptimizerSettings(fiMatching=" + forwardIndexMatchingEnabled + ", nfaThreshold=" + nfaThreshold +
+                ", onlyUseNfaForManyUniqueTerms=" + onlyUseNfaForManyUniqueTerms + ")";
+    }
+}
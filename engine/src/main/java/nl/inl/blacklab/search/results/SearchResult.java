@@ -17,4 +17,19 @@ public interface SearchResult {
      */
     long numberOfResultObjects();
 
+    /**
+     * How much memory do these results take?
+     *
+     * Results that store their hits compactly know this exactly; others estimate it
+     * from the number of result objects.
+     *
+     * @return (estimated) memory use in bytes
+     */
+    default long memoryUsageBytes() {
+        return numberOfResultObjects() * BYTES_PER_RESULT_OBJECT;
+    }
+
+    /** Rough size of a result object, based on a Hit (3 ints + 12 bytes object overhead) */
+    int BYTES_PER_RESULT_OBJECT = 24;
+
 }
@@ -2,6 +2,8 @@ package nl.inl.blacklab.search.results.docs;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -12,10 +14,8 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 import java.util.stream.StreamSupport;
 
-import org.apache.lucene.index.DocValues;
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
@@ -36,7 +36,6 @@ import nl.inl.blacklab.resultproperty.PropContext;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueDoc;
 import nl.inl.blacklab.resultproperty.PropertyValueInt;
-import nl.inl.blacklab.search.BlackLabIndexAbstract;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.lucene.MatchInfoDefs;
 import nl.inl.blacklab.search.results.CorpusSize;
@@ -49,6 +48,7 @@ import nl.inl.blacklab.search.results.hitresults.HitResults;
 import nl.inl.blacklab.search.results.hits.EphemeralHit;
 import nl.inl.blacklab.search.results.hits.Hits;
 import nl.inl.blacklab.search.results.hits.HitsMutable;
+import nl.inl.blacklab.search.results.hits.Parallel;
 import nl.inl.blacklab.search.results.stats.ResultsStats;
 import nl.inl.blacklab.search.results.stats.ResultsStatsPassive;
 
@@ -562,98 +562,98 @@ public class DocResults extends ResultsList<DocResult> implements ResultGroups,
      */
     public CorpusSize subcorpusSize(boolean countTokens) {
         if (corpusSize == null || countTokens && !corpusSize.getTotalCount().hasTokenCount()) {
-            long numberOfTokens;
-            long numberOfDocuments;
-            Map<String, CorpusSize.Count> tokensPerField = new LinkedHashMap<>();
+            IndexReader indexReader = queryInfo().index().reader();
             if (query != null) {
 
                 // Rewrite query (we store the original query, not the rewritten one)
                 try {
-                    query = query.rewrite(queryInfo().index().reader());
+                    query = query.rewrite(indexReader);
                 } catch (IOException e) {
                     throw new InvalidIndex(e);
                 }
 
-                // Fast approach: use the DocValues for the token length field
-                try {
-                    numberOfTokens = countTokens ? 0 : -1;
-                    numberOfDocuments = 0;
-                    Weight weight = queryInfo().index().searcher().createWeight(query, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
-                    String queryField = field().name();
-                    List<AnnotatedField> tokenLengthFields = queryInfo().index().annotatedFields().stream().toList();
-                    for (LeafReaderContext r: queryInfo().index().reader().leaves()) {
-                        LeafReader reader = r.reader();
-                        Bits liveDocs = reader.getLiveDocs();
-                        Scorer scorer = weight.scorer(r);
-                        if (scorer != null) {
-                            DocIdSetIterator it = scorer.iterator();
-                            //NumericDocValues tokenLengthValues = countTokens ? DocValues.getNumeric(reader, tokenLengthField) : null;
-                            Map<String, NumericDocValues> tokenLengthValuesPerField = new LinkedHashMap<>();
-                            tokenLengthFields.forEach(field -> {
-                                try {
-                                    tokenLengthValuesPerField.put(field.name(), countTokens ? DocValues.getNumeric(reader, field.tokenLengthField()) : null);
-                                    tokensPerField.put(field.name(), new CorpusSize.Count(0, 0));
-                                } catch (IOException e) {
-                                    throw new InvalidIndex(e);
+                // Clients often repeat the same metadata filter, so see if we know the size already
+                corpusSize = SubcorpusSizeCache.get(indexReader, query, countTokens);
+                if (corpusSize == null) {
+                    // Run the query on each segment and use the DocValues for the token length fields
+                    Weight weight;
+                    try {
+                        weight = queryInfo().index().searcher().createWeight(query, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+                    } catch (IOException e) {
+                        throw new InvalidIndex("Error determining token count", e);
+                    }
+                    corpusSize = countSubcorpus(indexReader.leaves(), lrc -> lrc.reader().maxDoc(), countTokens,
+                            (lrc, segmentCount) -> {
+                                Scorer scorer = weight.scorer(lrc);
+                                if (scorer == null)
+                                    return;
+                                Bits liveDocs = lrc.reader().getLiveDocs();
+                                DocIdSetIterator it = scorer.iterator();
+                                for (int docId = it.nextDoc(); docId != DocIdSetIterator.NO_MORE_DOCS; docId = it.nextDoc()) {
+                                    if (liveDocs == null || liveDocs.get(docId))
+                                        segmentCount.count(docId);
                                 }
                             });
-                            while (true) {
-                                int docId = it.nextDoc();
-                                if (docId == DocIdSetIterator.NO_MORE_DOCS)
-                                    break;
-                                if (liveDocs == null || liveDocs.get(docId)) {
-                                    numberOfDocuments++;
-                                    if (countTokens) {
-                                        for (Map.Entry<String, NumericDocValues> entry : tokenLengthValuesPerField.entrySet()) {
-                                            String fieldName = entry.getKey();
-                                            NumericDocValues tokenLengthValuesForField = entry.getValue();
-                                            if (tokenLengthValuesForField != null) {
-                                                tokenLengthValuesForField.advanceExact(docId);
-                                                long tokens = tokenLengthValuesForField.longValue()
-                                                        - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
-                                                if (tokens > 0) {
-                                                    numberOfTokens += tokens;
-                                                    tokensPerField.compute(fieldName, (k, v) -> {
-                                                        v.add(1, tokens);
-                                                        return v;
-                                                    });
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    throw new InvalidIndex("Error determining token count", e);
+                    SubcorpusSizeCache.put(indexReader, query, corpusSize);
                 }
             } else {
-                // Slow approach: get the stored field value from each Document
-                // (note that DocPropertyAnnotatedFieldLength already excludes the dummy closing token)
-                //TODO: use DocValues as well (a bit more complex, because we can't re-run the query)
-                String queryFieldName = field().name();
-                numberOfTokens = 0;
-                for (AnnotatedField field: queryInfo().index().annotatedFields()) {
-                    DocProperty propTokens = new DocPropertyAnnotatedFieldLength(queryInfo().index(), field.name());
-                    CorpusSize.Count thisFieldCount = new CorpusSize.Count(0, 0);
-                    StreamSupport.stream(this.spliterator(), false).forEach(fieldValue -> {
-                        PropertyValueInt tokens = (PropertyValueInt) propTokens.get(fieldValue);
-                        if (tokens != null && tokens.value() > 0) {
-                            thisFieldCount.add(1, tokens.value());
-                        }
-                    });
-                    //long thisFieldNumberOfTokens = countTokens ? intSum(propTokens) : -1;
-                    numberOfTokens += thisFieldCount.getTokens();
-                    tokensPerField.put(field.name(), thisFieldCount);
+                // We can't re-run a query, so find the segment for each document and use the DocValues
+                int[] docIds = StreamSupport.stream(this.spliterator(), false).mapToInt(DocResult::docId).sorted().toArray();
+                Map<LeafReaderContext, int[]> docsPerSegment = new LinkedHashMap<>();
+                int i = 0;
+                for (LeafReaderContext lrc: indexReader.leaves()) {
+                    int segmentStart = i;
+                    int docBaseNext = lrc.docBase + lrc.reader().maxDoc();
+                    while (i < docIds.length && docIds[i] < docBaseNext)
+                        i++;
+                    if (i > segmentStart)
+                        docsPerSegment.put(lrc, Arrays.copyOfRange(docIds, segmentStart, i));
                 }
-                numberOfDocuments = size();
+                corpusSize = countSubcorpus(docsPerSegment.keySet(), lrc -> (long) docsPerSegment.get(lrc).length,
+                        countTokens, (lrc, segmentCount) -> {
+                            for (int docId: docsPerSegment.get(lrc))
+                                segmentCount.count(docId - lrc.docBase);
+                        });
             }
-            corpusSize = new CorpusSize(new CorpusSize.Count(numberOfDocuments, numberOfTokens), tokensPerField);
         }
         return corpusSize;
     }
 
+    /** Counts the documents in a segment. */
+    @FunctionalInterface
+    private interface SegmentCounter {
+        void count(LeafReaderContext lrc, SubcorpusCount.Segment segmentCount) throws IOException;
+    }
+
+    /**
+     * Count documents and tokens in a number of segments, in parallel.
+     *
+     * @param segments segments to count
+     * @param sizeGetter (estimated) amount of work per segment, used to divide the segments over threads
+     * @param countTokens whether or not to count tokens
+     * @param counter counts the documents in a segment
+     * @return subcorpus size
+     */
+    private CorpusSize countSubcorpus(Collection<LeafReaderContext> segments,
+            Function<LeafReaderContext, Long> sizeGetter, boolean countTokens, SegmentCounter counter) {
+        List<AnnotatedField> fields = queryInfo().index().annotatedFields().stream().toList();
+        int numThreads = Math.max(1, Math.min(queryInfo().index().blackLab().maxThreadsPerSearch(), segments.size()));
+        Parallel<LeafReaderContext, SubcorpusCount> parallel = new Parallel<>(queryInfo().index(), numThreads);
+        return parallel.mapReduce(segments, sizeGetter,
+                threadSegments -> {
+                    SubcorpusCount threadCount = new SubcorpusCount(fields, countTokens);
+                    try {
+                        for (LeafReaderContext lrc: threadSegments)
+                            counter.count(lrc, threadCount.segment(lrc));
+                    } catch (IOException e) {
+                        throw new InvalidIndex("Error determining token count", e);
+                    }
+                    return List.of(threadCount);
+                },
+                SubcorpusCount::add,
+                () -> new SubcorpusCount(fields, countTokens)).toCorpusSize();
+    }
+
     public Query query() {
         return query;
     }
@@ -0,0 +1,116 @@
+package nl.inl.blacklab.search.results.docs;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+
+import nl.inl.blacklab.search.BlackLabIndexAbstract;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.results.CorpusSize;
+
+/**
+ * Counts documents and tokens in (part of) a subcorpus.
+ *
+ * Documents are counted per segment, using the token length DocValues.
+ * Segments may be counted by different threads, each using their own SubcorpusCount;
+ * the partial counts are then combined using {@link #add(SubcorpusCount)}.
+ */
+final class SubcorpusCount {
+
+    /** Annotated fields to count tokens for */
+    private final List<AnnotatedField> fields;
+
+    /** Should we count tokens or just documents? */
+    private final boolean countTokens;
+
+    private long documents = 0;
+
+    /** Total number of tokens, or -1 if we're not counting tokens */
+    private long tokens;
+
+    /** Documents (with tokens) and tokens per annotated field */
+    private final Map<String, CorpusSize.Count> tokensPerField = new LinkedHashMap<>();
+
+    SubcorpusCount(List<AnnotatedField> fields, boolean countTokens) {
+        this.fields = fields;
+        this.countTokens = countTokens;
+        tokens = countTokens ? 0 : -1;
+        for (AnnotatedField field: fields)
+            tokensPerField.put(field.name(), new CorpusSize.Count(0, 0));
+    }
+
+    /**
+     * Start counting documents in a segment.
+     *
+     * @param lrc segment
+     * @return counter for this segment; documents must be counted in increasing order
+     */
+    Segment segment(LeafReaderContext lrc) throws IOException {
+        return new Segment(lrc);
+    }
+
+    /** Counts documents in a single segment. */
+    final class Segment {
+
+        /** Token length values per field (or null if we're not counting tokens) */
+        private final NumericDocValues[] tokenLengths;
+
+        /** Counts per field (same order as tokenLengths) */
+        private final CorpusSize.Count[] counts;
+
+        private Segment(LeafReaderContext lrc) throws IOException {
+            tokenLengths = new NumericDocValues[fields.size()];
+            counts = new CorpusSize.Count[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                AnnotatedField field = fields.get(i);
+                if (countTokens)
+                    tokenLengths[i] = DocValues.getNumeric(lrc.reader(), field.tokenLengthField());
+                counts[i] = tokensPerField.get(field.name());
+            }
+        }
+
+        /**
+         * Count a document.
+         *
+         * @param docId segment-local document id
+         */
+        void count(int docId) throws IOException {
+            documents++;
+            if (!countTokens)
+                return;
+            for (int i = 0; i < tokenLengths.length; i++) {
+                if (tokenLengths[i].advanceExact(docId)) {
+                    long docTokens = tokenLengths[i].longValue() - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
+                    if (docTokens > 0) {
+                        tokens += docTokens;
+                        counts[i].add(1, docTokens);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add counts from another (partial) count.
+     *
+     * @param other count to add
+     */
+    void add(SubcorpusCount other) {
+        documents += other.documents;
+        if (countTokens)
+            tokens += other.tokens;
+        for (Map.Entry<String, CorpusSize.Count> e: other.tokensPerField.entrySet()) {
+            CorpusSize.Count count = e.getValue();
+            tokensPerField.get(e.getKey()).add(count.getDocuments(), count.getTokens());
+        }
+    }
+
+    CorpusSize toCorpusSize() {
+        return new CorpusSize(new CorpusSize.Count(documents, tokens), tokensPerField);
+    }
+}
@@ -0,0 +1,97 @@
+package nl.inl.blacklab.search.results.docs;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.results.CorpusSize;
+
+/**
+ * Cache of subcorpus sizes per metadata filter query, shared by all indexes.
+ *
+ * Determining the size of a subcorpus means going through all its documents. Clients tend to
+ * use the same metadata filter for many requests (e.g. while grouping and paging through results),
+ * so we keep the most recently used sizes around.
+ *
+ * Entries are keyed by the index reader, so we never use sizes from an older version of an index.
+ */
+final class SubcorpusSizeCache {
+
+    private static final String CACHE_NAME_FOR_METRICS = "blacklab-subcorpus-size-cache";
+
+    /** Identifies a subcorpus.
+     *
+     * @param reader identifies the index reader (see IndexReader.CacheHelper)
+     * @param query (rewritten) metadata filter query
+     */
+    private record Key(IndexReader.CacheKey reader, Query query) {}
+
+    /** The shared cache, or null if disabled. Created on first use. */
+    private static Cache<Key, CorpusSize> cache;
+
+    private static boolean initialized = false;
+
+    private SubcorpusSizeCache() {
+    }
+
+    private static synchronized Cache<Key, CorpusSize> cache() {
+        if (!initialized) {
+            initialized = true;
+            int maxEntries = BlackLab.config().getSearch().getSubcorpusSizeCacheSize();
+            if (maxEntries > 0) {
+                cache = Caffeine.newBuilder()
+                        .recordStats()
+                        .maximumSize(maxEntries)
+                        .build();
+                CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME_FOR_METRICS);
+            }
+        }
+        return cache;
+    }
+
+    private static Key key(IndexReader reader, Query query) {
+        IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+        return helper == null ? null : new Key(helper.getKey(), query);
+    }
+
+    /**
+     * Get the size of a subcorpus if we know it.
+     *
+     * @param reader index reader
+     * @param query (rewritten) metadata filter query
+     * @param countTokens do we need the number of tokens?
+     * @return subcorpus size, or null if not known
+     */
+    static CorpusSize get(IndexReader reader, Query query, boolean countTokens) {
+        Cache<Key, CorpusSize> c = cache();
+        Key key = key(reader, query);
+        if (c == null || key == null)
+            return null;
+        CorpusSize size = c.getIfPresent(key);
+        if (size == null || countTokens && !size.getTotalCount().hasTokenCount())
+            return null;
+        return size;
+    }
+
+    /**
+     * Remember the size of a subcorpus.
+     *
+     * @param reader index reader
+     * @param query (rewritten) metadata filter query
+     * @param size subcorpus size
+     */
+    static void put(IndexReader reader, Query query, CorpusSize size) {
+        Cache<Key, CorpusSize> c = cache();
+        Key key = key(reader, query);
+        if (c == null || key == null)
+            return;
+        CorpusSize existing = c.getIfPresent(key);
+        if (existing == null || !existing.getTotalCount().hasTokenCount())
+            c.put(key, size);
+    }
+}
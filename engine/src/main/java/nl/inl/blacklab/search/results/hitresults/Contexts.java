@@ -1,7 +1,6 @@
 package nl.inl.blacklab.search.results.hitresults;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,14 +8,13 @@ import java.util.function.BiConsumer;
 
 import org.apache.lucene.index.LeafReaderContext;
 
-import it.unimi.dsi.fastutil.BigList;
-import it.unimi.dsi.fastutil.objects.ObjectBigArrayBigList;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.codec.BlackLabPostingsReader;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
-import nl.inl.blacklab.forwardindex.FieldForwardIndex;
-import nl.inl.blacklab.forwardindex.GlobalDocIdAdapter;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.forwardindex.TokensCursor;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.Kwic;
 import nl.inl.blacklab.search.TermFrequencyList;
@@ -26,6 +24,7 @@ import nl.inl.blacklab.search.lucene.MatchInfoDefs;
 import nl.inl.blacklab.search.results.hits.EphemeralHit;
 import nl.inl.blacklab.search.results.hits.Hit;
 import nl.inl.blacklab.search.results.hits.Hits;
+import nl.inl.blacklab.search.results.hits.Parallel;
 import nl.inl.util.ThreadAborter;
 
 /**
@@ -168,113 +167,13 @@ public class Contexts {
         return contexts;
     }
 
-    /**
-     * Retrieve context words for the hits.
-     *
-     * NOTE: because we work with term ids, which are segment-local, this
-     * method can only be used for hits in a single segment.
-     *
-     * @param hits hits to find contexts for
-     * @param annotation the field and annotations to use for the context
-     * @param contextSize how large the contexts need to be
-     */
-    private static BigList<String[]> getCollocations(Hits hits, Annotation annotation, ContextSize contextSize) {
-        if (annotation == null)
-            throw new IllegalArgumentException("Cannot build contexts without annotations");
-
-        //AnnotForwardIndex fi = hits.index().annotationForwardIndex(annotation);
-        AnnotationForwardIndex fi = null;
-        String luceneField = annotation.forwardIndexSensitivity().luceneField();
-
-        // Get the context
-        // Group hits per document
-
-        // setup first iteration
-        final long size = hits.size(); // TODO ugly, might be slow because of required locking
-        int prevDoc = size == 0 ? -1 : hits.doc(0);
-        int firstHitInCurrentDoc = 0;
-
-        /*
-         * The hit contexts.
-         *
-         * There may be multiple contexts for each hit. Each
-         * int array starts with three bookkeeping integers, followed by the contexts
-         * information. The bookkeeping integers are:
-         * 0 = hit start, index of the hit word (and length of the context before the hit), counted from the start of the context
-         * 1 = right start, start of the context after the hit, counted from the start the context
-         * 2 = context length, length of 1 context. As stated above, there may be multiple contexts.
-         *
-         * The first context therefore starts at index 3.
-         */
-        BigList<String[]> contexts = new ObjectBigArrayBigList<>(hits.size());
-
-        MatchInfoDefs matchInfoDefs = hits.matchInfoDefs();
-        if (size > 0) {
-            BlackLabIndex index = annotation.field().index();
-            int prevDocBase = -1;
-            for (int i = 1; i < size; ++i) { // start at 1: variables already have correct values for primed for hit 0
-                final int curDoc = hits.doc(i);
-                if (curDoc != prevDoc) {
-                    try { ThreadAborter.checkAbort(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new InterruptedSearch(e); }
-                    // Process hits in preceding document:
-
-                    // Make sure we have the correct segment forward index
-                    LeafReaderContext lrc = index.getLeafReaderContext(prevDoc);
-                    if (fi == null || lrc.docBase != prevDocBase) {
-                        fi = new GlobalDocIdAdapter(FieldForwardIndex.get(lrc, luceneField), lrc.docBase);
-                        prevDocBase = lrc.docBase;
-                    }
-
-                    String[][] docContextArray = getCollocationWordsSingleDocumentStrings(hits, firstHitInCurrentDoc, i, contextSize, fi, matchInfoDefs);
-                    Collections.addAll(contexts, docContextArray);
-                    // start a new document
-                    prevDoc = curDoc;
-                    firstHitInCurrentDoc = i;
-                }
-            }
-            // Process hits in final document
-            if (hits.size() - firstHitInCurrentDoc > 0) {
-                LeafReaderContext lrc = index.getLeafReaderContext(hits.doc(firstHitInCurrentDoc));
-                if (fi == null || lrc.docBase != prevDocBase) {
-                    fi = new GlobalDocIdAdapter(FieldForwardIndex.get(lrc, luceneField), lrc.docBase);
-                }
-                String[][] docContextArray = getCollocationWordsSingleDocumentStrings(hits, firstHitInCurrentDoc, hits.size(), contextSize, fi, matchInfoDefs);
-                Collections.addAll(contexts, docContextArray);
-            }
-        }
-        return contexts;
-    }
-
-    private static String[][] getCollocationWordsSingleDocumentStrings(Hits hits, long start, long end,
-            ContextSize contextSize, AnnotationForwardIndex contextSource, MatchInfoDefs matchInfoDefs) {
-
-        int[][] contexts = getContextWordsSingleDocument(hits, start, end, contextSize,
-                List.of(contextSource), matchInfoDefs);
-        if (contextSize.isInlineTag())
-            throw new IllegalArgumentException("Cannot build contexts with inline tags");
-        String[][] stringContexts = new String[contexts.length][];
-        Terms terms = contextSource.terms();
-        for (int j = 0; j < contexts.length; j++) {
-            int[] context = contexts[j];
-            int beforeContextLength = context[HIT_START_INDEX];
-            int afterHitIndex = context[AFTER_START_INDEX];
-            int afterContextLength = context[LENGTH_INDEX] - afterHitIndex;
-            int n = Math.min(contextSize.before(), beforeContextLength) +
-                    Math.min(contextSize.after(), afterContextLength);
-            stringContexts[j] = new String[n];
-            for (int k = 0; k < beforeContextLength; k++) {
-                stringContexts[j][k] = terms.get(context[NUMBER_OF_BOOKKEEPING_INTS + k]);
-            }
-            for (int k = 0; k < afterContextLength; k++) {
-                stringContexts[j][k + beforeContextLength] = terms.get(context[NUMBER_OF_BOOKKEEPING_INTS + afterHitIndex + k]);
-            }
-        }
-        return stringContexts;
-    }
-
     /**
      * Count occurrences of context words around hit.
      *
+     * Context words are counted per segment by segment term id (without allocating,
+     * using a {@link TokensCursor}), in parallel over segments. Only at the end are
+     * the term ids mapped to global term ids, and from there to (desensitized) strings.
+     *
      * @param hitResults hits to get collocations for
      * @param annotation annotation to use for the collocations, or null if default
      * @param contextSize how many words around hits to use
@@ -291,28 +190,144 @@ public class Contexts {
             contextSize = index.defaultContextSize();
         if (sensitivity == null)
             sensitivity = annotation.sensitivity(index.defaultMatchSensitivity()).sensitivity();
+        if (contextSize.isInlineTag())
+            throw new IllegalArgumentException("Cannot build contexts with inline tags");
 
-        Iterable<String[]> contexts = getCollocations(hitResults.getHits().getStatic(), annotation, contextSize);
-        Map<String, Integer> countPerWord = new HashMap<>();
-        for (String[] context: contexts) {
-            // Count words
-            for (String s: context) {
-                countPerWord.compute(s, (k, v) -> v == null ? 1 : v + 1);
+        Hits hits = hitResults.getHits().getStatic();
+        hits.size(); // make sure all hits have been fetched
+        String luceneField = annotation.forwardIndexSensitivity().luceneField();
+        Terms globalTerms = index.forwardIndex(annotation).terms();
+        MatchInfoDefs matchInfoDefs = hits.matchInfoDefs();
+        ContextSize finalContextSize = contextSize;
+
+        // Count context words (by global term id)
+        Int2IntOpenHashMap countPerTermId;
+        Map<LeafReaderContext, Hits> hitsPerSegment = hits.hitsPerSegment();
+        if (hitsPerSegment != null) {
+            // Count per segment, in parallel
+            int numThreads = Math.max(1, Math.min(index.blackLab().maxThreadsPerSearch(), hitsPerSegment.size()));
+            Parallel<Map.Entry<LeafReaderContext, Hits>, Int2IntOpenHashMap> parallel = new Parallel<>(index, numThreads);
+            countPerTermId = parallel.mapReduce(hitsPerSegment.entrySet(),
+                    entry -> entry.getValue().size(),
+                    threadItems -> {
+                        Int2IntOpenHashMap threadCounts = new Int2IntOpenHashMap();
+                        for (Map.Entry<LeafReaderContext, Hits> entry: threadItems) {
+                            // Segment hits have segment-local doc ids
+                            CollocationCounter counter = new CollocationCounter(entry.getKey(), luceneField);
+                            counter.countAll(entry.getValue(), finalContextSize, matchInfoDefs);
+                            counter.addToGlobalCounts(threadCounts, globalTerms);
+                        }
+                        return List.of(threadCounts);
+                    },
+                    Contexts::mergeCounts,
+                    Int2IntOpenHashMap::new);
+        } else {
+            // No per-segment hits available; go through the global hits, counting per segment
+            Map<LeafReaderContext, CollocationCounter> counters = new HashMap<>();
+            EphemeralHit hit = new EphemeralHit();
+            int[] startEnd = new int[2];
+            int prevDoc = -1;
+            CollocationCounter counter = null;
+            for (long i = 0; i < hits.size(); i++) {
+                hits.getEphemeral(i, hit);
+                if (hit.doc() != prevDoc) {
+                    try { ThreadAborter.checkAbort(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new InterruptedSearch(e); }
+                    LeafReaderContext lrc = index.getLeafReaderContext(hit.doc());
+                    counter = counters.computeIfAbsent(lrc, k -> new CollocationCounter(k, luceneField));
+                    prevDoc = hit.doc();
+                }
+                contextSize.getSnippetStartEnd(hit, matchInfoDefs, false, startEnd, 0, startEnd, 1);
+                counter.count(hit.doc() - counter.lrc.docBase, hit.start(), hit.end(), startEnd[0], startEnd[1]);
             }
+            countPerTermId = new Int2IntOpenHashMap();
+            for (CollocationCounter c: counters.values())
+                c.addToGlobalCounts(countPerTermId, globalTerms);
         }
 
-        // Get the actual words from the sort positions
+        // Get the actual words from the global term ids
         Map<String, Integer> wordFreq = new HashMap<>();
-        for (Map.Entry<String, Integer> e : countPerWord.entrySet()) {
-            int count = e.getValue();
-            String word = sensitivity.desensitize(e.getKey());
+        MatchSensitivity finalSensitivity = sensitivity;
+        countPerTermId.int2IntEntrySet().fastForEach(e -> {
+            String word = finalSensitivity.desensitize(globalTerms.get(e.getIntKey()));
             // Note that multiple ids may map to the same word (because of sensitivity settings)
             // Here, those groups are merged.
-            wordFreq.compute(word, (k, v) -> v == null ? count : v + count);
-        }
+            wordFreq.merge(word, e.getIntValue(), Integer::sum);
+        });
 
         // Transfer from map to list
         return new TermFrequencyList(hitResults.queryInfo(), wordFreq, sort);
     }
 
+    /** Add the counts from one map to another. */
+    private static void mergeCounts(Int2IntOpenHashMap acc, Int2IntOpenHashMap counts) {
+        counts.int2IntEntrySet().fastForEach(e -> acc.addTo(e.getIntKey(), e.getIntValue()));
+    }
+
+    /**
+     * Counts context words around hits in a single segment, by segment term id.
+     */
+    private static class CollocationCounter {
+
+        final LeafReaderContext lrc;
+
+        /** Reads the context words from the forward index */
+        private final TokensCursor cursor;
+
+        /** Number of occurrences per segment term id */
+        private final Int2IntOpenHashMap counts = new Int2IntOpenHashMap();
+
+        CollocationCounter(LeafReaderContext lrc, String luceneField) {
+            this.lrc = lrc;
+            cursor = BlackLabPostingsReader.forSegment(lrc).tokensCursor(luceneField);
+        }
+
+        /**
+         * Count context words for all hits in this segment.
+         *
+         * @param segmentHits hits (with segment-local doc ids)
+         * @param contextSize how many words around hits to use
+         * @param matchInfoDefs match info definitions for the hits
+         */
+        void countAll(Hits segmentHits, ContextSize contextSize, MatchInfoDefs matchInfoDefs) {
+            EphemeralHit hit = new EphemeralHit();
+            int[] startEnd = new int[2];
+            int prevDoc = -1;
+            for (long i = 0; i < segmentHits.size(); i++) {
+                segmentHits.getEphemeral(i, hit);
+                if (hit.doc() != prevDoc) {
+                    try { ThreadAborter.checkAbort(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new InterruptedSearch(e); }
+                    prevDoc = hit.doc();
+                }
+                contextSize.getSnippetStartEnd(hit, matchInfoDefs, false, startEnd, 0, startEnd, 1);
+                count(hit.doc(), hit.start(), hit.end(), startEnd[0], startEnd[1]);
+            }
+        }
+
+        /**
+         * Count the context words around a single hit (excluding the hit itself).
+         */
+        void count(int segmentDocId, int hitStart, int hitEnd, int snippetStart, int snippetEnd) {
+            cursor.reset(segmentDocId, snippetStart, snippetEnd);
+            // Make sure we don't go beyond the actually retrieved snippet (which may have been limited)
+            int end = cursor.end();
+            int beforeEnd = Math.min(end, hitStart);
+            int afterStart = Math.min(end, hitEnd);
+            for (int pos = cursor.position(); pos < beforeEnd; pos++)
+                counts.addTo(cursor.tokenAt(pos), 1);
+            for (int pos = afterStart; pos < end; pos++)
+                counts.addTo(cursor.tokenAt(pos), 1);
+        }
+
+        /**
+         * Add our counts to a map of counts per global term id.
+         *
+         * @param globalCounts map to add to
+         * @param globalTerms global terms, to convert our segment term ids
+         */
+        void addToGlobalCounts(Int2IntOpenHashMap globalCounts, Terms globalTerms) {
+            counts.int2IntEntrySet().fastForEach(e ->
+                    globalCounts.addTo(globalTerms.toGlobalTermId(lrc, e.getIntKey()), e.getIntValue()));
+        }
+    }
+
 }
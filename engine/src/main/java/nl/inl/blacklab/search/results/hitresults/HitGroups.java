@@ -13,13 +13,17 @@ import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.resultproperty.HitGroupProperty;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.ResultGroups;
 import nl.inl.blacklab.search.results.ResultsList;
 import nl.inl.blacklab.search.results.SampleParameters;
+import nl.inl.blacklab.search.results.SearchSettings;
 import nl.inl.blacklab.search.results.WindowStats;
 import nl.inl.blacklab.search.results.hits.EphemeralHit;
+import nl.inl.blacklab.search.results.hits.HitGrouper;
 import nl.inl.blacklab.search.results.hits.Hits;
+import nl.inl.blacklab.search.results.hits.fetch.HitFetcherQuery;
 import nl.inl.blacklab.search.results.stats.MaxStats;
 import nl.inl.blacklab.search.results.stats.ResultsStats;
 import nl.inl.blacklab.search.results.stats.ResultsStatsSaved;
@@ -92,12 +96,42 @@ public class HitGroups extends ResultsList<HitGroup> implements ResultGroups, It
 
     private long resultObjects;
 
+    /**
+     * Group the hits from a query while they are being fetched.
+     *
+     * Only the number of hits and documents per group are determined; no hits are stored.
+     * This is a lot faster and uses a lot less memory than finding all hits, then grouping them.
+     *
+     * @param queryInfo query info
+     * @param query query to find hits
+     * @param searchSettings search settings, e.g. max. hits to process
+     * @param groupBy what to group by
+     * @return groups without stored hits
+     */
+    public static HitGroups groupWhileFetching(QueryInfo queryInfo, BLSpanQuery query,
+            SearchSettings searchSettings, HitProperty groupBy) {
+        query.setQueryInfo(queryInfo);
+        queryInfo = queryInfo.optOverrideField(query);
+        if (searchSettings == null)
+            searchSettings = queryInfo.index().searchSettings();
+        HitGrouper grouper = new HitGrouper(new HitFetcherQuery(query, searchSettings), groupBy);
+        List<HitGroup> groups = fromBasicGroup(queryInfo, grouper.group());
+        return new HitGroups(queryInfo, groups, groupBy, null, null,
+                grouper.resultsStats().save(), grouper.docsStats().save());
+    }
+
     public static List<HitGroup> fromBasicGroup(QueryInfo queryInfo, Map<PropertyValue, Hits.Group> groupings) {
         List<HitGroup> groups = new ArrayList<>(groupings.size());
         for (Map.Entry<PropertyValue, Hits.Group> e : groupings.entrySet()) {
             PropertyValue groupId = e.getKey();
             Hits.Group grouped = e.getValue();
-            HitGroup group = HitGroup.fromList(queryInfo, groupId, grouped.getStoredHits(), grouped.getTotalNumberOfHits());
+            HitGroup group;
+            if (grouped.isCountOnly()) {
+                group = HitGroup.withoutResults(queryInfo, groupId, grouped.getTotalNumberOfHits(),
+                        (int) grouped.getTotalNumberOfDocs(), MaxStats.NOT_EXCEEDED);
+            } else {
+                group = HitGroup.fromList(queryInfo, groupId, grouped.getStoredHits(), grouped.getTotalNumberOfHits());
+            }
             groups.add(group);
         }
         return groups;
@@ -192,6 +226,10 @@ public class HitGroups extends ResultsList<HitGroup> implements ResultGroups, It
         return sampleParameters;
     }
 
+    public WindowStats windowStats() {
+        return windowStats;
+    }
+
     public HitGroups window(long first, long number) {
         List<HitGroup> resultsWindow = doWindow(this, first, number);
         boolean hasNext = resultsStats().processedAtLeast(first + resultsWindow.size() + 1);
@@ -116,6 +116,18 @@ public interface HitResults extends Results {
 
     HitResults sorted(HitProperty sortProp);
 
+    /**
+     * Sort the hits, but only keep the first ones.
+     *
+     * Useful if we're only going to display the first page(s) of the sorted hits,
+     * because it's much faster and uses less memory than sorting all of them.
+     *
+     * @param sortProp property to sort on
+     * @param maxHits number of hits to keep
+     * @return the first maxHits hits of the sorted result
+     */
+    HitResults sortedTopK(HitProperty sortProp, long maxHits);
+
     HitGroups group(HitProperty criteria, long maxResultsToStorePerGroup);
 
     /**
@@ -144,6 +144,14 @@ public abstract class HitResultsAbstract extends ResultsAbstract implements HitR
                 resultsStats(), docsStats());
     }
 
+    @Override
+    public HitResults sortedTopK(HitProperty sortBy, long maxHits) {
+        Hits hits = getHits().getStatic(); // ensure all read
+        HitProperty sortByWithContext = sortBy.copyWith(PropContext.globalHits(hits, new ConcurrentHashMap<>()));
+        return new HitResultsList(queryInfo(), hits.sortedTopK(sortByWithContext, maxHits), null, null,
+                resultsStats(), docsStats());
+    }
+
     @Override
     public HitGroups group(HitProperty groupBy, long maxResultsToStorePerGroup) {
         if (groupBy == null)
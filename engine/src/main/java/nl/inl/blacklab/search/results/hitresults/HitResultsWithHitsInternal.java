@@ -48,6 +48,11 @@ public abstract class HitResultsWithHitsInternal extends HitResultsAbstract {
         return this.hitsInternal.size();
     }
 
+    @Override
+    public long memoryUsageBytes() {
+        return this.hitsInternal.memoryUsageBytes();
+    }
+
     @Override
     public Hits getHits() {
         return hitsView;
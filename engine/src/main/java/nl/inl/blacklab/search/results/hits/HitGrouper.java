@@ -0,0 +1,143 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.LeafReaderContext;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropContext;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+import nl.inl.blacklab.search.results.hits.fetch.HitCollector;
+import nl.inl.blacklab.search.results.hits.fetch.HitFetcher;
+import nl.inl.blacklab.search.results.hits.fetch.HitFilter;
+import nl.inl.blacklab.search.results.hits.fetch.HitProcessor;
+import nl.inl.blacklab.search.results.stats.ResultsStats;
+import nl.inl.blacklab.search.results.stats.ResultsStatsPassive;
+
+/**
+ * Groups hits while they are being fetched, only counting hits and documents per group.
+ *
+ * Unlike grouping a Hits object, we never build a list of all hits: each segment collects
+ * a batch of hits, groups them (see {@link HitsAbstract#groupHits}) and then discards them.
+ * So memory use depends on the number of groups, not the number of hits.
+ *
+ * Segments are processed in parallel by the hit fetcher; each segment's groups are merged
+ * into the global groups when the segment is done.
+ */
+public class HitGrouper implements HitCollector {
+
+    /** How many hits to collect in a segment before grouping them. */
+    private static final int BATCH_SIZE = 10_000;
+
+    private final HitFetcher hitFetcher;
+
+    /** What to group by */
+    private final HitProperty groupBy;
+
+    /** Groups from all segments that are done so far */
+    private final Map<PropertyValue, Hits.Group> groups = new ConcurrentHashMap<>();
+
+    private final ResultsStatsPassive hitsStats;
+
+    private final ResultsStatsPassive docsStats;
+
+    public HitGrouper(HitFetcher hitFetcher, HitProperty groupBy) {
+        this.hitFetcher = hitFetcher;
+        this.groupBy = groupBy.copyWith(PropContext.globalHits(null, new ConcurrentHashMap<>()));
+        hitsStats = new ResultsStatsPassive(ResultsStats.ThrowingResultsAwaiter.INSTANCE,
+                hitFetcher.getMaxHitsToProcess(),
+                hitFetcher.getMaxHitsToCount());
+        docsStats = new ResultsStatsPassive(ResultsStats.ThrowingResultsAwaiter.INSTANCE);
+        hitFetcher.fetchHits(HitFilter.ACCEPT_ALL, this);
+    }
+
+    /**
+     * Fetch all hits and group them.
+     *
+     * @return the groups (count-only, see {@link Hits.Group#isCountOnly()})
+     */
+    public Map<PropertyValue, Hits.Group> group() {
+        hitFetcher.ensureResultsRead(-1);
+        return groups;
+    }
+
+    private MatchInfoDefs matchInfoDefs() {
+        return hitFetcher.getHitQueryContext().getMatchInfoDefs();
+    }
+
+    @Override
+    public HitProcessor getHitProcessor(LeafReaderContext lrc) {
+        return new HitProcessor() {
+            /** Hits from this segment that we haven't grouped yet */
+            private final HitsMutable batch = HitsMutable.create(hitFetcher.field(), matchInfoDefs(), -1, false, false);
+
+            /** Groups in this segment so far */
+            private final Map<PropertyValue, Hits.Group> segmentGroups = new HashMap<>();
+
+            @Override
+            public HitFetcher.Phase onDocumentBoundary(HitsMutable results, long counted) {
+                batch.addAll(results);
+                HitFetcher.Phase phase = hitsStats.add(results.size(), counted);
+                results.clear();
+                // Only group at a document boundary, so all hits in a document are grouped together
+                if (batch.size() >= BATCH_SIZE)
+                    groupBatch();
+                return phase;
+            }
+
+            @Override
+            public void onFinished(HitsMutable results, long counted) {
+                batch.addAll(results);
+                hitsStats.add(results.size(), counted);
+                groupBatch();
+
+                // Merge this segment's groups into the global groups
+                // (segments don't share documents, so we can simply add the counts)
+                segmentGroups.forEach((groupId, segmentGroup) ->
+                        groups.merge(groupId, segmentGroup, (group, g) -> group.merge(g, 0)));
+                segmentGroups.clear();
+            }
+
+            private void groupBatch() {
+                if (!batch.isEmpty()) {
+                    HitsAbstract.groupHits(batch, groupBy, 0, segmentGroups, lrc);
+                    batch.clear();
+                }
+            }
+
+            @Override
+            public long globalProcessedSoFar() {
+                return hitsStats.processedSoFar();
+            }
+
+            @Override
+            public long globalCountedSoFar() {
+                return hitsStats.countedSoFar();
+            }
+        };
+    }
+
+    @Override
+    public void setDone() {
+        hitsStats.setDone();
+        docsStats.setDone();
+    }
+
+    @Override
+    public ResultsStatsPassive resultsStats() {
+        return hitsStats;
+    }
+
+    @Override
+    public ResultsStatsPassive docsStats() {
+        return docsStats;
+    }
+
+    @Override
+    public long globalHitsSoFar() {
+        return hitsStats.processedSoFar();
+    }
+}
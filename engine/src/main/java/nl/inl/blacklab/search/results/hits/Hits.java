@@ -21,6 +21,7 @@ import nl.inl.blacklab.search.ConcordanceType;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.lucene.MatchInfo;
 import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+import nl.inl.blacklab.search.results.SearchResult;
 import nl.inl.blacklab.search.results.hitresults.Concordances;
 import nl.inl.blacklab.search.results.hitresults.ContextSize;
 import nl.inl.blacklab.search.results.hitresults.HitResults;
@@ -172,6 +173,15 @@ public interface Hits extends Iterable<EphemeralHit> {
      */
     Hits getStatic();
 
+    /**
+     * How much memory do these hits take?
+     *
+     * @return (estimated) memory use in bytes
+     */
+    default long memoryUsageBytes() {
+        return size() * SearchResult.BYTES_PER_RESULT_OBJECT;
+    }
+
     /**
      * Get a sublist of hits, starting at the specified index.
      *
@@ -252,8 +262,7 @@ public interface Hits extends Iterable<EphemeralHit> {
     default Hits sorted(HitProperty sortBy) {
         // Fetch all the hits and determine size.
         long n = size();
-        HitsListAbstract mergedHits = HitsMutable.create(field(), matchInfoDefs(),
-                n, n, false);
+        HitsListAbstract mergedHits = HitsMutable.createResultList(field(), matchInfoDefs(), n, n);
         Map<LeafReaderContext, Hits> perSegment = hitsPerSegment();
         if (perSegment != null) {
             // Use per-segment hits directly rather than through a global view
@@ -272,6 +281,20 @@ public interface Hits extends Iterable<EphemeralHit> {
         return mergedHits.sorted(sortByWithContext);
     }
 
+    /**
+     * Return only the first hits of these hits sorted by the given property.
+     *
+     * Gives the same hits as sorted(sortBy).sublist(0, k), but doesn't need to
+     * sort (or even keep) all hits to do so, which is much cheaper if k is small.
+     *
+     * @param sortBy the hit property to sort on
+     * @param k how many hits we need
+     * @return a new hits object with (at most) the first k hits, sorted in the specified way
+     */
+    default Hits sortedTopK(HitProperty sortBy, long k) {
+        return HitsTopK.sortedTopK(this, sortBy, k);
+    }
+
     /**
      * Filter hits using the given function.
      *
@@ -324,8 +347,8 @@ public interface Hits extends Iterable<EphemeralHit> {
             // Just filter the hits sequentially.
             // (subclass could override this method to do it more efficiently)
             HitProperty globalProperty = property.copyWith(PropContext.globalHits(this, new ConcurrentHashMap<>()));
-            HitsListAbstract allFilteredHits = HitsMutable.create(field(), matchInfoDefs(),
-                    totalSourceHits, totalSourceHits, false);
+            HitsListAbstract allFilteredHits = HitsMutable.createResultList(field(), matchInfoDefs(),
+                    totalSourceHits, totalSourceHits);
             for (long i = 0; i < totalSourceHits; i++) {
                 if (globalProperty.get(i).equals(value)) {
                     // This hit matches the filter, add it to the results
@@ -372,10 +395,22 @@ public interface Hits extends Iterable<EphemeralHit> {
     /** For grouping */
     class Group {
 
+        /** Create a group that only counts hits and documents, without storing any hits. */
+        public static Group countOnly() {
+            return new Group(null, 0);
+        }
+
+        /** Hits stored for this group, or null if we only count them */
         HitsMutable storedHits;
 
         long totalNumberOfHits;
 
+        /** Number of documents with hits in this group (only if we only count) */
+        long totalNumberOfDocs;
+
+        /** Last document we counted a hit in (for counting documents) */
+        int lastDoc = -1;
+
         public Group(HitsMutable storedHits, int totalNumberOfHits) {
             this.storedHits = storedHits;
             this.totalNumberOfHits = totalNumberOfHits;
@@ -389,8 +424,46 @@ public interface Hits extends Iterable<EphemeralHit> {
             return totalNumberOfHits;
         }
 
+        /**
+         * Does this group only count hits and documents, without storing hits?
+         *
+         * @return true if no hits are stored
+         */
+        public boolean isCountOnly() {
+            return storedHits == null;
+        }
+
+        /**
+         * Get the number of documents with hits in this group.
+         *
+         * Only valid for count-only groups; otherwise, determine it from the stored hits.
+         *
+         * @return number of documents
+         */
+        public long getTotalNumberOfDocs() {
+            return totalNumberOfDocs;
+        }
+
+        /**
+         * Count a hit in a count-only group.
+         *
+         * Hits must be counted in document order (per segment), so we can count documents.
+         *
+         * @param doc (global) document id of the hit
+         */
+        void countHit(int doc) {
+            totalNumberOfHits++;
+            if (doc != lastDoc) {
+                totalNumberOfDocs++;
+                lastDoc = doc;
+            }
+        }
+
         public Group merge(Group segmentGroup, long maxValuesToStorePerGroup) {
-            if (maxValuesToStorePerGroup >= 0 && storedHits.size() + segmentGroup.storedHits.size() > maxValuesToStorePerGroup) {
+            if (isCountOnly()) {
+                // Groups are from different segments, so there's no overlap in documents
+                totalNumberOfDocs += segmentGroup.totalNumberOfDocs;
+            } else if (maxValuesToStorePerGroup >= 0 && storedHits.size() + segmentGroup.storedHits.size() > maxValuesToStorePerGroup) {
                 // Can we hold any more hits?
                 if (storedHits.size() < maxValuesToStorePerGroup) {
                     // We can add a limited number of hits, so we need to trim the segment group
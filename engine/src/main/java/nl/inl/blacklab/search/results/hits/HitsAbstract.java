@@ -1,6 +1,7 @@
 package nl.inl.blacklab.search.results.hits;
 
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -8,6 +9,11 @@ import java.util.Set;
 
 import org.apache.lucene.index.LeafReaderContext;
 
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.PropContext;
 import nl.inl.blacklab.resultproperty.PropertyValue;
@@ -126,31 +132,89 @@ public abstract class HitsAbstract implements Hits {
         hits = hits.getStatic(); // get most efficient (non-locking list) version of hits if possible
         groupBy = groupBy.copyWith(PropContext.segmentToGlobal(hits, lrc));
 
-        int hitIndex = 0;
-        for (EphemeralHit hit: hits) {
-            PropertyValue identity = groupBy.get(hitIndex);
-            if (lrc != null) {
-                // This is a segment hit. Convert doc id to global.
-                hit.convertDocIdToGlobal(lrc.docBase);
+        // If possible, get a primitive key per hit, so we only need to determine the group
+        // identity (PropertyValue) once for each distinct key instead of for every hit.
+        long[] groupKeys = hits.size() <= Constants.JAVA_MAX_ARRAY_SIZE ? groupBy.groupKeys() : null;
+        Long2ObjectMap<Group> groupPerKey = groupKeys == null ? null : new Long2ObjectOpenHashMap<>();
+
+        if (maxResultsToStorePerGroup == 0) {
+            // We don't need to store any hits, so just count hits and documents per group.
+            int docBase = lrc == null ? 0 : lrc.docBase;
+            boolean inDocOrder = isInDocOrder(hits);
+            Map<Group, IntSet> docsPerGroup = inDocOrder ? null : new IdentityHashMap<>();
+            for (int hitIndex = 0; hitIndex < hits.size(); hitIndex++) {
+                Group group = findGroup(hitIndex, groupKeys, groupPerKey, groupBy, groups, hits, true);
+                int doc = hits.doc(hitIndex) + docBase;
+                if (inDocOrder) {
+                    group.countHit(doc);
+                } else {
+                    group.totalNumberOfHits++;
+                    docsPerGroup.computeIfAbsent(group, k -> new IntOpenHashSet()).add(doc);
+                }
             }
-            Group group = groups.get(identity);
-            if (group == null) {
-                if (groups.size() >= HitGroups.MAX_NUMBER_OF_GROUPS)
-                    throw new UnsupportedOperationException(
-                            "Cannot handle more than " + HitGroups.MAX_NUMBER_OF_GROUPS + " groups");
+            if (docsPerGroup != null)
+                docsPerGroup.forEach((group, docs) -> group.totalNumberOfDocs += docs.size());
+        } else {
+            int hitIndex = 0;
+            for (EphemeralHit hit: hits) {
+                Group group = findGroup(hitIndex, groupKeys, groupPerKey, groupBy, groups, hits, false);
+                if (lrc != null) {
+                    // This is a segment hit. Convert doc id to global.
+                    hit.convertDocIdToGlobal(lrc.docBase);
+                }
+                if (maxResultsToStorePerGroup < 0 || group.storedHits.size() < maxResultsToStorePerGroup) {
+                    group.storedHits.add(hit);
+                }
+                group.totalNumberOfHits++;
+                ++hitIndex;
+            }
+        }
+        groupBy.disposeContext(); // we don't need the context information anymore, free memory
+        return groups;
+    }
+
+    /** Are these hits sorted by document? */
+    private static boolean isInDocOrder(Hits hits) {
+        int prevDoc = -1;
+        for (long i = 0; i < hits.size(); i++) {
+            int doc = hits.doc(i);
+            if (doc < prevDoc)
+                return false;
+            prevDoc = doc;
+        }
+        return true;
+    }
+
+    /** Find (or create) the group a hit belongs to, using its group key if we have them. */
+    private static Group findGroup(int hitIndex, long[] groupKeys, Long2ObjectMap<Group> groupPerKey,
+            HitProperty groupBy, Map<PropertyValue, Group> groups, Hits hits, boolean countOnly) {
+        if (groupKeys == null)
+            return getOrCreateGroup(groups, groupBy.get(hitIndex), hits, countOnly);
+        Group group = groupPerKey.get(groupKeys[hitIndex]);
+        if (group == null) {
+            group = getOrCreateGroup(groups, groupBy.get(hitIndex), hits, countOnly);
+            groupPerKey.put(groupKeys[hitIndex], group);
+        }
+        return group;
+    }
+
+    private static Group getOrCreateGroup(Map<PropertyValue, Group> groups, PropertyValue identity, Hits hits,
+            boolean countOnly) {
+        Group group = groups.get(identity);
+        if (group == null) {
+            if (groups.size() >= HitGroups.MAX_NUMBER_OF_GROUPS)
+                throw new UnsupportedOperationException(
+                        "Cannot handle more than " + HitGroups.MAX_NUMBER_OF_GROUPS + " groups");
+            if (countOnly) {
+                group = Group.countOnly();
+            } else {
                 HitsMutable hitsInGroup = HitsMutable.create(hits.field(), hits.matchInfoDefs(),
                         -1,
                         hits.size(), false);
                 group = new Group(hitsInGroup, 0);
-                groups.put(identity, group);
             }
-            if (maxResultsToStorePerGroup < 0 || group.storedHits.size() < maxResultsToStorePerGroup) {
-                group.storedHits.add(hit);
-            }
-            group.totalNumberOfHits++;
-            ++hitIndex;
+            groups.put(identity, group);
         }
-        groupBy.disposeContext(); // we don't need the context information anymore, free memory
-        return groups;
+        return group;
     }
 }
@@ -0,0 +1,246 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.ibm.icu.text.CollationKey;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import nl.inl.blacklab.exceptions.BlackLabException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.util.ThreadAborter;
+
+/**
+ * Sorts hits using temporary files, so sorting doesn't need a second full-size copy of the hits.
+ *
+ * The source hits stay in memory (they are needed for match info and, for non-string
+ * properties, for comparing while merging). What we avoid is the in-memory sort's index over
+ * all hits, its sort keys and the sorted copy: the extra heap needed for sorting only depends
+ * on the run size, not on the number of hits.
+ *
+ * Hits are sorted in runs of a fixed size. Each sorted run is written to a temporary file
+ * as records of (sort key, doc, start, end, index in source). The runs are then merged
+ * into a single file of fixed-size records, which is read lazily by {@link HitsFromSortedFile}.
+ *
+ * Only string-valued properties have a sort key that can be written to disk (the collation
+ * key bytes). For other properties, we compare the source hits while merging, just like
+ * the in-memory sort does.
+ */
+final class HitsExternalSort {
+
+    private static final Logger logger = LogManager.getLogger(HitsExternalSort.class);
+
+    /** Buffer size for reading and writing the temporary files */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private HitsExternalSort() {
+    }
+
+    /**
+     * Sort hits using temporary files.
+     *
+     * @param source hits to sort
+     * @param sortBy property to sort on (its context must be the source hits)
+     * @param tempDir where to write temporary files (null for the system default)
+     * @param runSize how many hits to sort in memory at a time
+     * @return the sorted hits
+     */
+    static Hits sort(Hits source, HitProperty sortBy, String tempDir, int runSize) {
+        assert sortBy.getContext().hits() == source : "HitProperty context hits object is not the source hits object";
+        File dir = tempDir == null ? null : new File(tempDir);
+        boolean useKeys = sortBy.getValueType() == PropertyValueString.class;
+        List<File> runs = new ArrayList<>();
+        try {
+            if (dir != null && !dir.exists() && !dir.mkdirs())
+                throw new IOException("Could not create directory for temporary sort files: " + dir);
+            long size = source.size();
+            for (long runStart = 0; runStart < size; runStart += runSize) {
+                checkAbort();
+                int runLength = (int) Math.min(runSize, size - runStart);
+                runs.add(writeSortedRun(source, sortBy, useKeys, runStart, runLength, dir));
+            }
+            File sorted = File.createTempFile("blacklab-sorted-", ".hits", dir);
+            try {
+                merge(runs, sortBy, useKeys, sorted);
+            } catch (IOException | RuntimeException e) {
+                if (!sorted.delete())
+                    logger.warn("Could not delete temporary sort file {}", sorted);
+                throw e;
+            }
+            logger.debug("Sorted {} hits using {} temporary runs", size, runs.size());
+            return new HitsFromSortedFile(source, sorted, size);
+        } catch (IOException e) {
+            throw BlackLabException.wrapRuntime(e);
+        } finally {
+            for (File run: runs) {
+                if (!run.delete())
+                    logger.warn("Could not delete temporary sort file {}", run);
+            }
+        }
+    }
+
+    /** Sort part of the source hits in memory and write them to a temporary file. */
+    private static File writeSortedRun(Hits source, HitProperty sortBy, boolean useKeys, long runStart,
+            int runLength, File dir) throws IOException {
+        int[] indices = new int[runLength];
+        for (int i = 0; i < runLength; i++)
+            indices[i] = i;
+        byte[][] keys = null;
+        if (useKeys) {
+            // Collator.compare() is synchronized and therefore slow; compare collation keys instead.
+            keys = new byte[runLength][];
+            for (int i = 0; i < runLength; i++) {
+                CollationKey key = sortBy.getCollationKey(runStart + i);
+                keys[i] = key.toByteArray();
+            }
+            byte[][] runKeys = keys;
+            boolean reverse = sortBy.isReverse();
+            IntArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = compareKeys(runKeys[a], runKeys[b], reverse);
+                return cmp != 0 ? cmp : HitsListAbstract.compareByPosition(source, runStart + a, runStart + b);
+            });
+        } else {
+            IntArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = sortBy.compare(runStart + a, runStart + b);
+                return cmp != 0 ? cmp : HitsListAbstract.compareByPosition(source, runStart + a, runStart + b);
+            });
+        }
+
+        File run = File.createTempFile("blacklab-sortrun-", ".tmp", dir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+            for (int i: indices) {
+                long sourceIndex = runStart + i;
+                if (useKeys) {
+                    out.writeInt(keys[i].length);
+                    out.write(keys[i]);
+                }
+                out.writeInt(source.doc(sourceIndex));
+                out.writeInt(source.start(sourceIndex));
+                out.writeInt(source.end(sourceIndex));
+                out.writeLong(sourceIndex);
+            }
+        }
+        return run;
+    }
+
+    /** Merge the sorted runs into one file of fixed-size records. */
+    private static void merge(List<File> runs, HitProperty sortBy, boolean useKeys, File output) throws IOException {
+        boolean reverse = sortBy.isReverse();
+        Comparator<RunReader> order = (a, b) -> {
+            int cmp = useKeys ? compareKeys(a.key, b.key, reverse) : sortBy.compare(a.sourceIndex, b.sourceIndex);
+            if (cmp == 0)
+                cmp = HitsListAbstract.compareByPosition(a.doc, a.start, a.end, b.doc, b.start, b.end);
+            return cmp != 0 ? cmp : Integer.compare(a.runNumber, b.runNumber);
+        };
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()), order);
+        List<RunReader> readers = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE))) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i), i, useKeys);
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+            long n = 0;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                out.writeInt(reader.doc);
+                out.writeInt(reader.start);
+                out.writeInt(reader.end);
+                out.writeLong(reader.sourceIndex);
+                if (reader.next())
+                    queue.add(reader);
+                n++;
+                if (n % BUFFER_SIZE == 0)
+                    checkAbort();
+            }
+        } finally {
+            for (RunReader reader: readers)
+                reader.close();
+        }
+    }
+
+    /** Compare collation key bytes (unsigned, like CollationKey.compareTo()). */
+    private static int compareKeys(byte[] a, byte[] b, boolean reverse) {
+        return reverse ? Arrays.compareUnsigned(b, a) : Arrays.compareUnsigned(a, b);
+    }
+
+    private static void checkAbort() {
+        try {
+            ThreadAborter.checkAbort();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedSearch(e);
+        }
+    }
+
+    /** Reads the records from a sorted run, one at a time. */
+    private static class RunReader {
+
+        private final DataInputStream in;
+
+        private final int runNumber;
+
+        private final boolean hasKeys;
+
+        byte[] key;
+
+        int doc;
+
+        int start;
+
+        int end;
+
+        long sourceIndex;
+
+        RunReader(File file, int runNumber, boolean hasKeys) throws IOException {
+            InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            this.in = new DataInputStream(is);
+            this.runNumber = runNumber;
+            this.hasKeys = hasKeys;
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return false if there are no more records
+         */
+        boolean next() throws IOException {
+            try {
+                if (hasKeys) {
+                    key = new byte[in.readInt()];
+                    in.readFully(key);
+                }
+                doc = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            start = in.readInt();
+            end = in.readInt();
+            sourceIndex = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.jcip.annotations.ThreadSafe;
+import nl.inl.blacklab.exceptions.BlackLabException;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.lucene.MatchInfo;
+import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+
+/**
+ * Hits read lazily from a file written by {@link HitsExternalSort}.
+ *
+ * The file contains fixed-size records of (doc, start, end, index in source). Each thread
+ * keeps its own page of records in memory, so iterating over the hits in order is efficient,
+ * and threads reading different parts of the hits (e.g. while grouping in parallel) don't
+ * block each other or evict each other's page. Pages are read using positional reads, which
+ * can happen concurrently. Match info is not written to the file; we get it from the source
+ * hits when needed.
+ *
+ * The file is deleted when this object is garbage collected.
+ */
+@ThreadSafe
+class HitsFromSortedFile extends HitsAbstract {
+
+    private static final Logger logger = LogManager.getLogger(HitsFromSortedFile.class);
+
+    /** Size of a record: doc, start, end (ints) and source index (long) */
+    static final int RECORD_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    /** How many records to read at a time */
+    private static final int RECORDS_PER_PAGE = 4096;
+
+    /** Deletes our file once we're no longer reachable */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /** Hits we were sorted from (for match info) */
+    private final Hits source;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    /** A page of records read by a thread.
+     *
+     * (static, so the thread local doesn't keep us from being garbage collected and our file deleted)
+     */
+    private static final class Page {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORDS_PER_PAGE * RECORD_SIZE);
+
+        /** Number of the page we've read, or -1 if none */
+        private long pageNumber = -1;
+    }
+
+    /** The page each thread read last */
+    private final ThreadLocal<Page> pages = ThreadLocal.withInitial(Page::new);
+
+    HitsFromSortedFile(Hits source, File file, long size) throws IOException {
+        this.source = source;
+        this.size = size;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        FileChannel ch = channel;
+        cleaner.register(this, () -> {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // ignore, we're deleting the file anyway
+            }
+            if (!file.delete())
+                logger.warn("Could not delete temporary sort file {}", file);
+        });
+    }
+
+    /**
+     * Get this thread's page containing the record for a hit, reading it if necessary.
+     *
+     * @param index hit index
+     * @return the page's buffer (the hit's record is at {@link #offset(long)})
+     */
+    private ByteBuffer page(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index);
+        Page page = pages.get();
+        long pageNeeded = index / RECORDS_PER_PAGE;
+        if (pageNeeded != page.pageNumber) {
+            ByteBuffer buffer = page.buffer;
+            page.pageNumber = -1;
+            try {
+                buffer.clear();
+                long position = pageNeeded * RECORDS_PER_PAGE * RECORD_SIZE;
+                long bytesLeft = (size - pageNeeded * RECORDS_PER_PAGE) * RECORD_SIZE;
+                buffer.limit((int) Math.min(buffer.capacity(), bytesLeft));
+                while (buffer.hasRemaining()) {
+                    // (positional read: doesn't use or change the channel's position, so threads can read concurrently)
+                    if (channel.read(buffer, position + buffer.position()) < 0)
+                        throw new IOException("Unexpected end of temporary sort file");
+                }
+            } catch (IOException e) {
+                throw BlackLabException.wrapRuntime(e);
+            }
+            page.pageNumber = pageNeeded;
+        }
+        return page.buffer;
+    }
+
+    /** Offset of a hit's record in its page */
+    private static int offset(long index) {
+        return (int) (index % RECORDS_PER_PAGE) * RECORD_SIZE;
+    }
+
+    @Override
+    public AnnotatedField field() {
+        return source.field();
+    }
+
+    @Override
+    public MatchInfoDefs matchInfoDefs() {
+        return source.matchInfoDefs();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void getEphemeral(long index, EphemeralHit hit) {
+        ByteBuffer page = page(index);
+        int offset = offset(index);
+        hit.doc_ = page.getInt(offset);
+        hit.start_ = page.getInt(offset + Integer.BYTES);
+        hit.end_ = page.getInt(offset + 2 * Integer.BYTES);
+        hit.matchInfos_ = source.matchInfos(page.getLong(offset + 3 * Integer.BYTES));
+    }
+
+    @Override
+    public int doc(long index) {
+        return page(index).getInt(offset(index));
+    }
+
+    @Override
+    public int start(long index) {
+        return page(index).getInt(offset(index) + Integer.BYTES);
+    }
+
+    @Override
+    public int end(long index) {
+        return page(index).getInt(offset(index) + 2 * Integer.BYTES);
+    }
+
+    private long sourceIndex(long index) {
+        return page(index).getLong(offset(index) + 3 * Integer.BYTES);
+    }
+
+    @Override
+    public MatchInfo[] matchInfos(long hitIndex) {
+        return source.matchInfos(sourceIndex(hitIndex));
+    }
+
+    @Override
+    public MatchInfo matchInfo(long hitIndex, int matchInfoIndex) {
+        return source.matchInfo(sourceIndex(hitIndex), matchInfoIndex);
+    }
+
+    @Override
+    public Hits getStatic() {
+        return this;
+    }
+}
@@ -8,14 +8,35 @@ import org.apache.lucene.queries.spans.Spans;
 import com.ibm.icu.text.CollationKey;
 
 import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.config.BLConfigSearch;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.lucene.MatchInfoDefs;
 
 public abstract class HitsListAbstract extends HitsAbstract implements HitsMutable {
 
+    /**
+     * Compare two hits by position: doc, then start, then end.
+     *
+     * All our sorts use this to order hits with equal sort values, so a page of
+     * sorted hits is the same no matter which sort produced it.
+     */
+    static int compareByPosition(int docA, int startA, int endA, int docB, int startB, int endB) {
+        int cmp = Integer.compare(docA, docB);
+        if (cmp == 0)
+            cmp = Integer.compare(startA, startB);
+        return cmp != 0 ? cmp : Integer.compare(endA, endB);
+    }
+
+    /** Compare two hits from the same Hits object by position (see above). */
+    static int compareByPosition(Hits hits, long a, long b) {
+        return compareByPosition(hits.doc(a), hits.start(a), hits.end(a), hits.doc(b), hits.start(b), hits.end(b));
+    }
+
     static boolean debugCheckAllReasonable(Hits hits) {
         for (EphemeralHit hit: hits) {
             assert debugCheckReasonableHit(hit);
@@ -127,15 +148,29 @@ public abstract class HitsListAbstract extends HitsAbstract implements HitsMutab
         if (lock != null) {
             lock.readLock().lock();
             try {
-                return sortedNoLock(sortBy);
+                return sortedInMemoryOrExternal(sortBy);
             } finally {
                 lock.readLock().unlock();
             }
         } else {
-            return sortedNoLock(sortBy);
+            return sortedInMemoryOrExternal(sortBy);
         }
     }
 
+    /**
+     * Sort in memory, or using temporary files if there are too many hits.
+     *
+     * @param sortBy property to sort on
+     * @return sorted hits
+     */
+    private Hits sortedInMemoryOrExternal(HitProperty sortBy) {
+        BLConfigSearch config = BlackLab.config().getSearch();
+        long threshold = config.getExternalSortThreshold();
+        if (threshold >= 0 && size() > threshold)
+            return HitsExternalSort.sort(this, sortBy, config.getExternalSortTempDir(), config.getExternalSortRunSize());
+        return sortedNoLock(sortBy);
+    }
+
     abstract Hits sortedNoLock(HitProperty p);
 
     @Override
@@ -163,6 +198,7 @@ public abstract class HitsListAbstract extends HitsAbstract implements HitsMutab
             indices[i] = i;
 
         // Sort the indices using the given HitProperty
+        long[] packedKeys;
         if (sortBy.getValueType() == PropertyValueString.class) {
             // Collator.compare() is synchronized and therefore slow.
             // It is faster to calculate all the collationkeys first, then parallel sort them.
@@ -170,12 +206,32 @@ public abstract class HitsListAbstract extends HitsAbstract implements HitsMutab
             for (int i = 0; i < sortValues.length; ++i) {
                 sortValues[i] = sortBy.getCollationKey(i);
             }
-            IntArrays.parallelQuickSort(indices, (a, b) -> sortValues[a].compareTo(sortValues[b]));
+            boolean reverse = sortBy.isReverse();
+            IntArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = reverse ? sortValues[b].compareTo(sortValues[a]) : sortValues[a].compareTo(sortValues[b]);
+                return cmp != 0 ? cmp : compareByPosition(this, a, b);
+            });
+        } else if ((packedKeys = sortBy.packedSortKeys()) != null) {
+            // Each hit's value fits in a long (e.g. sort positions of a few context words).
+            // Radix sort those instead of comparing the values.
+            LongArrays.parallelRadixSortIndirect(indices, packedKeys, true);
+            // Order runs of hits with equal keys by position
+            int runStart = 0;
+            for (int i = 1; i <= size; i++) {
+                if (i == size || packedKeys[indices[i]] != packedKeys[indices[runStart]]) {
+                    if (i - runStart > 1)
+                        IntArrays.quickSort(indices, runStart, i, (a, b) -> compareByPosition(this, a, b));
+                    runStart = i;
+                }
+            }
         } else {
-            IntArrays.parallelQuickSort(indices, sortBy::compare);
+            IntArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = sortBy.compare(a, b);
+                return cmp != 0 ? cmp : compareByPosition(this, a, b);
+            });
         }
 
-        HitsMutable r = HitsMutable.create(field(), matchInfoDefs(), size, false, false);
+        HitsMutable r = HitsMutable.createResultList(field(), matchInfoDefs(), size, Constants.JAVA_MAX_ARRAY_SIZE);
         for (int index: indices) {
             EphemeralHit hit = new EphemeralHit();
             getEphemeral(index, hit);
@@ -0,0 +1,407 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectBigArrayBigList;
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.lucene.MatchInfo;
+import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+
+/**
+ * A HitsMutable implementation that stores hits in compressed form.
+ * <p>
+ * Hits are encoded as variable-length integers in fixed-size byte pages. Each block of
+ * {@link #BLOCK_SIZE} hits starts with absolute values; after that, the doc id is stored as
+ * a delta from the previous hit and, within the same document, the start as a delta from
+ * the previous start. The end is stored as the hit length. For hits sorted by document and
+ * position (the usual case), this takes 3 or 4 bytes per hit instead of 12.
+ * <p>
+ * Match info is stored per match info index (one column per capture/relation), instead of
+ * an array per hit.
+ * <p>
+ * Because the pages have a fixed size, we know exactly how much memory the hits take
+ * (see {@link #memoryUsageBytes()}).
+ * <p>
+ * Like {@link HitsListNoLock}, this does no locking: fill it in one thread, then use it from
+ * many threads as long as it is not modified anymore. Random access has to decode a block
+ * (each thread keeps the two blocks it decoded last), so it is a bit slower than for the
+ * array-based implementations; iterating is fast.
+ * <p>
+ * Pages are allocated in 64 KB units and kept when the list is cleared, so this is meant for
+ * large result lists that are kept around (see {@link HitsMutable#createResultList}), not for
+ * small temporary buffers.
+ */
+class HitsListCompact extends HitsListAbstract {
+
+    /** Number of hits per block (random access decodes at most this many hits) */
+    static final int BLOCK_SIZE = 16;
+
+    /** Page size is 2^PAGE_BITS bytes */
+    private static final int PAGE_BITS = 16;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Estimated size of a MatchInfo object (we don't know the exact size of these) */
+    private static final int ESTIMATED_MATCH_INFO_SIZE = 32;
+
+    /** Encoded hits */
+    private final ObjectArrayList<byte[]> pages = new ObjectArrayList<>();
+
+    /** Byte position where each block of hits starts */
+    private final LongBigArrayBigList blockOffsets = new LongBigArrayBigList();
+
+    /** Match info for each hit, per match info index (all the same length as the number of hits) */
+    private final ObjectArrayList<ObjectBigArrayBigList<MatchInfo>> matchInfoColumns = new ObjectArrayList<>();
+
+    /** Were our hits added with match info? (either all hits have it, or none do) */
+    private boolean withMatchInfo;
+
+    /** Number of hits */
+    private long size;
+
+    /** Where to write the next byte */
+    private long writePosition;
+
+    /** Doc id of the last hit added */
+    private int prevDoc;
+
+    /** Start of the last hit added */
+    private int prevStart;
+
+    /** Incremented when the list is cleared, so decoded blocks from before that aren't used */
+    private long generation;
+
+    /** Hits in a block, decoded (buffers are reused for other blocks) */
+    private static final class DecodedBlock {
+
+        private long blockNumber = -1;
+
+        /** Number of hits decoded (the last block may grow while adding hits) */
+        private int length;
+
+        /** Generation of the list when we decoded this block */
+        private long generation;
+
+        private final int[] docs = new int[BLOCK_SIZE];
+
+        private final int[] starts = new int[BLOCK_SIZE];
+
+        private final int[] ends = new int[BLOCK_SIZE];
+
+        boolean isBlock(long blockNumber, int length, long generation) {
+            return this.blockNumber == blockNumber && this.length == length && this.generation == generation;
+        }
+    }
+
+    /** State for random access, per thread */
+    private final class RandomAccess {
+
+        /** The two blocks decoded last, most recent first. Comparing two hits (e.g. while sorting)
+         *  alternates between their blocks, so one block isn't enough. */
+        private final DecodedBlock[] blocks = { new DecodedBlock(), new DecodedBlock() };
+
+        private final Decoder decoder = new Decoder();
+
+        private final EphemeralHit hit = new EphemeralHit();
+
+        DecodedBlock block(long blockNumber, int length) {
+            DecodedBlock block = blocks[0];
+            if (block.isBlock(blockNumber, length, generation))
+                return block;
+            block = blocks[1];
+            if (!block.isBlock(blockNumber, length, generation)) {
+                // Decode into the least recently used block
+                decoder.startBlock(blockNumber);
+                for (int i = 0; i < length; i++) {
+                    decoder.next(hit);
+                    block.docs[i] = hit.doc_;
+                    block.starts[i] = hit.start_;
+                    block.ends[i] = hit.end_;
+                }
+                block.blockNumber = blockNumber;
+                block.length = length;
+                block.generation = generation;
+            }
+            blocks[1] = blocks[0];
+            blocks[0] = block;
+            return block;
+        }
+    }
+
+    private final ThreadLocal<RandomAccess> randomAccess = ThreadLocal.withInitial(RandomAccess::new);
+
+    HitsListCompact(AnnotatedField field, MatchInfoDefs matchInfoDefs) {
+        super(field, matchInfoDefs);
+    }
+
+    @Override
+    public void add(int doc, int start, int end, MatchInfo[] matchInfo) {
+        assert HitsListAbstract.debugCheckReasonableHit(doc, start, end);
+        if (size % BLOCK_SIZE == 0) {
+            // Start a new block with absolute values
+            blockOffsets.add(writePosition);
+            writeVInt(doc);
+            writeVInt(start);
+        } else {
+            writeVInt(zigZag(doc - prevDoc));
+            writeVInt(doc == prevDoc ? zigZag(start - prevStart) : start);
+        }
+        writeVInt(end - start);
+        prevDoc = doc;
+        prevStart = start;
+        addMatchInfo(matchInfo);
+        size++;
+    }
+
+    private void addMatchInfo(MatchInfo[] matchInfo) {
+        if (matchInfo == null) {
+            // Either all hits have matchInfo, or none do.
+            assert !withMatchInfo : "Cannot have some hits with matchInfo and some without";
+            return;
+        }
+        assert withMatchInfo || size == 0 : "Cannot have some hits with matchInfo and some without";
+        withMatchInfo = true;
+        while (matchInfoColumns.size() < matchInfo.length) {
+            // New match info index; earlier hits don't have a value for it
+            ObjectBigArrayBigList<MatchInfo> column = new ObjectBigArrayBigList<>();
+            column.size(size);
+            matchInfoColumns.add(column);
+        }
+        for (int i = 0; i < matchInfoColumns.size(); i++)
+            matchInfoColumns.get(i).add(i < matchInfo.length ? matchInfo[i] : null);
+    }
+
+    @Override
+    public void add(EphemeralHit hit) {
+        add(hit.doc_, hit.start_, hit.end_, hit.matchInfos_);
+    }
+
+    @Override
+    public void add(Hit hit) {
+        add(hit.doc(), hit.start(), hit.end(), hit.matchInfos());
+    }
+
+    @Override
+    public void addAllConvertDocBaseNoLock(Hits hits, int docBase) {
+        for (EphemeralHit hit: hits) {
+            add(hit.doc_ + docBase, hit.start_, hit.end_, hit.matchInfos_);
+        }
+    }
+
+    @Override
+    void clearNoLock() {
+        // Keep the pages; we'll overwrite them when adding hits again
+        blockOffsets.clear();
+        matchInfoColumns.clear();
+        withMatchInfo = false;
+        size = 0;
+        writePosition = 0;
+        generation++;
+    }
+
+    @Override
+    long sizeNoLock() {
+        return size;
+    }
+
+    @Override
+    long countDocsNoLock() {
+        IntOpenHashSet docs = new IntOpenHashSet();
+        for (EphemeralHit hit: this)
+            docs.add(hit.doc_);
+        return docs.size();
+    }
+
+    @Override
+    Hits sortedNoLock(HitProperty p) {
+        if (size <= Constants.JAVA_MAX_ARRAY_SIZE)
+            return sort32(p);
+        // Too many hits to sort using regular arrays; use the BigArrays-based implementation
+        HitsListNoLock copy = new HitsListNoLock(field, matchInfoDefs, size);
+        copy.addAll(this);
+        return copy.sorted(p.copyWith(copy));
+    }
+
+    /**
+     * Get the decoded block containing a hit.
+     *
+     * Random access often hits the same block several times (e.g. doc(), start() and end()
+     * for the same hit, or consecutive hits), so each thread keeps the blocks it decoded last.
+     *
+     * @param index hit index
+     * @return the decoded block (only valid until this thread decodes two other blocks)
+     */
+    private DecodedBlock block(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index);
+        long blockNumber = index / BLOCK_SIZE;
+        int length = (int) Math.min(BLOCK_SIZE, size - blockNumber * BLOCK_SIZE);
+        return randomAccess.get().block(blockNumber, length);
+    }
+
+    @Override
+    public void getEphemeral(long index, EphemeralHit hit) {
+        DecodedBlock block = block(index);
+        int i = (int) (index % BLOCK_SIZE);
+        hit.doc_ = block.docs[i];
+        hit.start_ = block.starts[i];
+        hit.end_ = block.ends[i];
+        hit.matchInfos_ = matchInfos(index);
+    }
+
+    @Override
+    public int doc(long index) {
+        return block(index).docs[(int) (index % BLOCK_SIZE)];
+    }
+
+    @Override
+    public int start(long index) {
+        return block(index).starts[(int) (index % BLOCK_SIZE)];
+    }
+
+    @Override
+    public int end(long index) {
+        return block(index).ends[(int) (index % BLOCK_SIZE)];
+    }
+
+    @Override
+    public MatchInfo[] matchInfos(long index) {
+        if (!withMatchInfo)
+            return null;
+        MatchInfo[] result = new MatchInfo[matchInfoColumns.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = matchInfoColumns.get(i).get(index);
+        return result;
+    }
+
+    @Override
+    public MatchInfo matchInfo(long index, int matchInfoIndex) {
+        if (matchInfoIndex >= matchInfoColumns.size())
+            return null;
+        return matchInfoColumns.get(matchInfoIndex).get(index);
+    }
+
+    /** Iterate by decoding hits sequentially (much faster than random access). */
+    @Override
+    public Iterator<EphemeralHit> iterator() {
+        return new Iterator<>() {
+            private final Decoder decoder = new Decoder();
+
+            private final EphemeralHit hit = new EphemeralHit();
+
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public EphemeralHit next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                if (index % BLOCK_SIZE == 0)
+                    decoder.startBlock(index / BLOCK_SIZE);
+                decoder.next(hit);
+                hit.matchInfos_ = matchInfos(index);
+                index++;
+                return hit;
+            }
+        };
+    }
+
+    /**
+     * Exact number of bytes used for the hits, plus an estimate for the match info.
+     *
+     * @return memory used in bytes
+     */
+    @Override
+    public long memoryUsageBytes() {
+        long bytes = (long) pages.size() * PAGE_SIZE + blockOffsets.size64() * Long.BYTES;
+        for (ObjectBigArrayBigList<MatchInfo> column: matchInfoColumns) {
+            // Reference per hit, plus the MatchInfo objects themselves (which might be shared)
+            bytes += column.size64() * (Integer.BYTES + ESTIMATED_MATCH_INFO_SIZE);
+        }
+        return bytes;
+    }
+
+    private void writeByte(int b) {
+        int offset = (int) (writePosition & PAGE_MASK);
+        if (offset == 0 && (writePosition >>> PAGE_BITS) == pages.size())
+            pages.add(new byte[PAGE_SIZE]);
+        pages.get((int) (writePosition >>> PAGE_BITS))[offset] = (byte) b;
+        writePosition++;
+    }
+
+    /** Write a non-negative int (or a zigzag-encoded one) as a variable-length integer */
+    private void writeVInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private byte readByte(long position) {
+        return pages.get((int) (position >>> PAGE_BITS))[(int) (position & PAGE_MASK)];
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Decodes hits sequentially from a block. Not threadsafe, but cheap to create. */
+    private class Decoder {
+
+        private long position;
+
+        private boolean firstInBlock;
+
+        private int doc;
+
+        private int start;
+
+        void startBlock(long blockNumber) {
+            position = blockOffsets.getLong(blockNumber);
+            firstInBlock = true;
+        }
+
+        /** Decode the next hit in this block */
+        void next(EphemeralHit hit) {
+            if (firstInBlock) {
+                doc = readVInt();
+                start = readVInt();
+                firstInBlock = false;
+            } else {
+                int docDelta = unZigZag(readVInt());
+                doc += docDelta;
+                start = docDelta == 0 ? start + unZigZag(readVInt()) : readVInt();
+            }
+            hit.doc_ = doc;
+            hit.start_ = start;
+            hit.end_ = start + readVInt();
+        }
+
+        private int readVInt() {
+            byte b = readByte(position++);
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = readByte(position++);
+                value |= (b & 0x7F) << shift;
+            }
+            return value;
+        }
+    }
+}
@@ -277,17 +277,22 @@ class HitsListNoLock extends HitsListAbstract {
                     hitIndex++;
                 }
             }
+            boolean reverse = sortBy.isReverse();
             LongBigArrays.parallelQuickSort(indices, (a, b) -> {
                 CollationKey o1 = BigArrays.get(sortValues, a);
                 CollationKey o2 = BigArrays.get(sortValues, b);
-                return o1.compareTo(o2);
+                int cmp = reverse ? o2.compareTo(o1) : o1.compareTo(o2);
+                return cmp != 0 ? cmp : compareByPosition(this, a, b);
             });
         } else {
-            LongBigArrays.parallelQuickSort(indices, sortBy);
+            LongBigArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = sortBy.compare(a, b);
+                return cmp != 0 ? cmp : compareByPosition(this, a, b);
+            });
         }
 
         // Now use the sorted indices to fill a new HitsInternal with the actual hits
-        HitsMutable r = HitsMutable.create(field, matchInfoDefs, size(), true, false);
+        HitsMutable r = HitsMutable.createResultList(field, matchInfoDefs, size(), Long.MAX_VALUE);
         for (final long[] segment: indices) {
             if (matchInfos.isEmpty()) {
                 for (long l: segment) {
@@ -53,6 +53,26 @@ public interface HitsMutable extends Hits {
         return new HitsListNoLock32(field, matchInfoDefs, (int)initialCapacity);
     }
 
+    /**
+     * Create an empty, non-locking list for (potentially large) results that are kept around,
+     * e.g. sorted or filtered hits.
+     *
+     * Uses compact hit storage if enabled (see {@link HitsListCompact}). Don't use this for small
+     * or temporary lists, such as buffers; compact storage allocates memory in large pages.
+     *
+     * @param initialCapacity initial hits capacity, or default if negative
+     * @param maxCapacity maximum capacity (see {@link #create(AnnotatedField, MatchInfoDefs, long, long, boolean)})
+     * @return HitsInternal object
+     */
+    static HitsListAbstract createResultList(AnnotatedField field, MatchInfoDefs matchInfoDefs, long initialCapacity,
+            long maxCapacity) {
+        if (BlackLab.config().getSearch().isCompactHitStorage()) {
+            // Store hits in compressed form (can hold any number of hits)
+            return new HitsListCompact(field, matchInfoDefs);
+        }
+        return create(field, matchInfoDefs, initialCapacity, maxCapacity, false);
+    }
+
     void add(int doc, int start, int end, MatchInfo[] matchInfo);
 
     void add(EphemeralHit hit);
@@ -0,0 +1,172 @@
+package nl.inl.blacklab.search.results.hits;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.LeafReaderContext;
+
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropContext;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.util.ThreadAborter;
+
+/**
+ * Selects the first hits of a sorted result without sorting all hits.
+ *
+ * Each segment keeps a bounded heap of its best k hits. Heaps from all segments are
+ * merged at the end to yield the global top k. Memory use is proportional to k (times
+ * the number of segments) instead of the total number of hits, which is what we want
+ * when we're only displaying the first page of a sorted result.
+ *
+ * Hits that compare equal are ordered by doc, then start (like the full sort does), so
+ * the result is deterministic and the same as the first k hits of the full sort.
+ */
+final class HitsTopK {
+
+    /** How often to check if we've been asked to abort (must be a power of two minus one) */
+    private static final long CHECK_ABORT_MASK = 0xFFFF;
+
+    /** A hit that made it into a segment's top k, with the key to merge on. */
+    private record Candidate(long index, Comparable<Object> key, EphemeralHit hit) {}
+
+    private HitsTopK() {
+    }
+
+    /**
+     * Return the first k hits, sorted by the given property.
+     *
+     * Falls back to a full sort if per-segment hits aren't available or if k
+     * covers (nearly) all hits anyway.
+     *
+     * @param hits hits to select from
+     * @param sortBy property to sort on (context may be global hits)
+     * @param k maximum number of hits to return
+     * @return the first k hits in sorted order (global doc ids)
+     */
+    static Hits sortedTopK(Hits hits, HitProperty sortBy, long k) {
+        long size = hits.size(); // fetch all hits
+        Map<LeafReaderContext, Hits> perSegment = hits.hitsPerSegment();
+        if (perSegment == null || k >= size / 2 || k > Constants.JAVA_MAX_ARRAY_SIZE)
+            return hits.sorted(sortBy).sublist(0, k);
+
+        int numThreads = Math.max(hits.index().blackLab().maxThreadsPerSearch(), 1);
+        Parallel<Map.Entry<LeafReaderContext, Hits>, List<Candidate>> parallel = new Parallel<>(hits.index(), numThreads);
+        List<Candidate> candidates = parallel.mapReduce(perSegment.entrySet(),
+                entry -> entry.getValue().size(),
+                threadItems -> threadItems.stream()
+                        .map(entry -> selectInSegment(entry.getKey(), entry.getValue().getStatic(), sortBy, (int) k))
+                        .toList(),
+                List::addAll,
+                ArrayList::new);
+
+        // Merge the segments' candidates and keep the best k
+        candidates.sort(candidateOrder(sortBy.isReverse()));
+        int n = (int) Math.min(k, candidates.size());
+        HitsMutable result = HitsMutable.create(hits.field(), hits.matchInfoDefs(), n, false, false);
+        for (int i = 0; i < n; i++)
+            result.add(candidates.get(i).hit());
+        return result;
+    }
+
+    /**
+     * Find the best k hits in a single segment.
+     *
+     * @param lrc the segment
+     * @param segmentHits the hits in this segment (segment-local doc ids)
+     * @param sortBy property to sort on
+     * @param k number of hits to keep
+     * @return the best k hits in this segment, with global doc ids
+     */
+    private static List<Candidate> selectInSegment(LeafReaderContext lrc, Hits segmentHits, HitProperty sortBy, int k) {
+        // No collation cache: it would grow with the number of distinct values, not with k
+        HitProperty prop = sortBy.copyWith(PropContext.segmentToGlobal(segmentHits, lrc, null));
+        long n = segmentHits.size();
+        List<Candidate> candidates = new ArrayList<>(k);
+        if (prop.getValueType() == PropertyValueString.class) {
+            // Collator.compare() is synchronized and slow, so compare collation keys instead.
+            // We need the key for each hit anyway, so keep it in the heap with the hit.
+            Comparator<Candidate> keyOrder = keyOrder(prop.isReverse());
+            Comparator<Candidate> order = (a, b) -> {
+                int cmp = keyOrder.compare(a, b);
+                return cmp != 0 ? cmp : HitsListAbstract.compareByPosition(segmentHits, a.index(), b.index());
+            };
+            PriorityQueue<Candidate> heap = new PriorityQueue<>(k + 1, order.reversed()); // worst on top
+            for (long i = 0; i < n; i++) {
+                checkAbortPeriodically(i);
+                @SuppressWarnings("unchecked")
+                Comparable<Object> key = (Comparable<Object>) (Comparable<?>) prop.getCollationKey(i);
+                Candidate candidate = new Candidate(i, key, null);
+                if (heap.size() < k) {
+                    heap.add(candidate);
+                } else if (order.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+            for (Candidate c: heap)
+                candidates.add(new Candidate(c.index(), c.key(), hitWithGlobalDocId(segmentHits, c.index(), lrc)));
+        } else {
+            // Keep only hit indexes in the heap; compare them using the property directly
+            LongComparator order = (a, b) -> {
+                int cmp = prop.compare(a, b);
+                return cmp != 0 ? cmp : HitsListAbstract.compareByPosition(segmentHits, a, b);
+            };
+            LongHeapPriorityQueue heap = new LongHeapPriorityQueue(k + 1, (a, b) -> order.compare(b, a)); // worst on top
+            for (long i = 0; i < n; i++) {
+                checkAbortPeriodically(i);
+                if (heap.size() < k) {
+                    heap.enqueue(i);
+                } else if (order.compare(i, heap.firstLong()) < 0) {
+                    heap.dequeueLong();
+                    heap.enqueue(i);
+                }
+            }
+            while (!heap.isEmpty()) {
+                long i = heap.dequeueLong();
+                candidates.add(new Candidate(i, prop.get(i), hitWithGlobalDocId(segmentHits, i, lrc)));
+            }
+        }
+        return candidates;
+    }
+
+    private static Comparator<Candidate> keyOrder(boolean reverse) {
+        return (a, b) -> reverse ? b.key().compareTo(a.key()) : a.key().compareTo(b.key());
+    }
+
+    /** Order candidates (with global doc ids) by key, then by position, like the full sort. */
+    private static Comparator<Candidate> candidateOrder(boolean reverse) {
+        Comparator<Candidate> keyOrder = keyOrder(reverse);
+        return (a, b) -> {
+            int cmp = keyOrder.compare(a, b);
+            if (cmp != 0)
+                return cmp;
+            EphemeralHit ha = a.hit(), hb = b.hit();
+            return HitsListAbstract.compareByPosition(ha.doc(), ha.start(), ha.end(), hb.doc(), hb.start(), hb.end());
+        };
+    }
+
+    private static EphemeralHit hitWithGlobalDocId(Hits segmentHits, long index, LeafReaderContext lrc) {
+        EphemeralHit hit = new EphemeralHit();
+        segmentHits.getEphemeral(index, hit);
+        hit.convertDocIdToGlobal(lrc.docBase);
+        return hit;
+    }
+
+    private static void checkAbortPeriodically(long i) {
+        if ((i & CHECK_ABORT_MASK) == 0) {
+            try {
+                ThreadAborter.checkAbort();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedSearch(e);
+            }
+        }
+    }
+}
@@ -23,8 +23,11 @@ public class HitsUtils {
     private static int THRESHOLD_SINGLE_THREADED = 100;
 
     /**
-     * Grouping hits is best done in 3 threads on average.
+     * Grouping hits by PropertyValue is best done in 3 threads on average.
      * Depending on the exact search, 2 or 4 might be a bit better, but that's hard to predict.
+     *
+     * This doesn't apply if the grouping property supports group keys (see {@link HitProperty#groupKeys()}):
+     * then we only create a PropertyValue per distinct key, so more threads do help.
      */
     static final int IDEAL_NUM_THREADS_GROUPING = 3;
 
@@ -38,16 +41,17 @@ public class HitsUtils {
         hits = hits.getStatic();
         long n = hits.size();
 
-        int numThreads = Math.min(
-                Math.max(hits.index().blackLab().maxThreadsPerSearch(), 1),
-                IDEAL_NUM_THREADS_GROUPING);
-
         Map<LeafReaderContext, Hits> hitsPerSegment = hits.hitsPerSegment();
         if (hitsPerSegment == null) {
             // We don't have per-segment hits, so we can't do this in parallel.
             return HitsAbstract.groupHits(hits, groupBy.copyWith(PropContext.globalHits(hits, new HashMap<>())), maxValuesToStorePerGroup, new HashMap<>(), null);
         }
 
+        int numThreads = Math.max(hits.index().blackLab().maxThreadsPerSearch(), 1);
+        if (!groupBy.supportsGroupKeys())
+            numThreads = Math.min(numThreads, IDEAL_NUM_THREADS_GROUPING);
+        numThreads = Math.max(1, Math.min(numThreads, hitsPerSegment.size()));
+
         // If there are only a few hits, just group them in a single thread.
         if (numThreads == 1 || n < THRESHOLD_SINGLE_THREADED) {
             logger.debug("GROUP: single thread");
@@ -5,6 +5,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
@@ -105,6 +107,37 @@ public class Parallel<I, O> {
                 .toList();
     }
 
+    /**
+     * Run a task for each item, letting idle threads take the next item from a shared queue.
+     * <p>
+     * Unlike {@link #forEach}, items aren't divided over the threads up front, so if some items
+     * take longer than others, threads that are done early will pick up the remaining items.
+     * Larger items are started first; items of equal size are started in their original order.
+     *
+     * @param items the items to process
+     * @param sizeGetter a function that returns the size of each item
+     * @param task the task to run for each item
+     * @return the futures for the worker threads
+     */
+    public List<Future<List<O>>> forEachItem(List<I> items,
+            Function<I, Long> sizeGetter,
+            Consumer<I> task) {
+        List<I> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparing(sizeGetter).reversed()); // (stable sort)
+        Queue<I> queue = new ConcurrentLinkedQueue<>(sorted);
+        int numWorkers = Math.min(numThreads, sorted.size());
+        List<Future<List<O>>> futures = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            futures.add(executorCompletionService.submit(() -> {
+                for (I item = queue.poll(); item != null; item = queue.poll())
+                    task.accept(item);
+                return Collections.emptyList();
+            }));
+            tasksStarted++;
+        }
+        return futures;
+    }
+
     public O reduce(
             List<Future<List<O>>> futures,
             BiConsumer<O, O> reducer,
@@ -125,8 +125,7 @@ public abstract class HitFetcherAbstract implements HitFetcher {
         requestedHitsToCount.getAndUpdate(c -> Math.max(clampedNumber, c)); // update count
 
         boolean hasLock = false;
-        int numThreads = Math.min(IDEAL_NUM_THREADS_FETCHING, maxThreadsPerOperation);
-        Parallel<HitFetcherSegment, Void> parallel = new Parallel<>(index, numThreads);
+        Parallel<HitFetcherSegment, Void> parallel = new Parallel<>(index, numThreadsFetching());
         try {
             while (!ensureHitsReadLock.tryLock(HIT_POLLING_TIME_MS, TimeUnit.MILLISECONDS)) {
                 /*
@@ -142,12 +141,13 @@ public abstract class HitFetcherAbstract implements HitFetcher {
 
             // This is the blocking portion, start worker threads, then wait for them to finish.
 
-            // Distribute the SpansReaders over the threads.
-            // Make sure the number of documents per segment is roughly equal for each thread.
+            // Let the threads take SpansReaders from a shared queue, largest segments first, so that
+            // threads that finish early help out with the remaining work.
+            // (SpansReaders for ranges of the same segment keep their order, so the first range starts first)
             Function<HitFetcherSegment, Long> sizeGetter = spansReader ->
                     spansReader.getLeafReaderContext() == null ? 0 : (long) spansReader.getLeafReaderContext().reader().maxDoc();
-            List<Future<List<Void>>> pendingResults = parallel.forEach(segmentReaders, sizeGetter,
-                    l -> l.forEach(HitFetcherSegment::run));
+            List<Future<List<Void>>> pendingResults = parallel.forEachItem(segmentReaders, sizeGetter,
+                    HitFetcherSegment::run);
 
             // Wait for workers to complete.
             // This will throw InterrupedException if this (HitsFromQuery) thread is interruped while waiting.
@@ -183,6 +183,15 @@ public abstract class HitFetcherAbstract implements HitFetcher {
         return hitCollector.globalHitsSoFar() >= number;
     }
 
+    /**
+     * How many threads should we use to fetch hits?
+     *
+     * @return number of threads
+     */
+    int numThreadsFetching() {
+        return Math.min(IDEAL_NUM_THREADS_FETCHING, maxThreadsPerOperation);
+    }
+
     public boolean isDone() {
         return done;
     }
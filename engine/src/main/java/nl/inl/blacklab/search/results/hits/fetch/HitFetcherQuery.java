@@ -11,7 +11,7 @@ import nl.inl.blacklab.exceptions.InvalidIndex;
 import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpanWeight;
-import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
+import nl.inl.blacklab.search.lucene.optimize.OptimizerSettings;
 import nl.inl.blacklab.search.results.SearchSettings;
 
 /**
@@ -21,6 +21,9 @@ public class HitFetcherQuery extends HitFetcherAbstract {
 
     private static final Logger logger = LogManager.getLogger(HitFetcherQuery.class);
 
+    /** How many ranges per thread to aim for, so threads that finish early can help out */
+    private static final int RANGES_PER_THREAD = 4;
+
     private final BLSpanWeight weight;
 
     public HitFetcherQuery(
@@ -32,6 +35,9 @@ public class HitFetcherQuery extends HitFetcherAbstract {
     /**
      * Call optimize() and rewrite() on the source query, and create a weight for it.
      *
+     * If we've done this before for the same query, index and settings, the cached
+     * weight is reused (see {@link QueryPlanCache}).
+     *
      * @param sourceQuery   the source query to optimize and rewrite
      * @param fiMatchFactor override FI match threshold (debug use only, -1 means no override)
      * @return the weight for the optimized/rewritten query
@@ -39,63 +45,95 @@ public class HitFetcherQuery extends HitFetcherAbstract {
     protected BLSpanWeight rewriteAndCreateWeight(BLSpanQuery sourceQuery,
             long fiMatchFactor) {
         // Override FI match threshold? (debug use only!)
+        // (these settings only apply to this query, so other queries can be optimized at the same time)
+        OptimizerSettings optimizerSettings = OptimizerSettings.current();
+        if (fiMatchFactor != -1) {
+            logger.debug("setting NFA threshold for this query to {}", fiMatchFactor);
+            optimizerSettings = optimizerSettings.withNfaThreshold(fiMatchFactor);
+        }
+        OptimizerSettings settings = optimizerSettings;
         try {
-            BLSpanQuery optimizedQuery;
-            synchronized (ClauseCombinerNfa.class) {
-                long oldFiMatchValue = ClauseCombinerNfa.getNfaThreshold();
-                if (fiMatchFactor != -1) {
-                    logger.debug("setting NFA threshold for this query to {}", fiMatchFactor);
-                    ClauseCombinerNfa.setNfaThreshold(fiMatchFactor);
-                }
-
-                boolean traceOptimization = BlackLab.config().getLog().getTrace().isOptimization();
-                if (traceOptimization)
-                    logger.debug("Query before optimize()/rewrite(): {}", sourceQuery);
+            return QueryPlanCache.get(index.reader(), sourceQuery, settings,
+                    () -> plan(sourceQuery, settings)).weight();
+        } catch (IOException e) {
+            throw new InvalidIndex(e);
+        }
+    }
 
-                optimizedQuery = sourceQuery.optimize(index.reader());
-                if (traceOptimization)
-                    logger.debug("Query after optimize(): {}", optimizedQuery);
+    private QueryPlanCache.Plan plan(BLSpanQuery sourceQuery, OptimizerSettings optimizerSettings)
+            throws IOException {
+        long start = System.nanoTime();
+        BLSpanQuery optimizedQuery;
+        try (OptimizerSettings.Scope ignored = optimizerSettings.activate()) {
+            boolean traceOptimization = BlackLab.config().getLog().getTrace().isOptimization();
+            if (traceOptimization)
+                logger.debug("Query before optimize()/rewrite(): {}", sourceQuery);
 
-                optimizedQuery = optimizedQuery.rewrite(index.reader());
-                if (traceOptimization)
-                    logger.debug("Query after rewrite(): {}", optimizedQuery);
+            optimizedQuery = sourceQuery.optimize(index.reader());
+            if (traceOptimization)
+                logger.debug("Query after optimize(): {}", optimizedQuery);
 
-                // Restore previous FI match threshold
-                if (fiMatchFactor != -1) {
-                    ClauseCombinerNfa.setNfaThreshold(oldFiMatchValue);
-                }
-            }
-
-            // This call can take a long time
-            return optimizedQuery.createWeight(index.searcher(),
-                    ScoreMode.COMPLETE_NO_SCORES, 1.0f);
-        } catch (IOException e) {
-            throw new InvalidIndex(e);
+            optimizedQuery = optimizedQuery.rewrite(index.reader());
+            if (traceOptimization)
+                logger.debug("Query after rewrite(): {}", optimizedQuery);
         }
+
+        // This call can take a long time
+        BLSpanWeight weight = optimizedQuery.createWeight(index.searcher(),
+                ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+        return QueryPlanCache.plan(start, optimizedQuery, weight);
     }
 
     @Override
     public void fetchHits(HitFilter filter, HitCollector hitCollector) {
         super.fetchHits(filter, hitCollector);
+
+        // Split large segments into ranges of documents, so several threads can work on them
+        // (e.g. after a force merge, an index may consist of only a few large segments)
+        int numThreads = numThreadsFetching();
+        int minDocsPerRange = BlackLab.config().getSearch().getMinDocsPerSegmentRange();
+        int docsPerRange = numThreads < 2 ? Integer.MAX_VALUE :
+                Math.max(minDocsPerRange, index.reader().maxDoc() / (numThreads * RANGES_PER_THREAD));
+
         for (LeafReaderContext lrc: index.reader().leaves()) {
             // Hit processor: gathers the hits from this segment and (when there's enough) adds them
             // to the global view.
+            HitProcessor hitProcessor = hitCollector.getHitProcessor(lrc);
 
             // Spans reader: fetch hits from segment and feed them to the hit processor.
-            HitFetcherSegment.State state = new HitFetcherSegment.State(lrc,
-                    hitQueryContext,
-                    this.filter,
-                    hitCollector.getHitProcessor(lrc),
-                    requestedHitsToProcess,
-                    requestedHitsToCount,
-                    hitCollector.resultsStats(),
-                    hitCollector.docsStats(),
-                    collationCache);
-            segmentReaders.add(new HitFetcherSegmentQuery(weight, state));
+            int maxDoc = lrc.reader().maxDoc();
+            int numberOfRanges = maxDoc / docsPerRange;
+            if (numberOfRanges < 2) {
+                segmentReaders.add(new HitFetcherSegmentQuery(weight, state(lrc, hitProcessor)));
+            } else {
+                // Each range gets its own spans reader. We pass on their hits in order, so the segment's
+                // hits stay sorted by document.
+                SegmentRanges ranges = new SegmentRanges(hitProcessor, hitCollector.resultsStats(), numberOfRanges,
+                        field(), hitQueryContext.getMatchInfoDefs());
+                for (int i = 0; i < numberOfRanges; i++) {
+                    int range = i;
+                    int docMin = (int) ((long) maxDoc * i / numberOfRanges);
+                    int docMax = (int) ((long) maxDoc * (i + 1) / numberOfRanges);
+                    segmentReaders.add(new HitFetcherSegmentQuery(weight, state(lrc, ranges.processor(range)),
+                            docMin, docMax, () -> ranges.rangeDone(range)));
+                }
+            }
         }
         if (segmentReaders.isEmpty()) {
             done = true;
             hitCollector.setDone();
         }
     }
+
+    private HitFetcherSegment.State state(LeafReaderContext lrc, HitProcessor hitProcessor) {
+        return new HitFetcherSegment.State(lrc,
+                hitQueryContext,
+                this.filter,
+                hitProcessor,
+                requestedHitsToProcess,
+                requestedHitsToCount,
+                hitCollector.resultsStats(),
+                hitCollector.docsStats(),
+                collationCache);
+    }
 }
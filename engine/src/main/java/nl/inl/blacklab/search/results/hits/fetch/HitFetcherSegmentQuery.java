@@ -46,6 +46,15 @@ public class HitFetcherSegmentQuery extends HitFetcherSegmentAbstract {
 
     private boolean hasPrefetchedHit = false;
 
+    /** First document (segment-local id) to fetch hits from */
+    private final int docMin;
+
+    /** Stop fetching hits at this document (segment-local id, exclusive) */
+    private final int docMax;
+
+    /** Called when we're done with our range of documents (or null) */
+    private Runnable onRangeDone;
+
     /**
      * Construct an uninitialized HitFetcherQuerySegment that will retrieve its own Spans object on when it's ran.
      * <p>
@@ -67,7 +76,30 @@ public class HitFetcherSegmentQuery extends HitFetcherSegmentAbstract {
     HitFetcherSegmentQuery(
         BLSpanWeight weight,
         State state) {
+        this(weight, state, 0, DocIdSetIterator.NO_MORE_DOCS, null);
+    }
+
+    /**
+     * Construct an uninitialized HitFetcherQuerySegment for a range of documents in the segment.
+     * <p>
+     * Used to fetch hits from a large segment in parallel (see {@link SegmentRanges}).
+     *
+     * @param weight      span weight we're querying
+     * @param state       our state
+     * @param docMin      first document (segment-local id) to fetch hits from
+     * @param docMax      stop at this document (segment-local id, exclusive)
+     * @param onRangeDone called when we're done with our range (or null)
+     */
+    HitFetcherSegmentQuery(
+        BLSpanWeight weight,
+        State state,
+        int docMin,
+        int docMax,
+        Runnable onRangeDone) {
         super(state);
+        this.docMin = docMin;
+        this.docMax = docMax;
+        this.onRangeDone = onRangeDone;
         this.weight = weight;
         this.sourceHitQueryContext = state.hitQueryContext;
         state.hitQueryContext = null; // will be replaced with our own copy during initialize()
@@ -81,6 +113,7 @@ public class HitFetcherSegmentQuery extends HitFetcherSegmentAbstract {
             this.weight = null;
             if (spansForWeight == null) { // This is normal, sometimes a section of the index does not contain hits.
                 this.isDone = true;
+                rangeDone();
                 return;
             }
             // If the resulting spans are not known to be sorted and unique, ensure that now.
@@ -124,9 +157,9 @@ public class HitFetcherSegmentQuery extends HitFetcherSegmentAbstract {
         // No more matches in this document. Find first match in next matching document.
         while (true) {
             assert twoPhaseApproximation.docID() != DocIdSetIterator.NO_MORE_DOCS;
-            doc = twoPhaseApproximation.nextDoc();
-            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-                // We're done.
+            doc = doc == -1 && docMin > 0 ? twoPhaseApproximation.advance(docMin) : twoPhaseApproximation.nextDoc();
+            if (doc >= docMax) {
+                // We're done. (NO_MORE_DOCS is always >= docMax)
                 return false;
             }
             boolean actualMatch = twoPhaseIt == null || twoPhaseIt.matches();
@@ -171,5 +204,13 @@ public class HitFetcherSegmentQuery extends HitFetcherSegmentAbstract {
 
     protected void runCleanup() {
         this.spans = null;
+        rangeDone();
+    }
+
+    private void rangeDone() {
+        if (onRangeDone != null) {
+            onRangeDone.run();
+            onRangeDone = null;
+        }
     }
 }
@@ -0,0 +1,157 @@
+package nl.inl.blacklab.search.results.hits.fetch;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanWeight;
+import nl.inl.blacklab.search.lucene.optimize.OptimizerSettings;
+
+/**
+ * Cache of query plans (optimized/rewritten queries and their weights), shared by all indexes.
+ *
+ * Optimizing, rewriting and creating a weight for a complex query can take a long time
+ * (e.g. expanding wildcard terms and gathering term statistics), and clients tend to
+ * execute the same query several times (e.g. while grouping, sorting and paging).
+ *
+ * A weight only depends on the index reader, not on the search being executed, so
+ * entries are keyed by the index reader (we never use a plan for an older version of
+ * an index), the source query and the optimizer settings. When an index reader is closed,
+ * its plans are removed, so we don't keep closed readers (referenced by the weights) alive.
+ */
+final class QueryPlanCache {
+
+    private static final String CACHE_NAME_FOR_METRICS = "blacklab-query-plan-cache";
+
+    /** Total time spent planning queries that we found in the cache instead. */
+    private static final Counter timeSaved = Counter.builder("blacklab-query-plan-cache-time-saved")
+            .description("Time saved by reusing cached query plans")
+            .baseUnit("milliseconds")
+            .register(Metrics.globalRegistry);
+
+    /** Identifies a query plan.
+     *
+     * @param reader identifies the index reader (see IndexReader.CacheHelper)
+     * @param query source query (before optimize/rewrite)
+     * @param settings settings the query was optimized with
+     */
+    private record Key(IndexReader.CacheKey reader, BLSpanQuery query, OptimizerSettings settings) {}
+
+    /** A query plan.
+     *
+     * @param query optimized/rewritten query
+     * @param weight weight for the optimized query
+     * @param planningTimeMs how long it took to create this plan
+     */
+    record Plan(BLSpanQuery query, BLSpanWeight weight, long planningTimeMs) {}
+
+    /** Creates a query plan. */
+    interface Planner {
+        Plan plan() throws IOException;
+    }
+
+    /** Holds the shared cache, so it's created on first use. */
+    private static final class Holder {
+        /** The shared cache, or null if disabled. */
+        static final Cache<Key, Plan> CACHE = createCache();
+
+        /** Index readers we've registered a closed listener for. */
+        static final Set<IndexReader.CacheKey> WATCHED_READERS = ConcurrentHashMap.newKeySet();
+
+        private static Cache<Key, Plan> createCache() {
+            int maxEntries = BlackLab.config().getSearch().getQueryPlanCacheSize();
+            if (maxEntries <= 0)
+                return null;
+            Cache<Key, Plan> cache = Caffeine.newBuilder()
+                    .recordStats()
+                    .maximumSize(maxEntries)
+                    .build();
+            CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME_FOR_METRICS);
+            return cache;
+        }
+    }
+
+    private QueryPlanCache() {
+    }
+
+    /**
+     * Make sure the plans for an index reader are removed when it is closed.
+     *
+     * @param helper the index reader's cache helper
+     * @return true if the reader is being watched, false if it was already closed
+     */
+    private static boolean watch(IndexReader.CacheHelper helper) {
+        IndexReader.CacheKey readerKey = helper.getKey();
+        if (!Holder.WATCHED_READERS.add(readerKey))
+            return true;
+        try {
+            helper.addClosedListener(QueryPlanCache::readerClosed);
+            return true;
+        } catch (AlreadyClosedException e) {
+            Holder.WATCHED_READERS.remove(readerKey);
+            return false;
+        }
+    }
+
+    private static void readerClosed(IndexReader.CacheKey readerKey) {
+        Holder.WATCHED_READERS.remove(readerKey);
+        Holder.CACHE.asMap().keySet().removeIf(key -> key.reader() == readerKey);
+    }
+
+    /**
+     * Get a query plan from the cache, or create (and cache) it.
+     *
+     * @param reader index reader
+     * @param sourceQuery query before optimize/rewrite
+     * @param settings optimizer settings
+     * @param planner creates the plan if it's not in the cache
+     * @return the query plan
+     */
+    static Plan get(IndexReader reader, BLSpanQuery sourceQuery, OptimizerSettings settings, Planner planner)
+            throws IOException {
+        Cache<Key, Plan> c = Holder.CACHE;
+        IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+        if (c == null || helper == null)
+            return planner.plan();
+        Key key = new Key(helper.getKey(), sourceQuery, settings);
+        Plan plan = c.getIfPresent(key);
+        if (plan != null) {
+            timeSaved.increment(plan.planningTimeMs());
+            return plan;
+        }
+        // Don't plan inside the cache's compute function; planning can take a long time
+        // and shouldn't block other threads using the cache.
+        plan = planner.plan();
+        if (watch(helper)) {
+            c.put(key, plan);
+            // (if the reader was closed while we were adding the plan, make sure it's removed)
+            if (!Holder.WATCHED_READERS.contains(key.reader()))
+                c.invalidate(key);
+        }
+        return plan;
+    }
+
+    /**
+     * Create a plan, measuring how long it took.
+     *
+     * @param startNanos when we started planning (System.nanoTime())
+     * @param query optimized/rewritten query
+     * @param weight weight for the query
+     * @return the plan
+     */
+    static Plan plan(long startNanos, BLSpanQuery query, BLSpanWeight weight) {
+        return new Plan(query, weight, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+}
@@ -0,0 +1,129 @@
+package nl.inl.blacklab.search.results.hits.fetch;
+
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.lucene.MatchInfoDefs;
+import nl.inl.blacklab.search.results.hits.HitsMutable;
+import nl.inl.blacklab.search.results.stats.ResultsStatsPassive;
+
+/**
+ * Passes hits from doc id ranges of a segment on to the segment's hit processor, in order.
+ * <p>
+ * Large segments are split into ranges that are fetched in parallel (see {@link HitFetcherQuery}).
+ * Hit processors expect the hits in a segment in order, so only the first range that isn't done yet
+ * passes its hits on directly. Later ranges keep their hits until all ranges before them are done.
+ */
+class SegmentRanges {
+
+    /** Hit processor for the whole segment */
+    private final HitProcessor segmentProcessor;
+
+    /** Global hit stats, to reserve kept hits in (so they count towards the limits) */
+    private final ResultsStatsPassive hitsStats;
+
+    private final AnnotatedField field;
+
+    private final MatchInfoDefs matchInfoDefs;
+
+    /** Hits per range that we haven't passed on yet (null if none) */
+    private final HitsMutable[] kept;
+
+    /** Number of hits counted per range that we haven't passed on yet */
+    private final long[] keptCounted;
+
+    /** Which ranges are done? */
+    private final boolean[] done;
+
+    /** First range that isn't done yet (this range passes its hits on directly) */
+    private int current = 0;
+
+    SegmentRanges(HitProcessor segmentProcessor, ResultsStatsPassive hitsStats, int numberOfRanges,
+            AnnotatedField field, MatchInfoDefs matchInfoDefs) {
+        this.segmentProcessor = segmentProcessor;
+        this.hitsStats = hitsStats;
+        this.field = field;
+        this.matchInfoDefs = matchInfoDefs;
+        kept = new HitsMutable[numberOfRanges];
+        keptCounted = new long[numberOfRanges];
+        done = new boolean[numberOfRanges];
+    }
+
+    /**
+     * Get the hit processor for a range.
+     *
+     * @param range range index
+     * @return hit processor for this range
+     */
+    HitProcessor processor(int range) {
+        return new HitProcessor() {
+            @Override
+            public HitFetcher.Phase onDocumentBoundary(HitsMutable results, long counted) {
+                synchronized (SegmentRanges.this) {
+                    if (range == current)
+                        return segmentProcessor.onDocumentBoundary(results, counted);
+                    // We don't know where our hits will end up yet; just check the global limits.
+                    return keep(range, results, counted);
+                }
+            }
+
+            @Override
+            public void onFinished(HitsMutable results, long counted) {
+                synchronized (SegmentRanges.this) {
+                    if (range == current)
+                        segmentProcessor.onFinished(results, counted);
+                    else
+                        keep(range, results, counted);
+                }
+            }
+
+            @Override
+            public long globalProcessedSoFar() {
+                return segmentProcessor.globalProcessedSoFar();
+            }
+
+            @Override
+            public long globalCountedSoFar() {
+                return segmentProcessor.globalCountedSoFar();
+            }
+        };
+    }
+
+    /**
+     * Keep hits from a range that isn't first in line, until the ranges before it are done.
+     *
+     * Kept hits are reserved in the global stats, so they count towards the limits. Once we've
+     * reached the limit for hits to process, we only count hits.
+     *
+     * @return whether to continue storing hits, or just count them, or stop altogether
+     */
+    private HitFetcher.Phase keep(int range, HitsMutable results, long counted) {
+        if (hitsStats.reserve(results.size(), counted)) {
+            if (kept[range] == null)
+                kept[range] = HitsMutable.create(field, matchInfoDefs, -1, true, false);
+            kept[range].addAll(results);
+        }
+        keptCounted[range] += counted;
+        results.clear();
+        return hitsStats.phaseIncludingReserved();
+    }
+
+    /**
+     * Called when all hits in a range have been fetched.
+     *
+     * @param range range index
+     */
+    synchronized void rangeDone(int range) {
+        done[range] = true;
+        while (current < done.length && done[current]) {
+            current++;
+            if (current < done.length && (kept[current] != null || keptCounted[current] > 0)) {
+                // This range is now first in line; pass on the hits it kept so far
+                HitsMutable hits = kept[current] != null ? kept[current] :
+                        HitsMutable.create(field, matchInfoDefs, -1, true, false);
+                hitsStats.release(hits.size(), keptCounted[current]);
+                segmentProcessor.onFinished(hits, keptCounted[current]);
+                kept[current] = null;
+                keptCounted[current] = 0;
+            }
+        }
+    }
+}
@@ -40,6 +40,12 @@ public class ResultsStatsPassive extends ResultsStats {
 
     private final long maxHitsToCount;
 
+    /** Hits to process that were fetched ahead and will be added later (see reserve()) */
+    private long reservedProcessed = 0;
+
+    /** Hits counted that were fetched ahead and will be added later (see reserve()) */
+    private long reservedCounted = 0;
+
     public long processedSoFar() {
         return processed.sum();
     }
@@ -82,6 +88,49 @@ public class ResultsStatsPassive extends ResultsStats {
         setDone(true);
     }
 
+    /**
+     * Reserve hits that were fetched ahead, and will be added later (see add() and release()).
+     *
+     * E.g. hits from a later range of a segment, that can only be passed on when the earlier
+     * ranges are done. Reserved hits count towards the limits, so we don't fetch too many ahead.
+     *
+     * @param processed number of hits to store
+     * @param counted number of hits counted
+     * @return true if the hits may be stored, false if we've reached the limit and they should only be counted
+     */
+    public synchronized boolean reserve(long processed, long counted) {
+        boolean store = this.processed.sum() + reservedProcessed < maxHitsToProcess;
+        if (store)
+            reservedProcessed += processed;
+        reservedCounted += counted;
+        return store;
+    }
+
+    /**
+     * Release hits reserved earlier, because they're about to be added.
+     *
+     * @param processed number of hits stored
+     * @param counted number of hits counted
+     */
+    public synchronized void release(long processed, long counted) {
+        reservedProcessed -= processed;
+        reservedCounted -= counted;
+    }
+
+    /**
+     * What should we do next, taking reserved hits into account?
+     *
+     * @return whether to continue storing hits, or just count them, or stop altogether
+     */
+    public synchronized HitFetcher.Phase phaseIncludingReserved() {
+        if (this.counted.sum() + reservedCounted >= maxHitsToCount)
+            return HitFetcher.Phase.DONE;
+        else if (this.processed.sum() + reservedProcessed >= maxHitsToProcess)
+            return HitFetcher.Phase.COUNTING_ONLY;
+        else
+            return HitFetcher.Phase.STORING_AND_COUNTING;
+    }
+
     public synchronized HitFetcher.Phase add(long processed, long counted) {
         this.processed.add(processed);
         this.counted.add(counted);
@@ -9,6 +9,8 @@ import org.apache.commons.lang3.StringUtils;
 import nl.inl.blacklab.exceptions.BlackLabException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.ResultProperty;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.SearchResult;
 
@@ -23,8 +25,28 @@ public abstract class AbstractSearch<R extends SearchResult> implements Search<R
 
     private final QueryInfo queryInfo;
 
+    /** Search whose results this search operates on (e.g. sort, group), or null if none */
+    private final Search<?> source;
+
     protected AbstractSearch(QueryInfo queryInfo) {
+        this(queryInfo, null);
+    }
+
+    protected AbstractSearch(QueryInfo queryInfo, Search<?> source) {
         this.queryInfo = queryInfo;
+        this.source = source;
+    }
+
+    /**
+     * Estimate how expensive this search is to execute.
+     *
+     * Operations on another search's results (sort, group, etc.) return the estimate for that search.
+     *
+     * @return (very rough) estimated cost, or -1 if unknown
+     */
+    @Override
+    public long estimatedCost() {
+        return source == null ? -1 : source.estimatedCost();
     }
 
     @Override
@@ -132,4 +154,33 @@ public abstract class AbstractSearch<R extends SearchResult> implements Search<R
         return operation + "(" + StringUtils.join(param, ", ") + ")";
     }
 
+    /**
+     * Construct the persistent key for this search from its parameters.
+     *
+     * Source searches, properties and property values contribute their own stable form;
+     * other parameters their toString(). Each parameter is prefixed with its length, so
+     * keys are unambiguous.
+     *
+     * @param param parameters that determine equality
+     * @return the key, or null if any source search can't be persisted
+     */
+    protected String persistentKeyOf(Object... param) {
+        StringBuilder key = new StringBuilder(getClass().getSimpleName()).append("(");
+        for (Object p: param) {
+            String value;
+            if (p instanceof Search<?> search)
+                value = search.persistentKey();
+            else if (p instanceof ResultProperty property)
+                value = property.serialize();
+            else if (p instanceof PropertyValue propertyValue)
+                value = propertyValue.serialize();
+            else
+                value = String.valueOf(p);
+            if (value == null)
+                return null;
+            key.append(value.length()).append(":").append(value);
+        }
+        return key.append(")").toString();
+    }
+
 }
@@ -131,6 +131,29 @@ public interface Search<R extends SearchResult> {
      */
     default R peekObject(Future<R> future) { return null; }
 
+    /**
+     * Estimate how expensive this search is to execute.
+     *
+     * Used for scheduling searches, e.g. so cheap searches don't have to wait
+     * for expensive ones. Operations on another search's results (sort, group, etc.)
+     * return the estimate for that search; searches that run a query estimate the
+     * number of hits from the index (see {@link nl.inl.blacklab.search.lucene.BLSpanQuery#reverseMatchingCost}).
+     *
+     * @return (very rough) estimated cost, or -1 if unknown
+     */
+    default long estimatedCost() { return -1; }
+
+    /**
+     * Get a key that identifies this search, for storing its results across restarts.
+     *
+     * Unlike {@link #toString()}, this includes every parameter that {@link #equals(Object)}
+     * compares, in a form that doesn't change between runs, so two searches with the same key
+     * are equal. The index and field (see {@link #queryInfo()}) are not included.
+     *
+     * @return the key, or null if this search's results should not be stored
+     */
+    default String persistentKey() { return null; }
+
     @Override
     boolean equals(Object obj);
 
@@ -15,6 +15,10 @@ public abstract class SearchCollocations extends AbstractSearch<TermFrequencyLis
         super(queryInfo);
     }
 
+    protected SearchCollocations(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
+
     /**
      * Sort collocations.
      * 
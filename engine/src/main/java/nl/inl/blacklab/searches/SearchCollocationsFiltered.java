@@ -18,7 +18,7 @@ public class SearchCollocationsFiltered extends SearchCollocations {
     private final PropertyValue value;
 
     public SearchCollocationsFiltered(QueryInfo queryInfo, SearchCollocations source, ResultProperty property, PropertyValue value) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
         this.value = value;
@@ -71,4 +71,8 @@ public class SearchCollocationsFiltered extends SearchCollocations {
         return toString("filter", source, property, value);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, value);
+    }
 }
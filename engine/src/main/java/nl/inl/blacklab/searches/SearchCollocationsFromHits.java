@@ -19,7 +19,7 @@ public class SearchCollocationsFromHits extends SearchCollocations {
     private final MatchSensitivity sensitivity;
 
     public SearchCollocationsFromHits(QueryInfo queryInfo, SearchHits source, Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.annotation = annotation;
         this.contextSize = contextSize;
@@ -77,4 +77,8 @@ public class SearchCollocationsFromHits extends SearchCollocations {
         return toString("colloc", source, annotation, contextSize, sensitivity);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, annotation, contextSize, sensitivity);
+    }
 }
@@ -15,7 +15,7 @@ public class SearchCollocationsSampled extends SearchCollocations {
     private final SampleParameters sampleParameters;
 
     public SearchCollocationsSampled(QueryInfo queryInfo, SearchCollocations source, SampleParameters sampleParameters) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.sampleParameters = sampleParameters;
     }
@@ -60,5 +60,4 @@ public class SearchCollocationsSampled extends SearchCollocations {
     public String toString() {
         return toString("sample", source, sampleParameters);
     }
-
 }
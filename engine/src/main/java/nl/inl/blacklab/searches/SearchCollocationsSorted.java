@@ -14,7 +14,7 @@ public class SearchCollocationsSorted extends SearchCollocations {
     private final ResultProperty property;
 
     public SearchCollocationsSorted(QueryInfo queryInfo, SearchCollocations source, ResultProperty property) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
     }
@@ -60,4 +60,8 @@ public class SearchCollocationsSorted extends SearchCollocations {
         return toString("sort", source, property);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property);
+    }
 }
@@ -16,7 +16,7 @@ public class SearchCollocationsWindow extends SearchCollocations {
     private final long number;
 
     public SearchCollocationsWindow(QueryInfo queryInfo, SearchCollocations source, long first, long number) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.first = first;
         this.number = number;
@@ -58,4 +58,8 @@ public class SearchCollocationsWindow extends SearchCollocations {
         return toString("window", source, first, number);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, first, number);
+    }
 }
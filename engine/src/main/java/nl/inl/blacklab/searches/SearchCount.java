@@ -12,4 +12,8 @@ public abstract class SearchCount extends AbstractSearch<ResultsStats> {
         super(queryInfo);
     }
 
+    protected SearchCount(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
+
 }
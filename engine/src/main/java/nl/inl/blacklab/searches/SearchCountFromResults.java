@@ -27,7 +27,7 @@ public class SearchCountFromResults<T extends Results> extends SearchCount {
     private final CountType type;
 
     public SearchCountFromResults(QueryInfo queryInfo, SearchForResults<T> source, CountType type) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.type = type;
     }
@@ -100,4 +100,8 @@ public class SearchCountFromResults<T extends Results> extends SearchCount {
         return toString("countfromresults", source, type);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, type);
+    }
 }
@@ -12,6 +12,10 @@ public abstract class SearchDocGroups extends SearchForResults<DocGroups> {
     protected SearchDocGroups(QueryInfo queryInfo) {
         super(queryInfo);
     }
+
+    protected SearchDocGroups(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
     
     /**
      * Sort hits.
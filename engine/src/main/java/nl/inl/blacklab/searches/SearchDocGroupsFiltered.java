@@ -16,7 +16,7 @@ public class SearchDocGroupsFiltered extends SearchDocGroups {
     private final PropertyValue value;
 
     public SearchDocGroupsFiltered(QueryInfo queryInfo, SearchDocGroups source, DocGroupProperty property, PropertyValue value) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
         this.value = value;
@@ -68,4 +68,9 @@ public class SearchDocGroupsFiltered extends SearchDocGroups {
     public String toString() {
         return toString("filter", source, property, value);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, value);
+    }
 }
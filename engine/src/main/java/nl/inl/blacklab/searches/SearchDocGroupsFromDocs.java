@@ -17,7 +17,7 @@ public class SearchDocGroupsFromDocs extends SearchDocGroups {
     private final long maxDocs;
 
     public SearchDocGroupsFromDocs(QueryInfo queryInfo, SearchDocs source, DocProperty property, long maxDocsToStorePerGroup) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
         this.maxDocs = maxDocsToStorePerGroup;
@@ -47,4 +47,8 @@ public class SearchDocGroupsFromDocs extends SearchDocGroups {
         return toString("group", source, property, maxDocs);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, maxDocs);
+    }
 }
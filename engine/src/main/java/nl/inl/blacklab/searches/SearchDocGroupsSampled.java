@@ -13,7 +13,7 @@ public class SearchDocGroupsSampled extends SearchDocGroups {
     private final SampleParameters sampleParameters;
 
     public SearchDocGroupsSampled(QueryInfo queryInfo, SearchDocGroups source, SampleParameters sampleParameters) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.sampleParameters = sampleParameters;
     }
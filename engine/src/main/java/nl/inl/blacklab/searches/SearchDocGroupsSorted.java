@@ -13,7 +13,7 @@ public class SearchDocGroupsSorted extends SearchDocGroups {
     private final DocGroupProperty property;
 
     public SearchDocGroupsSorted(QueryInfo queryInfo, SearchDocGroups source, DocGroupProperty property) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
     }
@@ -58,4 +58,9 @@ public class SearchDocGroupsSorted extends SearchDocGroups {
     public String toString() {
         return toString("sort", source, property);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property);
+    }
 }
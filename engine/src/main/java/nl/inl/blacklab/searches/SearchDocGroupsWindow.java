@@ -14,7 +14,7 @@ public class SearchDocGroupsWindow extends SearchDocGroups {
     private final long number;
 
     public SearchDocGroupsWindow(QueryInfo queryInfo, SearchDocGroups source, long first, long number) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.first = first;
         this.number = number;
@@ -55,4 +55,9 @@ public class SearchDocGroupsWindow extends SearchDocGroups {
     public String toString() {
         return toString("window", source, first, number);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, first, number);
+    }
 }
@@ -14,6 +14,10 @@ public abstract class SearchDocs extends SearchForResults<DocResults> {
     protected SearchDocs(QueryInfo queryInfo) {
         super(queryInfo);
     }
+
+    protected SearchDocs(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
     
     /**
      * Group hits by a property.
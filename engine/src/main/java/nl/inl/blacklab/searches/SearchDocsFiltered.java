@@ -15,7 +15,7 @@ public class SearchDocsFiltered extends SearchDocs {
     private final PropertyValue value;
 
     public SearchDocsFiltered(QueryInfo queryInfo, SearchDocs source, DocProperty sortBy, PropertyValue value) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = sortBy;
         this.value = value;
@@ -68,4 +68,8 @@ public class SearchDocsFiltered extends SearchDocs {
         return toString("filter", source, property, value);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, value);
+    }
 }
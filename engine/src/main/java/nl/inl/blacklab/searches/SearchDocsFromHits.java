@@ -13,7 +13,7 @@ public class SearchDocsFromHits extends SearchDocs {
     private long maxHits = 0;
 
     public SearchDocsFromHits(QueryInfo queryInfo, SearchHits hitSearch, long maxHitsToGatherPerDocument) {
-        super(queryInfo);
+        super(queryInfo, hitSearch);
         this.source = hitSearch;
         this.maxHits = maxHitsToGatherPerDocument;
     }
@@ -42,4 +42,8 @@ public class SearchDocsFromHits extends SearchDocs {
         return toString("docs", source, maxHits);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, maxHits);
+    }
 }
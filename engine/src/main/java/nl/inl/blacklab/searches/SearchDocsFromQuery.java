@@ -49,4 +49,9 @@ public class SearchDocsFromQuery extends SearchDocs {
         return toString("docquery", query);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(query);
+    }
+
 }
@@ -12,7 +12,7 @@ public class SearchDocsSampled extends SearchDocs {
     private final SampleParameters sampleParameters;
 
     public SearchDocsSampled(QueryInfo queryInfo, SearchDocs docsSearch, SampleParameters sampleParameters) {
-        super(queryInfo);
+        super(queryInfo, docsSearch);
         this.source = docsSearch;
         this.sampleParameters = sampleParameters;
     }
@@ -57,5 +57,4 @@ public class SearchDocsSampled extends SearchDocs {
     public String toString() {
         return toString("sample", source, sampleParameters);
     }
-
 }
@@ -12,7 +12,7 @@ public class SearchDocsSorted extends SearchDocs {
     private final DocProperty property;
 
     public SearchDocsSorted(QueryInfo queryInfo, SearchDocs docsSearch, DocProperty sortBy) {
-        super(queryInfo);
+        super(queryInfo, docsSearch);
         this.source = docsSearch;
         this.property = sortBy;
     }
@@ -58,4 +58,8 @@ public class SearchDocsSorted extends SearchDocs {
         return toString("sort", source, property);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property);
+    }
 }
@@ -15,7 +15,7 @@ public class SearchDocsWindow extends SearchDocs {
     private final long number;
 
     public SearchDocsWindow(QueryInfo queryInfo, SearchDocs docsSearch, long first, long number) {
-        super(queryInfo);
+        super(queryInfo, docsSearch);
         this.source = docsSearch;
         this.first = first;
         this.number = number;
@@ -45,4 +45,8 @@ public class SearchDocsWindow extends SearchDocs {
         return toString("window", source, first, number);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, first, number);
+    }
 }
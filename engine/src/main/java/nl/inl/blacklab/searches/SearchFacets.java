@@ -14,7 +14,7 @@ public class SearchFacets extends AbstractSearch<Facets> {
     private final List<DocProperty> properties;
 
     public SearchFacets(QueryInfo queryInfo, SearchDocs source, List<DocProperty> properties) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.properties = properties;
     }
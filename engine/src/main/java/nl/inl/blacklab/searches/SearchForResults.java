@@ -13,6 +13,10 @@ public abstract class SearchForResults<R extends Results> extends AbstractSearch
         super(queryInfo);
     }
 
+    SearchForResults(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
+
     /**
      * Count hits. All results are fetched in the cache thread.
      *
@@ -13,6 +13,10 @@ public abstract class SearchHitGroups extends SearchForResults<HitGroups> {
         super(queryInfo);
     }
 
+    protected SearchHitGroups(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
+
     /**
      * Sort hits.
      * 
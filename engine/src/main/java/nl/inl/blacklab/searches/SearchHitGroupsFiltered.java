@@ -18,7 +18,7 @@ public class SearchHitGroupsFiltered extends SearchHitGroups {
     private final PropertyValue value;
 
     public SearchHitGroupsFiltered(QueryInfo queryInfo, SearchHitGroups source, HitGroupProperty property, PropertyValue value) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
         this.value = value;
@@ -70,4 +70,9 @@ public class SearchHitGroupsFiltered extends SearchHitGroups {
     public String toString() {
         return toString("filter", source, property, value);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, value);
+    }
 }
@@ -31,12 +31,13 @@ public class SearchHitGroupsFromHits extends SearchHitGroups {
      * @param queryInfo query info
      * @param hitsSearch search to group hits from
      * @param groupBy what to group by
-     * @param maxResultsToStorePerGroup maximum number of results to store (if any are stored)
+     * @param maxResultsToStorePerGroup maximum number of results to store (if any are stored).
+     *                                  If 0, groups only count hits and documents (count-only grouping).
      * @param mustStoreHits if true, up to maxResultsToStorePerGroup hits will be stored. If false, no hits may be
      *                      stored, depending on how the grouping is performed.
      */
     public SearchHitGroupsFromHits(QueryInfo queryInfo, SearchHits hitsSearch, HitProperty groupBy, long maxResultsToStorePerGroup, boolean mustStoreHits) {
-        super(queryInfo);
+        super(queryInfo, hitsSearch);
         this.source = hitsSearch;
         this.property = groupBy;
         this.maxResultsToStorePerGroup = maxResultsToStorePerGroup;
@@ -55,6 +56,10 @@ public class SearchHitGroupsFromHits extends SearchHitGroups {
             // Any token query, group by hit text or doc metadata! Choose faster path that just "looks up"
             // token frequencies in the forward index(es).
             return HitGroupsTokenFrequencies.get(source, property);
+        } else if (maxResultsToStorePerGroup == 0 && source.getSpanQuery() != null) {
+            // We only need group sizes and the hits come straight from a query.
+            // Group them while they're being fetched, so we never need to store them all.
+            return HitGroups.groupWhileFetching(queryInfo(), source.getSpanQuery(), source.searchSettings(), property);
         } else {
             // Just find all the hits and group them.
             return executeChildSearch(activeSearch, source).group(property, maxResultsToStorePerGroup);
@@ -79,4 +84,9 @@ public class SearchHitGroupsFromHits extends SearchHitGroups {
     public String toString() {
         return toString("group", source, property, maxResultsToStorePerGroup);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, maxResultsToStorePerGroup, mustStoreHits);
+    }
 }
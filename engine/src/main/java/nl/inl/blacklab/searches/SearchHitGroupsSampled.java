@@ -15,7 +15,7 @@ public class SearchHitGroupsSampled extends SearchHitGroups {
     private final SampleParameters sampleParameters;
 
     public SearchHitGroupsSampled(QueryInfo queryInfo, SearchHitGroups source, SampleParameters sampleParameters) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.sampleParameters = sampleParameters;
     }
@@ -15,7 +15,7 @@ public class SearchHitGroupsSorted extends SearchHitGroups {
     private final HitGroupProperty property;
 
     public SearchHitGroupsSorted(QueryInfo queryInfo, SearchHitGroups source, HitGroupProperty sortBy) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = sortBy;
     }
@@ -60,4 +60,9 @@ public class SearchHitGroupsSorted extends SearchHitGroups {
     public String toString() {
         return toString("sort", source, property);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property);
+    }
 }
@@ -16,7 +16,7 @@ public class SearchHitGroupsWindow extends SearchHitGroups {
     private final long number;
 
     public SearchHitGroupsWindow(QueryInfo queryInfo, SearchHitGroups source, long first, long number) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.first = first;
         this.number = number;
@@ -45,4 +45,9 @@ public class SearchHitGroupsWindow extends SearchHitGroups {
     public String toString() {
         return toString("window", source, first, number);
     }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, first, number);
+    }
 }
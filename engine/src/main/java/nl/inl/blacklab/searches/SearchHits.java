@@ -6,6 +6,7 @@ import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.SampleParameters;
 import nl.inl.blacklab.search.results.SearchSettings;
@@ -18,6 +19,10 @@ public abstract class SearchHits extends SearchForResults<HitResults> {
     protected SearchHits(QueryInfo queryInfo) {
         super(queryInfo);
     }
+
+    protected SearchHits(QueryInfo queryInfo, Search<?> source) {
+        super(queryInfo, source);
+    }
     
     /**
      * Group hits by document.
@@ -59,6 +64,19 @@ public abstract class SearchHits extends SearchForResults<HitResults> {
         return new SearchHitGroupsFromHits(queryInfo(), this, groupBy, maxResultsToGatherPerGroup, false);
     }
 
+    /**
+     * Group hits by a property, only counting hits and documents per group.
+     *
+     * No hits are stored with the groups, so memory use depends on the number of groups,
+     * not the number of hits. Use this if you only need group identities and sizes.
+     *
+     * @param groupBy what to group by
+     * @return resulting operation
+     */
+    public SearchHitGroups groupCounts(HitProperty groupBy) {
+        return new SearchHitGroupsFromHits(queryInfo(), this, groupBy, 0, false);
+    }
+
     /**
      * Sort hits.
      * 
@@ -139,6 +157,17 @@ public abstract class SearchHits extends SearchForResults<HitResults> {
         return null;
     }
 
+    /**
+     * Get the query that directly produces these hits, if any.
+     *
+     * Used to group hits while fetching them, without storing them.
+     *
+     * @return span query, or null if these hits don't come directly from a query
+     */
+    public BLSpanQuery getSpanQuery() {
+        return null;
+    }
+
     /**
      * Get the search settings, such as max. hits to process/count.
      * @return search settings
@@ -15,7 +15,7 @@ public class SearchHitsFiltered extends SearchHits {
     private final PropertyValue value;
 
     SearchHitsFiltered(QueryInfo queryInfo, SearchHits source, HitProperty property, PropertyValue value) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = property;
         this.value = value;
@@ -68,6 +68,11 @@ public class SearchHitsFiltered extends SearchHits {
         return toString("filter", source, property, value);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property, value);
+    }
+
     @Override
     public boolean isAnyTokenQuery() {
         return source.isAnyTokenQuery();
@@ -53,7 +53,22 @@ public class SearchHitsFromQuery extends SearchHits {
 
     @Override
     public String toString() {
-        return toString("hits", spanQuery);
+        return toString("hits", spanQuery, searchSettings);
+    }
+
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(spanQuery, searchSettings);
+    }
+
+    @Override
+    public long estimatedCost() {
+        try {
+            return spanQuery.reverseMatchingCost(queryInfo().index().reader());
+        } catch (RuntimeException e) {
+            // Not essential; just treat as unknown
+            return -1;
+        }
     }
 
     @Override
@@ -67,6 +82,11 @@ public class SearchHitsFromQuery extends SearchHits {
         return spanQuery;
     }
 
+    @Override
+    public BLSpanQuery getSpanQuery() {
+        return spanQuery;
+    }
+
     @Override
     public SearchSettings searchSettings() {
         return searchSettings;
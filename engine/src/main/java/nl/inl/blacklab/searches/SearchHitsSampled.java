@@ -13,7 +13,7 @@ public class SearchHitsSampled extends SearchHits {
     private final SampleParameters sampleParameters;
 
     SearchHitsSampled(QueryInfo queryInfo, SearchHits source, SampleParameters sampleParameters) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.sampleParameters = sampleParameters;
     }
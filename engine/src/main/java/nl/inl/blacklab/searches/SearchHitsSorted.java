@@ -14,7 +14,7 @@ public class SearchHitsSorted extends SearchHits {
     private final HitProperty property;
 
     SearchHitsSorted(QueryInfo queryInfo, SearchHits source, HitProperty sortBy) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.property = sortBy;
     }
@@ -29,6 +29,24 @@ public class SearchHitsSorted extends SearchHits {
         }
     }
 
+    /**
+     * Execute the search, but only determine the first hits of the sorted result.
+     *
+     * The result is not cached as this search's result, because it is incomplete.
+     *
+     * @param activeSearch the search that needs these hits
+     * @param maxHits how many hits we need
+     * @return the first maxHits hits of the sorted result
+     */
+    HitResults executeTopK(ActiveSearch<HitResults> activeSearch, long maxHits) throws InvalidQuery {
+        QueryTimings timings = queryInfo().timings().start();
+        try {
+            return executeChildSearch(activeSearch, source).sortedTopK(property, maxHits);
+        } finally {
+            timings.record("sort");
+        }
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -65,6 +83,11 @@ public class SearchHitsSorted extends SearchHits {
         return toString("sort", source, property);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, property);
+    }
+
     @Override
     public SearchSettings searchSettings() {
         return source.searchSettings();
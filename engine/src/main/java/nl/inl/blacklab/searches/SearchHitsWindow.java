@@ -10,12 +10,15 @@ import nl.inl.blacklab.search.results.SearchSettings;
 /** A search that yields hits. */
 public class SearchHitsWindow extends SearchHits {
 
+    /** If a window of a sorted result ends before this, only select the hits we need instead of sorting all */
+    static final long MAX_TOP_K = 10_000;
+
     private final SearchHits source;
     private final long first;
     private final long number;
 
     SearchHitsWindow(QueryInfo queryInfo, SearchHits source, long first, long number) {
-        super(queryInfo);
+        super(queryInfo, source);
         this.source = source;
         this.first = first;
         this.number = number;
@@ -23,6 +26,11 @@ public class SearchHitsWindow extends SearchHits {
 
     @Override
     public HitResults executeInternal(ActiveSearch<HitResults> activeSearch) throws InvalidQuery {
+        if (source instanceof SearchHitsSorted sortedSource && number < MAX_TOP_K && first < MAX_TOP_K - number) {
+            // We only need the first hits of the sorted result; don't sort all of them.
+            // (select one extra hit so the window knows if there's a next one)
+            return sortedSource.executeTopK(activeSearch, first + number + 1).window(first, number);
+        }
         return executeChildSearch(activeSearch, source).window(first, number);
     }
 
@@ -57,6 +65,11 @@ public class SearchHitsWindow extends SearchHits {
         return toString("window", source, first, number);
     }
 
+    @Override
+    public String persistentKey() {
+        return persistentKeyOf(source, first, number);
+    }
+
     @Override
     public SearchSettings searchSettings() {
         return source.searchSettings();
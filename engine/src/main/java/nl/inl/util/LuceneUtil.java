@@ -382,7 +382,8 @@ public final class LuceneUtil {
                     while ((doc = documentIterator.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
                         Terms terms = reader.getTermVector(doc, field);
                         if (terms == null) {
-                            throw new IllegalArgumentException("Field " + field + " has no Terms");
+                            // No values for this annotation in this document
+                            continue;
                         }
 
                         getTermFrequencies(terms.iterator(), searchTerms, freq);
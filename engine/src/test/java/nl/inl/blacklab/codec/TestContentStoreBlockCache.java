@@ -0,0 +1,41 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestContentStoreBlockCache {
+
+    private static final String SEGMENT_ID = "testsegment";
+
+    @Test
+    public void testDecodedOnce() throws IOException {
+        AtomicInteger timesDecoded = new AtomicInteger();
+        ContentStoreBlockCache.BlockDecoder decoder = () -> {
+            timesDecoded.incrementAndGet();
+            return "block".getBytes(StandardCharsets.UTF_8);
+        };
+        ContentStoreBlockCache.BlockKey key = new ContentStoreBlockCache.BlockKey(SEGMENT_ID, 0, 1, 2);
+        byte[] first = ContentStoreBlockCache.get(key, decoder);
+        byte[] second = ContentStoreBlockCache.get(new ContentStoreBlockCache.BlockKey(SEGMENT_ID, 0, 1, 2), decoder);
+        Assert.assertEquals("block", new String(first, StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(first, second);
+        Assert.assertEquals(1, timesDecoded.get());
+    }
+
+    @Test
+    public void testDifferentBlocks() throws IOException {
+        byte[] a = ContentStoreBlockCache.get(new ContentStoreBlockCache.BlockKey(SEGMENT_ID, 1, 1, 0),
+                () -> "a".getBytes(StandardCharsets.UTF_8));
+        byte[] b = ContentStoreBlockCache.get(new ContentStoreBlockCache.BlockKey(SEGMENT_ID, 1, 1, 1),
+                () -> "b".getBytes(StandardCharsets.UTF_8));
+        byte[] c = ContentStoreBlockCache.get(new ContentStoreBlockCache.BlockKey(SEGMENT_ID, 2, 1, 0),
+                () -> "c".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("a", new String(a, StandardCharsets.UTF_8));
+        Assert.assertEquals("b", new String(b, StandardCharsets.UTF_8));
+        Assert.assertEquals("c", new String(c, StandardCharsets.UTF_8));
+    }
+}
@@ -18,7 +18,7 @@ public class TestContentStoreBlockCodec {
 
     @Parameters(name = "codec #{0}")
     public static Collection<Integer> codecToUse() {
-        return List.of(0, 1);
+        return List.of(0, 1, 2);
     }
 
     /** Code of the codec to use */
@@ -0,0 +1,72 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTermsGlobalFile {
+
+    private static final String FIELD = "contents%word@s";
+
+    private static final String[] TERMS = { "the", "quick", "brown", "fox", "über" };
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File write(File dir, long generation) throws IOException {
+        File file = TermsGlobalFile.file(dir, FIELD, generation);
+        Map<String, IntBuffer> segments = new LinkedHashMap<>();
+        segments.put("seg1", IntBuffer.wrap(new int[] { 0, 1, 2 }));
+        segments.put("seg2", IntBuffer.wrap(new int[] { 3, 0, 4 }));
+        TermsGlobalFile.write(file, FIELD, generation, "sig", TERMS.length, i -> TERMS[i],
+                IntBuffer.wrap(new int[] { 2, 3, 1, 0, 4 }),
+                IntBuffer.wrap(new int[] { 3, 2, 0, 1, 4 }),
+                IntBuffer.wrap(new int[] { 2, 3, 1, 0, 4 }),
+                IntBuffer.wrap(new int[] { 3, 2, 0, 1, 4 }),
+                segments);
+        return file;
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        File file = write(tempFolder.getRoot(), 12);
+        TermsGlobalFile tf = TermsGlobalFile.open(file);
+        Assert.assertNotNull(tf);
+        Assert.assertEquals(FIELD, tf.luceneField());
+        Assert.assertEquals(12, tf.generation());
+        Assert.assertEquals("sig", tf.collatorSignature());
+        Assert.assertEquals(TERMS.length, tf.numberOfTerms());
+        for (int i = 0; i < TERMS.length; i++)
+            Assert.assertEquals(TERMS[i], tf.term(i));
+        Assert.assertEquals(1, tf.termId2SensitivePosition().get(3));
+        Assert.assertEquals(3, tf.insensitive2TermId().get(1));
+        Assert.assertEquals(4, tf.segmentToGlobalTermIds("seg2").get(2));
+        Assert.assertEquals(3, tf.segmentToGlobalTermIds("seg1").limit());
+        Assert.assertNull(tf.segmentToGlobalTermIds("seg3"));
+    }
+
+    @Test
+    public void testDeleteOtherGenerations() throws IOException {
+        File dir = tempFolder.getRoot();
+        File old = write(dir, 1);
+        File current = write(dir, 2);
+        TermsGlobalFile.deleteOtherGenerations(dir, FIELD, 2);
+        Assert.assertFalse(old.exists());
+        Assert.assertTrue(current.exists());
+    }
+
+    @Test
+    public void testNotATermsFile() throws IOException {
+        File file = tempFolder.newFile("garbage.blterms");
+        Files.writeString(file.toPath(), "this is not a terms file");
+        Assert.assertNull(TermsGlobalFile.open(file));
+    }
+}
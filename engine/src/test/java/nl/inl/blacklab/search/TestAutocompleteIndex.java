@@ -0,0 +1,60 @@
+package nl.inl.blacklab.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+
+public class TestAutocompleteIndex {
+
+    /** Terms in byte order, with their frequencies */
+    private static final String[] TERMS = { "b", "be", "beautiful", "because", "briefly", "but", "bye", "bye-bye", "c" };
+
+    private static final long[] FREQS = { 1, 42, 1, 2, 1, 4, 2, 2, 10 };
+
+    private static AutocompleteIndex index() {
+        ByteArrayList bytes = new ByteArrayList();
+        int[] offsets = new int[TERMS.length + 1];
+        for (int i = 0; i < TERMS.length; i++) {
+            offsets[i] = bytes.size();
+            bytes.addElements(bytes.size(), TERMS[i].getBytes(StandardCharsets.UTF_8));
+        }
+        offsets[TERMS.length] = bytes.size();
+        return new AutocompleteIndex(bytes.toByteArray(), offsets, FREQS);
+    }
+
+    @Test
+    public void testMostFrequentFirst() {
+        Assert.assertEquals(List.of("be", "but", "because", "bye", "bye-bye", "b", "beautiful", "briefly"),
+                index().find("b", true, 30));
+    }
+
+    @Test
+    public void testMemoryUsage() {
+        int termBytes = String.join("", TERMS).length();
+        // term bytes, offsets (one extra), frequencies and the range maximum tree (two entries per term)
+        long expected = termBytes + (TERMS.length + 1) * 4L + TERMS.length * 8L + TERMS.length * 2 * 4L;
+        Assert.assertEquals(expected, index().memoryUsageBytes());
+    }
+
+    @Test
+    public void testMaxResults() {
+        Assert.assertEquals(List.of("be", "because", "beautiful"), index().find("be", true, 3));
+        Assert.assertEquals(List.of("be", "c"), index().find("", true, 2));
+    }
+
+    @Test
+    public void testInsensitive() {
+        Assert.assertEquals(List.of("bye", "bye-bye"), index().find("BŸ", false, 30));
+    }
+
+    @Test
+    public void testNoMatches() {
+        Assert.assertEquals(List.of(), index().find("a", true, 30));
+        Assert.assertEquals(List.of(), index().find("byz", true, 30));
+        Assert.assertEquals(List.of(), index().find("d", true, 30));
+    }
+}
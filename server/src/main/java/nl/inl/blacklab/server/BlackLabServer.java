@@ -2,6 +2,7 @@ package nl.inl.blacklab.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -12,6 +13,7 @@ import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
@@ -64,6 +66,9 @@ public class BlackLabServer extends HttpServlet {
 
     private static final String CONFIG_FILE_NAME = "blacklab-server";
 
+    /** Buffer size for compressing streamed responses (bytes) */
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     /** Pretty-print the response? */
     public static final String PARAM_PRETTYPRINT = "prettyprint";
 
@@ -285,7 +290,7 @@ public class BlackLabServer extends HttpServlet {
         int cacheTime = 0;
         ApiVersion api = ApiVersion.CURRENT;
         boolean prettyPrint = ServletUtil.getParameter(request, PARAM_PRETTYPRINT, userRequest.isDebugMode());
-        DataStream ds = DataStreamAbstract.create(outputType, prettyPrint, api);
+        DataStreamAbstract ds = DataStreamAbstract.create(outputType, prettyPrint, api);
         ds.setOmitEmptyAnnotations(searchManager.config().getProtocol().isOmitEmptyProperties());
         if (request.getParameterMap().containsKey(PARAM_ESCAPE_XML_FRAGMENT)) {
             // We want to override whether XML fragments are output as CDATA or not
@@ -309,6 +314,28 @@ public class BlackLabServer extends HttpServlet {
 
             cacheTime = requestHandler.isCacheAllowed() ? searchManager.config().getCache().getClientCacheTimeSec() : 0;
 
+            // Large responses are sent while we're still generating them
+            // (as long as nothing has been sent yet, we can still send an error response instead).
+            // The handler only returns its status code when it's done, so we send the status set on
+            // the response so far (200 unless changed). Errors after that abort the response.
+            int streamingThresholdKb = searchManager.config().getProtocol().getStreamingThresholdKb();
+            if (streamingThresholdKb > 0) {
+                final DataFormat streamOutputType = outputType;
+                final int streamCacheTime = cacheTime;
+                ds.streamTo(streamingThresholdKb * 1024, () -> {
+                    writeResponseHeaders(responseObject, responseObject.getStatus(), streamOutputType,
+                            streamCacheTime);
+                    OutputStream stream = responseObject.getOutputStream();
+                    if (streamOutputType == DataFormat.CSV && acceptsGzip(request)) {
+                        // Large exports compress very well
+                        responseObject.setHeader("Content-Encoding", "gzip");
+                        responseObject.addHeader("Vary", "Accept-Encoding");
+                        stream = new GZIPOutputStream(stream, GZIP_BUFFER_SIZE, true);
+                    }
+                    return new OutputStreamWriter(stream, OUTPUT_ENCODING);
+                });
+            }
+
             String rootEl = requestHandler.omitBlackLabResponseRootElement() ? null : ResponseStreamer.BLACKLAB_RESPONSE_ROOT_ELEMENT;
             ds.startDocument(rootEl);
 
@@ -336,6 +363,8 @@ public class BlackLabServer extends HttpServlet {
             httpCode = Response.error(errorWriter, e.getBlsErrorCode(), e.getMessage(), e.getInfo(), e.getHttpStatusCode());
         } catch (InterruptedSearch e) {
             httpCode = Response.error(errorWriter, "INTERRUPTED", e.getMessage(), null, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e);
+        } catch (IOException e) {
+            httpCode = Response.internalError(errorWriter, e, userRequest.isDebugMode(), "INTERR_HANDLING_REQUEST");
         } catch (RuntimeException e) {
             if (errorWriter != null)
                 httpCode = Response.internalError(errorWriter, e, userRequest.isDebugMode(), "INTERR_HANDLING_REQUEST");
@@ -345,22 +374,32 @@ public class BlackLabServer extends HttpServlet {
             if (requestHandler != null)
                 requestHandler.cleanup(); // close logger
         }
+        boolean errorOccurred = es.length() > errorBufLengthBefore;
+        if (errorOccurred && ds.isCommitted()) {
+            // We've already sent part of the response, so we can't send an error response anymore.
+            // Don't finish the response, so the client can tell it's incomplete.
+            logger.error("Error after part of the response was sent: " + es.getOutput());
+            throw new IllegalStateException("Error after part of the response was sent (see log)");
+        }
         ds.endDocument();
 
-        // === Write the response headers
+        try {
+            if (!errorOccurred && ds.isCommitted()) {
+                // We're streaming the response and have already sent the headers; send the rest
+                if (httpCode != responseObject.getStatus()) {
+                    logger.warn("Streamed response was sent with status " + responseObject.getStatus() +
+                            ", but the request handler returned " + httpCode);
+                }
+                ds.finish();
+                return;
+            }
 
-        // Write HTTP headers (status code, encoding, content type and cache)
-        responseObject.setStatus(httpCode);
-        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
-        responseObject.setContentType(outputType.getContentType());
-        optAddAllowOriginHeader(responseObject);
-        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+            // === Write the response headers
+            writeResponseHeaders(responseObject, httpCode, outputType, cacheTime);
 
-        // === Write the response that was captured in buf
-        try {
+            // === Write the response that was captured in buf
             Writer realOut = new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
-            if (es.length() > errorBufLengthBefore) {
-                // an error occurred
+            if (errorOccurred) {
                 realOut.write(es.getOutput());
             } else {
                 realOut.write(ds.getOutput());
@@ -373,6 +412,34 @@ public class BlackLabServer extends HttpServlet {
         }
     }
 
+    /**
+     * Does the client accept a gzip-compressed response?
+     *
+     * @param request request
+     * @return true if gzip is listed in the Accept-Encoding header
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * Write HTTP headers (status code, encoding, content type and cache).
+     *
+     * @param responseObject response
+     * @param httpCode HTTP status code
+     * @param outputType response type
+     * @param cacheTime how long the client may cache the response (seconds)
+     */
+    private void writeResponseHeaders(HttpServletResponse responseObject, int httpCode, DataFormat outputType,
+            int cacheTime) {
+        responseObject.setStatus(httpCode);
+        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
+        responseObject.setContentType(outputType.getContentType());
+        optAddAllowOriginHeader(responseObject);
+        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+    }
+
     private void initializationErrorResponse(HttpServletResponse responseObject, Exception e, DataFormat outputType,
             ApiVersion api, boolean prettyPrint) {
         if (outputType == null)
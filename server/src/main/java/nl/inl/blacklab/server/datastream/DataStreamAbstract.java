@@ -1,7 +1,8 @@
 package nl.inl.blacklab.server.datastream;
 
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Writer;
 
 import nl.inl.blacklab.server.lib.results.ApiVersion;
 
@@ -10,10 +11,27 @@ import nl.inl.blacklab.server.lib.results.ApiVersion;
  *
  * This is faster than building a full object tree first. Intended to replace
  * the DataObject classes.
+ *
+ * By default, the output is kept in memory (see {@link #getOutput()}). In streaming mode
+ * (see {@link #streamTo(int, Committer)}), larger responses are sent to the client
+ * while they are being generated.
  */
 public abstract class DataStreamAbstract implements DataStream {
 
-    public static DataStream create(DataFormat format, boolean prettyPrint, ApiVersion api) {
+    /** Commits the response when we start streaming. */
+    @FunctionalInterface
+    public interface Committer {
+        /**
+         * Called just before we send the first output.
+         * <p>
+         * Should set the HTTP status and headers, then return where to write the output.
+         *
+         * @return where to write the output
+         */
+        Writer commit() throws IOException;
+    }
+
+    public static DataStreamAbstract create(DataFormat format, boolean prettyPrint, ApiVersion api) {
         if (format == DataFormat.JSON)
             return new DataStreamJson(prettyPrint);
         if (format == DataFormat.CSV)
@@ -23,7 +41,7 @@ public abstract class DataStreamAbstract implements DataStream {
 
     protected final PrintWriter out;
 
-    private final StringWriter stringWriter;
+    private final ResponseWriter responseWriter;
 
     private int indent = 0;
 
@@ -34,18 +52,71 @@ public abstract class DataStreamAbstract implements DataStream {
     private final boolean prettyPrintPref;
 
     protected DataStreamAbstract(boolean prettyPrint) {
-        this.stringWriter = new StringWriter();
-        this.out = new PrintWriter(stringWriter);
+        this.responseWriter = new ResponseWriter();
+        this.out = new PrintWriter(responseWriter);
         this.prettyPrintPref = this.prettyPrint = prettyPrint;
     }
 
+    /**
+     * Stream the output to the client once there's more than bufferSize characters of it.
+     * <p>
+     * Until then, the output is kept in memory, so we can still send an error response instead
+     * (see {@link #isCommitted()}). Call {@link #finish()} at the end to send the rest.
+     *
+     * @param bufferSize how many characters to keep in memory before we start streaming
+     * @param committer called just before the first output is sent; should set the HTTP status
+     *                  and headers and return where to write the output
+     */
+    public void streamTo(int bufferSize, Committer committer) {
+        responseWriter.streamTo(bufferSize, committer);
+    }
+
+    /**
+     * Are we in streaming mode?
+     *
+     * @return true if streamTo() was called
+     */
+    public boolean isStreaming() {
+        return responseWriter.isStreaming();
+    }
+
+    /**
+     * Has any output been sent to the client yet?
+     * <p>
+     * Once it has, it's too late to send an error response instead.
+     *
+     * @return true if output was sent
+     */
+    public boolean isCommitted() {
+        return responseWriter.isCommitted();
+    }
+
+    /**
+     * Send any remaining output to the client (streaming mode only).
+     *
+     * @throws IOException if the output could not be written (e.g. the client disconnected)
+     */
+    public void finish() throws IOException {
+        out.flush();
+        responseWriter.finish();
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
     /**
      * Get the output so far as a string.
+     * <p>
+     * In streaming mode, this only returns the output that hasn't been sent yet.
+     *
      * @return the output
      */
     @Override
     public String getOutput() {
-        return stringWriter.toString();
+        out.flush();
+        return responseWriter.buffered();
     }
 
     /**
@@ -54,7 +125,8 @@ public abstract class DataStreamAbstract implements DataStream {
      */
     @Override
     public int length() {
-        return stringWriter.toString().length();
+        out.flush();
+        return (int) responseWriter.length();
     }
 
     public DataStreamAbstract print(String str) {
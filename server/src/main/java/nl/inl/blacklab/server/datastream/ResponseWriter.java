@@ -0,0 +1,157 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Keeps output in memory, optionally streaming it to the client once there's enough of it.
+ * <p>
+ * As long as nothing has been sent to the client, the response isn't committed, and we
+ * can still decide to send an error response instead. After that, this is no longer possible.
+ * <p>
+ * Output errors (e.g. the client closing the connection) are remembered; after that, any
+ * further output is discarded.
+ */
+class ResponseWriter extends Writer {
+
+    /** Output we haven't sent yet */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** Commits the response and gives us the output to stream to, or null if we're not streaming */
+    private DataStreamAbstract.Committer committer;
+
+    /** Where we're streaming the output to (once committed) */
+    private Writer target;
+
+    /** Start streaming when we have this many characters buffered */
+    private int bufferSize;
+
+    /** Have we sent any output to the client yet? */
+    private boolean committed = false;
+
+    /** Number of characters sent to the client */
+    private long charsSent = 0;
+
+    /** Did we get an error writing to target? */
+    private IOException error;
+
+    /**
+     * Start streaming output once more than bufferSize characters have been written.
+     *
+     * @param bufferSize how many characters to buffer before we start streaming
+     * @param committer commits the response and gives us the output to stream to
+     */
+    void streamTo(int bufferSize, DataStreamAbstract.Committer committer) {
+        this.bufferSize = bufferSize;
+        this.committer = committer;
+    }
+
+    boolean isStreaming() {
+        return committer != null;
+    }
+
+    boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * Get the output we haven't sent yet.
+     * <p>
+     * If we're not streaming, that's the entire output.
+     *
+     * @return buffered output
+     */
+    String buffered() {
+        return buffer.toString();
+    }
+
+    /**
+     * Get the total length of the output.
+     *
+     * @return number of characters written (both sent and buffered)
+     */
+    long length() {
+        return charsSent + buffer.length();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        buffer.append(cbuf, off, len);
+        optSend();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        buffer.append(str, off, off + len);
+        optSend();
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        buffer.append((char) c);
+        optSend();
+    }
+
+    private void optSend() throws IOException {
+        if (committer != null && buffer.length() >= bufferSize)
+            send();
+    }
+
+    private void send() throws IOException {
+        if (!committed) {
+            committed = true;
+            try {
+                target = committer.commit();
+            } catch (IOException e) {
+                error = e;
+                buffer.setLength(0);
+                throw e;
+            }
+        }
+        charsSent += buffer.length();
+        if (error == null) {
+            try {
+                target.write(buffer.toString());
+            } catch (IOException e) {
+                error = e;
+                buffer.setLength(0);
+                throw e;
+            }
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Send the output so far to the client, but only if we've already started streaming.
+     * <p>
+     * (flushing earlier would commit the response, so we could no longer send an error response)
+     */
+    @Override
+    public void flush() throws IOException {
+        if (committed) {
+            send();
+            if (error == null)
+                target.flush();
+        }
+    }
+
+    /**
+     * Send any remaining output to the client and close the output.
+     * <p>
+     * Only used when streaming; otherwise, get the output using {@link #buffered()}.
+     */
+    void finish() throws IOException {
+        if (committer != null) {
+            send();
+            if (error == null)
+                target.close(); // (e.g. finishes gzip compression)
+        }
+        if (error != null)
+            throw error;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
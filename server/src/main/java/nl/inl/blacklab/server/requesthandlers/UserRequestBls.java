@@ -57,6 +57,10 @@ public class UserRequestBls implements UserRequest {
         RequestInstrumentationProvider instrumentationProvider = getInstrumentationProvider();
         ThreadContext.put("requestId", instrumentationProvider.getRequestID(request).orElse(""));
 
+        // Who made this request? Used to divide server capacity fairly between users.
+        // (replaced with the user id if the user is logged in, see getUser())
+        ThreadContext.put("requester", ServletUtil.getOriginatingAddress(request));
+
         // Parse the URL path
         String servletPath = StringUtils.strip(StringUtils.trimToEmpty(request.getPathInfo()), "/");
         if (servletPath.equals("corpora")) {
@@ -117,6 +121,8 @@ public class UserRequestBls implements UserRequest {
                     user = User.fromIdAndSessionId(request.getHeader("X-BlackLabUserId"), request.getSession().getId());
                 }
             }
+            if (user.isLoggedIn())
+                ThreadContext.put("requester", user.getId());
         }
         return user;
     }
@@ -0,0 +1,87 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.server.lib.results.ApiVersion;
+
+public class TestResponseWriter {
+
+    /** Writes to a StringWriter and counts how often we commit */
+    private static class TestCommitter implements DataStreamAbstract.Committer {
+        final StringWriter target = new StringWriter();
+
+        int timesCommitted = 0;
+
+        @Override
+        public StringWriter commit() {
+            timesCommitted++;
+            return target;
+        }
+    }
+
+    private static List<Integer> values(int n) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            values.add(i);
+        return values;
+    }
+
+    private static String expectedJson(int n) {
+        DataStream dataStream = DataStreamAbstract.create(DataFormat.JSON, false, ApiVersion.CURRENT);
+        dataStream.value(values(n));
+        return dataStream.getOutput();
+    }
+
+    @Test
+    public void testBuffered() throws IOException {
+        // Output stays below the threshold, so everything is kept in memory
+        DataStreamAbstract dataStream = DataStreamAbstract.create(DataFormat.JSON, false, ApiVersion.CURRENT);
+        TestCommitter committer = new TestCommitter();
+        dataStream.streamTo(100_000, committer);
+        dataStream.value(values(100));
+        dataStream.flush();
+        Assert.assertTrue(dataStream.isStreaming());
+        Assert.assertFalse(dataStream.isCommitted());
+        Assert.assertEquals(0, committer.timesCommitted);
+        Assert.assertEquals(expectedJson(100), dataStream.getOutput());
+        Assert.assertEquals(expectedJson(100).length(), dataStream.length());
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        // Output exceeds the threshold, so it is sent while it is generated
+        DataStreamAbstract dataStream = DataStreamAbstract.create(DataFormat.JSON, false, ApiVersion.CURRENT);
+        TestCommitter committer = new TestCommitter();
+        dataStream.streamTo(100, committer);
+        dataStream.value(values(1000));
+        dataStream.flush();
+        Assert.assertTrue(dataStream.isCommitted());
+        Assert.assertEquals(1, committer.timesCommitted);
+        Assert.assertTrue(committer.target.toString().length() >= 100);
+        Assert.assertTrue(dataStream.getOutput().length() < 100);
+
+        dataStream.finish();
+        Assert.assertEquals(1, committer.timesCommitted);
+        Assert.assertEquals(expectedJson(1000), committer.target.toString());
+        Assert.assertEquals(expectedJson(1000).length(), dataStream.length());
+        Assert.assertEquals("", dataStream.getOutput());
+    }
+
+    @Test
+    public void testStreamingError() {
+        // If we can't write to the client, finish() reports it
+        DataStreamAbstract dataStream = DataStreamAbstract.create(DataFormat.JSON, false, ApiVersion.CURRENT);
+        dataStream.streamTo(100, () -> {
+            throw new IOException("client went away");
+        });
+        dataStream.value(values(1000));
+        Assert.assertTrue(dataStream.isCommitted());
+        Assert.assertThrows(IOException.class, dataStream::finish);
+    }
+}
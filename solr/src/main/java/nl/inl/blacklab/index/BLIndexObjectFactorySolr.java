@@ -25,9 +25,9 @@ public class BLIndexObjectFactorySolr implements BLIndexObjectFactory {
     }
 
     @Override
-    public BLFieldType fieldTypeContentStore() {
+    public BLFieldType fieldTypeContentStore(String blockCodecName) {
         // ignored in solr path, see BLInputDocumentSolr.
-        return BLFieldTypeLucene.contentStore();
+        return BLFieldTypeLucene.contentStore(blockCodecName);
     }
 
     @Override
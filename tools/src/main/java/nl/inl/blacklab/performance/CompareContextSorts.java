@@ -0,0 +1,127 @@
+package nl.inl.blacklab.performance;
+
+import java.io.File;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyAfterHit;
+import nl.inl.blacklab.resultproperty.HitPropertyBeforeHit;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchSettings;
+import nl.inl.blacklab.search.results.hits.EphemeralHit;
+import nl.inl.blacklab.search.results.hits.Hits;
+import nl.inl.blacklab.search.results.hits.HitsMutable;
+import nl.inl.util.LogUtil;
+import nl.inl.util.Timer;
+
+/**
+ * Compare sorting on context properties by comparing sort position arrays
+ * and by radix sorting packed sort keys.
+ *
+ * Sorts 10M hits (the query's hits, repeated if necessary) on hit text, the word
+ * before the hit and the two words after the hit.
+ */
+public class CompareContextSorts {
+
+    /** How many hits to sort */
+    private static final int NUMBER_OF_HITS = 10_000_000;
+
+    private CompareContextSorts() {
+    }
+
+    public static void main(String[] args) throws ErrorOpeningIndex, InvalidQuery {
+
+        LogUtil.setupBasicLoggingConfig(); // suppress log4j warning
+
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: CompareContextSorts <indexDir> [query]");
+            return;
+        }
+        File indexDir = new File(args[0]);
+        if (!indexDir.exists() || !indexDir.isDirectory()) {
+            System.err.println("Index directory not found: " + args[0]);
+            return;
+        }
+        String strQuery = args.length > 1 ? args[1] : "[]";
+
+        try (BlackLabIndex index = BlackLab.open(indexDir)) {
+            Annotation annotation = index.mainAnnotatedField().mainAnnotation();
+            BLSpanQuery query = CorpusQueryLanguageParser.parse(strQuery, annotation.name())
+                    .toQuery(QueryInfo.create(index));
+            Hits found = index.find(query, SearchSettings.get(NUMBER_OF_HITS, NUMBER_OF_HITS)).getHits();
+            if (found.size() == 0) {
+                System.err.println("No hits for query " + strQuery);
+                return;
+            }
+
+            // Make a list of exactly NUMBER_OF_HITS hits
+            HitsMutable hits = HitsMutable.create(found.field(), found.matchInfoDefs(), NUMBER_OF_HITS, false, false);
+            EphemeralHit hit = new EphemeralHit();
+            for (long i = 0; hits.size() < NUMBER_OF_HITS; i = (i + 1) % found.size()) {
+                found.getEphemeral(i, hit);
+                hits.add(hit);
+            }
+            System.out.println("Sorting " + hits.size() + " hits");
+
+            List<HitProperty> props = List.of(
+                    new HitPropertyHitText(index, annotation, MatchSensitivity.INSENSITIVE),
+                    new HitPropertyBeforeHit(index, annotation, MatchSensitivity.INSENSITIVE, 1),
+                    new HitPropertyAfterHit(index, annotation, MatchSensitivity.INSENSITIVE, 2));
+
+            // First round is warmup; results are only reported for the second round
+            for (int round = 0; round < 2; round++) {
+                boolean report = round > 0;
+                for (HitProperty p: props) {
+                    HitProperty prop = p.copyWith(hits);
+                    prop.get(0); // make sure context has been fetched, so we only time the sort
+
+                    Timer t = new Timer();
+                    int[] compared = indices();
+                    IntArrays.parallelQuickSort(compared, prop::compare);
+                    long compareTime = t.elapsed();
+
+                    t.reset();
+                    long[] keys = prop.packedSortKeys();
+                    int[] radixSorted = null;
+                    if (keys != null) {
+                        radixSorted = indices();
+                        LongArrays.parallelRadixSortIndirect(radixSorted, keys, true);
+                    }
+                    long packedTime = t.elapsed();
+
+                    if (radixSorted != null) {
+                        for (int i = 0; i < NUMBER_OF_HITS; i++) {
+                            if (prop.compare(compared[i], radixSorted[i]) != 0)
+                                throw new IllegalStateException("Sorts differ at index " + i + " for " + prop.name());
+                        }
+                    }
+                    if (report) {
+                        System.out.println(prop.name() + ":");
+                        System.out.println("  compare sort positions: " + compareTime + "ms");
+                        System.out.println("  radix sort packed keys: " + (keys == null ? "(contexts too long to pack)" :
+                                packedTime + "ms"));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] indices() {
+        int[] indices = new int[NUMBER_OF_HITS];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = i;
+        return indices;
+    }
+
+}
@@ -0,0 +1,117 @@
+package nl.inl.blacklab.performance;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.lucene.index.LeafReaderContext;
+
+import nl.inl.blacklab.codec.BlackLabPostingsReader;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
+import nl.inl.blacklab.forwardindex.FieldForwardIndex;
+import nl.inl.blacklab.forwardindex.TokensCursor;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.util.LogUtil;
+import nl.inl.util.Timer;
+
+/**
+ * Compare reading snippets from the forward index using retrieveParts()
+ * (an array per snippet) and using a TokensCursor (no allocation).
+ *
+ * Reads the same pseudorandom snippets (like the context for a KWIC) from each segment
+ * using both methods and reports the time taken.
+ */
+public class CompareForwardIndexReads {
+
+    /** How many snippets to read per segment */
+    private static final int SNIPPETS_PER_SEGMENT = 1_000_000;
+
+    /** Length of each snippet (hit plus context) */
+    private static final int SNIPPET_LENGTH = 11;
+
+    private CompareForwardIndexReads() {
+    }
+
+    public static void main(String[] args) throws ErrorOpeningIndex {
+
+        LogUtil.setupBasicLoggingConfig(); // suppress log4j warning
+
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: CompareForwardIndexReads <indexDir> [annotatedField] [annotation]");
+            return;
+        }
+        File indexDir = new File(args[0]);
+        if (!indexDir.exists() || !indexDir.isDirectory()) {
+            System.err.println("Index directory not found: " + args[0]);
+            return;
+        }
+
+        try (BlackLabIndex index = BlackLab.open(indexDir)) {
+            AnnotatedField field = args.length > 1 ? index.annotatedField(args[1]) : index.mainAnnotatedField();
+            Annotation annotation = args.length > 2 ? field.annotation(args[2]) : field.mainAnnotation();
+            String luceneField = annotation.forwardIndexSensitivity().luceneField();
+
+            // First round is warmup; results are only reported for the second round
+            for (int round = 0; round < 2; round++) {
+                boolean report = round > 0;
+                long arrayTime = 0, cursorTime = 0;
+                for (LeafReaderContext lrc: index.reader().leaves()) {
+                    int maxDoc = lrc.reader().maxDoc();
+                    if (maxDoc == 0)
+                        continue;
+                    AnnotationForwardIndex fi = FieldForwardIndex.get(lrc, luceneField);
+                    TokensCursor cursor = BlackLabPostingsReader.forSegment(lrc).tokensCursor(luceneField);
+
+                    Timer t = new Timer();
+                    long checksumArrays = readUsingArrays(fi, maxDoc);
+                    arrayTime += t.elapsed();
+
+                    t.reset();
+                    long checksumCursor = readUsingCursor(cursor, maxDoc);
+                    cursorTime += t.elapsed();
+
+                    if (checksumArrays != checksumCursor)
+                        throw new IllegalStateException("Checksums differ: " + checksumArrays + " != " + checksumCursor);
+                }
+                if (report) {
+                    System.out.println("retrieveParts: " + arrayTime + "ms");
+                    System.out.println("TokensCursor:  " + cursorTime + "ms");
+                }
+            }
+        }
+    }
+
+    private static long readUsingArrays(AnnotationForwardIndex fi, int maxDoc) {
+        Random random = new Random(1234);
+        long checksum = 0;
+        for (int i = 0; i < SNIPPETS_PER_SEGMENT; i++) {
+            int docId = random.nextInt(maxDoc);
+            int docLength = (int) fi.docLength(docId);
+            int start = random.nextInt(Math.max(1, docLength - SNIPPET_LENGTH));
+            int end = Math.min(docLength, start + SNIPPET_LENGTH);
+            for (int termId: fi.retrievePart(docId, start, end))
+                checksum += termId;
+        }
+        return checksum;
+    }
+
+    private static long readUsingCursor(TokensCursor cursor, int maxDoc) {
+        Random random = new Random(1234);
+        long checksum = 0;
+        for (int i = 0; i < SNIPPETS_PER_SEGMENT; i++) {
+            int docId = random.nextInt(maxDoc);
+            cursor.reset(docId, 0, 0);
+            int docLength = cursor.docLength();
+            int start = random.nextInt(Math.max(1, docLength - SNIPPET_LENGTH));
+            int end = Math.min(docLength, start + SNIPPET_LENGTH);
+            cursor.reset(docId, start, end);
+            while (cursor.hasNext())
+                checksum += cursor.nextToken();
+        }
+        return checksum;
+    }
+
+}
@@ -52,6 +52,12 @@ public class BLSConfigCache {
     /** Cache implementation to use. */
     private String implementation = "";
 
+    /** Directory to store finished results in, so they survive a restart (empty to disable). */
+    private String persistentDir = "";
+
+    /** Maximum size of the persistent results cache (megabytes). */
+    private int persistentMaxSizeMegs = 1000;
+
     public int getMaxNumberOfJobs() {
         return maxNumberOfJobs;
     }
@@ -171,4 +177,22 @@ public class BLSConfigCache {
         this.implementation = implementation;
     }
 
+    public String getPersistentDir() {
+        return persistentDir;
+    }
+
+    @SuppressWarnings("unused")
+    public void setPersistentDir(String persistentDir) {
+        this.persistentDir = persistentDir;
+    }
+
+    public int getPersistentMaxSizeMegs() {
+        return persistentMaxSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setPersistentMaxSizeMegs(int persistentMaxSizeMegs) {
+        this.persistentMaxSizeMegs = persistentMaxSizeMegs;
+    }
+
 }
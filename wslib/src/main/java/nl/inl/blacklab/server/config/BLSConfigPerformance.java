@@ -21,6 +21,9 @@ public class BLSConfigPerformance {
     /** When to abort a count that no client has asked for (seconds). */
     int abandonedCountAbortTimeSec = 30;
 
+    /** Searches with at most this estimated cost go to the front of the queue (0 to disable). */
+    long cheapSearchMaxCost = 100_000;
+
     public int getMaxConcurrentSearches() {
         if (maxConcurrentSearches < 0)
             setDefaultMaxConcurrentSearches();
@@ -61,4 +64,13 @@ public class BLSConfigPerformance {
         this.abandonedCountAbortTimeSec = abandonedCountAbortTimeSec;
     }
 
+    public long getCheapSearchMaxCost() {
+        return cheapSearchMaxCost;
+    }
+
+    @SuppressWarnings("unused")
+    public void setCheapSearchMaxCost(long cheapSearchMaxCost) {
+        this.cheapSearchMaxCost = cheapSearchMaxCost;
+    }
+
 }
@@ -15,6 +15,17 @@ public class BLSConfigProtocol {
 
     private String accessControlAllowOrigin = "*";
 
+    private int streamingThresholdKb = 256;
+
+    public int getStreamingThresholdKb() {
+        return streamingThresholdKb;
+    }
+
+    @SuppressWarnings("unused")
+    public void setStreamingThresholdKb(int streamingThresholdKb) {
+        this.streamingThresholdKb = streamingThresholdKb;
+    }
+
     private String defaultOutputType = "XML";
 
     public String getDefaultOutputType() {
@@ -383,6 +383,15 @@ public interface DataStream {
 
     int length();
 
+    /**
+     * Send the output so far to the client, if we're already streaming the response.
+     * <p>
+     * Useful when outputting long lists. Does nothing by default.
+     */
+    default void flush() {
+        // do nothing by default
+    }
+
     DataStream newline();
 
     DataStream space();
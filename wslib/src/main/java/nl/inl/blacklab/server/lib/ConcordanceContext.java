@@ -14,6 +14,9 @@ import nl.inl.blacklab.search.results.hits.Hits;
 
 public class ConcordanceContext {
 
+    /** How many hits to retrieve KWICs/concordances for at a time (see {@link #inBatches}) */
+    private static final int BATCH_SIZE = 500;
+
     public static ConcordanceContext kwics(Kwics kwics) {
         return new ConcordanceContext(kwics, null);
     }
@@ -32,13 +35,74 @@ public class ConcordanceContext {
         return concordanceContext;
     }
 
-    private final Concordances concordances;
+    /**
+     * Retrieve KWICs/concordances in batches, as they are needed.
+     * <p>
+     * This way, we can start writing the first hits of a large window to the response
+     * before we've retrieved context for all of them. The hits must be requested in order.
+     * Not thread-safe.
+     *
+     * @param hits hits to retrieve KWICs/concordances for
+     * @param concordanceType what to retrieve
+     * @param contextSize how much context
+     * @return concordance context
+     */
+    public static ConcordanceContext inBatches(Hits hits, ConcordanceType concordanceType, ContextSize contextSize) {
+        if (hits.size() <= BATCH_SIZE)
+            return get(hits, concordanceType, contextSize);
+        return new ConcordanceContext(hits, concordanceType, contextSize);
+    }
+
+    private Concordances concordances;
+
+    private Kwics kwics;
 
-    private final Kwics kwics;
+    /** If we're retrieving in batches: all the hits (otherwise null) */
+    private final Hits batchHits;
+
+    /** If we're retrieving in batches: what to retrieve */
+    private final ConcordanceType batchConcordanceType;
+
+    /** If we're retrieving in batches: how much context */
+    private final ContextSize batchContextSize;
+
+    /** If we're retrieving in batches: index of the first hit in the next batch */
+    private long nextBatchStart;
 
     private ConcordanceContext(Kwics kwics, Concordances concordances) {
         this.kwics = kwics;
         this.concordances = concordances;
+        batchHits = null;
+        batchConcordanceType = null;
+        batchContextSize = null;
+    }
+
+    private ConcordanceContext(Hits hits, ConcordanceType concordanceType, ContextSize contextSize) {
+        batchHits = hits;
+        batchConcordanceType = concordanceType;
+        batchContextSize = contextSize;
+        nextBatchStart = 0;
+        nextBatch();
+    }
+
+    private void nextBatch() {
+        Hits batch = batchHits.sublist(nextBatchStart, BATCH_SIZE);
+        nextBatchStart += BATCH_SIZE;
+        ConcordanceContext c = get(batch, batchConcordanceType, batchContextSize);
+        kwics = c.kwics;
+        concordances = c.concordances;
+    }
+
+    /** If we're retrieving in batches, make sure we have the batch containing this hit. */
+    private void ensureBatchFor(Hit hit) {
+        if (batchHits == null)
+            return;
+        while (!hasHit(hit) && nextBatchStart < batchHits.size())
+            nextBatch();
+    }
+
+    private boolean hasHit(Hit hit) {
+        return isConcordances() ? concordances.get(hit) != null : kwics.get(hit) != null;
     }
 
     public boolean isConcordances() {
@@ -46,14 +110,17 @@ public class ConcordanceContext {
     }
 
     public Concordance getConcordance(Hit hit) {
+        ensureBatchFor(hit);
         return concordances.get(hit);
     }
 
     public Kwic getKwic(Hit hit) {
+        ensureBatchFor(hit);
         return kwics.get(hit);
     }
 
     public Map<AnnotatedField, Kwic> getForeignKwics(Hit hit) {
+        ensureBatchFor(hit);
         return kwics.getForeignKwics(hit);
     }
 }
@@ -562,8 +562,10 @@ public class WebserviceParamsImpl implements WebserviceParams {
 
     @Override
     public SearchHitGroups hitsGroupedStats() throws BlsException {
+        // If we won't look inside the groups, only count hits per group, so we don't keep all hits in memory
+        boolean needGroupContents = getIncludeGroupContents() || getViewGroup().isPresent();
         return hitsSample()
-                .groupStats(getHitGroupProperty(), Results.NO_LIMIT)
+                .groupStats(getHitGroupProperty(), needGroupContents ? Results.NO_LIMIT : 0)
                 .sort(hitGroupSortSettings().sortBy());
     }
 
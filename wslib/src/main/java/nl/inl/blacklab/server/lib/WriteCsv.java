@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -23,7 +24,6 @@ import nl.inl.blacklab.search.BlackLabIndexAbstract;
 import nl.inl.blacklab.search.Kwic;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.Field;
-import nl.inl.blacklab.search.indexmetadata.IndexMetadata;
 import nl.inl.blacklab.search.indexmetadata.MetadataField;
 import nl.inl.blacklab.search.results.CorpusSize;
 import nl.inl.blacklab.search.results.ResultGroups;
@@ -32,6 +32,7 @@ import nl.inl.blacklab.search.results.docs.DocGroup;
 import nl.inl.blacklab.search.results.docs.DocGroups;
 import nl.inl.blacklab.search.results.docs.DocResult;
 import nl.inl.blacklab.search.results.docs.DocResults;
+import nl.inl.blacklab.search.results.hitresults.ContextSize;
 import nl.inl.blacklab.search.results.hitresults.HitGroup;
 import nl.inl.blacklab.search.results.hitresults.HitGroups;
 import nl.inl.blacklab.search.results.hitresults.HitResults;
@@ -55,6 +56,14 @@ public class WriteCsv {
 
     private static final List<String> writeRowTemp = new ArrayList<>();
 
+    /**
+     * How many hits or docs to write at a time.
+     *
+     * Kwics and documents are retrieved per batch, and the CSV is passed on per batch,
+     * so memory use doesn't depend on the size of the export.
+     */
+    private static final int BATCH_SIZE = 2000;
+
     public static final String CSV_VALUE_UNKNOWN = "[unknown]";
 
     private WriteCsv() {
@@ -117,12 +126,25 @@ public class WriteCsv {
     }
 
     public static String hitsResponse(ResultHitsCsv resultHitsCsv, ResponseStreamer rs) throws BlsException {
+        StringBuilder csv = new StringBuilder();
+        hitsResponse(resultHitsCsv, rs, csv::append);
+        return csv.toString();
+    }
+
+    /**
+     * Write hits as CSV, in batches.
+     *
+     * @param resultHitsCsv hits to write
+     * @param rs response streamer (for the key names)
+     * @param output receives the CSV, one batch of hits at a time
+     */
+    public static void hitsResponse(ResultHitsCsv resultHitsCsv, ResponseStreamer rs, Consumer<String> output)
+            throws BlsException {
         WebserviceParams params = resultHitsCsv.getParams();
         BlackLabIndex index = params.blIndex();
         HitResults hitResults = resultHitsCsv.getHits();
         HitGroups groups = resultHitsCsv.getGroups();
         DocResults subcorpusResults = resultHitsCsv.getSubcorpusResults();
-        final Annotation mainTokenProperty = hitResults.field().mainAnnotation();
         try {
             // Build the table headers
             // The first few columns are fixed, and an additional columns is appended per annotation of tokens in this corpus.
@@ -150,23 +172,49 @@ public class WriteCsv {
                         rs);
             }
 
-            Map<Integer, Document> luceneDocs = new HashMap<>();
-            Hits hitsList = hitResults.getHits();
-            Kwics kwics = hitsList.kwics(params.contextSettings().size());
-            for (EphemeralHit hit: hitsList) {
+            flushTo(printer, output);
+
+            writeHits(hitResults.getHits(), params.contextSettings().size(), resultHitsCsv.getAnnotationsToWrite(),
+                    metadataFieldsToWrite, printer, BATCH_SIZE, output);
+        } catch (IOException e) {
+            throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV2");
+        }
+    }
+
+    /**
+     * Write the rows for a list of hits, in batches.
+     *
+     * Kwics and documents are retrieved per batch. The output doesn't depend on the batch size.
+     *
+     * @param hits hits to write
+     * @param contextSize context size for the kwics
+     * @param annotationsToWrite annotations to write a column for (besides the kwic)
+     * @param metadataFieldsToWrite metadata fields to write a column for
+     * @param printer printer created by {@link #createHeader(List, boolean)}
+     * @param batchSize how many hits to write at a time
+     * @param output receives the CSV, one batch of hits at a time
+     */
+    static void writeHits(Hits hits, ContextSize contextSize, List<Annotation> annotationsToWrite,
+            List<MetadataField> metadataFieldsToWrite, CSVPrinter printer, int batchSize, Consumer<String> output)
+            throws IOException {
+        BlackLabIndex index = hits.index();
+        Annotation mainTokenProperty = hits.field().mainAnnotation();
+        Map<Integer, Document> luceneDocs = new HashMap<>();
+        for (long batchStart = 0; hits.sizeAtLeast(batchStart + 1); batchStart += batchSize) {
+            Hits batch = hits.sublist(batchStart, batchSize);
+            Kwics kwics = batch.kwics(contextSize);
+            luceneDocs.clear(); // only keep the documents for this batch
+            for (EphemeralHit hit: batch) {
                 Document doc = luceneDocs.get(hit.doc());
                 if (doc == null) {
                     doc = index.luceneDoc(hit.doc());
                     luceneDocs.put(hit.doc(), doc);
                 }
                 String docPid = WebserviceOperations.getDocumentPid(index, hit.doc(), doc);
-                writeHit(kwics.get(hit), doc, mainTokenProperty,
-                        resultHitsCsv.getAnnotationsToWrite(), docPid, metadataFieldsToWrite, printer);
+                writeHit(kwics.get(hit), doc, mainTokenProperty, annotationsToWrite, docPid, metadataFieldsToWrite,
+                        printer);
             }
-            printer.flush();
-            return printer.getOut().toString();
-        } catch (IOException e) {
-            throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV2");
+            flushTo(printer, output);
         }
     }
 
@@ -176,6 +224,21 @@ public class WriteCsv {
         return format.print(new StringBuilder(declareSeparator ? "sep=,\r\n" : ""));
     }
 
+    /**
+     * Pass on the CSV written so far and clear it.
+     *
+     * @param printer printer created by {@link #createHeader(List, boolean)}
+     * @param output where to pass the CSV
+     */
+    private static void flushTo(CSVPrinter printer, Consumer<String> output) throws IOException {
+        printer.flush();
+        StringBuilder csv = (StringBuilder) printer.getOut();
+        if (!csv.isEmpty()) {
+            output.accept(csv.toString());
+            csv.setLength(0);
+        }
+    }
+
     private static void writeHit(
             Kwic kwic,
             Document doc,
@@ -395,10 +458,25 @@ public class WriteCsv {
 
     public static String docs(WebserviceParams params, DocResults docs, DocGroups fromGroups,
             DocResults globalSubcorpusSize, ResponseStreamer rs) throws BlsException {
+        StringBuilder csv = new StringBuilder();
+        docs(params, docs, fromGroups, globalSubcorpusSize, rs, csv::append);
+        return csv.toString();
+    }
+
+    /**
+     * Write documents as CSV, in batches.
+     *
+     * @param params parameters
+     * @param docs documents to write
+     * @param fromGroups (optional) groups the documents came from
+     * @param globalSubcorpusSize subcorpus (for the summary)
+     * @param rs response streamer (for the key names)
+     * @param output receives the CSV, one batch of documents at a time
+     */
+    public static void docs(WebserviceParams params, DocResults docs, DocGroups fromGroups,
+            DocResults globalSubcorpusSize, ResponseStreamer rs, Consumer<String> output) throws BlsException {
         try {
             BlackLabIndex index = params.blIndex();
-            IndexMetadata indexMetadata = index.metadata();
-            MetadataField pidField = indexMetadata.metadataFields().pidField();
             String tokenLengthField = index.mainAnnotatedField().tokenLengthField(); // TODO: all annotated fields?
 
             // Build the header; 2 columns for pid and length, then 1 for each metadata field
@@ -421,66 +499,93 @@ public class WriteCsv {
             CSVPrinter printer = createHeader(row, params.getCsvDeclareSeparator());
             summaryCsvDocs(params, printer, row.size(), docs, fromGroups, globalSubcorpusSize.subcorpusSize(), rs);
 
-            StringBuilder sb = new StringBuilder();
+            flushTo(printer, output);
 
-            for (DocResult docResult : docs) {
-                Document doc = index.luceneDoc(docResult.docId());
-                row.clear();
+            writeDocs(index, docs, metadataFieldIds, printer, BATCH_SIZE, output);
+        } catch (IOException e) {
+            throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV2");
+        }
+    }
 
-                // Pid field, use lucene doc id if not provided
-                if (pidField != null && doc.get(pidField.name()) != null)
-                    row.add(doc.get(pidField.name()));
-                else
-                    row.add(Integer.toString(docResult.docId()));
-
-                row.add(Long.toString(docResult.size()));
-
-                // Length field, if applicable
-                if (tokenLengthField != null)
-                    row.add(Integer.toString(Integer.parseInt(doc.get(tokenLengthField)) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN)); // lengthInTokens
-
-                // other fields in order of appearance
-                for (String fieldId : metadataFieldIds) {
-                    // we must support multiple values in a single csv cell
-                    // we must also support values containing quotes/whitespace/commas
-                    // this mean we must delimit individual values, we do this by surrounding them by quotes and separating them with a single space
-                    // existing quotes will be escaped by doubling them as per the csv escaping conventions
-
-                    // essentially transform
-                    // a value containing "quotes"
-                    // a "value" containing , as well as "quotes"
-
-                    // into
-                    // "a value containing ""quotes""" "a ""value"" containing , as well as ""quotes"""
-
-                    // decoders must split the value on whitespace outside quotes, then strip outside quotes, then replace the doubled quotes with singular quotes
-
-                    boolean firstValue = true;
-                    for (String value : doc.getValues(fieldId)) {
-                        if (!firstValue) {
-                            sb.append(" ");
-                        }
-                        sb.append('"');
-                        sb.append(value.replace("\n", "").replace("\r", "").replace("\"", "\"\""));
-                        sb.append('"');
-                        firstValue = false;
-                    }
+    /**
+     * Write the rows for a list of documents, in batches.
+     *
+     * The output doesn't depend on the batch size.
+     *
+     * @param index index
+     * @param docs documents to write
+     * @param metadataFieldIds metadata fields to write a column for
+     * @param printer printer created by {@link #createHeader(List, boolean)}
+     * @param batchSize how many documents to write at a time
+     * @param output receives the CSV, one batch of documents at a time
+     */
+    static void writeDocs(BlackLabIndex index, DocResults docs, Collection<String> metadataFieldIds,
+            CSVPrinter printer, int batchSize, Consumer<String> output) throws IOException {
+        MetadataField pidField = index.metadata().metadataFields().pidField();
+        String tokenLengthField = index.mainAnnotatedField().tokenLengthField();
+        List<String> row = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+
+        int rowsInBatch = 0;
+        for (DocResult docResult : docs) {
+            Document doc = index.luceneDoc(docResult.docId());
+            row.clear();
+
+            // Pid field, use lucene doc id if not provided
+            if (pidField != null && doc.get(pidField.name()) != null)
+                row.add(doc.get(pidField.name()));
+            else
+                row.add(Integer.toString(docResult.docId()));
+
+            row.add(Long.toString(docResult.size()));
+
+            // Length field, if applicable
+            if (tokenLengthField != null)
+                row.add(Integer.toString(Integer.parseInt(doc.get(tokenLengthField)) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN)); // lengthInTokens
 
-                    row.add(sb.toString());
-                    sb.setLength(0);
-                }
+            // other fields in order of appearance
+            for (String fieldId : metadataFieldIds) {
+                // we must support multiple values in a single csv cell
+                // we must also support values containing quotes/whitespace/commas
+                // this mean we must delimit individual values, we do this by surrounding them by quotes and separating them with a single space
+                // existing quotes will be escaped by doubling them as per the csv escaping conventions
+
+                // essentially transform
+                // a value containing "quotes"
+                // a "value" containing , as well as "quotes"
+
+                // into
+                // "a value containing ""quotes""" "a ""value"" containing , as well as ""quotes"""
 
-                Appendable app = printer.getOut();
-                for (String cell : row) {
-                    app.append(cell).append(',');
+                // decoders must split the value on whitespace outside quotes, then strip outside quotes, then replace the doubled quotes with singular quotes
+
+                boolean firstValue = true;
+                for (String value : doc.getValues(fieldId)) {
+                    if (!firstValue) {
+                        sb.append(" ");
+                    }
+                    sb.append('"');
+                    sb.append(value.replace("\n", "").replace("\r", "").replace("\"", "\"\""));
+                    sb.append('"');
+                    firstValue = false;
                 }
-                printer.println();
+
+                row.add(sb.toString());
+                sb.setLength(0);
             }
 
-            printer.flush();
-            return printer.getOut().toString();
-        } catch (IOException e) {
-            throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV2");
+            Appendable app = printer.getOut();
+            for (String cell : row) {
+                app.append(cell).append(',');
+            }
+            printer.println();
+
+            rowsInBatch++;
+            if (rowsInBatch == batchSize) {
+                flushTo(printer, output);
+                rowsInBatch = 0;
+            }
         }
+        flushTo(printer, output);
     }
 }
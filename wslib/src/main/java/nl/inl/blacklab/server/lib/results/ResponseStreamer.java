@@ -93,6 +93,9 @@ public class ResponseStreamer {
     private static final String KEY_BLACKLAB_VERSION = "blacklabVersion";
     private static final String KEY_BLACKLAB_SCM_REVISION = "blacklabScmRevision";
 
+    /** When writing long lists, send output to the client after this many items (if streaming) */
+    private static final int FLUSH_EVERY_N_ITEMS = 100;
+
     public static final String KEY_SUMMARY = "summary";
     public static final String KEY_NUMBER_OF_HITS = "numberOfHits";
     public static final String KEY_NUMBER_OF_DOCS = "numberOfDocs";
@@ -608,6 +611,7 @@ public class ResponseStreamer {
 
         ds.startEntry("hits").startList();
         Hits hitsList = hitResults.getHits().getStatic();
+        int n = 0;
         for (EphemeralHit hit: hitsList) {
             ds.startItem("hit");
             {
@@ -625,6 +629,8 @@ public class ResponseStreamer {
                         result.getAnnotationsToWrite());
             }
             ds.endItem();
+            if (++n % FLUSH_EVERY_N_ITEMS == 0)
+                ds.flush();
         }
         ds.endList().endEntry();
     }
@@ -1266,8 +1272,11 @@ public class ResponseStreamer {
 
             // The hits and document info
             ds.startEntry("docs").startList();
+            int n = 0;
             for (ResultDocResult docResult: result.getDocResults()) {
                 docResult(docResult);
+                if (++n % FLUSH_EVERY_N_ITEMS == 0)
+                    ds.flush();
             }
             ds.endList().endEntry();
             if (result.getFacetInfo() != null) {
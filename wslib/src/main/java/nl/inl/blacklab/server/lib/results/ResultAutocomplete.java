@@ -3,8 +3,8 @@ package nl.inl.blacklab.server.lib.results;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.lucene.index.IndexReader;
 
+import nl.inl.blacklab.search.AutocompleteIndex;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
@@ -14,7 +14,6 @@ import nl.inl.blacklab.search.indexmetadata.IndexMetadata;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.lib.WebserviceParams;
-import nl.inl.util.LuceneUtil;
 
 public class ResultAutocomplete {
 
@@ -77,9 +76,9 @@ public class ResultAutocomplete {
         } else {
             luceneField = fieldName;
         }
-        IndexReader reader = index.reader();
-
-        terms = LuceneUtil.findTermsByPrefix(reader, luceneField, term, sensitiveMatching, MAX_VALUES);
+        // Most frequent terms first (the autocomplete index is built once per field per index reader),
+        // unless the field is too large for that
+        terms = AutocompleteIndex.find(index.reader(), luceneField, term, sensitiveMatching, MAX_VALUES);
 
     }
 
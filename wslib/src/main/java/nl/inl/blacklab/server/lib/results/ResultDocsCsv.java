@@ -71,21 +71,18 @@ public class ResultDocsCsv {
         }
 
         // apply window settings
-        // Different from the regular results, if no window settings are provided, we export the maximum amount automatically
-        // The max for CSV exports is also different from the default pagesize maximum.
+        // Different from the regular results, if no window settings are provided, we export all documents.
+        // (these are written in batches, so the export doesn't need to fit in memory)
         if (docs != null) {
             long first = Math.max(0, params.getFirstResultToShow()); // Defaults to 0
             if (!docs.resultsStats().processedAtLeast(first))
                 first = 0;
 
-            long number = params.getSearchManager().config().getSearch().getMaxHitsToRetrieve();
-            if (params.optNumberOfResultsToShow().isPresent()) {
-                long requested = params.optNumberOfResultsToShow().get();
-                if (requested >= 0) { // clamp
-                    number = Math.min(requested, number);
-                }
+            long requested = params.optNumberOfResultsToShow().orElse(-1L);
+            if (first > 0 || requested >= 0) {
+                long number = requested >= 0 ? requested : docs.size() - first;
+                docs = docs.window(first, number);
             }
-            docs = docs.window(first, number);
         }
     }
 
@@ -364,10 +364,12 @@ public class ResultHits {
 
         // Find KWICs/concordances from forward index or original XML
         // (note that on large indexes, this can actually take significant time)
+        // For large windows, we retrieve these in batches while writing the hits, so we can start
+        // sending the response sooner; the time measured here is then only for the first batch.
         long startTimeKwicsMs = System.currentTimeMillis();
         ContextSettings contextSettings = params.contextSettings();
         Hits windowHits = window.getHits().getStatic();
-        concordanceContext = ConcordanceContext.get(windowHits, contextSettings.concType(), contextSettings.size());
+        concordanceContext = ConcordanceContext.inBatches(windowHits, contextSettings.concType(), contextSettings.size());
         kwicTimeMs = System.currentTimeMillis() - startTimeKwicsMs;
 
         Map<Integer, Document> luceneDocs = new HashMap<>();
@@ -92,20 +92,19 @@ public class ResultHitsCsv {
         }
 
         // apply window settings
-        // Different from the regular results, if no window settings are provided, we export the maximum amount automatically
-        // The max for CSV exports is also different from the default pagesize maximum.
+        // Different from the regular results, if no window settings are provided, we export all hits.
+        // (these are written in batches, so the export doesn't need to fit in memory; the number of hits
+        //  is still limited by the search's maxretrieve setting)
         if (hitResults != null) {
             long first = Math.max(0, params.getFirstResultToShow()); // Defaults to 0
             if (!hitResults.getHits().sizeAtLeast(first))
                 first = 0;
 
-            long number = params.getSearchManager().config().getSearch().getMaxHitsToRetrieve();
-            if (params.optNumberOfResultsToShow().isPresent()) {
-                long requested = params.optNumberOfResultsToShow().get();
-                if (requested >= 0)
-                    number = Math.min(requested, number);
+            long requested = params.optNumberOfResultsToShow().orElse(-1L);
+            if (first > 0 || requested >= 0) {
+                long number = requested >= 0 ? requested : hitResults.size() - first;
+                hitResults = hitResults.window(first, number);
             }
-            hitResults = hitResults.window(first, number);
         }
 
         annotationsToWrite = WebserviceOperations.getAnnotationsToWrite(params);
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import jakarta.servlet.http.HttpServletResponse;
 import nl.inl.blacklab.exceptions.InvalidQuery;
@@ -273,6 +274,13 @@ public class WebserviceRequestHandler {
         String csv;
         if (result.getGroups() == null || result.isViewGroup()) {
             // No grouping applied, or viewing a single group
+            DataStream ds = rs.getDataStream();
+            if (isCsvStream(ds)) {
+                // Write the (potentially very large) export in batches
+                WriteCsv.docs(params, result.getDocs(), result.getGroups(), result.getSubcorpusResults(), rs,
+                        csvWriter(ds));
+                return;
+            }
             csv = WriteCsv.docs(params, result.getDocs(), result.getGroups(),
                     result.getSubcorpusResults(), rs);
         } else {
@@ -289,11 +297,37 @@ public class WebserviceRequestHandler {
         if (result.getGroups() != null && !result.isViewGroup()) {
             csv = WriteCsv.hitsGroupsResponse(result, rs);
         } else {
+            DataStream ds = rs.getDataStream();
+            if (isCsvStream(ds)) {
+                // Write the (potentially very large) export in batches
+                WriteCsv.hitsResponse(result, rs, csvWriter(ds));
+                return;
+            }
             csv = WriteCsv.hitsResponse(result, rs);
         }
         rs.getDataStream().csv(csv);
     }
 
+    /**
+     * Does this DataStream write CSV as-is?
+     *
+     * If so, we can write CSV to it in parts, so it can be sent to the client while we're writing it.
+     * (other DataStreams may embed the CSV in a larger response, so they need it all at once)
+     */
+    private static boolean isCsvStream(DataStream ds) {
+        return ds.getType().equals("csv");
+    }
+
+    /**
+     * Writes parts of a CSV response to the DataStream, flushing after each part.
+     */
+    private static Consumer<String> csvWriter(DataStream ds) {
+        return csv -> {
+            ds.plain(csv);
+            ds.flush();
+        };
+    }
+
     public static void opInputFormatXslt(WebserviceParams params, ResponseStreamer rs) {
         Optional<String> inputFormat = params.getInputFormat();
         if (!inputFormat.isPresent())
@@ -34,9 +34,6 @@ public class BlsCache implements SearchCache {
     /** Bytes in one gigabyte */
     private static final long ONE_GB_BYTES = ONE_MB_BYTES * 1_000;
 
-    /** Very rough measure of how large result objects are, based on a Hit (3 ints + 12 bytes object overhead) */
-    public static final int SIZE_OF_HIT = 24;
-
     /**
      * Returns the amount of memory that can still be allocated before we get the
      * OutOfMemory exception.
@@ -92,6 +89,9 @@ public class BlsCache implements SearchCache {
 
     private final int maxConcurrentSearches;
 
+    /** Searches with at most this estimated cost are never queued (0 to disable) */
+    private final long cheapSearchMaxCost;
+
     /** Abort an abandoned count after how much time? (s) */
     private final int abandonedCountAbortTimeSec;
 
@@ -109,12 +109,17 @@ public class BlsCache implements SearchCache {
 
     private String previousCacheStatsMessage = "";
 
+    /** Stores finished results on disk so they survive a restart, or null if not configured */
+    private final PersistentResultsCache persistentCache;
+
     public BlsCache(BLSConfig blsConfig, @SuppressWarnings("unused") ExecutorService executorService) {
         this.config = blsConfig.getCache();
         this.maxConcurrentSearches = blsConfig.getPerformance().getMaxConcurrentSearches();
+        this.cheapSearchMaxCost = blsConfig.getPerformance().getCheapSearchMaxCost();
         this.abandonedCountAbortTimeSec = blsConfig.getPerformance().getAbandonedCountAbortTimeSec();
         this.trace = blsConfig.getLog().getTrace().isCache();
         cacheDisabled = config.getMaxJobAgeSec() == 0 || config.getMaxNumberOfJobs() == 0;
+        persistentCache = PersistentResultsCache.fromConfig(config);
 
         if (!cacheDisabled) {
             worthinessComparator = (o1, o2) -> {
@@ -173,25 +178,60 @@ public class BlsCache implements SearchCache {
         traceInfo("Cache cleared.");
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public synchronized <R extends SearchResult> BlsCacheEntry<R> getAsync(Search<R> search, boolean allowQueue) {
+    public <R extends SearchResult> BlsCacheEntry<R> getAsync(Search<R> search, boolean allowQueue) {
+        boolean useCache = search.queryInfo().useCache() && !cacheDisabled;
+        if (useCache) {
+            BlsCacheEntry<R> future = getIfCached(search, allowQueue);
+            if (future != null)
+                return future;
+        }
+        // Not in cache. Estimate the cost before we take the lock, as it may have to look up
+        // term frequencies in the index.
+        long estimatedCost = search.estimatedCost();
+        return getAsync(search, allowQueue, estimatedCost);
+    }
+
+    /**
+     * Get a search from the cache, if it's there.
+     *
+     * @param search search to look up
+     * @param allowQueue if false, start the search if it is still queued
+     * @return the cache entry, or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <R extends SearchResult> BlsCacheEntry<R> getIfCached(Search<R> search, boolean allowQueue) {
+        BlsCacheEntry<R> future = (BlsCacheEntry<R>) searches.get(search);
+        if (future != null) {
+            traceInfo("-- FOUND:    {}", search);
+            future.updateLastAccess();
+            // If another running search needs this search, but it was queued, start it now.
+            if (!allowQueue && !future.wasStarted())
+                future.start();
+        }
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <R extends SearchResult> BlsCacheEntry<R> getAsync(Search<R> search, boolean allowQueue,
+            long estimatedCost) {
         //if (trace) logger.debug("getFromCache({}, allowQueue={})", search, allowQueue);
         BlsCacheEntry<R> future;
         boolean useCache = search.queryInfo().useCache() && !cacheDisabled;
         future = useCache ? (BlsCacheEntry<R>) searches.get(search) : null;
         if (future == null) {
             logger.info("not found in cache, starting search: " + search);
-            int numQueued = numberOfQueuedSearches();
-            if (numQueued >= config.getMaxQueuedSearches()) {
-                logger.warn("Can't start new search, too many queued searches (numQueued = " + numQueued + ", maxQueuedSearches = " + config.getMaxQueuedSearches() + ")");
-                throw new ServerOverloaded("The server is too busy right now (" + numQueued + " searches queued). Please try again later.");
-            }
 
             // Create the cache entry.
             // Note that all entries start "queued" (i.e. the search itself hasn't been started yet).
             // We will see if it can be started below.
-            future = new BlsCacheEntry<>(search);
+            future = new BlsCacheEntry<>(search, persistentCache, estimatedCost);
+            int numQueued = numberOfQueuedSearches();
+            // (cheap searches go to the front of the queue, so a long queue doesn't matter for them)
+            if (!isCheap(future) && numQueued >= config.getMaxQueuedSearches()) {
+                logger.warn("Can't start new search, too many queued searches (numQueued = " + numQueued + ", maxQueuedSearches = " + config.getMaxQueuedSearches() + ")");
+                throw new ServerOverloaded("The server is too busy right now (" + numQueued + " searches queued). Please try again later.");
+            }
             if (useCache)
                 searches.put(search, future);
 
@@ -282,21 +322,21 @@ public class BlsCache implements SearchCache {
     }
 
     /**
-     * Estimate number of result objects (e.g. Hits) in cache.
+     * Determine how much memory the results in the cache take.
      *
      * This may not be accurate because Hits are sometimes but not always duplicated
-     * between tasks (e.g. gather, sort, group). It gives a rough estimate though
+     * between tasks (e.g. gather, sort, group), and most results only estimate their
+     * size from the number of hits. It gives a reasonable estimate though
      * that we can use to decide when to clean up.
      *
-     * @return estimate of number of Hits in cache
+     * @return (estimated) memory use of results in cache in bytes
      */
-    private synchronized long estimateResultObjectsInCache() {
-        // Estimate the total cache size
-        long resultsObjectsInCache = 0;
+    private synchronized long memoryUsageBytesInCache() {
+        long bytes = 0;
         for (BlsCacheEntry<?> search : searches.values()) {
-            resultsObjectsInCache += search.numberOfStoredHits();
+            bytes += search.memoryUsageBytes();
         }
-        return resultsObjectsInCache;
+        return bytes;
     }
 
     void traceInfo(String msg, Object... params) {
@@ -314,24 +354,60 @@ public class BlsCache implements SearchCache {
     }
 
     /**
-     * If we can start another search, finds the oldest queued search and start it.
+     * Is this search cheap enough to start right away, even if the server is busy?
+     *
+     * @param entry cache entry for the search
+     * @return true if the search is cheap
+     */
+    private boolean isCheap(BlsCacheEntry<?> entry) {
+        long cost = entry.estimatedCost();
+        return cheapSearchMaxCost > 0 && cost >= 0 && cost <= cheapSearchMaxCost;
+    }
+
+    /**
+     * Cost to use for a search when dividing server capacity between requesters.
+     *
+     * @param entry cache entry for the search
+     * @return cost to use (searches with unknown cost count as moderately expensive)
+     */
+    private long schedulingCost(BlsCacheEntry<?> entry) {
+        long cost = entry.estimatedCost();
+        return cost < 0 ? Math.max(cheapSearchMaxCost, 1) : Math.max(cost, 1);
+    }
+
+    /**
+     * If we can start another search, finds the next queued search and start it.
+     *
+     * Cheap searches (see {@link #isCheap(BlsCacheEntry)}) go first, so they don't have to wait
+     * for expensive ones. Otherwise, queued searches are divided fairly between requesters (users,
+     * or IP addresses for anonymous users): we choose the requester with the lowest estimated cost
+     * of running searches, and start their oldest queued search. This way, a requester running
+     * several expensive searches can't starve everyone else.
      *
      * @param report if true (and trace is on), report the search we started
      */
     synchronized void startSearchIfPossible(boolean report) {
         // Is server load low enough to start a search?
         if (canStartAnotherSearch()) {
-            // Find the oldest queued search and start it.
             // Only start one per iteration (give it a little time to start its subtasks)
 
-            // Sort the searches based on descending "worthiness"
-            List<BlsCacheEntry<?>> searches = new ArrayList<>(this.searches.values());
-            for (BlsCacheEntry<?> s : searches)
-                s.calculateWorthiness(); // calculate once before sorting so we don't run into Comparable contract issues because of threading
-            searches.sort(worthinessComparator);
+            // Determine the cost of running searches per requester
+            Map<String, Long> runningCostPerRequester = new HashMap<>();
+            List<BlsCacheEntry<?>> queued = new ArrayList<>();
+            for (BlsCacheEntry<?> s: searches.values()) {
+                if (!s.wasStarted())
+                    queued.add(s);
+                else if (s.isRunning())
+                    runningCostPerRequester.merge(s.requester(), schedulingCost(s), Long::sum);
+            }
 
-            // Find & start oldest queued search
-            BlsCacheEntry<?> search1 = searches.stream().filter(s -> !s.wasStarted()).findFirst().orElse(null);
+            // Find & start oldest queued search of the requester with the lowest running cost
+            // (cheap searches first)
+            Comparator<BlsCacheEntry<?>> fairOrder = Comparator
+                    .<BlsCacheEntry<?>, Boolean>comparing(s -> !isCheap(s))
+                    .thenComparingLong(s -> runningCostPerRequester.getOrDefault(s.requester(), 0L))
+                    .thenComparingLong(BlsCacheEntry::id);
+            BlsCacheEntry<?> search1 = queued.stream().min(fairOrder).orElse(null);
             if (search1 != null) {
                 if (report)
                     traceInfo("-- UNQUEUE:  {}", search1);
@@ -361,8 +437,7 @@ public class BlsCache implements SearchCache {
      * Remove older finished searches from cache. Start a queued search if load is low enough.
      */
     synchronized void updateCache() {
-        long resultsObjectsInCache = estimateResultObjectsInCache();
-        cacheSizeBytes = resultsObjectsInCache * SIZE_OF_HIT;
+        cacheSizeBytes = memoryUsageBytesInCache();
 
         List<BlsCacheEntry<?>> searches = new ArrayList<>(this.searches.values());
 
@@ -403,6 +478,9 @@ public class BlsCache implements SearchCache {
             if (!search.isDone())
                 continue;
 
+            // Store the result on disk if it's now complete (e.g. a count that has finished)
+            search.persistInBackgroundIfComplete();
+
             boolean isSearchTooOld;
             if (search.isCancelled()) {
                 // Cancelled (aborted) search kept in cache to prevent clients from resubmitting right away.
@@ -429,7 +507,7 @@ public class BlsCache implements SearchCache {
                 traceInfo("-- REMOVE ({}): {}", reason, search);
                 remove(search.search());
 
-                memoryToFreeUpMegs -= search.numberOfStoredHits() * SIZE_OF_HIT / ONE_MB_BYTES; // NB very rough guess, but ok
+                memoryToFreeUpMegs -= search.memoryUsageBytes() / ONE_MB_BYTES; // NB may be a rough estimate, but ok
                 searches.remove(i);
             }
         }
@@ -5,10 +5,12 @@ import java.io.StringWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.ThreadContext;
@@ -47,6 +49,18 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
     /** Our search */
     private final Search<T> search;
 
+    /** Where to store our result on disk (or look for it), or null if not applicable */
+    private final PersistentResultsCache persistentCache;
+
+    /** Has our result been stored on disk (or was it read from there)? */
+    private final AtomicBoolean persisted = new AtomicBoolean();
+
+    /** Who requested this search (user id or IP address), for fair scheduling */
+    private final String requester;
+
+    /** Estimated cost of our search (see {@link Search#estimatedCost()}) */
+    private final long estimatedCost;
+
 
     // OUTCOMES
 
@@ -101,7 +115,21 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      * @param search the search
      */
     public BlsCacheEntry(Search<T> search) {
+        this(search, null, search.estimatedCost());
+    }
+
+    /**
+     * Construct a cache entry.
+     *
+     * @param search the search
+     * @param persistentCache where to look for/store the result on disk, or null if not applicable
+     * @param estimatedCost estimated cost of the search (see {@link Search#estimatedCost()})
+     */
+    public BlsCacheEntry(Search<T> search, PersistentResultsCache persistentCache, long estimatedCost) {
         this.search = search;
+        this.persistentCache = persistentCache;
+        requester = Objects.toString(ThreadContext.get("requester"), "");
+        this.estimatedCost = estimatedCost;
         id = getNextEntryId();
         createTime = lastAccessTime = now();
     }
@@ -118,6 +146,8 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         peekValue = search.peekObject(this);
         future = search.queryInfo().index().blackLab().searchExecutorService().submit(() -> {
             ThreadContext.put("requestId", requestId);
+            // (so searches started by this one are attributed to the same requester)
+            ThreadContext.put("requester", requester);
             executeSearch();
         });
     }
@@ -131,7 +161,14 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         // (child searches already in cache will add their original processing time)
         timer().start();
         try {
-            result = search.executeInternal(this);
+            T persistedResult = persistentCache == null ? null : persistentCache.get(search);
+            if (persistedResult != null) {
+                persisted.set(true);
+                result = persistedResult;
+            } else {
+                result = search.executeInternal(this);
+                persistIfComplete();
+            }
         } catch (Exception e) {
             if (e instanceof InterruptedSearch eis) {
                 // Inject ourselves into the exception object, so
@@ -150,6 +187,41 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         }
     }
 
+    /**
+     * Store our result on disk if it is complete and hasn't been stored yet.
+     *
+     * Called when the search finishes.
+     */
+    private void persistIfComplete() {
+        if (shouldPersist())
+            persistentCache.put(search, result);
+    }
+
+    /**
+     * Store our result on disk in the background if it is complete and hasn't been stored yet.
+     *
+     * Called periodically by the cache, because e.g. counts keep running after the search
+     * itself has finished. Writing happens on the search executor, so the cache isn't
+     * blocked by disk I/O.
+     */
+    void persistInBackgroundIfComplete() {
+        if (shouldPersist()) {
+            search.queryInfo().index().blackLab().searchExecutorService().submit(
+                    () -> persistentCache.put(search, result));
+        }
+    }
+
+    /**
+     * Check whether our result should be stored now, and if so, mark it as stored.
+     *
+     * @return true if the caller should store the result
+     */
+    private boolean shouldPersist() {
+        if (persistentCache == null || result == null || isCancelled() || !PersistentResultsCache.isComplete(result))
+            return false;
+        return persisted.compareAndSet(false, true);
+    }
+
     public long id() {
         return id;
     }
@@ -158,6 +230,14 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         return search;
     }
 
+    public String requester() {
+        return requester;
+    }
+
+    public long estimatedCost() {
+        return estimatedCost;
+    }
+
     public long worthiness() {
         return worthiness;
     }
@@ -296,7 +376,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             // - the smaller, the worthier
 
             // Size score from 1-100; 1M per unit, so 100 corresponds to 100M or larger
-            long sizeScore = Math.max(1, Math.min(100, numberOfStoredHits() * BlsCache.SIZE_OF_HIT / 1000000));
+            long sizeScore = Math.max(1, Math.min(100, memoryUsageBytes() / 1000000));
 
             // Run time score from 1-10000; 0.03s per unit, so 10000 corresponds to 5 minutes or longer
             long runTimeScore = Math.max(1, Math.min(10000, timeUserWaitedMs() * 10 / 300));
@@ -356,6 +436,12 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         return result.numberOfResultObjects();
     }
 
+    public long memoryUsageBytes() {
+        if (result == null)
+            return 0;
+        return result.memoryUsageBytes();
+    }
+
     public String status() {
         if (!wasStarted())
             return "queued";
@@ -376,6 +462,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         if (!StringUtils.isEmpty(reason))
             stats.put("cancelReason", reason);
         stats.put("numberOfStoredHits", numberOfStoredHits());
+        stats.put("memoryUsageBytes", memoryUsageBytes());
         stats.put("processingTime", timer().time() / 1000.0);
         stats.put("userWaitTime", timeUserWaitedMs() / 1000.0);
         stats.put("notAccessedFor", timeSinceLastAccessMs() / 1000.0);
@@ -0,0 +1,489 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.util.StringHelper;
+
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.PropertyValueDoc;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.TermFrequency;
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.search.results.docs.DocGroup;
+import nl.inl.blacklab.search.results.docs.DocGroups;
+import nl.inl.blacklab.search.results.docs.DocResult;
+import nl.inl.blacklab.search.results.hitresults.HitGroup;
+import nl.inl.blacklab.search.results.hitresults.HitGroups;
+import nl.inl.blacklab.search.results.stats.MaxStats;
+import nl.inl.blacklab.search.results.stats.ResultsStats;
+import nl.inl.blacklab.search.results.stats.ResultsStatsSaved;
+import nl.inl.blacklab.searches.Search;
+import nl.inl.blacklab.server.config.BLSConfigCache;
+
+/**
+ * Stores finished results on disk, so they survive a restart of BlackLab Server.
+ *
+ * This is a second-level cache: it is consulted when a search is not found in the
+ * (memory) cache, before actually executing the search.
+ *
+ * Only results that are relatively small compared to the time it takes to produce them
+ * are stored: hit groups and document groups without stored hits, term frequencies
+ * (collocations) and counts. Other results (e.g. hits) are not stored.
+ *
+ * Entries are keyed by index directory, commit (unique id and generation) and the search's
+ * {@link Search#persistentKey()}, so if the index changes, old entries are no longer used
+ * (and will eventually be evicted). Searches without a persistent key are not stored. When the total
+ * size exceeds the maximum, the least recently used entries are deleted.
+ */
+public class PersistentResultsCache {
+
+    private static final Logger logger = LogManager.getLogger(PersistentResultsCache.class);
+
+    /** Increment when the file format changes; files with another version are ignored. */
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    /** Extension for cache files */
+    private static final String EXTENSION = ".blcache";
+
+    private static final byte TYPE_HIT_GROUPS = 1;
+
+    private static final byte TYPE_DOC_GROUPS = 2;
+
+    private static final byte TYPE_TERM_FREQUENCIES = 3;
+
+    private static final byte TYPE_COUNT = 4;
+
+    /**
+     * Create the persistent cache if configured.
+     *
+     * @param config cache configuration
+     * @return persistent cache, or null if not configured
+     */
+    public static PersistentResultsCache fromConfig(BLSConfigCache config) {
+        String dir = config.getPersistentDir();
+        if (dir == null || dir.isBlank() || config.getPersistentMaxSizeMegs() <= 0)
+            return null;
+        try {
+            return new PersistentResultsCache(Path.of(dir), config.getPersistentMaxSizeMegs() * 1_000_000L);
+        } catch (IOException e) {
+            logger.error("Could not initialize persistent results cache in " + dir + "; disabling it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Can this result be stored, and is it complete?
+     *
+     * Counts may still be running when the search "finishes", so they can only be
+     * stored later.
+     *
+     * @param result result to check
+     * @return true if the result is complete and of a type we can store
+     */
+    public static boolean isComplete(SearchResult result) {
+        if (result instanceof ResultsStats stats)
+            return stats.done();
+        return result instanceof HitGroups || result instanceof DocGroups || result instanceof TermFrequencyList;
+    }
+
+    private final Path dir;
+
+    private final long maxSizeBytes;
+
+    /** (Approximate) total size of the files in our directory */
+    private final AtomicLong sizeBytes = new AtomicLong();
+
+    PersistentResultsCache(Path dir, long maxSizeBytes) throws IOException {
+        this.dir = dir;
+        this.maxSizeBytes = maxSizeBytes;
+        Files.createDirectories(dir);
+        // Remove any files left over from writes that were interrupted by a shutdown
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(f -> f.getFileName().toString().endsWith(EXTENSION + ".tmp"))
+                    .forEach(PersistentResultsCache::delete);
+        }
+        sizeBytes.set(cacheFiles().stream().mapToLong(PersistentResultsCache::fileSize).sum());
+        logger.info("Persistent results cache in {} ({} MB in use)", dir, sizeBytes.get() / 1_000_000);
+    }
+
+    /**
+     * Get the stored result of a search, if any.
+     *
+     * @param search search to get the result for
+     * @return the result, or null if not stored
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends SearchResult> T get(Search<T> search) {
+        String key = key(search);
+        if (key == null)
+            return null;
+        Path file = file(key);
+        if (!Files.exists(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != FILE_FORMAT_VERSION || !key.equals(readString(in)))
+                return null;
+            SearchResult result = read(in, search.queryInfo());
+            if (result != null) {
+                // Remember that we used this, for eviction
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                logger.debug("Found in persistent cache: {}", search);
+            }
+            return (T) result;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read persistent cache file " + file + "; deleting it", e);
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Store the result of a search, if it is of a type we can store.
+     *
+     * @param search the search
+     * @param result its result
+     */
+    public void put(Search<?> search, SearchResult result) {
+        if (!isComplete(result) || !isStorable(result))
+            return;
+        String key = key(search);
+        if (key == null)
+            return;
+        Path file = file(key);
+        try {
+            Path tempFile = Files.createTempFile(dir, "tmp", EXTENSION + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                writeString(out, key);
+                write(out, result);
+            } catch (IOException | RuntimeException e) {
+                delete(tempFile);
+                throw e;
+            }
+            long previousSize = Files.exists(file) ? fileSize(file) : 0;
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (sizeBytes.addAndGet(fileSize(file) - previousSize) > maxSizeBytes)
+                evict();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write persistent cache file for search " + search, e);
+        }
+    }
+
+    /**
+     * Delete least recently used files until we're below the maximum size.
+     */
+    private synchronized void evict() {
+        if (sizeBytes.get() <= maxSizeBytes)
+            return;
+        List<Path> files = cacheFiles();
+        Map<Path, Long> lastUsed = new LinkedHashMap<>();
+        for (Path file: files) {
+            try {
+                lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                lastUsed.put(file, 0L);
+            }
+        }
+        files.sort(Comparator.comparing(lastUsed::get));
+        long total = files.stream().mapToLong(PersistentResultsCache::fileSize).sum();
+        // Remove until we're comfortably below the maximum, so we don't have to evict on every put
+        long target = maxSizeBytes * 9 / 10;
+        for (Path file: files) {
+            if (total <= target)
+                break;
+            long size = fileSize(file);
+            if (delete(file))
+                total -= size;
+        }
+        sizeBytes.set(total);
+    }
+
+    private List<Path> cacheFiles() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return new ArrayList<>(files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).toList());
+        } catch (IOException e) {
+            logger.warn("Could not list persistent cache directory " + dir, e);
+            return new ArrayList<>();
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete persistent cache file " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Determine the key for a search.
+     *
+     * Includes the index commit identity, so results from another index or from before the
+     * index changed are not used.
+     *
+     * @param search the search
+     * @return the key, or null if results for this search cannot be stored
+     */
+    static String key(Search<?> search) {
+        QueryInfo queryInfo = search.queryInfo();
+        if (!queryInfo.useCache())
+            return null;
+        String searchKey = search.persistentKey();
+        if (searchKey == null)
+            return null;
+        BlackLabIndex index = queryInfo.index();
+        String commit = commitIdentity(index.reader());
+        if (commit == null)
+            return null;
+        return index.indexDirectory().getAbsolutePath() + "\n" + commit + "\n" + queryInfo.field().name() + "\n" +
+                searchKey;
+    }
+
+    /** Commit identity per index reader, so we only read the commit info once */
+    private static final Map<IndexReader.CacheKey, String> commitIdentities =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Get a stable identity for the commit this index reader was opened on.
+     *
+     * Consists of the commit's unique id (which Lucene generates for every commit, so a
+     * recreated index with the same name and generation gets a different one) and generation.
+     *
+     * @param indexReader index reader
+     * @return commit identity, or null if unknown
+     */
+    private static String commitIdentity(IndexReader indexReader) {
+        if (!(indexReader instanceof DirectoryReader directoryReader) || directoryReader.getReaderCacheHelper() == null)
+            return null;
+        return commitIdentities.computeIfAbsent(directoryReader.getReaderCacheHelper().getKey(), k -> {
+            try {
+                IndexCommit commit = directoryReader.getIndexCommit();
+                SegmentInfos segmentInfos = SegmentInfos.readCommit(commit.getDirectory(), commit.getSegmentsFileName());
+                return StringHelper.idToString(segmentInfos.getId()) + "_" + commit.getGeneration();
+            } catch (IOException e) {
+                logger.warn("Could not determine index commit identity", e);
+                return null;
+            }
+        });
+    }
+
+    private Path file(String key) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(key.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(HexFormat.of().formatHex(hash) + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Can we store this result?
+     *
+     * We don't store groups with stored hits, windows or samples.
+     *
+     * @param result result to check
+     * @return true if we can store it
+     */
+    private static boolean isStorable(SearchResult result) {
+        if (result instanceof HitGroups groups) {
+            if (groups.windowStats() != null || groups.sampleParameters() != null)
+                return false;
+            for (HitGroup group: groups) {
+                if (group.numberOfStoredResults() > 0)
+                    return false;
+            }
+        } else if (result instanceof DocGroups groups) {
+            if (groups.windowStats() != null || groups.sampleParameters() != null)
+                return false;
+            for (DocGroup group: groups) {
+                if (group.numberOfStoredHits() > 0)
+                    return false;
+            }
+        } else if (result instanceof ResultsStats stats) {
+            return stats.processedSoFar() >= 0;
+        }
+        return true;
+    }
+
+    private static void write(DataOutputStream out, SearchResult result) throws IOException {
+        if (result instanceof HitGroups groups) {
+            out.writeByte(TYPE_HIT_GROUPS);
+            writeString(out, groups.groupCriteria().serialize());
+            writeStats(out, groups.hitsStats());
+            writeStats(out, groups.docsStats());
+            out.writeInt((int) groups.size());
+            for (HitGroup group: groups) {
+                writeString(out, group.identity().serialize());
+                out.writeLong(group.size());
+                out.writeLong(group.storedResults().docsStats().countedTotal());
+            }
+        } else if (result instanceof DocGroups groups) {
+            out.writeByte(TYPE_DOC_GROUPS);
+            writeString(out, groups.groupCriteria().serialize());
+            out.writeInt((int) groups.size());
+            for (DocGroup group: groups) {
+                writeString(out, group.identity().serialize());
+                out.writeLong(group.size());
+                out.writeLong(group.totalTokens());
+                out.writeInt((int) group.storedResults().size());
+                for (DocResult doc: group.storedResults()) {
+                    out.writeInt(doc.docId());
+                    out.writeFloat(doc.score());
+                    out.writeLong(doc.size());
+                }
+            }
+        } else if (result instanceof TermFrequencyList freqs) {
+            out.writeByte(TYPE_TERM_FREQUENCIES);
+            out.writeInt((int) freqs.size());
+            for (TermFrequency freq: freqs) {
+                writeString(out, freq.term);
+                out.writeLong(freq.frequency);
+            }
+        } else if (result instanceof ResultsStats stats) {
+            out.writeByte(TYPE_COUNT);
+            writeStats(out, stats);
+        } else {
+            throw new UnsupportedOperationException("Cannot store result of type " + result.getClass().getName());
+        }
+    }
+
+    private static SearchResult read(DataInputStream in, QueryInfo queryInfo) throws IOException {
+        BlackLabIndex index = queryInfo.index();
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_HIT_GROUPS: {
+            HitProperty groupBy = HitProperty.deserialize(index, queryInfo.field(), readString(in), null);
+            ResultsStats hitsStats = readStats(in);
+            ResultsStats docsStats = readStats(in);
+            int n = in.readInt();
+            List<HitGroup> groups = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                PropertyValue identity = readIdentity(in, queryInfo);
+                long size = in.readLong();
+                long docs = in.readLong();
+                groups.add(HitGroup.withoutResults(queryInfo, identity, size, (int) docs, MaxStats.NOT_EXCEEDED));
+            }
+            if (groupBy == null)
+                return null;
+            return HitGroups.fromList(queryInfo, groups, groupBy, null, null, hitsStats, docsStats);
+        }
+        case TYPE_DOC_GROUPS: {
+            DocProperty groupBy = DocProperty.deserialize(index, readString(in));
+            int n = in.readInt();
+            List<DocGroup> groups = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                PropertyValue identity = readIdentity(in, queryInfo);
+                long totalDocuments = in.readLong();
+                long totalTokens = in.readLong();
+                int numberOfDocs = in.readInt();
+                List<DocResult> docs = new ArrayList<>(numberOfDocs);
+                for (int j = 0; j < numberOfDocs; j++) {
+                    int docId = in.readInt();
+                    float score = in.readFloat();
+                    long numberOfHits = in.readLong();
+                    docs.add(DocResult.fromDoc(queryInfo, new PropertyValueDoc(docId), score, numberOfHits));
+                }
+                groups.add(DocGroup.fromList(queryInfo, identity, docs, totalDocuments, totalTokens));
+            }
+            if (groupBy == null)
+                return null;
+            return DocGroups.fromList(queryInfo, groups, groupBy, null, null);
+        }
+        case TYPE_TERM_FREQUENCIES: {
+            int n = in.readInt();
+            Map<String, Integer> freqs = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                String term = readString(in);
+                freqs.put(term, (int) in.readLong());
+            }
+            // (already in the right order)
+            return new TermFrequencyList(queryInfo, freqs, false);
+        }
+        case TYPE_COUNT:
+            return readStats(in);
+        default:
+            throw new IOException("Unknown result type " + type);
+        }
+    }
+
+    private static PropertyValue readIdentity(DataInputStream in, QueryInfo queryInfo) throws IOException {
+        String serialized = readString(in);
+        PropertyValue identity = PropertyValue.deserialize(queryInfo.index(), queryInfo.field(), serialized);
+        if (identity == null)
+            throw new IOException("Could not deserialize group identity: " + serialized);
+        return identity;
+    }
+
+    private static void writeStats(DataOutputStream out, ResultsStats stats) throws IOException {
+        out.writeLong(stats.processedTotal());
+        out.writeLong(stats.countedTotal());
+        out.writeBoolean(stats.maxStats().isTooManyToProcess());
+        out.writeBoolean(stats.maxStats().isTooManyToCount());
+    }
+
+    private static ResultsStats readStats(DataInputStream in) throws IOException {
+        long processed = in.readLong();
+        long counted = in.readLong();
+        boolean tooManyToProcess = in.readBoolean();
+        boolean tooManyToCount = in.readBoolean();
+        return new ResultsStatsSaved(processed, counted, MaxStats.get(tooManyToProcess, tooManyToCount));
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        // (not writeUTF, because that is limited to 64K)
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -33,6 +33,9 @@ public class ResultsCache implements SearchCache {
     private final AsyncLoadingCache<SearchInfoWrapper, SearchResult> searchCache;
     private final ConcurrentHashMap<Search<? extends SearchResult>, Future<CacheEntryWithResults<? extends SearchResult>>> runningJobs = new ConcurrentHashMap<>();
 
+    /** Stores finished results on disk so they survive a restart, or null if not configured */
+    private final PersistentResultsCache persistentCache;
+
 
     public static class CacheEntryWithResults<T extends SearchResult> extends SearchCacheEntry<T> {
 
@@ -116,6 +119,7 @@ public class ResultsCache implements SearchCache {
 
     public ResultsCache(BLSConfig config, ExecutorService threadPool)  {
         this.threadPool = threadPool;
+        this.persistentCache = PersistentResultsCache.fromConfig(config.getCache());
 
         CacheLoader<SearchInfoWrapper, SearchResult> cacheLoader = searchWrapper -> {
             final String requestId = searchWrapper.requestId();
@@ -123,7 +127,12 @@ public class ResultsCache implements SearchCache {
             Future<CacheEntryWithResults<? extends SearchResult>> job = runningJobs.computeIfAbsent(searchWrapper.search(), (search) -> ResultsCache.this.threadPool.submit(() -> {
                 ThreadContext.put("requestId", requestId);
                 final long startTime = System.currentTimeMillis();
-                SearchResult results = search.executeInternal(null);
+                SearchResult results = persistentCache == null ? null : persistentCache.get(search);
+                if (results == null) {
+                    results = search.executeInternal(null);
+                    if (persistentCache != null)
+                        persistentCache.put(search, results);
+                }
                 ThreadContext.remove("requestId");
                 return new CacheEntryWithResults<>(results, System.currentTimeMillis() - startTime);
             }));
@@ -2,12 +2,35 @@ package nl.inl.blacklab.server.lib;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.indexmetadata.MetadataField;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.blacklab.search.results.docs.DocGroup;
+import nl.inl.blacklab.search.results.docs.DocGroups;
+import nl.inl.blacklab.search.results.docs.DocResults;
+import nl.inl.blacklab.search.results.hitresults.ContextSize;
+import nl.inl.blacklab.search.results.hitresults.HitGroup;
+import nl.inl.blacklab.search.results.hitresults.HitGroups;
+import nl.inl.blacklab.search.results.hits.Hits;
+import nl.inl.blacklab.search.textpattern.TextPatternAnyToken;
+import nl.inl.blacklab.searches.SearchHits;
+import nl.inl.blacklab.testutil.TestIndex;
+
 public class TestWriteCsv {
 
     void assertEscapesTo(String expected, String... values) throws IOException {
@@ -30,4 +53,84 @@ public class TestWriteCsv {
         assertEscapesTo("A\\rC|B", "A\rC", "B");
         assertEscapesTo("A\\\\C|B", "A\\C", "B");
     }
+
+    /** Batch sizes to compare; writing everything in one batch gives the same output as before batching */
+    private static final int[] BATCH_SIZES = { 1, 3, 2000 };
+
+    private static final List<String> HEADER = List.of("a", "b");
+
+    private final BlackLabIndex index = TestIndex.getReusable().index();
+
+    private final AnnotatedField contents = index.mainAnnotatedField();
+
+    private SearchHits findAllTokens() {
+        BLSpanQuery query = new TextPatternAnyToken(1, 1).toQuery(QueryInfo.create(index));
+        return index.search(contents, false).find(query);
+    }
+
+    /** Write hits as CSV, returning the concatenated batches */
+    private String hitsCsv(Hits hits, int batchSize) throws IOException {
+        List<Annotation> annotations = List.of(contents.annotation("lemma"), contents.annotation("pos"));
+        List<MetadataField> metadataFields = List.of(index.metadata().metadataFields().get("title"));
+        CSVPrinter printer = WriteCsv.createHeader(HEADER, true);
+        StringBuilder csv = new StringBuilder();
+        WriteCsv.writeHits(hits, ContextSize.get(3, 3, Integer.MAX_VALUE), annotations, metadataFields, printer,
+                batchSize, csv::append);
+        return csv.toString();
+    }
+
+    /** Write docs as CSV, returning the concatenated batches */
+    private String docsCsv(DocResults docs, int batchSize) throws IOException {
+        CSVPrinter printer = WriteCsv.createHeader(HEADER, true);
+        StringBuilder csv = new StringBuilder();
+        WriteCsv.writeDocs(index, docs, new ArrayList<>(List.of("pid", "title")), printer, batchSize,
+                csv::append);
+        return csv.toString();
+    }
+
+    private void assertHitsBatchesIdentical(Hits hits) throws IOException {
+        String expected = hitsCsv(hits, Integer.MAX_VALUE);
+        Assert.assertFalse(expected.isEmpty());
+        for (int batchSize: BATCH_SIZES)
+            Assert.assertEquals("batch size " + batchSize, expected, hitsCsv(hits, batchSize));
+    }
+
+    private void assertDocsBatchesIdentical(DocResults docs) throws IOException {
+        String expected = docsCsv(docs, Integer.MAX_VALUE);
+        Assert.assertFalse(expected.isEmpty());
+        for (int batchSize: BATCH_SIZES)
+            Assert.assertEquals("batch size " + batchSize, expected, docsCsv(docs, batchSize));
+    }
+
+    @Test
+    public void testHitsBatches() throws Exception {
+        Hits hits = findAllTokens().execute().getHits();
+        Assert.assertTrue(hits.size() > BATCH_SIZES[1]);
+        assertHitsBatchesIdentical(hits);
+    }
+
+    @Test
+    public void testHitsBatchesGrouped() throws Exception {
+        HitPropertyHitText groupBy = new HitPropertyHitText(index, contents.mainAnnotation(),
+                MatchSensitivity.INSENSITIVE);
+        HitGroups groups = findAllTokens().groupWithStoredHits(groupBy, Results.NO_LIMIT).execute();
+        Assert.assertTrue(groups.largestGroupSize() > BATCH_SIZES[1]);
+        for (HitGroup group: groups)
+            assertHitsBatchesIdentical(group.storedResults().getHits());
+    }
+
+    @Test
+    public void testDocsBatches() throws Exception {
+        DocResults docs = findAllTokens().docs(Results.NO_LIMIT).execute();
+        Assert.assertTrue(docs.size() > BATCH_SIZES[1]);
+        assertDocsBatchesIdentical(docs);
+    }
+
+    @Test
+    public void testDocsBatchesGrouped() throws Exception {
+        DocGroups groups = findAllTokens().docs(Results.NO_LIMIT)
+                .group(new DocPropertyStoredField(index, "title"), Results.NO_LIMIT).execute();
+        for (DocGroup group: groups)
+            assertDocsBatchesIdentical(group.storedResults());
+    }
 }
@@ -0,0 +1,158 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.stats.MaxStats;
+import nl.inl.blacklab.search.results.stats.ResultsStats;
+import nl.inl.blacklab.search.results.stats.ResultsStatsSaved;
+import nl.inl.blacklab.searches.AbstractSearch;
+import nl.inl.blacklab.searches.ActiveSearch;
+import nl.inl.blacklab.server.config.BLSConfig;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Test the order in which BlsCache starts queued searches.
+ */
+public class TestBlsCacheScheduling {
+
+    private static final long CHEAP_SEARCH_MAX_COST = 100;
+
+    /** A search with a given cost that records when it runs, and optionally waits until released. */
+    private class TestSearch extends AbstractSearch<ResultsStats> {
+
+        private final String name;
+
+        private final long cost;
+
+        private final CountDownLatch release;
+
+        TestSearch(String name, long cost, CountDownLatch release) {
+            super(QueryInfo.create(TestIndex.getReusable().index()));
+            this.name = name;
+            this.cost = cost;
+            this.release = release;
+        }
+
+        @Override
+        public ResultsStats executeInternal(ActiveSearch<ResultsStats> activeSearch) {
+            started.add(name);
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ResultsStatsSaved(0, 0, MaxStats.NOT_EXCEEDED);
+        }
+
+        @Override
+        public long estimatedCost() {
+            return cost;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TestSearch other && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return toString("test", name, cost);
+        }
+    }
+
+    /** Names of the searches, in the order they were started */
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+    private BlsCache cache;
+
+    private BlsCache createCache(int maxConcurrentSearches) {
+        BLSConfig config = new BLSConfig();
+        config.getPerformance().setMaxConcurrentSearches(maxConcurrentSearches);
+        config.getPerformance().setCheapSearchMaxCost(CHEAP_SEARCH_MAX_COST);
+        // (only the number of running searches should limit us here)
+        config.getCache().setMinFreeMemForSearchMegs(0);
+        return new BlsCache(config, null);
+    }
+
+    @Before
+    public void setUp() {
+        started.clear();
+    }
+
+    @After
+    public void tearDown() {
+        if (cache != null)
+            cache.cleanup();
+        ThreadContext.remove("requester");
+    }
+
+    private BlsCacheEntry<ResultsStats> submit(String requester, TestSearch search) {
+        ThreadContext.put("requester", requester);
+        return cache.getAsync(search, true);
+    }
+
+    private static void waitFor(BlsCacheEntry<?> entry) throws Exception {
+        // (queued searches are started by the cache's cleanup thread)
+        entry.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCheapSearchJumpsQueue() throws Exception {
+        cache = createCache(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlsCacheEntry<ResultsStats> running = submit("a", new TestSearch("running", -1, release));
+        Assert.assertTrue(running.wasStarted());
+
+        BlsCacheEntry<ResultsStats> expensive = submit("a", new TestSearch("expensive", 1_000_000, null));
+        BlsCacheEntry<ResultsStats> cheap = submit("a", new TestSearch("cheap", 10, null));
+        // Cheap searches still have to wait for a free slot
+        Assert.assertFalse(expensive.wasStarted());
+        Assert.assertFalse(cheap.wasStarted());
+
+        release.countDown();
+        waitFor(cheap);
+        waitFor(expensive);
+        Assert.assertEquals(List.of("running", "cheap", "expensive"), started);
+    }
+
+    @Test
+    public void testFairBetweenRequesters() throws Exception {
+        cache = createCache(2);
+        CountDownLatch releaseA1 = new CountDownLatch(1);
+        CountDownLatch releaseA2 = new CountDownLatch(1);
+        submit("a", new TestSearch("a1", 1_000_000, releaseA1));
+        BlsCacheEntry<ResultsStats> a2 = submit("a", new TestSearch("a2", 1_000_000, releaseA2));
+        Assert.assertTrue(a2.wasStarted());
+
+        // Requester a queued first, but is still running a search, so b goes first
+        BlsCacheEntry<ResultsStats> a3 = submit("a", new TestSearch("a3", 1_000_000, null));
+        BlsCacheEntry<ResultsStats> b1 = submit("b", new TestSearch("b1", 1_000_000, null));
+        Assert.assertFalse(a3.wasStarted());
+        Assert.assertFalse(b1.wasStarted());
+
+        releaseA2.countDown();
+        waitFor(b1);
+        waitFor(a3);
+        releaseA1.countDown();
+        // (a1 and a2 run at the same time, so they may have started in any order)
+        Assert.assertEquals(List.of("b1", "a3"), started.subList(2, 4));
+    }
+}
@@ -0,0 +1,146 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.TermFrequency;
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SampleParameters;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.search.results.docs.DocGroup;
+import nl.inl.blacklab.search.results.docs.DocGroups;
+import nl.inl.blacklab.search.results.hitresults.ContextSize;
+import nl.inl.blacklab.search.results.hitresults.HitGroup;
+import nl.inl.blacklab.search.results.hitresults.HitGroups;
+import nl.inl.blacklab.search.results.stats.ResultsStats;
+import nl.inl.blacklab.search.textpattern.TextPatternAnyToken;
+import nl.inl.blacklab.searches.Search;
+import nl.inl.blacklab.searches.SearchHits;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestPersistentResultsCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BlackLabIndex index;
+
+    private AnnotatedField contents;
+
+    private HitProperty groupBy;
+
+    @Before
+    public void setUp() {
+        index = TestIndex.getReusable().index();
+        contents = index.mainAnnotatedField();
+        groupBy = new HitPropertyHitText(index, contents.mainAnnotation(), MatchSensitivity.SENSITIVE);
+    }
+
+    private SearchHits findAllTokens(boolean useCache) {
+        BLSpanQuery query = new TextPatternAnyToken(1, 1).toQuery(QueryInfo.create(index));
+        return index.search(contents, useCache).find(query);
+    }
+
+    /** Store the result, then read it back using a new cache in the same directory (as after a restart) */
+    private <T extends SearchResult> T roundTrip(Search<T> search) throws IOException, InvalidQuery {
+        T result = search.execute();
+        if (result instanceof ResultsStats stats)
+            stats.countedTotal(); // wait for the count to finish
+        new PersistentResultsCache(folder.getRoot().toPath(), 1_000_000).put(search, result);
+        T stored = new PersistentResultsCache(folder.getRoot().toPath(), 1_000_000).get(search);
+        Assert.assertNotNull(stored);
+        return stored;
+    }
+
+    @Test
+    public void testHitGroups() throws IOException, InvalidQuery {
+        Search<HitGroups> search = findAllTokens(true).groupCounts(groupBy);
+        HitGroups expected = search.execute();
+        HitGroups actual = roundTrip(search);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (HitGroup group: expected) {
+            HitGroup storedGroup = actual.get(group.identity());
+            Assert.assertNotNull(storedGroup);
+            Assert.assertEquals(group.size(), storedGroup.size());
+        }
+        Assert.assertEquals(expected.hitsStats().countedTotal(), actual.hitsStats().countedTotal());
+        Assert.assertEquals(expected.docsStats().countedTotal(), actual.docsStats().countedTotal());
+    }
+
+    @Test
+    public void testDocGroups() throws IOException, InvalidQuery {
+        Search<DocGroups> search = index.search().findDocuments(index.getAllRealDocsQuery())
+                .group(new DocPropertyStoredField(index, "title"), 0);
+        DocGroups expected = search.execute();
+        DocGroups actual = roundTrip(search);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (DocGroup group: expected) {
+            DocGroup storedGroup = actual.get(group.identity());
+            Assert.assertNotNull(storedGroup);
+            Assert.assertEquals(group.size(), storedGroup.size());
+            Assert.assertEquals(group.totalTokens(), storedGroup.totalTokens());
+        }
+    }
+
+    @Test
+    public void testCollocations() throws IOException, InvalidQuery {
+        Search<TermFrequencyList> search = findAllTokens(true)
+                .collocations(contents.mainAnnotation(), ContextSize.get(1, 1, Integer.MAX_VALUE),
+                        MatchSensitivity.INSENSITIVE);
+        TermFrequencyList expected = search.execute();
+        TermFrequencyList actual = roundTrip(search);
+        Map<String, Long> expectedFreqs = new LinkedHashMap<>();
+        for (TermFrequency freq: expected)
+            expectedFreqs.put(freq.term, freq.frequency);
+        Map<String, Long> actualFreqs = new LinkedHashMap<>();
+        for (TermFrequency freq: actual)
+            actualFreqs.put(freq.term, freq.frequency);
+        Assert.assertEquals(expectedFreqs, actualFreqs);
+    }
+
+    @Test
+    public void testCount() throws IOException, InvalidQuery {
+        Search<ResultsStats> search = findAllTokens(true).hitCount();
+        ResultsStats expected = search.execute();
+        ResultsStats actual = roundTrip(search);
+        Assert.assertEquals(expected.processedTotal(), actual.processedTotal());
+        Assert.assertEquals(expected.countedTotal(), actual.countedTotal());
+        Assert.assertEquals(expected.maxStats(), actual.maxStats());
+    }
+
+    @Test
+    public void testKeys() {
+        // Same toString(), but not equal: must have different keys
+        Search<HitGroups> withHits = findAllTokens(true).groupWithStoredHits(groupBy, 0);
+        Search<HitGroups> withoutHits = findAllTokens(true).groupStats(groupBy, 0);
+        Assert.assertEquals(withHits.toString(), withoutHits.toString());
+        Assert.assertNotEquals(withHits, withoutHits);
+        Assert.assertNotNull(PersistentResultsCache.key(withHits));
+        Assert.assertNotEquals(PersistentResultsCache.key(withHits), PersistentResultsCache.key(withoutHits));
+
+        // Equal searches have the same key
+        Assert.assertEquals(PersistentResultsCache.key(withoutHits),
+                PersistentResultsCache.key(findAllTokens(true).groupStats(groupBy, 0)));
+
+        // Searches that don't use the cache, or can't be persisted, have no key
+        Assert.assertNull(PersistentResultsCache.key(findAllTokens(false).groupStats(groupBy, 0)));
+        Assert.assertNull(PersistentResultsCache.key(findAllTokens(true).groupCounts(groupBy).sample(
+                SampleParameters.percentage(50, 1))));
+    }
+}